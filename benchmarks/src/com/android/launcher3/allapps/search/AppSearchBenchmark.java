@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.launcher3.allapps.search;
+
+import com.android.launcher3.AppInfo;
+import com.android.launcher3.allapps.search.DefaultAppSearchAlgorithm.StringMatcher;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks {@link DefaultAppSearchAlgorithm#matches} with queries of a few characters against
+ * latin and CJK titles.
+ *
+ * The JVM collator is not the ICU one used on the device, so the numbers are only comparable
+ * between runs on the JVM.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AppSearchBenchmark {
+
+    private static final String[] TITLES = new String[] {"Calculator", "Google Play Store",
+            "YouTube Music", "Camera", "Calendar", "电子邮件", "Sound Recorder", "Files by Google"};
+    private static final String[] QUERIES =
+            new String[] {"c", "ca", "cal", "play", "music", "电子", "rec"};
+
+    private final AppInfo[] mApps = new AppInfo[TITLES.length];
+    private StringMatcher mMatcher;
+    private int mCounter;
+
+    @Setup
+    public void setUp() {
+        for (int i = 0; i < TITLES.length; i++) {
+            mApps[i] = new AppInfo();
+            mApps[i].title = TITLES[i];
+        }
+        mMatcher = StringMatcher.getInstance();
+    }
+
+    @Benchmark
+    public boolean matches() {
+        int i = mCounter++ & Integer.MAX_VALUE;
+        return DefaultAppSearchAlgorithm.matches(
+                mApps[i % mApps.length], QUERIES[i % QUERIES.length], mMatcher);
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.launcher3.dynamicui;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the palette scoring of {@link ColorExtractionAlgorithm#extractInto}: finding the
+ * tonal palette of a color and the closest color in that palette. The colors are given in HSL,
+ * as the conversion from RGB goes through the framework.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ColorExtractionBenchmark {
+
+    private static final int COLOR_COUNT = 256;
+
+    private final float[] mH = new float[COLOR_COUNT];
+    private final float[] mS = new float[COLOR_COUNT];
+    private final float[] mL = new float[COLOR_COUNT];
+    private int mCounter;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        for (int i = 0; i < COLOR_COUNT; i++) {
+            mH[i] = random.nextFloat();
+            mS[i] = random.nextFloat();
+            mL[i] = random.nextFloat();
+        }
+        // Builds the lookup tables, which is only done once per process.
+        ColorExtractionAlgorithm.findTonalPalette(mH[0], mS[0]);
+    }
+
+    @Benchmark
+    public int findPaletteAndBestFit() {
+        int i = mCounter++ % COLOR_COUNT;
+        if (i < 0) {
+            i += COLOR_COUNT;
+        }
+        int paletteIndex = ColorExtractionAlgorithm.findTonalPalette(mH[i], mS[i]);
+        return paletteIndex == -1 ? -1
+                : ColorExtractionAlgorithm.bestFit(paletteIndex, mH[i], mS[i], mL[i]);
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.launcher3.graphics;
+
+import android.graphics.Rect;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the scan of the alpha mask done by {@link IconNormalizer#getScale}, on a circle and
+ * on a square icon drawn in the top left corner of the buffer, as on the device.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IconNormalizerBenchmark {
+
+    private static final int SIZE = 192;
+    // The buffer is sized for the largest icon, which is twice the icon size.
+    private static final int STRIDE = SIZE * 2;
+
+    @Param({"circle", "square"})
+    public String shape;
+
+    private final byte[] mPixels = new byte[STRIDE * SIZE];
+    private final float[] mLeftBorder = new float[SIZE];
+    private final float[] mRightBorder = new float[SIZE];
+    private final Rect mBounds = new Rect();
+
+    @Setup
+    public void setUp() {
+        boolean circle = "circle".equals(shape);
+        float radius = SIZE / 2f;
+        // The square leaves a margin, as most square icons do.
+        int margin = SIZE / 8;
+        for (int y = 0; y < SIZE; y++) {
+            for (int x = 0; x < SIZE; x++) {
+                boolean visible;
+                if (circle) {
+                    float dx = x + 0.5f - radius;
+                    float dy = y + 0.5f - radius;
+                    visible = dx * dx + dy * dy <= radius * radius;
+                } else {
+                    visible = x >= margin && x < SIZE - margin
+                            && y >= margin && y < SIZE - margin;
+                }
+                mPixels[y * STRIDE + x] = visible ? (byte) 0xFF : 0;
+            }
+        }
+    }
+
+    @Benchmark
+    public boolean findVisibleBorders() {
+        return IconNormalizer.findVisibleBorders(
+                mPixels, STRIDE, SIZE, SIZE, mLeftBorder, mRightBorder, mBounds);
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.launcher3.model;
+
+import com.android.launcher3.LauncherSettings.Favorites;
+import com.android.launcher3.model.GridSizeMigrationTask.DbEntry;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the placement search of {@link GridSizeMigrationTask#migrateScreen} when a screen
+ * goes from 5x5 to 4x4. The items are built directly, instead of being loaded from the DB.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GridPlacementBenchmark {
+
+    private static final int APPLICATION = Favorites.ITEM_TYPE_APPLICATION;
+    private static final int SHORTCUT = Favorites.ITEM_TYPE_SHORTCUT;
+
+    // Same as the weights given by GridSizeMigrationTask#loadWorkspaceEntries
+    private static final float WT_SHORTCUT = 1;
+    private static final float WT_APPLICATION = 0.8f;
+    private static final float WT_WIDGET_MIN = 2;
+    private static final float WT_WIDGET_FACTOR = 0.6f;
+    private static final float WT_FOLDER_FACTOR = 0.5f;
+
+    // A type greater than 1 is a folder with that many items and -1 is an empty cell.
+    private static final int[][] HALF_FULL = new int[][] {
+            {  0,  1, -1,  0, -1},
+            { -1,  3, -1, -1,  1},
+            {  0, -1, -1,  5, -1},
+            { -1, -1,  1, -1, -1},
+            {  1,  0, -1, -1,  0},
+    };
+    private static final int[][] FULL = new int[][] {
+            {  0,  1,  0,  0,  1},
+            {  3,  1,  0,  4,  1},
+            {  0,  1,  0,  5,  0},
+            {  1,  0,  1,  0,  2},
+            {  1,  0,  0,  1,  0},
+    };
+
+    @Param({"half", "full"})
+    public String layout;
+
+    @Param({"false", "true"})
+    public boolean widget;
+
+    private final GridPlacementSolver mSolver = new GridPlacementSolver(5, 5, 4, 4);
+    private final float[] mLoss = new float[2];
+    private final int[] mRemoved = new int[2];
+    private ArrayList<DbEntry> mItems;
+
+    @Setup
+    public void setUp() {
+        int[][] typeArray = "full".equals(layout) ? FULL : HALF_FULL;
+        mItems = new ArrayList<>();
+        for (int y = 0; y < typeArray.length; y++) {
+            for (int x = 0; x < typeArray[y].length; x++) {
+                // The top left 2x2 cells hold the widget instead.
+                if (typeArray[y][x] >= 0 && !(widget && x < 2 && y < 2)) {
+                    mItems.add(createItem(typeArray[y][x], x, y));
+                }
+            }
+        }
+        if (widget) {
+            DbEntry entry = createEntry(Favorites.ITEM_TYPE_APPWIDGET, 0, 0, 2, 2);
+            entry.minSpanX = entry.minSpanY = 1;
+            entry.weight = Math.max(WT_WIDGET_MIN, WT_WIDGET_FACTOR * entry.spanX * entry.spanY);
+            mItems.add(entry);
+        }
+    }
+
+    @Benchmark
+    public ArrayList<DbEntry> removeRowAndColumn() {
+        // Not the first screen, so that every row takes part in the migration.
+        return mSolver.removeRowAndColumn(mItems, 0, mLoss, mRemoved);
+    }
+
+    private static DbEntry createItem(int type, int x, int y) {
+        DbEntry entry;
+        if (type == APPLICATION || type == SHORTCUT) {
+            entry = createEntry(type, x, y, 1, 1);
+            entry.weight = type == APPLICATION ? WT_APPLICATION : WT_SHORTCUT;
+        } else {
+            entry = createEntry(Favorites.ITEM_TYPE_FOLDER, x, y, 1, 1);
+            entry.weight = WT_FOLDER_FACTOR * type;
+        }
+        return entry;
+    }
+
+    private static DbEntry createEntry(int itemType, int x, int y, int spanX, int spanY) {
+        DbEntry entry = new DbEntry();
+        entry.itemType = itemType;
+        entry.cellX = x;
+        entry.cellY = y;
+        entry.spanX = spanX;
+        entry.spanY = spanY;
+        return entry;
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.launcher3.util;
+
+import android.view.KeyEvent;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks {@link FocusLogic#handleKeyEvent} on the matrix of a 5x5 workspace page with a few
+ * icons, and a hotseat of 5 icons on the last row. Each call moves from another icon with
+ * another key.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FocusLogicBenchmark {
+
+    private static final int[] KEYS = new int[] {KeyEvent.KEYCODE_DPAD_RIGHT,
+            KeyEvent.KEYCODE_DPAD_DOWN, KeyEvent.KEYCODE_DPAD_LEFT, KeyEvent.KEYCODE_DPAD_UP};
+
+    private final int[][] mMap = new int[5][6];
+    private int mIconCount;
+    private int mCounter;
+
+    @Setup
+    public void setUp() {
+        for (int[] column : mMap) {
+            Arrays.fill(column, FocusLogic.EMPTY);
+        }
+        int index = 0;
+        for (int i = 0; i < 25; i += 3) {
+            mMap[i % 5][i / 5] = index++;
+        }
+        for (int x = 0; x < 5; x++) {
+            mMap[x][5] = index++;
+        }
+        mIconCount = index;
+    }
+
+    @Benchmark
+    public int handleKeyEvent() {
+        int i = mCounter++ & Integer.MAX_VALUE;
+        return FocusLogic.handleKeyEvent(
+                KEYS[i % KEYS.length], mMap, i % mIconCount, 1, 3, false);
+    }
+}
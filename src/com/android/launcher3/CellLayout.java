@@ -32,12 +32,15 @@ import android.graphics.Point;
 import android.graphics.Rect;
 import android.graphics.drawable.ColorDrawable;
 import android.graphics.drawable.Drawable;
+import android.os.Looper;
+import android.os.MessageQueue;
 import android.os.Parcelable;
 import android.support.annotation.IntDef;
 import android.support.v4.view.ViewCompat;
 import android.util.ArrayMap;
 import android.util.AttributeSet;
 import android.util.Log;
+import android.util.LongSparseArray;
 import android.util.SparseArray;
 import android.view.MotionEvent;
 import android.view.View;
@@ -57,6 +60,7 @@ import com.android.launcher3.folder.PreviewBackground;
 import com.android.launcher3.graphics.DragPreviewProvider;
 import com.android.launcher3.util.CellAndSpan;
 import com.android.launcher3.util.GridOccupancy;
+import com.android.launcher3.util.NearestCellCache;
 import com.android.launcher3.util.ParcelableSparseArray;
 import com.android.launcher3.util.Themes;
 import com.android.launcher3.util.Thunk;
@@ -95,6 +99,7 @@ public class CellLayout extends ViewGroup implements BubbleTextShadowHandler {
     // These are temporary variables to prevent having to allocate a new object just to
     // return an (x, y) value from helper functions. Do NOT use them to maintain other state.
     @Thunk final int[] mTmpPoint = new int[2];
+    private final NearestCellCache mNearestCellCache = new NearestCellCache();
     @Thunk final int[] mTempLocation = new int[2];
 
     private GridOccupancy mOccupied;
@@ -145,6 +150,11 @@ public class CellLayout extends ViewGroup implements BubbleTextShadowHandler {
     private final TimeInterpolator mEaseOutInterpolator;
     private final ShortcutAndWidgetContainer mShortcutsAndWidgets;
 
+    // Focus matrix of the children built by FocusLogic.createSparseMatrix, kept until the children,
+    // their cells or the occupancy change.
+    private int[][] mFocusMatrix;
+    private boolean mFocusMatrixValid;
+
     @Retention(RetentionPolicy.SOURCE)
     @IntDef({WORKSPACE, HOTSEAT, FOLDER})
     public @interface ContainerType{}
@@ -174,6 +184,12 @@ public class CellLayout extends ViewGroup implements BubbleTextShadowHandler {
     final int[] mPreviousReorderDirection = new int[2];
     private static final int INVALID_DIRECTION = -100;
 
+    // Caches the outcome of rearrangementExists() for the duration of a drag, so that hovering
+    // over the same cells does not recompute the push / shuffle solution on every drag-over.
+    private final ReorderSolutionCache mReorderSolutionCache = new ReorderSolutionCache();
+    private final NeighbourPrecomputeHandler mNeighbourPrecompute =
+            new NeighbourPrecomputeHandler();
+
     private final Rect mTempRect = new Rect();
 
     private final static Paint sPaint = new Paint();
@@ -373,6 +389,7 @@ public class CellLayout extends ViewGroup implements BubbleTextShadowHandler {
         mOccupied = new GridOccupancy(mCountX, mCountY);
         mTmpOccupied = new GridOccupancy(mCountX, mCountY);
         mTempRectStack.clear();
+        invalidateReorderSolutions();
         mShortcutsAndWidgets.setCellDimensions(mCellWidth, mCellHeight, mCountX, mCountY);
         requestLayout();
     }
@@ -380,6 +397,7 @@ public class CellLayout extends ViewGroup implements BubbleTextShadowHandler {
     // Set whether or not to invert the layout horizontally if the layout is in RTL mode.
     public void setInvertIfRtl(boolean invert) {
         mShortcutsAndWidgets.setInvertIfRtl(invert);
+        invalidateFocusMatrix();
     }
 
     public void setDropPending(boolean pending) {
@@ -625,6 +643,7 @@ public class CellLayout extends ViewGroup implements BubbleTextShadowHandler {
                 Log.d(TAG, "Adding view to ShortcutsAndWidgetsContainer: " + child);
             }
             mShortcutsAndWidgets.addView(child, index, lp);
+            invalidateReorderSolutions();
 
             if (markCells) markCellsAsOccupiedForView(child);
 
@@ -636,6 +655,7 @@ public class CellLayout extends ViewGroup implements BubbleTextShadowHandler {
     @Override
     public void removeAllViews() {
         mOccupied.clear();
+        invalidateReorderSolutions();
         mShortcutsAndWidgets.removeAllViews();
     }
 
@@ -643,6 +663,7 @@ public class CellLayout extends ViewGroup implements BubbleTextShadowHandler {
     public void removeAllViewsInLayout() {
         if (mShortcutsAndWidgets.getChildCount() > 0) {
             mOccupied.clear();
+            invalidateReorderSolutions();
             mShortcutsAndWidgets.removeAllViewsInLayout();
         }
     }
@@ -919,6 +940,9 @@ public class CellLayout extends ViewGroup implements BubbleTextShadowHandler {
 
             final int oldX = lp.x;
             final int oldY = lp.y;
+            if (permanent) {
+                invalidateReorderSolutions();
+            }
             if (adjustOccupied) {
                 GridOccupancy occupied = permanent ? mOccupied : mTmpOccupied;
                 occupied.markCells(lp.cellX, lp.cellY, lp.cellHSpan, lp.cellVSpan, false);
@@ -984,6 +1008,18 @@ public class CellLayout extends ViewGroup implements BubbleTextShadowHandler {
         return false;
     }
 
+    /**
+     * @return whether a drop location is shown, or fading out, using {@param outline}.
+     */
+    boolean isShowingDragOutline(Bitmap outline) {
+        for (InterruptibleInOutAnimator anim : mDragOutlineAnims) {
+            if (anim.getTag() == outline) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     void visualizeDropLocation(View v, DragPreviewProvider outlineProvider, int cellX, int cellY,
             int spanX, int spanY, boolean resize, DropTarget.DragObject dragObject) {
         final int oldDragCellX = mDragCell[0];
@@ -1850,8 +1886,8 @@ public class CellLayout extends ViewGroup implements BubbleTextShadowHandler {
         boolean success;
         // First we try the exact nearest position of the item being dragged,
         // we will then want to try to move this around to other neighbouring positions
-        success = rearrangementExists(result[0], result[1], spanX, spanY, direction, dragView,
-                solution);
+        success = cachedRearrangementExists(result[0], result[1], spanX, spanY, direction,
+                dragView, solution);
 
         if (!success) {
             // We try shrinking the widget down to size in an alternating pattern, shrink 1 in
@@ -1874,6 +1910,60 @@ public class CellLayout extends ViewGroup implements BubbleTextShadowHandler {
         return solution;
     }
 
+    /**
+     * Same as {@link #rearrangementExists} but consults {@link #mReorderSolutionCache} first. On
+     * a hit, the solution and direction are restored to the exact state a fresh computation would
+     * have left them in. mTmpOccupied is not restored, as callers rebuild it from the solution.
+     */
+    private boolean cachedRearrangementExists(int cellX, int cellY, int spanX, int spanY,
+            int[] direction, View dragView, ItemConfiguration solution) {
+        if (cellX < 0 || cellY < 0) return false;
+
+        mReorderSolutionCache.setDragView(dragView);
+        long key = ReorderSolutionCache.makeKey(cellX, cellY, spanX, spanY, direction);
+        ReorderSolutionCache.Entry entry = mReorderSolutionCache.get(key);
+        if (entry != null) {
+            entry.applyTo(solution, direction);
+            return entry.success;
+        }
+
+        boolean success = rearrangementExists(cellX, cellY, spanX, spanY, direction, dragView,
+                solution);
+        mReorderSolutionCache.put(key, new ReorderSolutionCache.Entry(success, solution,
+                direction));
+        return success;
+    }
+
+    private void invalidateReorderSolutions() {
+        mReorderSolutionCache.clear();
+        mNeighbourPrecompute.cancel();
+        // The focus matrix depends on the same children and occupancy.
+        invalidateFocusMatrix();
+    }
+
+    /**
+     * @return the matrix last set by {@link #setFocusMatrix}, which may be outdated, or null.
+     */
+    public int[][] getFocusMatrix() {
+        return mFocusMatrix;
+    }
+
+    public boolean isFocusMatrixValid() {
+        return mFocusMatrixValid;
+    }
+
+    public void setFocusMatrix(int[][] matrix) {
+        mFocusMatrix = matrix;
+        mFocusMatrixValid = true;
+    }
+
+    /**
+     * Called when the children or their cells change. The matrix is kept to be reused as a buffer.
+     */
+    public void invalidateFocusMatrix() {
+        mFocusMatrixValid = false;
+    }
+
     private void copyCurrentStateToSolution(ItemConfiguration solution, boolean temp) {
         int childCount = mShortcutsAndWidgets.getChildCount();
         for (int i = 0; i < childCount; i++) {
@@ -2113,6 +2203,7 @@ public class CellLayout extends ViewGroup implements BubbleTextShadowHandler {
 
     private void commitTempPlacement() {
         mTmpOccupied.copyTo(mOccupied);
+        invalidateReorderSolutions();
 
         long screenId = mLauncher.getWorkspace().getIdForScreen(this);
         int container = Favorites.CONTAINER_DESKTOP;
@@ -2390,6 +2481,10 @@ public class CellLayout extends ViewGroup implements BubbleTextShadowHandler {
                     beginOrAdjustReorderPreviewAnimations(finalSolution, dragView,
                             REORDER_ANIMATION_DURATION,  ReorderPreviewAnimation.MODE_PREVIEW);
                 }
+                if (mode == MODE_DRAG_OVER && finalSolution == swapSolution) {
+                    mNeighbourPrecompute.schedule(finalSolution.cellX, finalSolution.cellY,
+                            finalSolution.spanX, finalSolution.spanY, mDirectionVector, dragView);
+                }
             }
         } else {
             foundSolution = false;
@@ -2456,6 +2551,159 @@ public class CellLayout extends ViewGroup implements BubbleTextShadowHandler {
         }
     }
 
+    /**
+     * Per-drag cache of reorder solutions keyed by (target cell, span, direction vector). The
+     * outcome of {@link #rearrangementExists} only depends on the permanent occupancy of this
+     * layout and the view being dragged, so entries stay valid until either of them changes.
+     */
+    private static class ReorderSolutionCache {
+        private final LongSparseArray<Entry> mEntries = new LongSparseArray<>();
+        private View mDragView;
+
+        static long makeKey(int cellX, int cellY, int spanX, int spanY, int[] direction) {
+            return ((long) cellX << 40) | ((long) cellY << 32) | ((long) spanX << 24)
+                    | ((long) spanY << 16) | ((direction[0] + 1) << 8) | (direction[1] + 1);
+        }
+
+        void setDragView(View dragView) {
+            if (mDragView != dragView) {
+                mEntries.clear();
+                mDragView = dragView;
+            }
+        }
+
+        Entry get(long key) {
+            return mEntries.get(key);
+        }
+
+        void put(long key, Entry entry) {
+            mEntries.put(key, entry);
+        }
+
+        void clear() {
+            mEntries.clear();
+            mDragView = null;
+        }
+
+        static class Entry {
+            final boolean success;
+            final int[] direction;
+            final ArrayMap<View, CellAndSpan> positions;
+            final ArrayList<View> intersectingViews;
+
+            Entry(boolean success, ItemConfiguration solution, int[] direction) {
+                this.success = success;
+                this.direction = direction.clone();
+                positions = new ArrayMap<>(solution.map.size());
+                for (int i = solution.map.size() - 1; i >= 0; i--) {
+                    CellAndSpan c = solution.map.valueAt(i);
+                    positions.put(solution.map.keyAt(i),
+                            new CellAndSpan(c.cellX, c.cellY, c.spanX, c.spanY));
+                }
+                intersectingViews = solution.intersectingViews;
+            }
+
+            void applyTo(ItemConfiguration solution, int[] outDirection) {
+                for (int i = positions.size() - 1; i >= 0; i--) {
+                    CellAndSpan c = solution.map.get(positions.keyAt(i));
+                    if (c != null) {
+                        c.copyFrom(positions.valueAt(i));
+                    }
+                }
+                solution.intersectingViews = intersectingViews;
+                outDirection[0] = direction[0];
+                outDirection[1] = direction[1];
+            }
+        }
+    }
+
+    /**
+     * Fills {@link #mReorderSolutionCache} with the solutions for the cells around the last
+     * drag-over target while the main thread is idle. One cell is computed per idle pass so that
+     * incoming touch events are never delayed by more than a single solution.
+     */
+    private class NeighbourPrecomputeHandler implements MessageQueue.IdleHandler {
+        private final int[] mDirection = new int[2];
+        private final int[] mScratchDirection = new int[2];
+        private GridOccupancy mSavedTmpOccupied;
+        private int mCellX, mCellY, mSpanX, mSpanY;
+        private View mDragView;
+        private int mNextNeighbour;
+        private boolean mScheduled;
+
+        void schedule(int cellX, int cellY, int spanX, int spanY, int[] direction, View dragView) {
+            mCellX = cellX;
+            mCellY = cellY;
+            mSpanX = spanX;
+            mSpanY = spanY;
+            mDirection[0] = direction[0];
+            mDirection[1] = direction[1];
+            mDragView = dragView;
+            mNextNeighbour = 0;
+            if (!mScheduled) {
+                mScheduled = true;
+                Looper.myQueue().addIdleHandler(this);
+            }
+        }
+
+        void cancel() {
+            if (mScheduled) {
+                mScheduled = false;
+                Looper.myQueue().removeIdleHandler(this);
+            }
+            mDragView = null;
+        }
+
+        @Override
+        public boolean queueIdle() {
+            if (!mDragging) {
+                mScheduled = false;
+                mDragView = null;
+                return false;
+            }
+            while (mNextNeighbour < 9) {
+                int index = mNextNeighbour++;
+                int x = mCellX + (index % 3) - 1;
+                int y = mCellY + (index / 3) - 1;
+                if (index == 4 || x < 0 || y < 0 || x + mSpanX > mCountX || y + mSpanY > mCountY) {
+                    continue;
+                }
+                precompute(x, y);
+                return true;
+            }
+            mScheduled = false;
+            mDragView = null;
+            return false;
+        }
+
+        private void precompute(int cellX, int cellY) {
+            mScratchDirection[0] = mDirection[0];
+            mScratchDirection[1] = mDirection[1];
+            long key = ReorderSolutionCache.makeKey(cellX, cellY, mSpanX, mSpanY,
+                    mScratchDirection);
+            mReorderSolutionCache.setDragView(mDragView);
+            if (mReorderSolutionCache.get(key) != null) {
+                return;
+            }
+
+            // The search works on mTmpOccupied, which currently holds the state of the
+            // on-going reorder preview, so preserve it around the computation.
+            if (mSavedTmpOccupied == null || mSavedTmpOccupied.cells.length != mCountX
+                    || mSavedTmpOccupied.cells[0].length != mCountY) {
+                mSavedTmpOccupied = new GridOccupancy(mCountX, mCountY);
+            }
+            mTmpOccupied.copyTo(mSavedTmpOccupied);
+
+            ItemConfiguration solution = new ItemConfiguration();
+            copyCurrentStateToSolution(solution, false);
+            mOccupied.copyTo(mTmpOccupied);
+            cachedRearrangementExists(cellX, cellY, mSpanX, mSpanY, mScratchDirection, mDragView,
+                    solution);
+
+            mSavedTmpOccupied.copyTo(mTmpOccupied);
+        }
+    }
+
     /**
      * Find a starting cell position that will fit the given bounds nearest the requested
      * cell location. Uses Euclidean distance to score multiple vacant areas.
@@ -2469,7 +2717,18 @@ public class CellLayout extends ViewGroup implements BubbleTextShadowHandler {
      *         nearest the requested location.
      */
     public int[] findNearestArea(int pixelX, int pixelY, int spanX, int spanY, int[] result) {
-        return findNearestArea(pixelX, pixelY, spanX, spanY, spanX, spanY, false, result, null);
+        if (spanX <= 0 || spanY <= 0) {
+            return findNearestArea(pixelX, pixelY, spanX, spanY, spanX, spanY, false, result, null);
+        }
+        // This search does not depend on the occupied cells, only on the grid, so the last
+        // result is reused while the drag stays within the same cell.
+        pixelX -= mCellWidth * (spanX - 1) / 2f;
+        pixelY -= mCellHeight * (spanY - 1) / 2f;
+        mNearestCellCache.setGrid(getPaddingLeft() + mCellWidth / 2,
+                getPaddingTop() + mCellHeight / 2, mCellWidth, mCellHeight,
+                mCountX - (spanX - 1), mCountY - (spanY - 1));
+        return mNearestCellCache.findNearestCell(pixelX, pixelY,
+                result != null ? result : new int[2]);
     }
 
     boolean existsEmptyCell() {
@@ -2503,6 +2762,7 @@ public class CellLayout extends ViewGroup implements BubbleTextShadowHandler {
      */
     void onDragEnter() {
         mDragging = true;
+        invalidateReorderSolutions();
     }
 
     /**
@@ -2515,6 +2775,7 @@ public class CellLayout extends ViewGroup implements BubbleTextShadowHandler {
         if (mDragging) {
             mDragging = false;
         }
+        invalidateReorderSolutions();
 
         // Invalidate the drag data
         mDragCell[0] = mDragCell[1] = -1;
@@ -2568,12 +2829,14 @@ public class CellLayout extends ViewGroup implements BubbleTextShadowHandler {
         if (view == null || view.getParent() != mShortcutsAndWidgets) return;
         LayoutParams lp = (LayoutParams) view.getLayoutParams();
         mOccupied.markCells(lp.cellX, lp.cellY, lp.cellHSpan, lp.cellVSpan, true);
+        invalidateReorderSolutions();
     }
 
     public void markCellsAsUnoccupiedForView(View view) {
         if (view == null || view.getParent() != mShortcutsAndWidgets) return;
         LayoutParams lp = (LayoutParams) view.getLayoutParams();
         mOccupied.markCells(lp.cellX, lp.cellY, lp.cellHSpan, lp.cellVSpan, false);
+        invalidateReorderSolutions();
     }
 
     public int getDesiredWidth() {
@@ -44,6 +44,7 @@ import android.util.Log;
 import com.android.launcher3.compat.LauncherAppsCompat;
 import com.android.launcher3.compat.UserManagerCompat;
 import com.android.launcher3.config.FeatureFlags;
+import com.android.launcher3.graphics.BitmapBlobCodec;
 import com.android.launcher3.graphics.LauncherIcons;
 import com.android.launcher3.model.PackageItemInfo;
 import com.android.launcher3.util.ComponentKey;
@@ -52,6 +53,8 @@ import com.android.launcher3.util.Preconditions;
 import com.android.launcher3.util.Provider;
 import com.android.launcher3.util.SQLiteCacheHelper;
 import com.android.launcher3.util.Thunk;
+import java.io.PrintWriter;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -102,6 +105,7 @@ public class IconCache {
     @Thunk final IconDB mIconDb;
 
     @Thunk final Handler mWorkerHandler;
+    private final IconUpgradeScheduler mUpgradeScheduler;
 
     private final BitmapFactory.Options mLowResOptions;
 
@@ -117,6 +121,7 @@ public class IconCache {
         mIconProvider = Utilities.getOverrideObject(IconProvider.class, context, R.string.icon_provider_class);
 
         mWorkerHandler = new Handler(LauncherModel.getWorkerLooper());
+        mUpgradeScheduler = new IconUpgradeScheduler(this, mWorkerHandler);
 
         mLowResOptions = new BitmapFactory.Options();
         // Always prefer RGB_565 config for low res. If the bitmap has transparency, it will
@@ -449,30 +454,82 @@ public class IconCache {
 
     /**
      * Fetches high-res icon for the provided ItemInfo and updates the caller when done.
+     * Requests from visible views are served first, see {@link IconUpgradeScheduler}.
+     * Must be called on the main thread.
      * @return a request ID that can be used to cancel the request.
      */
     public IconLoadRequest updateIconInBackground(final ItemInfoUpdateReceiver caller,
             final ItemInfoWithIcon info) {
-        Runnable request = new Runnable() {
-
-            @Override
-            public void run() {
-                if (info instanceof AppInfo || info instanceof ShortcutInfo) {
-                    getTitleAndIcon(info, false);
-                } else if (info instanceof PackageItemInfo) {
-                    getTitleAndIconForApp((PackageItemInfo) info, false);
-                }
-                mMainThreadExecutor.execute(new Runnable() {
+        return new IconLoadRequest(mUpgradeScheduler, mUpgradeScheduler.enqueue(caller, info));
+    }
 
-                    @Override
-                    public void run() {
-                        caller.reapplyItemInfo(info);
+    /**
+     * Loads the high-res entries of all the provided keys which are not yet in the memory cache
+     * with a single DB query per user. Keys which are not in the DB are left untouched, and will
+     * be loaded through the regular path.
+     */
+    synchronized void prefetchHighResEntries(List<ComponentKey> keys) {
+        Preconditions.assertWorkerThread();
+        HashMap<UserHandle, ArrayList<String>> componentsByUser = new HashMap<>();
+        for (ComponentKey key : keys) {
+            CacheEntry entry = mCache.get(key);
+            if (entry != null && !entry.isLowResIcon) {
+                continue;
+            }
+            ArrayList<String> components = componentsByUser.get(key.user);
+            if (components == null) {
+                components = new ArrayList<>();
+                componentsByUser.put(key.user, components);
+            }
+            components.add(key.componentName.flattenToString());
+        }
+
+        for (UserHandle user : componentsByUser.keySet()) {
+            ArrayList<String> components = componentsByUser.get(user);
+            StringBuilder selection = new StringBuilder(IconDB.COLUMN_USER)
+                    .append(" = ? AND ").append(IconDB.COLUMN_COMPONENT).append(" IN (");
+            String[] selectionArgs = new String[components.size() + 1];
+            selectionArgs[0] = Long.toString(mUserManager.getSerialNumberForUser(user));
+            for (int i = 0; i < components.size(); i++) {
+                selection.append(i == 0 ? "?" : ",?");
+                selectionArgs[i + 1] = components.get(i);
+            }
+            selection.append(")");
+
+            Cursor c = null;
+            try {
+                c = mIconDb.query(new String[]{IconDB.COLUMN_COMPONENT, IconDB.COLUMN_ICON,
+                        IconDB.COLUMN_LABEL}, selection.toString(), selectionArgs);
+                while (c.moveToNext()) {
+                    ComponentName cn = ComponentName.unflattenFromString(c.getString(0));
+                    if (cn == null) {
+                        continue;
                     }
-                });
+                    CacheEntry entry = new CacheEntry();
+                    entry.icon = loadIconNoResize(c, 1, null);
+                    entry.isLowResIcon = false;
+                    entry.title = c.getString(2);
+                    if (entry.title == null) {
+                        entry.title = "";
+                        entry.contentDescription = "";
+                    } else {
+                        entry.contentDescription =
+                                mUserManager.getBadgedLabelForUser(entry.title, user);
+                    }
+                    mCache.put(new ComponentKey(cn, user), entry);
+                }
+            } catch (SQLiteException e) {
+                Log.d(TAG, "Error reading icon cache", e);
+            } finally {
+                if (c != null) {
+                    c.close();
+                }
             }
-        };
-        mWorkerHandler.post(request);
-        return new IconLoadRequest(request, mWorkerHandler);
+        }
+    }
+
+    public void dumpState(String prefix, PrintWriter writer) {
+        mUpgradeScheduler.dump(prefix, writer);
     }
 
     Bitmap getNonNullIcon(CacheEntry entry, UserHandle user) {
@@ -663,7 +720,7 @@ public class IconCache {
         }
     }
 
-    private static ComponentKey getPackageKey(String packageName, UserHandle user) {
+    static ComponentKey getPackageKey(String packageName, UserHandle user) {
         ComponentName cn = new ComponentName(packageName, packageName + EMPTY_CLASS_NAME);
         return new ComponentKey(cn, user);
     }
@@ -761,16 +818,16 @@ public class IconCache {
     }
 
     public static class IconLoadRequest {
-        private final Runnable mRunnable;
-        private final Handler mHandler;
+        private final IconUpgradeScheduler mScheduler;
+        private final IconUpgradeScheduler.Request mRequest;
 
-        IconLoadRequest(Runnable runnable, Handler handler) {
-            mRunnable = runnable;
-            mHandler = handler;
+        IconLoadRequest(IconUpgradeScheduler scheduler, IconUpgradeScheduler.Request request) {
+            mScheduler = scheduler;
+            mRequest = request;
         }
 
         public void cancel() {
-            mHandler.removeCallbacks(mRunnable);
+            mScheduler.cancel(mRequest);
         }
     }
 
@@ -833,7 +890,8 @@ public class IconCache {
     }
 
     private static final class IconDB extends SQLiteCacheHelper {
-        private final static int DB_VERSION = 17;
+        // Version 18: icons are stored with BitmapBlobCodec.DEFAULT instead of PNG
+        private final static int DB_VERSION = 18;
 
         private final static int RELEASE_VERSION = DB_VERSION +
                 (FeatureFlags.LAUNCHER3_DISABLE_ICON_NORMALIZATION ? 0 : 1);
@@ -879,8 +937,8 @@ public class IconCache {
     private ContentValues newContentValues(Bitmap icon, Bitmap lowResIcon, String label,
             String packageName) {
         ContentValues values = new ContentValues();
-        values.put(IconDB.COLUMN_ICON, Utilities.flattenBitmap(icon));
-        values.put(IconDB.COLUMN_ICON_LOW_RES, Utilities.flattenBitmap(lowResIcon));
+        values.put(IconDB.COLUMN_ICON, BitmapBlobCodec.DEFAULT.encode(icon));
+        values.put(IconDB.COLUMN_ICON_LOW_RES, BitmapBlobCodec.DEFAULT.encode(lowResIcon));
 
         values.put(IconDB.COLUMN_LABEL, label);
         values.put(IconDB.COLUMN_SYSTEM_STATE, mIconProvider.getIconSystemState(packageName));
@@ -898,12 +956,7 @@ public class IconCache {
     }
 
     private static Bitmap loadIconNoResize(Cursor c, int iconIndex, BitmapFactory.Options options) {
-        byte[] data = c.getBlob(iconIndex);
-        try {
-            return BitmapFactory.decodeByteArray(data, 0, data.length, options);
-        } catch (Exception e) {
-            return null;
-        }
+        return BitmapBlobCodec.decode(c.getBlob(iconIndex), options);
     }
 
     private class ActivityInfoProvider extends Provider<LauncherActivityInfo> {
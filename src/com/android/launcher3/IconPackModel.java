@@ -0,0 +1,248 @@
+/*
+ * Copyright (C) 2017 Paranoid Android
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.launcher3;
+
+import android.content.ComponentName;
+import android.content.pm.PackageManager;
+import android.content.pm.PackageManager.NameNotFoundException;
+import android.content.res.Resources;
+import android.content.res.XmlResourceParser;
+import android.util.Log;
+
+import com.android.launcher3.util.Preconditions;
+import com.google.android.apps.nexuslauncher.clock.CustomClock;
+
+import org.xmlpull.v1.XmlPullParser;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Parsed contents of an icon pack's appfilter.xml, shared by {@link IconsHandler} and the
+ * nexuslauncher drawable factory so that a pack is parsed only once and its {@link Resources}
+ * are held only once. Models are immutable once parsed.
+ */
+public class IconPackModel {
+
+    private static final String TAG = "IconPackModel";
+
+    private static final String COMPONENT_START = "ComponentInfo{";
+    private static final String COMPONENT_END = "}";
+
+    // Two consumers may use different packs, so keep a model for each.
+    private static final int MAX_CACHED_PACKS = 2;
+
+    private static final Map<String, IconPackModel> sCache =
+            new LinkedHashMap<String, IconPackModel>(MAX_CACHED_PACKS, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, IconPackModel> eldest) {
+                    return size() > MAX_CACHED_PACKS;
+                }
+            };
+
+    public final String packageName;
+    public final Resources resources;
+
+    /** Raw appfilter component strings to drawable names, first declaration wins. */
+    public final Map<String, String> appFilterDrawables;
+    /** Components to resolved drawable ids, last declaration wins. */
+    public final Map<ComponentName, Integer> components;
+    /** Calendar components to drawable name prefixes. */
+    public final Map<ComponentName, String> calendars;
+    /** Drawable ids of dynamic clocks to their layer metadata. */
+    public final Map<Integer, CustomClock.Metadata> clocks;
+    /** All drawable names referenced by items, in declaration order. */
+    public final List<String> itemDrawables;
+
+    public final List<String> backImages;
+    public final String maskImage;
+    public final String frontImage;
+    public final float scaleFactor;
+
+    private IconPackModel(Builder builder) {
+        packageName = builder.packageName;
+        resources = builder.resources;
+        appFilterDrawables = Collections.unmodifiableMap(builder.appFilterDrawables);
+        components = Collections.unmodifiableMap(builder.components);
+        calendars = Collections.unmodifiableMap(builder.calendars);
+        clocks = Collections.unmodifiableMap(builder.clocks);
+        itemDrawables = Collections.unmodifiableList(new ArrayList<>(builder.itemDrawables));
+        backImages = Collections.unmodifiableList(builder.backImages);
+        maskImage = builder.maskImage;
+        frontImage = builder.frontImage;
+        scaleFactor = builder.scaleFactor;
+    }
+
+    /**
+     * Returns the parsed model for the given pack, parsing it on the calling thread if needed.
+     * Must not be called on the main thread. Returns null if the pack is not installed.
+     */
+    public static IconPackModel get(PackageManager pm, String packageName) {
+        Preconditions.assertNonUiThread();
+        synchronized (sCache) {
+            IconPackModel model = sCache.get(packageName);
+            if (model == null) {
+                model = parse(pm, packageName);
+                if (model != null) {
+                    sCache.put(packageName, model);
+                }
+            }
+            return model;
+        }
+    }
+
+    /**
+     * Drops the cached model of a pack, e.g. after it was updated or removed.
+     */
+    public static void invalidate(String packageName) {
+        synchronized (sCache) {
+            sCache.remove(packageName);
+        }
+    }
+
+    private static IconPackModel parse(PackageManager pm, String packageName) {
+        Builder builder = new Builder();
+        builder.packageName = packageName;
+        try {
+            builder.resources = pm.getResourcesForApplication(packageName);
+        } catch (NameNotFoundException e) {
+            Log.e(TAG, "Icon pack not found " + packageName);
+            return null;
+        }
+
+        Resources res = builder.resources;
+        int appFilterId = res.getIdentifier("appfilter", "xml", packageName);
+        if (appFilterId <= 0) {
+            return new IconPackModel(builder);
+        }
+
+        XmlResourceParser xpp = res.getXml(appFilterId);
+        try {
+            int eventType = xpp.getEventType();
+            while (eventType != XmlPullParser.END_DOCUMENT) {
+                if (eventType == XmlPullParser.START_TAG) {
+                    builder.parseTag(xpp);
+                }
+                eventType = xpp.next();
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Error parsing appfilter.xml " + e);
+        } finally {
+            xpp.close();
+        }
+        return new IconPackModel(builder);
+    }
+
+    private static class Builder {
+        String packageName;
+        Resources resources;
+        final Map<String, String> appFilterDrawables = new HashMap<>();
+        final Map<ComponentName, Integer> components = new HashMap<>();
+        final Map<ComponentName, String> calendars = new HashMap<>();
+        final Map<Integer, CustomClock.Metadata> clocks = new HashMap<>();
+        final LinkedHashSet<String> itemDrawables = new LinkedHashSet<>();
+        final List<String> backImages = new ArrayList<>();
+        String maskImage;
+        String frontImage;
+        float scaleFactor = 1.0f;
+
+        void parseTag(XmlResourceParser xpp) {
+            String name = xpp.getName();
+            switch (name) {
+                case "iconback":
+                    for (int i = 0; i < xpp.getAttributeCount(); i++) {
+                        if (xpp.getAttributeName(i).startsWith("img")) {
+                            backImages.add(xpp.getAttributeValue(i));
+                        }
+                    }
+                    break;
+                case "iconmask":
+                    if (xpp.getAttributeCount() > 0 && xpp.getAttributeName(0).equals("img1")) {
+                        maskImage = xpp.getAttributeValue(0);
+                    }
+                    break;
+                case "iconupon":
+                    if (xpp.getAttributeCount() > 0 && xpp.getAttributeName(0).equals("img1")) {
+                        frontImage = xpp.getAttributeValue(0);
+                    }
+                    break;
+                case "scale":
+                    if (xpp.getAttributeCount() > 0 && xpp.getAttributeName(0).equals("factor")) {
+                        scaleFactor = Float.valueOf(xpp.getAttributeValue(0));
+                    }
+                    break;
+                case "item": {
+                    String component = xpp.getAttributeValue(null, "component");
+                    String drawable = xpp.getAttributeValue(null, "drawable");
+                    if (drawable != null) {
+                        itemDrawables.add(drawable);
+                    }
+                    if (component != null && drawable != null) {
+                        if (!appFilterDrawables.containsKey(component)) {
+                            appFilterDrawables.put(component, drawable);
+                        }
+                        ComponentName parsed = parseComponent(component);
+                        int drawableId = resources.getIdentifier(drawable, "drawable", packageName);
+                        if (parsed != null && drawableId != 0) {
+                            components.put(parsed, drawableId);
+                        }
+                    }
+                    break;
+                }
+                case "calendar": {
+                    ComponentName parsed =
+                            parseComponent(xpp.getAttributeValue(null, "component"));
+                    String prefix = xpp.getAttributeValue(null, "prefix");
+                    if (parsed != null && prefix != null) {
+                        calendars.put(parsed, prefix);
+                    }
+                    break;
+                }
+                case "dynamic-clock": {
+                    String drawable = xpp.getAttributeValue(null, "drawable");
+                    if (drawable != null) {
+                        int drawableId = resources.getIdentifier(drawable, "drawable", packageName);
+                        if (drawableId != 0) {
+                            clocks.put(drawableId, new CustomClock.Metadata(
+                                    xpp.getAttributeIntValue(null, "hourLayerIndex", -1),
+                                    xpp.getAttributeIntValue(null, "minuteLayerIndex", -1),
+                                    xpp.getAttributeIntValue(null, "secondLayerIndex", -1),
+                                    xpp.getAttributeIntValue(null, "defaultHour", 0),
+                                    xpp.getAttributeIntValue(null, "defaultMinute", 0),
+                                    xpp.getAttributeIntValue(null, "defaultSecond", 0)));
+                        }
+                    }
+                    break;
+                }
+            }
+        }
+
+        private static ComponentName parseComponent(String component) {
+            if (component == null || !component.startsWith(COMPONENT_START)
+                    || !component.endsWith(COMPONENT_END)) {
+                return null;
+            }
+            return ComponentName.unflattenFromString(component.substring(
+                    COMPONENT_START.length(), component.length() - COMPONENT_END.length()));
+        }
+    }
+}
@@ -0,0 +1,220 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.launcher3;
+
+import android.graphics.Rect;
+import android.os.Handler;
+import android.os.SystemClock;
+import android.support.annotation.VisibleForTesting;
+import android.view.View;
+
+import com.android.launcher3.model.PackageItemInfo;
+import com.android.launcher3.util.ComponentKey;
+import com.android.launcher3.util.Preconditions;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+
+/**
+ * Schedules the replacement of low-res icons by their high-res version.
+ *
+ * Requests are queued on the main thread and handed to the worker in small batches, picking the
+ * requests whose view is currently visible first. Only one batch is in flight at a time, so the
+ * order always reflects the latest scroll position, and requests for views which have been
+ * recycled in the meantime are dropped without touching the worker thread.
+ */
+class IconUpgradeScheduler {
+
+    private static final int BATCH_SIZE = 16;
+
+    private static final int PRIORITY_VISIBLE = 0;
+    private static final int PRIORITY_ATTACHED = 1;
+    @VisibleForTesting static final int PRIORITY_OTHER = 2;
+    @VisibleForTesting static final int PRIORITY_DROP = -1;
+
+    private final IconCache mIconCache;
+    private final Handler mWorkerHandler;
+    private final MainThreadExecutor mMainThreadExecutor = new MainThreadExecutor();
+
+    private final ArrayList<Request> mQueue = new ArrayList<>();
+    private final Rect mTempRect = new Rect();
+    private boolean mBatchInFlight = false;
+
+    // Stats, only accessed on the main thread.
+    private int mMaxQueueDepth;
+    private int mCompleted;
+    private int mDropped;
+    private long mTotalLatencyMs;
+    private long mMaxLatencyMs;
+
+    IconUpgradeScheduler(IconCache iconCache, Handler workerHandler) {
+        mIconCache = iconCache;
+        mWorkerHandler = workerHandler;
+    }
+
+    /**
+     * Queues a request to load the high-res icon for {@param info}. Must be called on the main
+     * thread.
+     */
+    Request enqueue(ItemInfoUpdateReceiver caller, ItemInfoWithIcon info) {
+        Preconditions.assertUIThread();
+        Request request = new Request(caller, info);
+        mQueue.add(request);
+        mMaxQueueDepth = Math.max(mMaxQueueDepth, mQueue.size());
+        scheduleNextBatch();
+        return request;
+    }
+
+    void cancel(Request request) {
+        request.cancelled = true;
+        if (mQueue.remove(request)) {
+            mDropped++;
+        }
+    }
+
+    private void scheduleNextBatch() {
+        if (mBatchInFlight || mQueue.isEmpty()) {
+            return;
+        }
+
+        // Pick the requests with the best priority, keeping FIFO order within a priority.
+        final ArrayList<Request> batch = new ArrayList<>(BATCH_SIZE);
+        for (int priority = PRIORITY_VISIBLE; priority <= PRIORITY_OTHER; priority++) {
+            for (int i = 0; i < mQueue.size() && batch.size() < BATCH_SIZE; i++) {
+                Request request = mQueue.get(i);
+                if (priority == PRIORITY_VISIBLE) {
+                    request.priority = getPriority(request);
+                }
+                if (request.priority == priority) {
+                    batch.add(request);
+                }
+            }
+        }
+        for (int i = mQueue.size() - 1; i >= 0; i--) {
+            Request request = mQueue.get(i);
+            if (request.priority == PRIORITY_DROP) {
+                mQueue.remove(i);
+                mDropped++;
+            }
+        }
+        mQueue.removeAll(batch);
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        mBatchInFlight = true;
+        mWorkerHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                loadBatch(batch);
+                mMainThreadExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        onBatchLoaded(batch);
+                    }
+                });
+            }
+        });
+    }
+
+    @VisibleForTesting
+    int getPriority(Request request) {
+        if (!(request.caller instanceof View)) {
+            return PRIORITY_OTHER;
+        }
+        View view = (View) request.caller;
+        if (view.getTag() != request.tag) {
+            // The view has been recycled for another item. The tag is not always the requested
+            // info, a pending widget shows the icon of its package.
+            return PRIORITY_DROP;
+        }
+        if (!view.isAttachedToWindow()) {
+            return PRIORITY_OTHER;
+        }
+        return view.isShown() && view.getGlobalVisibleRect(mTempRect)
+                ? PRIORITY_VISIBLE : PRIORITY_ATTACHED;
+    }
+
+    /**
+     * Runs on the worker thread.
+     */
+    private void loadBatch(ArrayList<Request> batch) {
+        ArrayList<ComponentKey> componentKeys = new ArrayList<>(batch.size());
+        ArrayList<ComponentKey> packageKeys = new ArrayList<>();
+        for (Request request : batch) {
+            ItemInfoWithIcon info = request.info;
+            if (info instanceof PackageItemInfo) {
+                packageKeys.add(IconCache.getPackageKey(
+                        ((PackageItemInfo) info).packageName, info.user));
+            } else if (info.getTargetComponent() != null) {
+                componentKeys.add(new ComponentKey(info.getTargetComponent(), info.user));
+            }
+        }
+        mIconCache.prefetchHighResEntries(componentKeys);
+        mIconCache.prefetchHighResEntries(packageKeys);
+
+        for (Request request : batch) {
+            ItemInfoWithIcon info = request.info;
+            if (info instanceof AppInfo || info instanceof ShortcutInfo) {
+                mIconCache.getTitleAndIcon(info, false);
+            } else if (info instanceof PackageItemInfo) {
+                mIconCache.getTitleAndIconForApp((PackageItemInfo) info, false);
+            }
+        }
+    }
+
+    private void onBatchLoaded(ArrayList<Request> batch) {
+        long now = SystemClock.uptimeMillis();
+        for (Request request : batch) {
+            long latency = now - request.enqueueTime;
+            mTotalLatencyMs += latency;
+            mMaxLatencyMs = Math.max(mMaxLatencyMs, latency);
+            mCompleted++;
+            if (!request.cancelled) {
+                request.caller.reapplyItemInfo(request.info);
+            }
+        }
+        mBatchInFlight = false;
+        scheduleNextBatch();
+    }
+
+    void dump(String prefix, PrintWriter writer) {
+        writer.println(prefix + "IconUpgradeScheduler:");
+        writer.println(prefix + "  queueDepth=" + mQueue.size()
+                + " maxQueueDepth=" + mMaxQueueDepth
+                + " batchInFlight=" + mBatchInFlight);
+        writer.println(prefix + "  completed=" + mCompleted + " dropped=" + mDropped
+                + " avgLatencyMs=" + (mCompleted == 0 ? 0 : mTotalLatencyMs / mCompleted)
+                + " maxLatencyMs=" + mMaxLatencyMs);
+    }
+
+    class Request {
+        final ItemInfoUpdateReceiver caller;
+        final ItemInfoWithIcon info;
+        // The tag of the caller view when the request was made.
+        final Object tag;
+        final long enqueueTime = SystemClock.uptimeMillis();
+        int priority = PRIORITY_OTHER;
+        boolean cancelled = false;
+
+        Request(ItemInfoUpdateReceiver caller, ItemInfoWithIcon info) {
+            this.caller = caller;
+            this.info = info;
+            this.tag = caller instanceof View ? ((View) caller).getTag() : null;
+        }
+    }
+}
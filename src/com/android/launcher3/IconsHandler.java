@@ -35,7 +35,6 @@ import android.graphics.PorterDuffXfermode;
 import android.graphics.drawable.AdaptiveIconDrawable;
 import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.Drawable;
-import android.os.AsyncTask;
 import android.os.Build;
 import android.os.UserHandle;
 import android.preference.PreferenceManager;
@@ -49,6 +48,8 @@ import com.android.launcher3.graphics.IconNormalizer;
 
 import com.android.launcher3.shortcuts.DeepShortcutManager;
 import com.android.launcher3.shortcuts.ShortcutInfoCompat;
+import com.android.launcher3.util.ExecutorRegistry;
+import com.android.launcher3.util.LooperExecutor;
 import com.google.android.apps.nexuslauncher.SettingsActivity;
 
 import org.xmlpull.v1.XmlPullParser;
@@ -105,92 +106,66 @@ public class IconsHandler {
 
         mDefaultIconPack = context.getString(R.string.default_iconpack);
 
-        String iconPack = PreferenceManager.getDefaultSharedPreferences(mContext)
+        final String iconPack = PreferenceManager.getDefaultSharedPreferences(mContext)
                     .getString(Utilities.KEY_ICON_PACK, mDefaultIconPack);
-        loadAvailableIconPacks();
-        loadIconPack(iconPack, false);
+        mIconPackPackageName = iconPack;
+        // Parse the pack on the worker thread, ahead of any loader task that needs its icons.
+        new LooperExecutor(LauncherModel.getWorkerLooper()).execute(new Runnable() {
+            @Override
+            public void run() {
+                loadAvailableIconPacks();
+                loadIconPack(iconPack);
+            }
+        });
     }
 
-    private void loadIconPack(String packageName, boolean fallback) {
+    private void loadIconPack(String packageName) {
         mIconPackPackageName = packageName;
-        if (!fallback) {
-            mAppFilterDrawables.clear();
-            mBackImages.clear();
-            clearCache();
-        } else {
-            mDrawables.clear();
-        }
+        mAppFilterDrawables.clear();
+        mBackImages.clear();
+        mMaskImage = null;
+        mFrontImage = null;
+        clearCache();
         mFactor = 1.0f;
 
         if (isDefaultIconPack()) {
             return;
         }
 
-        XmlPullParser xpp = null;
+        IconPackModel model = IconPackModel.get(mPackageManager, packageName);
+        if (model == null) {
+            return;
+        }
 
-        try {
-            mOriginalIconPackRes = mPackageManager.getResourcesForApplication(mIconPackPackageName);
-            mCurrentIconPackRes = mOriginalIconPackRes;
-            int appfilterid = mOriginalIconPackRes.getIdentifier("appfilter", "xml", mIconPackPackageName);
-            if (appfilterid > 0) {
-                xpp = mOriginalIconPackRes.getXml(appfilterid);
+        mOriginalIconPackRes = model.resources;
+        mCurrentIconPackRes = mOriginalIconPackRes;
+        mAppFilterDrawables.putAll(model.appFilterDrawables);
+        for (String drawableName : model.backImages) {
+            Bitmap iconback = loadBitmap(drawableName);
+            if (iconback != null) {
+                mBackImages.add(iconback);
             }
+        }
+        if (model.maskImage != null) {
+            mMaskImage = loadBitmap(model.maskImage);
+        }
+        if (model.frontImage != null) {
+            mFrontImage = loadBitmap(model.frontImage);
+        }
+        mFactor = model.scaleFactor;
+    }
 
-            if (xpp != null) {
-                int eventType = xpp.getEventType();
-                while (eventType != XmlPullParser.END_DOCUMENT) {
-                    if (eventType == XmlPullParser.START_TAG) {
-                        if (!fallback & xpp.getName().equals("iconback")) {
-                            for (int i = 0; i < xpp.getAttributeCount(); i++) {
-                                if (xpp.getAttributeName(i).startsWith("img")) {
-                                    String drawableName = xpp.getAttributeValue(i);
-                                    Bitmap iconback = loadBitmap(drawableName);
-                                    if (iconback != null) {
-                                        mBackImages.add(iconback);
-                                    }
-                                }
-                            }
-                        } else if (!fallback && xpp.getName().equals("iconmask")) {
-                            if (xpp.getAttributeCount() > 0 && xpp.getAttributeName(0).equals("img1")) {
-                                String drawableName = xpp.getAttributeValue(0);
-                                mMaskImage = loadBitmap(drawableName);
-                            }
-                        } else if (!fallback && xpp.getName().equals("iconupon")) {
-                            if (xpp.getAttributeCount() > 0 && xpp.getAttributeName(0).equals("img1")) {
-                                String drawableName = xpp.getAttributeValue(0);
-                                mFrontImage = loadBitmap(drawableName);
-                            }
-                        } else if (!fallback && xpp.getName().equals("scale")) {
-                            if (xpp.getAttributeCount() > 0 && xpp.getAttributeName(0).equals("factor")) {
-                                mFactor = Float.valueOf(xpp.getAttributeValue(0));
-                            }
-                        }
-                        if (xpp.getName().equals("item")) {
-                            String componentName = null;
-                            String drawableName = null;
-
-                            for (int i = 0; i < xpp.getAttributeCount(); i++) {
-                                if (xpp.getAttributeName(i).equals("component")) {
-                                    componentName = xpp.getAttributeValue(i);
-                                } else if (xpp.getAttributeName(i).equals("drawable")) {
-                                    drawableName = xpp.getAttributeValue(i);
-                                }
-                            }
-                            if (fallback && getIdentifier(packageName, drawableName, true) > 0
-                                    && !mDrawables.contains(drawableName)) {
-                                mDrawables.add(drawableName);
-                            }
-                            if (!fallback && componentName != null && drawableName != null &&
-                                    !mAppFilterDrawables.containsKey(componentName)) {
-                                mAppFilterDrawables.put(componentName, drawableName);
-                            }
-                        }
-                    }
-                    eventType = xpp.next();
-                }
+    private void loadFallbackDrawables(String packageName) {
+        mDrawables.clear();
+        IconPackModel model = IconPackModel.get(mPackageManager, packageName);
+        if (model == null) {
+            return;
+        }
+        mCurrentIconPackRes = model.resources;
+        for (String drawableName : model.itemDrawables) {
+            if (getIdentifier(packageName, drawableName, true) > 0) {
+                mDrawables.add(drawableName);
             }
-        } catch (Exception e) {
-            Log.e(TAG, "Error parsing appfilter.xml " + e);
         }
     }
 
@@ -237,7 +212,7 @@ public class IconsHandler {
         } catch (Exception e) {
             Log.i(TAG, "Error parsing drawable.xml for package " + packageName + " trying appfilter now");
             // fallback onto appfilter if drawable xml fails
-            loadIconPack(packageName, true);
+            loadFallbackDrawables(packageName);
         }
     }
 
@@ -337,7 +312,7 @@ public class IconsHandler {
             packageName = mDefaultIconPack;
         }
         if (packageName.equals(mDefaultIconPack) || mIconPacks.containsKey(packageName)) {
-            new IconPackLoader(this, packageName).execute();
+            ExecutorRegistry.ICON_PACK_EXECUTOR.execute(new IconPackLoader(this, packageName));
         }
     }
 
@@ -629,40 +604,37 @@ public class IconsHandler {
         }
     }
 
-    private static class IconPackLoader extends AsyncTask<Void, Void, Void> {
+    /**
+     * Saves the selected pack immediately, then loads it on the icon pack executor and reloads
+     * the model on the main thread.
+     */
+    private static class IconPackLoader implements Runnable {
         private String iconPackPackageName;
         private WeakReference<IconsHandler> handlerReference;
 
         private IconPackLoader(IconsHandler handler, String packageName) {
             handlerReference = new WeakReference<>(handler);
             iconPackPackageName = packageName;
+            PreferenceManager.getDefaultSharedPreferences(handler.mContext).edit()
+                    .putString(Utilities.KEY_ICON_PACK, iconPackPackageName).apply();
         }
 
         @Override
-        public void onPreExecute() {
+        public void run() {
             IconsHandler handler = handlerReference.get();
-            if (handler != null) {
-                Context context = handler.mContext;
-                PreferenceManager.getDefaultSharedPreferences(context).edit()
-                        .putString(Utilities.KEY_ICON_PACK, iconPackPackageName).apply();
-            }
-        }
-
-        @Override
-        protected Void doInBackground(Void... voids) {
-            IconsHandler handler = handlerReference.get();
-            if (handler != null) {
-                handler.loadIconPack(iconPackPackageName, false);
-            }
-            return null;
-        }
-
-        @Override
-        protected void onPostExecute(Void aVoid) {
-            IconsHandler handler = handlerReference.get();
-            if (handler != null) {
-                handler.onIconPackUpdated();
+            if (handler == null) {
+                return;
             }
+            handler.loadIconPack(iconPackPackageName);
+            new MainThreadExecutor().execute(new Runnable() {
+                @Override
+                public void run() {
+                    IconsHandler handler = handlerReference.get();
+                    if (handler != null) {
+                        handler.onIconPackUpdated();
+                    }
+                }
+            });
         }
     }
 }
@@ -19,18 +19,23 @@ package com.android.launcher3;
 import android.appwidget.AppWidgetManager;
 import android.appwidget.AppWidgetProviderInfo;
 import android.content.BroadcastReceiver;
+import android.content.ContentValues;
 import android.content.Context;
 import android.content.Intent;
 import android.content.SharedPreferences;
 import android.content.pm.ActivityInfo;
 import android.content.pm.LauncherActivityInfo;
 import android.content.pm.PackageManager;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteException;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.os.Looper;
 import android.os.Parcelable;
 import android.os.Process;
 import android.os.UserHandle;
+import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
 import android.text.TextUtils;
 import android.util.Base64;
 import android.util.Log;
@@ -39,6 +44,7 @@ import android.util.Pair;
 import com.android.launcher3.compat.LauncherAppsCompat;
 import com.android.launcher3.compat.UserManagerCompat;
 import com.android.launcher3.graphics.LauncherIcons;
+import com.android.launcher3.provider.InstallQueueDb;
 import com.android.launcher3.shortcuts.DeepShortcutManager;
 import com.android.launcher3.shortcuts.ShortcutInfoCompat;
 import com.android.launcher3.shortcuts.ShortcutKey;
@@ -55,9 +61,9 @@ import java.net.URISyntaxException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class InstallShortcutReceiver extends BroadcastReceiver {
 
@@ -87,7 +93,8 @@ public class InstallShortcutReceiver extends BroadcastReceiver {
     private static final String APP_WIDGET_TYPE_KEY = "isAppWidget";
     private static final String USER_HANDLE_KEY = "userHandle";
 
-    // The set of shortcuts that are pending install
+    // The set of shortcuts that were pending install before the queue was moved to its own DB.
+    // It is only read once, to move its entries to the queue.
     private static final String APPS_PENDING_INSTALL = "apps_to_install";
 
     public static final int NEW_SHORTCUT_BOUNCE_DURATION = 450;
@@ -95,69 +102,172 @@ public class InstallShortcutReceiver extends BroadcastReceiver {
 
     private static final Object sLock = new Object();
 
-    private static void addToInstallQueue(
-            SharedPreferences sharedPrefs, PendingInstallShortcutInfo info) {
-        synchronized(sLock) {
-            String encoded = info.encodeToString();
-            if (encoded != null) {
-                Set<String> strings = sharedPrefs.getStringSet(APPS_PENDING_INSTALL, null);
-                strings = (strings != null) ? new HashSet<>(strings) : new HashSet<String>(1);
-                strings.add(encoded);
-                sharedPrefs.edit().putStringSet(APPS_PENDING_INSTALL, strings).apply();
+    // Shortcuts pending install, guarded by sLock. Only accessed on the worker thread.
+    private static InstallQueueDb sInstallQueue;
+    private static boolean sLegacyQueueMigrated = false;
+
+    // The number of entries in the queue, or -1 until it is known, written under sLock, and the
+    // number of entries being added on the worker thread. They are read without the lock, so that
+    // flushing an empty queue, the common case, does not wait for the worker thread or the db.
+    private static volatile long sQueueSize = -1;
+    private static final AtomicInteger sPendingAdds = new AtomicInteger();
+
+    private static InstallQueueDb getInstallQueue(Context context) {
+        synchronized (sLock) {
+            if (sInstallQueue == null) {
+                sInstallQueue = new InstallQueueDb(context.getApplicationContext(),
+                        LauncherFiles.INSTALL_QUEUE_DB);
+            }
+            if (!sLegacyQueueMigrated) {
+                // Retried every time the queue is used until it succeeds.
+                sLegacyQueueMigrated = migrateLegacyQueue(context, sInstallQueue);
+                sQueueSize = -1;
+            }
+            if (sQueueSize < 0) {
+                try {
+                    sQueueSize = sInstallQueue.size();
+                } catch (SQLiteException e) {
+                    Log.e(TAG, "Failed to read install queue size", e);
+                }
+            }
+            return sInstallQueue;
+        }
+    }
+
+    @VisibleForTesting
+    static boolean isInstallQueueEmpty() {
+        // The pending adds are read first: an add decrements them after incrementing the size.
+        return sPendingAdds.get() == 0 && sQueueSize == 0;
+    }
+
+    /**
+     * Moves the entries of the legacy {@link #APPS_PENDING_INSTALL} preference to the queue.
+     *
+     * @return false if the entries could not be moved, and should be moved again later.
+     */
+    @VisibleForTesting
+    static boolean migrateLegacyQueue(Context context, InstallQueueDb queue) {
+        SharedPreferences sharedPrefs = Utilities.getPrefs(context);
+        Set<String> strings = sharedPrefs.getStringSet(APPS_PENDING_INSTALL, null);
+        if (strings == null) {
+            return true;
+        }
+        ArrayList<ContentValues> rows = new ArrayList<>();
+        for (String encoded : strings) {
+            try {
+                Decoder decoder = new Decoder(encoded, context);
+                rows.add(toQueueValues(context, encoded, decoder.launcherIntent, decoder.user,
+                        decoder.optBoolean(DEEPSHORTCUT_TYPE_KEY)));
+            } catch (JSONException | URISyntaxException e) {
+                Log.d(TAG, "Exception reading shortcut to add: " + e);
+            }
+        }
+        try {
+            queue.addAll(rows);
+        } catch (SQLiteException e) {
+            Log.e(TAG, "Failed to migrate the install queue", e);
+            return false;
+        }
+        sharedPrefs.edit().remove(APPS_PENDING_INSTALL).commit();
+        return true;
+    }
+
+    private static ContentValues toQueueValues(Context context, String encoded,
+            Intent launchIntent, UserHandle user, boolean isDeepShortcut) {
+        return InstallQueueDb.toValues(encoded, getIntentPackage(launchIntent),
+                UserManagerCompat.getInstance(context).getSerialNumberForUser(user),
+                isDeepShortcut
+                        ? launchIntent.getStringExtra(ShortcutInfoCompat.EXTRA_SHORTCUT_ID)
+                        : null);
+    }
+
+    /**
+     * Adds {@param info} to the queue on the worker thread, in order with the model tasks which
+     * read the queue.
+     *
+     * @param result the broadcast which queued the item, finished once the item is written, so
+     *               that the process is not killed before.
+     */
+    private static void addToInstallQueue(final Context context,
+            PendingInstallShortcutInfo info, @Nullable final PendingResult result) {
+        String encoded = info.encodeToString();
+        if (encoded == null) {
+            if (result != null) {
+                result.finish();
             }
+            return;
         }
+        final ContentValues values = toQueueValues(context, encoded,
+                info.launchIntent, info.user, info.shortcutInfo != null);
+        sPendingAdds.incrementAndGet();
+        LauncherModel.runOnWorkerThread(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (sLock) {
+                    try {
+                        if (getInstallQueue(context).add(values) && sQueueSize >= 0) {
+                            sQueueSize++;
+                        }
+                    } catch (SQLiteException e) {
+                        Log.e(TAG, "Failed to queue shortcut", e);
+                    } finally {
+                        sPendingAdds.decrementAndGet();
+                        if (result != null) {
+                            result.finish();
+                        }
+                    }
+                }
+            }
+        });
     }
 
+    /**
+     * Must be called on the worker thread.
+     */
     public static void removeFromInstallQueue(Context context, HashSet<String> packageNames,
             UserHandle user) {
         if (packageNames.isEmpty()) {
             return;
         }
-        SharedPreferences sp = Utilities.getPrefs(context);
+        if (DBG) Log.d(TAG, "Removing packages from install queue: " + packageNames);
         synchronized(sLock) {
-            Set<String> strings = sp.getStringSet(APPS_PENDING_INSTALL, null);
-            if (DBG) {
-                Log.d(TAG, "APPS_PENDING_INSTALL: " + strings
-                        + ", removing packages: " + packageNames);
-            }
-            if (Utilities.isEmpty(strings)) {
+            if (isInstallQueueEmpty()) {
                 return;
             }
-            Set<String> newStrings = new HashSet<>(strings);
-            Iterator<String> newStringsIter = newStrings.iterator();
-            while (newStringsIter.hasNext()) {
-                String encoded = newStringsIter.next();
-                try {
-                    Decoder decoder = new Decoder(encoded, context);
-                    if (packageNames.contains(getIntentPackage(decoder.launcherIntent)) &&
-                            user.equals(decoder.user)) {
-                        newStringsIter.remove();
-                    }
-                } catch (JSONException | URISyntaxException e) {
-                    Log.d(TAG, "Exception reading shortcut to add: " + e);
-                    newStringsIter.remove();
-                }
+            try {
+                InstallQueueDb queue = getInstallQueue(context);
+                queue.remove(packageNames,
+                        UserManagerCompat.getInstance(context).getSerialNumberForUser(user));
+                sQueueSize = queue.size();
+            } catch (SQLiteException e) {
+                Log.e(TAG, "Failed to remove packages from install queue", e);
+                sQueueSize = -1;
             }
-            sp.edit().putStringSet(APPS_PENDING_INSTALL, newStrings).apply();
         }
     }
 
+    /**
+     * Must be called on the worker thread.
+     */
     private static ArrayList<PendingInstallShortcutInfo> getAndClearInstallQueue(Context context) {
-        SharedPreferences sharedPrefs = Utilities.getPrefs(context);
+        Preconditions.assertNonUiThread();
         synchronized(sLock) {
             ArrayList<PendingInstallShortcutInfo> infos = new ArrayList<>();
-            Set<String> strings = sharedPrefs.getStringSet(APPS_PENDING_INSTALL, null);
-            if (DBG) Log.d(TAG, "Getting and clearing APPS_PENDING_INSTALL: " + strings);
-            if (strings == null) {
+            ArrayList<String> strings;
+            try {
+                strings = getInstallQueue(context).getAndClear();
+                sQueueSize = 0;
+            } catch (SQLiteException e) {
+                Log.e(TAG, "Failed to read install queue", e);
                 return infos;
             }
+            if (DBG) Log.d(TAG, "Getting and clearing install queue: " + strings);
             for (String encoded : strings) {
                 PendingInstallShortcutInfo info = decode(encoded, context);
                 if (info != null) {
                     infos.add(info);
                 }
             }
-            sharedPrefs.edit().putStringSet(APPS_PENDING_INSTALL, new HashSet<String>()).apply();
             return infos;
         }
     }
@@ -177,7 +287,7 @@ public class InstallShortcutReceiver extends BroadcastReceiver {
                     return;
                 }
             }
-            queuePendingShortcutInfo(info, context);
+            queuePendingShortcutInfo(info, context, goAsync());
         }
     }
 
@@ -222,41 +332,56 @@ public class InstallShortcutReceiver extends BroadcastReceiver {
     }
 
     public static void queueShortcut(ShortcutInfoCompat info, Context context) {
-        queuePendingShortcutInfo(new PendingInstallShortcutInfo(info, context), context);
+        queuePendingShortcutInfo(new PendingInstallShortcutInfo(info, context), context, null);
     }
 
     public static void queueWidget(AppWidgetProviderInfo info, int widgetId, Context context) {
-        queuePendingShortcutInfo(new PendingInstallShortcutInfo(info, widgetId, context), context);
+        queuePendingShortcutInfo(
+                new PendingInstallShortcutInfo(info, widgetId, context), context, null);
     }
 
     public static void queueActivityInfo(LauncherActivityInfo activity, Context context) {
-        queuePendingShortcutInfo(new PendingInstallShortcutInfo(activity, context), context);
+        queueActivityInfo(activity, context, null);
+    }
+
+    /**
+     * @param result the broadcast to finish once the activity is queued, see
+     *               {@link #addToInstallQueue}.
+     */
+    public static void queueActivityInfo(LauncherActivityInfo activity, Context context,
+            @Nullable PendingResult result) {
+        queuePendingShortcutInfo(
+                new PendingInstallShortcutInfo(activity, context), context, result);
     }
 
+    /**
+     * Must be called on the worker thread.
+     */
     public static HashSet<ShortcutKey> getPendingShortcuts(Context context) {
         HashSet<ShortcutKey> result = new HashSet<>();
-
-        Set<String> strings = Utilities.getPrefs(context).getStringSet(APPS_PENDING_INSTALL, null);
-        if (Utilities.isEmpty(strings)) {
-            return result;
-        }
-
-        for (String encoded : strings) {
-            try {
-                Decoder decoder = new Decoder(encoded, context);
-                if (decoder.optBoolean(DEEPSHORTCUT_TYPE_KEY)) {
-                    result.add(ShortcutKey.fromIntent(decoder.launcherIntent, decoder.user));
+        UserManagerCompat userManager = UserManagerCompat.getInstance(context);
+        synchronized (sLock) {
+            if (isInstallQueueEmpty()) {
+                return result;
+            }
+            try (Cursor c = getInstallQueue(context).queryDeepShortcuts()) {
+                while (c.moveToNext()) {
+                    UserHandle user = userManager.getUserForSerialNumber(c.getLong(1));
+                    if (user != null) {
+                        result.add(new ShortcutKey(c.getString(0), user, c.getString(2)));
+                    }
                 }
-            } catch (JSONException | URISyntaxException e) {
-                Log.d(TAG, "Exception reading shortcut to add: " + e);
+            } catch (SQLiteException e) {
+                Log.e(TAG, "Failed to read install queue", e);
             }
         }
         return result;
     }
 
-    private static void queuePendingShortcutInfo(PendingInstallShortcutInfo info, Context context) {
+    private static void queuePendingShortcutInfo(PendingInstallShortcutInfo info, Context context,
+            @Nullable PendingResult result) {
         // Queue the item up for adding if launcher has not loaded properly yet
-        addToInstallQueue(Utilities.getPrefs(context), info);
+        addToInstallQueue(context, info, result);
         flushInstallQueue(context);
     }
 
@@ -275,11 +400,13 @@ public class InstallShortcutReceiver extends BroadcastReceiver {
             return;
         }
 
-        ArrayList<PendingInstallShortcutInfo> items = getAndClearInstallQueue(context);
-        if (!items.isEmpty()) {
-            model.addAndBindAddedWorkspaceItems(
-                    new LazyShortcutsProvider(context.getApplicationContext(), items));
+        if (isInstallQueueEmpty()) {
+            // Nothing was queued since the last flush.
+            return;
         }
+        // The queue is read on the worker thread, by the task which adds its items.
+        model.addAndBindAddedWorkspaceItems(
+                new LazyShortcutsProvider(context.getApplicationContext()));
     }
 
     /**
@@ -601,14 +728,13 @@ public class InstallShortcutReceiver extends BroadcastReceiver {
         return new PendingInstallShortcutInfo(info, original.mContext);
     }
 
-    private static class LazyShortcutsProvider extends Provider<List<Pair<ItemInfo, Object>>> {
+    @VisibleForTesting
+    static class LazyShortcutsProvider extends Provider<List<Pair<ItemInfo, Object>>> {
 
         private final Context mContext;
-        private final ArrayList<PendingInstallShortcutInfo> mPendingItems;
 
-        public LazyShortcutsProvider(Context context, ArrayList<PendingInstallShortcutInfo> items) {
+        public LazyShortcutsProvider(Context context) {
             mContext = context;
-            mPendingItems = items;
         }
 
         /**
@@ -620,7 +746,7 @@ public class InstallShortcutReceiver extends BroadcastReceiver {
             Preconditions.assertNonUiThread();
             ArrayList<Pair<ItemInfo, Object>> installQueue = new ArrayList<>();
             LauncherAppsCompat launcherApps = LauncherAppsCompat.getInstance(mContext);
-            for (PendingInstallShortcutInfo pendingInfo : mPendingItems) {
+            for (PendingInstallShortcutInfo pendingInfo : getAndClearInstallQueue(mContext)) {
                 // If the intent specifies a package, make sure the package exists
                 String packageName = getIntentPackage(pendingInfo.launchIntent);
                 if (!TextUtils.isEmpty(packageName) && !launcherApps.isPackageEnabledForProfile(
@@ -18,16 +18,22 @@ package com.android.launcher3;
 
 import android.annotation.TargetApi;
 import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager.NameNotFoundException;
 import android.content.res.Configuration;
 import android.content.res.TypedArray;
 import android.content.res.XmlResourceParser;
 import android.graphics.Point;
+import android.support.annotation.VisibleForTesting;
+import android.text.TextUtils;
 import android.util.DisplayMetrics;
 import android.util.Xml;
 import android.view.Display;
 import android.view.WindowManager;
 
 import com.android.launcher3.config.FeatureFlags;
+import com.android.launcher3.util.LongArrayMap;
 import com.android.launcher3.util.Thunk;
 
 import org.xmlpull.v1.XmlPullParser;
@@ -37,6 +43,7 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.List;
 
 public class InvariantDeviceProfile {
 
@@ -53,6 +60,15 @@ public class InvariantDeviceProfile {
     // used to offset float not being able to express extremely small weights in extreme cases.
     private static float WEIGHT_EFFICIENT = 100000f;
 
+    // Last grid resolved by getGrid, and the display and launcher version it was resolved for.
+    private static final String KEY_GRID_CACHE = "idp_grid_cache";
+    private static final String KEY_GRID_CACHE_KEY = "idp_grid_cache_key";
+
+    // Profiles parsed from R.xml.device_profiles, which must not be modified.
+    private static List<InvariantDeviceProfile> sPredefinedProfiles;
+    // Grids resolved by getGrid, keyed by the display size.
+    private static final LongArrayMap<InvariantDeviceProfile> sGridCache = new LongArrayMap<>();
+
     // Profile-defining invariant properties
     String name;
     float minWidthDps;
@@ -139,26 +155,22 @@ public class InvariantDeviceProfile {
         minWidthDps = Utilities.dpiFromPx(Math.min(smallestSize.x, smallestSize.y), dm);
         minHeightDps = Utilities.dpiFromPx(Math.min(largestSize.x, largestSize.y), dm);
 
-        ArrayList<InvariantDeviceProfile> closestProfiles = findClosestDeviceProfiles(
-                minWidthDps, minHeightDps, getPredefinedDeviceProfiles(context));
-        InvariantDeviceProfile interpolatedDeviceProfileOut =
-                invDistWeightedInterpolate(minWidthDps,  minHeightDps, closestProfiles);
-
-        InvariantDeviceProfile closestProfile = closestProfiles.get(0);
-        numRows = closestProfile.numRows;
-        numRowsOriginal = closestProfile.numRows;
-        numColumns = closestProfile.numColumns;
-        numHotseatIcons = closestProfile.numHotseatIcons;
-        defaultLayoutId = closestProfile.defaultLayoutId;
-        demoModeLayoutId = closestProfile.demoModeLayoutId;
-        numFolderRows = closestProfile.numFolderRows;
-        numFolderColumns = closestProfile.numFolderColumns;
-        minAllAppsPredictionColumns = closestProfile.minAllAppsPredictionColumns;
-
-        iconSize = interpolatedDeviceProfileOut.iconSize;
-        landscapeIconSize = interpolatedDeviceProfileOut.landscapeIconSize;
+        InvariantDeviceProfile grid = getGrid(context, Utilities.getDevicePrefs(context),
+                minWidthDps, minHeightDps);
+        numRows = grid.numRows;
+        numRowsOriginal = grid.numRows;
+        numColumns = grid.numColumns;
+        numHotseatIcons = grid.numHotseatIcons;
+        defaultLayoutId = grid.defaultLayoutId;
+        demoModeLayoutId = grid.demoModeLayoutId;
+        numFolderRows = grid.numFolderRows;
+        numFolderColumns = grid.numFolderColumns;
+        minAllAppsPredictionColumns = grid.minAllAppsPredictionColumns;
+
+        iconSize = grid.iconSize;
+        landscapeIconSize = grid.landscapeIconSize;
         iconBitmapSize = Utilities.pxFromDp(iconSize, dm);
-        iconTextSize = interpolatedDeviceProfileOut.iconTextSize;
+        iconTextSize = grid.iconTextSize;
         fillResIconDpi = getLauncherIconDensity(iconBitmapSize);
 
         // If the partner customization apk contains any grid overrides, apply them
@@ -188,7 +200,120 @@ public class InvariantDeviceProfile {
         }
     }
 
-    ArrayList<InvariantDeviceProfile> getPredefinedDeviceProfiles(Context context) {
+    /**
+     * Returns the grid for a display of the given size: the closest predefined profile, with its
+     * icon sizes interpolated from the closest profiles.
+     *
+     * The grids are kept for the lifetime of the process, and the last one is also kept in
+     * {@param prefs} so that the profiles are not parsed again after a restart, as long as the
+     * display size and the launcher are the same.
+     */
+    @VisibleForTesting
+    static synchronized InvariantDeviceProfile getGrid(Context context, SharedPreferences prefs,
+            float minWidthDps, float minHeightDps) {
+        long key = ((long) Float.floatToIntBits(minWidthDps) << 32)
+                | (Float.floatToIntBits(minHeightDps) & 0xFFFFFFFFL);
+        InvariantDeviceProfile grid = sGridCache.get(key);
+        if (grid != null) {
+            return grid;
+        }
+
+        String cacheKey = getGridCacheKey(context, minWidthDps, minHeightDps);
+        if (cacheKey != null && cacheKey.equals(prefs.getString(KEY_GRID_CACHE_KEY, null))) {
+            grid = decodeGrid(prefs.getString(KEY_GRID_CACHE, null));
+        }
+        if (grid == null) {
+            grid = resolveGrid(minWidthDps, minHeightDps, getPredefinedDeviceProfiles(context));
+            if (cacheKey != null) {
+                prefs.edit()
+                        .putString(KEY_GRID_CACHE_KEY, cacheKey)
+                        .putString(KEY_GRID_CACHE, encodeGrid(grid))
+                        .apply();
+            }
+        }
+        sGridCache.put(key, grid);
+        return grid;
+    }
+
+    @VisibleForTesting
+    static synchronized void clearGridCache() {
+        sGridCache.clear();
+    }
+
+    // Package private visibility for testing.
+    static InvariantDeviceProfile resolveGrid(float width, float height,
+            ArrayList<InvariantDeviceProfile> profiles) {
+        ArrayList<InvariantDeviceProfile> closestProfiles =
+                findClosestDeviceProfiles(width, height, profiles);
+        InvariantDeviceProfile interpolated =
+                invDistWeightedInterpolate(width, height, closestProfiles);
+        InvariantDeviceProfile closest = closestProfiles.get(0);
+        return new InvariantDeviceProfile(closest.name, closest.minWidthDps,
+                closest.minHeightDps, closest.numRows, closest.numColumns, closest.numFolderRows,
+                closest.numFolderColumns, closest.minAllAppsPredictionColumns,
+                interpolated.iconSize, interpolated.landscapeIconSize, interpolated.iconTextSize,
+                closest.numHotseatIcons, closest.defaultLayoutId, closest.demoModeLayoutId);
+    }
+
+    /**
+     * The persisted grid is only valid for the same display size, and for the same build of the
+     * launcher, as it contains resource ids.
+     */
+    private static String getGridCacheKey(Context context, float width, float height) {
+        try {
+            PackageInfo info = context.getPackageManager()
+                    .getPackageInfo(context.getPackageName(), 0);
+            return info.versionCode + "," + info.lastUpdateTime + "," + width + "," + height;
+        } catch (NameNotFoundException e) {
+            return null;
+        }
+    }
+
+    private static String encodeGrid(InvariantDeviceProfile p) {
+        // The name goes last, as the only field which is not a number.
+        return TextUtils.join(",", new Object[] {p.minWidthDps, p.minHeightDps, p.numRows,
+                p.numColumns, p.numFolderRows, p.numFolderColumns, p.minAllAppsPredictionColumns,
+                p.iconSize, p.landscapeIconSize, p.iconTextSize, p.numHotseatIcons,
+                p.defaultLayoutId, p.demoModeLayoutId, p.name});
+    }
+
+    private static InvariantDeviceProfile decodeGrid(String encoded) {
+        if (encoded == null) {
+            return null;
+        }
+        String[] parts = encoded.split(",", 14);
+        if (parts.length != 14) {
+            return null;
+        }
+        try {
+            return new InvariantDeviceProfile(parts[13],
+                    Float.parseFloat(parts[0]), Float.parseFloat(parts[1]),
+                    Integer.parseInt(parts[2]), Integer.parseInt(parts[3]),
+                    Integer.parseInt(parts[4]), Integer.parseInt(parts[5]),
+                    Integer.parseInt(parts[6]),
+                    Float.parseFloat(parts[7]), Float.parseFloat(parts[8]),
+                    Float.parseFloat(parts[9]),
+                    Integer.parseInt(parts[10]), Integer.parseInt(parts[11]),
+                    Integer.parseInt(parts[12]));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns a copy of the predefined profiles, which are only parsed once. The list can be
+     * sorted, but the profiles must not be modified.
+     */
+    static synchronized ArrayList<InvariantDeviceProfile> getPredefinedDeviceProfiles(
+            Context context) {
+        if (sPredefinedProfiles == null) {
+            sPredefinedProfiles = Collections.unmodifiableList(parseDeviceProfiles(context));
+        }
+        return new ArrayList<>(sPredefinedProfiles);
+    }
+
+    // Package private visibility for testing.
+    static ArrayList<InvariantDeviceProfile> parseDeviceProfiles(Context context) {
         ArrayList<InvariantDeviceProfile> profiles = new ArrayList<>();
         try (XmlResourceParser parser = context.getResources().getXml(R.xml.device_profiles)) {
             final int depth = parser.getDepth();
@@ -262,7 +387,7 @@ public class InvariantDeviceProfile {
         }
     }
 
-    @Thunk float dist(float x0, float y0, float x1, float y1) {
+    @Thunk static float dist(float x0, float y0, float x1, float y1) {
         return (float) Math.hypot(x1 - x0, y1 - y0);
     }
 
@@ -270,7 +395,7 @@ public class InvariantDeviceProfile {
      * Returns the closest device profiles ordered by closeness to the specified width and height
      */
     // Package private visibility for testing.
-    ArrayList<InvariantDeviceProfile> findClosestDeviceProfiles(
+    static ArrayList<InvariantDeviceProfile> findClosestDeviceProfiles(
             final float width, final float height, ArrayList<InvariantDeviceProfile> points) {
 
         // Sort the profiles by their closeness to the dimensions
@@ -286,7 +411,7 @@ public class InvariantDeviceProfile {
     }
 
     // Package private visibility for testing.
-    InvariantDeviceProfile invDistWeightedInterpolate(float width, float height,
+    static InvariantDeviceProfile invDistWeightedInterpolate(float width, float height,
                 ArrayList<InvariantDeviceProfile> points) {
         float weights = 0;
 
@@ -334,7 +459,7 @@ public class InvariantDeviceProfile {
                 == Configuration.ORIENTATION_LANDSCAPE ? landscapeProfile : portraitProfile;
     }
 
-    private float weight(float x0, float y0, float x1, float y1, float pow) {
+    private static float weight(float x0, float y0, float x1, float y1, float pow) {
         float d = dist(x0, y0, x1, y1);
         if (Float.compare(d, 0f) == 0) {
             return Float.POSITIVE_INFINITY;
@@ -112,6 +112,9 @@ import com.android.launcher3.dynamicui.ExtractedColors;
 import com.android.launcher3.dynamicui.WallpaperColorInfo;
 import com.android.launcher3.folder.Folder;
 import com.android.launcher3.folder.FolderIcon;
+import com.android.launcher3.folder.FolderPagedView;
+import com.android.launcher3.folder.PreviewLayer;
+import com.android.launcher3.graphics.BitmapPool;
 import com.android.launcher3.keyboard.CustomActionsPopup;
 import com.android.launcher3.keyboard.ViewGroupFocusHelper;
 import com.android.launcher3.logging.FileLog;
@@ -129,6 +132,7 @@ import com.android.launcher3.userevent.nano.LauncherLogProto.Action;
 import com.android.launcher3.userevent.nano.LauncherLogProto.ContainerType;
 import com.android.launcher3.userevent.nano.LauncherLogProto.ControlType;
 import com.android.launcher3.util.ActivityResultInfo;
+import com.android.launcher3.util.ExecutorRegistry;
 import com.android.launcher3.util.RunnableWithId;
 import com.android.launcher3.util.ComponentKey;
 import com.android.launcher3.util.ComponentKeyMapper;
@@ -2195,7 +2199,7 @@ public class Launcher extends BaseActivity
                     appWidgetHost.deleteAppWidgetId(widgetInfo.appWidgetId);
                     return null;
                 }
-            }.executeOnExecutor(Utilities.THREAD_POOL_EXECUTOR);
+            }.executeOnExecutor(ExecutorRegistry.BACKGROUND_EXECUTOR);
         }
         getModelWriter().deleteItemFromDatabase(widgetInfo);
     }
@@ -2847,6 +2851,7 @@ public class Launcher extends BaseActivity
             // This clears all widget bitmaps from the widget tray
             // TODO(hyunyoungs)
         }
+        BitmapPool.getInstance().onTrimMemory(level);
         if (mLauncherCallbacks != null) {
             mLauncherCallbacks.onTrimMemory(level);
         }
@@ -4019,6 +4024,16 @@ public class Launcher extends BaseActivity
         writer.println(" mPendingActivityResult=" + mPendingActivityResult);
 
         mModel.dumpState(prefix, fd, writer, args);
+        mIconCache.dumpState(prefix, writer);
+        ExecutorRegistry.dump(prefix, writer);
+        mDragController.dump(prefix, writer);
+        BitmapPool.getInstance().dump(prefix, writer);
+        LauncherAppState.getInstance(this).getWidgetCache().dump(prefix, writer);
+        writer.println(prefix + "Folder item views created: "
+                + FolderPagedView.getCreatedViewCount());
+        writer.println(prefix + "Folder previews drawn: " + PreviewLayer.getTotalRenderCount()
+                + " (" + PreviewLayer.getRendersPerSecond() + "/s), layers: "
+                + PreviewLayer.getTotalBitmapBytes() / 1024 + "KB");
 
         if (mLauncherCallbacks != null) {
             mLauncherCallbacks.dump(prefix, fd, writer, args);
@@ -38,6 +38,7 @@ import android.widget.RemoteViews;
 
 import com.android.launcher3.dragndrop.DragLayer;
 import com.android.launcher3.dragndrop.DragLayer.TouchCompleteListener;
+import com.android.launcher3.util.ExecutorRegistry;
 
 import java.util.ArrayList;
 
@@ -93,7 +94,7 @@ public class LauncherAppWidgetHostView extends AppWidgetHostView
         setBackgroundResource(R.drawable.widget_internal_focus_bg);
 
         if (Utilities.ATLEAST_OREO) {
-            setExecutor(Utilities.THREAD_POOL_EXECUTOR);
+            setExecutor(ExecutorRegistry.WIDGET_INFLATION_EXECUTOR);
         }
     }
 
@@ -18,7 +18,6 @@ package com.android.launcher3;
 
 import android.content.BroadcastReceiver;
 import android.content.ComponentName;
-import android.content.ContentProviderOperation;
 import android.content.ContentResolver;
 import android.content.ContentValues;
 import android.content.Context;
@@ -54,9 +53,11 @@ import com.android.launcher3.model.ShortcutsChangedTask;
 import com.android.launcher3.model.UserLockStateChangedTask;
 import com.android.launcher3.model.WidgetItem;
 import com.android.launcher3.provider.LauncherDbUtils;
+import com.android.launcher3.provider.ModelWriteBatch;
 import com.android.launcher3.shortcuts.DeepShortcutManager;
 import com.android.launcher3.shortcuts.ShortcutInfoCompat;
 import com.android.launcher3.util.ComponentKey;
+import com.android.launcher3.util.ExecutorRegistry;
 import com.android.launcher3.util.ItemInfoMatcher;
 import com.android.launcher3.util.MultiHashMap;
 import com.android.launcher3.util.PackageUserKey;
@@ -93,10 +94,8 @@ public class LauncherModel extends BroadcastReceiver
     LoaderTask mLoaderTask;
     @Thunk boolean mIsLoaderTaskRunning;
 
-    @Thunk static final HandlerThread sWorkerThread = new HandlerThread("launcher-loader");
-    static {
-        sWorkerThread.start();
-    }
+    @Thunk static final HandlerThread sWorkerThread = ExecutorRegistry.newLooperThread(
+            "launcher-loader", Process.THREAD_PRIORITY_DEFAULT);
     @Thunk static final Handler sWorker = new Handler(sWorkerThread.getLooper());
 
     // Indicates whether the current model data is valid or not.
@@ -168,7 +167,7 @@ public class LauncherModel extends BroadcastReceiver
 
     /** Runs the specified runnable immediately if called from the worker thread, otherwise it is
      * posted on the worker thread handler. */
-    private static void runOnWorkerThread(Runnable r) {
+    static void runOnWorkerThread(Runnable r) {
         if (sWorkerThread.getThreadId() == Process.myTid()) {
             r.run();
         } else {
@@ -258,10 +257,9 @@ public class LauncherModel extends BroadcastReceiver
      * Update the order of the workspace screens in the database. The array list contains
      * a list of screen ids in the order that they should appear.
      */
-    public static void updateWorkspaceScreenOrder(Context context, final ArrayList<Long> screens) {
+    public static void updateWorkspaceScreenOrder(final Context context,
+            final ArrayList<Long> screens) {
         final ArrayList<Long> screensCopy = new ArrayList<Long>(screens);
-        final ContentResolver cr = context.getContentResolver();
-        final Uri uri = LauncherSettings.WorkspaceScreens.CONTENT_URI;
 
         // Remove any negative screen ids -- these aren't persisted
         Iterator<Long> iter = screensCopy.iterator();
@@ -275,20 +273,20 @@ public class LauncherModel extends BroadcastReceiver
         Runnable r = new Runnable() {
             @Override
             public void run() {
-                ArrayList<ContentProviderOperation> ops = new ArrayList<ContentProviderOperation>();
+                ModelWriteBatch batch = new ModelWriteBatch();
                 // Clear the table
-                ops.add(ContentProviderOperation.newDelete(uri).build());
+                batch.delete(LauncherSettings.WorkspaceScreens.TABLE_NAME, null);
                 int count = screensCopy.size();
                 for (int i = 0; i < count; i++) {
                     ContentValues v = new ContentValues();
                     long screenId = screensCopy.get(i);
                     v.put(LauncherSettings.WorkspaceScreens._ID, screenId);
                     v.put(LauncherSettings.WorkspaceScreens.SCREEN_RANK, i);
-                    ops.add(ContentProviderOperation.newInsert(uri).withValues(v).build());
+                    batch.insert(LauncherSettings.WorkspaceScreens.TABLE_NAME, v);
                 }
 
                 try {
-                    cr.applyBatch(LauncherProvider.AUTHORITY, ops);
+                    batch.commit(context);
                 } catch (Exception ex) {
                     throw new RuntimeException(ex);
                 }
@@ -323,6 +321,7 @@ public class LauncherModel extends BroadcastReceiver
         String currentIconPack = handler.getCurrentIconPackPackageName();
 
         if (packageName.equals(currentIconPack)) {
+            IconPackModel.invalidate(packageName);
             handler.notifyUserIconPackChanged();
         }
     }
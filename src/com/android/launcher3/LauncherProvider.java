@@ -61,7 +61,9 @@ import com.android.launcher3.logging.FileLog;
 import com.android.launcher3.model.DbDowngradeHelper;
 import com.android.launcher3.provider.LauncherDbUtils;
 import com.android.launcher3.provider.LauncherDbUtils.SQLiteTransaction;
+import com.android.launcher3.provider.ModelWriteBatch;
 import com.android.launcher3.provider.RestoreDbTask;
+import com.android.launcher3.provider.SQLiteStatementCache;
 import com.android.launcher3.util.ManagedProfileHeuristic;
 import com.android.launcher3.util.NoLocaleSqliteContext;
 import com.android.launcher3.util.Preconditions;
@@ -75,6 +77,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
+import java.util.concurrent.Callable;
 
 public class LauncherProvider extends ContentProvider {
     private static final String TAG = "LauncherProvider";
@@ -98,6 +101,8 @@ public class LauncherProvider extends ContentProvider {
 
     protected DatabaseHelper mOpenHelper;
 
+    private final SQLiteStatementCache mStatementCache = new SQLiteStatementCache();
+
     /**
      * $ adb shell dumpsys activity provider com.android.launcher3
      */
@@ -331,6 +336,39 @@ public class LauncherProvider extends ContentProvider {
         }
     }
 
+    /**
+     * Applies the writes of the model in a single transaction. Unlike {@link #applyBatch}, the
+     * checks for external callers are skipped and the listeners are notified once.
+     */
+    public void applyModelBatch(ModelWriteBatch batch) {
+        createDbIfNotExists();
+        SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        int count;
+        synchronized (mStatementCache) {
+            try (SQLiteTransaction t = new SQLiteTransaction(db)) {
+                count = batch.applyTo(db, mOpenHelper, mStatementCache);
+                t.commit();
+            }
+        }
+        if (count > 0) {
+            notifyListeners();
+        }
+    }
+
+    /**
+     * Runs {@param task} in a single transaction, which is rolled back if the task throws. The
+     * writes done by the task on the calling thread, like {@link #applyModelBatch}, are nested in
+     * that transaction.
+     */
+    public <T> T runInTransaction(Callable<T> task) throws Exception {
+        createDbIfNotExists();
+        try (SQLiteTransaction t = new SQLiteTransaction(mOpenHelper.getWritableDatabase())) {
+            T result = task.call();
+            t.commit();
+            return result;
+        }
+    }
+
     @Override
     public int delete(Uri uri, String selection, String[] selectionArgs) {
         createDbIfNotExists();
@@ -37,6 +37,7 @@ import android.text.TextUtils;
 import android.util.Log;
 
 import com.android.launcher3.compat.LauncherAppsCompat;
+import com.android.launcher3.util.ExecutorRegistry;
 
 import java.util.List;
 
@@ -74,17 +75,29 @@ public class SessionCommitReceiver extends BroadcastReceiver {
             }
         }
 
-        queueAppIconAddition(context, info.getAppPackageName(), user);
+        LauncherActivityInfo activity = getActivityToAdd(context, info.getAppPackageName(), user);
+        if (activity != null) {
+            // Keeps the broadcast until the icon is queued.
+            InstallShortcutReceiver.queueActivityInfo(activity, context, goAsync());
+        }
     }
 
     public static void queueAppIconAddition(Context context, String packageName, UserHandle user) {
+        LauncherActivityInfo activity = getActivityToAdd(context, packageName, user);
+        if (activity != null) {
+            InstallShortcutReceiver.queueActivityInfo(activity, context);
+        }
+    }
+
+    private static LauncherActivityInfo getActivityToAdd(
+            Context context, String packageName, UserHandle user) {
         List<LauncherActivityInfo> activities = LauncherAppsCompat.getInstance(context)
                 .getActivityList(packageName, user);
         if (activities == null || activities.isEmpty()) {
             // no activity found
-            return;
+            return null;
         }
-        InstallShortcutReceiver.queueActivityInfo(activities.get(0), context);
+        return activities.get(0);
     }
 
     public static boolean isEnabled(Context context) {
@@ -105,7 +118,7 @@ public class SessionCommitReceiver extends BroadcastReceiver {
             // grid.
             prefs.edit().putBoolean(ADD_ICON_PREFERENCE_KEY, true).apply();
         } else if (!prefs.contains(ADD_ICON_PREFERENCE_INITIALIZED_KEY)) {
-            new PrefInitTask(context).executeOnExecutor(Utilities.THREAD_POOL_EXECUTOR);
+            new PrefInitTask(context).executeOnExecutor(ExecutorRegistry.BACKGROUND_EXECUTOR);
         }
     }
 
@@ -24,7 +24,8 @@ import android.view.ViewGroup;
 
 import com.android.launcher3.CellLayout.ContainerType;
 
-public class ShortcutAndWidgetContainer extends ViewGroup {
+public class ShortcutAndWidgetContainer extends ViewGroup
+        implements ViewGroup.OnHierarchyChangeListener {
     static final String TAG = "ShortcutAndWidgetContainer";
 
     // These are temporary variables to prevent having to allocate a new object just to
@@ -47,6 +48,23 @@ public class ShortcutAndWidgetContainer extends ViewGroup {
         mLauncher = Launcher.getLauncher(context);
         mWallpaperManager = WallpaperManager.getInstance(context);
         mContainerType = containerType;
+        setOnHierarchyChangeListener(this);
+    }
+
+    @Override
+    public void onChildViewAdded(View parent, View child) {
+        invalidateFocusMatrix();
+    }
+
+    @Override
+    public void onChildViewRemoved(View parent, View child) {
+        invalidateFocusMatrix();
+    }
+
+    private void invalidateFocusMatrix() {
+        if (getParent() instanceof CellLayout) {
+            ((CellLayout) getParent()).invalidateFocusMatrix();
+        }
     }
 
     public void setCellDimensions(int cellWidth, int cellHeight, int countX, int countY) {
@@ -142,6 +160,8 @@ public class ShortcutAndWidgetContainer extends ViewGroup {
 
     @Override
     protected void onLayout(boolean changed, int l, int t, int r, int b) {
+        // The cells of the children may have been changed without changing the occupancy.
+        invalidateFocusMatrix();
         int count = getChildCount();
         for (int i = 0; i < count; i++) {
             final View child = getChildAt(i);
@@ -25,6 +25,7 @@ import android.os.AsyncTask;
 import android.os.Build;
 import android.os.CancellationSignal;
 import android.os.Handler;
+import android.os.SystemClock;
 import android.os.UserHandle;
 import android.support.annotation.Nullable;
 import android.util.Log;
@@ -33,16 +34,19 @@ import android.util.LongSparseArray;
 import com.android.launcher3.compat.AppWidgetManagerCompat;
 import com.android.launcher3.compat.ShortcutConfigActivityInfo;
 import com.android.launcher3.compat.UserManagerCompat;
+import com.android.launcher3.graphics.BitmapBlobCodec;
 import com.android.launcher3.graphics.LauncherIcons;
 import com.android.launcher3.graphics.ShadowGenerator;
 import com.android.launcher3.model.WidgetItem;
 import com.android.launcher3.util.ComponentKey;
+import com.android.launcher3.util.ExecutorRegistry;
 import com.android.launcher3.util.PackageUserKey;
 import com.android.launcher3.util.Preconditions;
 import com.android.launcher3.util.SQLiteCacheHelper;
 import com.android.launcher3.util.Thunk;
 import com.android.launcher3.widget.WidgetCell;
 
+import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
@@ -57,6 +61,11 @@ public class WidgetPreviewLoader {
     private static final String TAG = "WidgetPreviewLoader";
     private static final boolean DEBUG = false;
 
+    // Generated previews are written to the DB in a single transaction, at most this long after
+    // the first of them was generated, or as soon as there are enough of them.
+    private static final int WRITE_BATCH_DELAY_MS = 500;
+    private static final int WRITE_BATCH_SIZE = 16;
+
     private final HashMap<String, long[]> mPackageVersions = new HashMap<>();
 
     /**
@@ -77,6 +86,22 @@ public class WidgetPreviewLoader {
     private final MainThreadExecutor mMainThreadExecutor = new MainThreadExecutor();
     @Thunk final Handler mWorkerHandler;
 
+    /**
+     * Previews waiting to be written to the DB. They are looked up before reading the DB, so that
+     * a preview is not generated again before it is written.
+     */
+    private final HashMap<WidgetCacheKey, ContentValues> mPendingWrites = new HashMap<>();
+    // Only accessed on the worker thread.
+    private boolean mFlushScheduled;
+    private final Runnable mFlushPendingWritesRunnable = new Runnable() {
+        @Override
+        public void run() {
+            flushPendingWrites();
+        }
+    };
+
+    @Thunk final PreviewStats mStats = new PreviewStats();
+
     public WidgetPreviewLoader(Context context, IconCache iconCache) {
         mContext = context;
         mIconCache = iconCache;
@@ -87,7 +112,7 @@ public class WidgetPreviewLoader {
     }
 
     /**
-     * Generates the widget preview on {@link AsyncTask#THREAD_POOL_EXECUTOR}. Must be
+     * Generates the widget preview on {@link ExecutorRegistry#WIDGET_PREVIEW_EXECUTOR}. Must be
      * called on UI thread
      *
      * @return a request id which can be used to cancel the request.
@@ -97,9 +122,11 @@ public class WidgetPreviewLoader {
         String size = previewWidth + "x" + previewHeight;
         WidgetCacheKey key = new WidgetCacheKey(item.componentName, item.user, size);
 
+        mStats.onRequested();
+
         PreviewLoadTask task = new PreviewLoadTask(key, item, previewWidth, previewHeight, caller,
                 animate);
-        task.executeOnExecutor(Utilities.THREAD_POOL_EXECUTOR);
+        task.executeOnExecutor(ExecutorRegistry.WIDGET_PREVIEW_EXECUTOR);
 
         CancellationSignal signal = new CancellationSignal();
         signal.setOnCancelListener(task);
@@ -111,7 +138,8 @@ public class WidgetPreviewLoader {
      * sizes (landscape vs portrait).
      */
     private static class CacheDb extends SQLiteCacheHelper {
-        private static final int DB_VERSION = 9;
+        // Version 10: previews are stored with BitmapBlobCodec.DEFAULT instead of PNG
+        private static final int DB_VERSION = 10;
 
         private static final String TABLE_NAME = "shortcut_and_widget_previews";
         private static final String COLUMN_COMPONENT = "componentName";
@@ -141,6 +169,9 @@ public class WidgetPreviewLoader {
         }
     }
 
+    /**
+     * Adds the preview to the next batch of DB writes. Must be called on the worker thread.
+     */
     @Thunk void writeToDb(WidgetCacheKey key, long[] versions, Bitmap preview) {
         ContentValues values = new ContentValues();
         values.put(CacheDb.COLUMN_COMPONENT, key.componentName.flattenToShortString());
@@ -149,8 +180,43 @@ public class WidgetPreviewLoader {
         values.put(CacheDb.COLUMN_PACKAGE, key.componentName.getPackageName());
         values.put(CacheDb.COLUMN_VERSION, versions[0]);
         values.put(CacheDb.COLUMN_LAST_UPDATED, versions[1]);
-        values.put(CacheDb.COLUMN_PREVIEW_BITMAP, Utilities.flattenBitmap(preview));
-        mDb.insertOrReplace(values);
+        values.put(CacheDb.COLUMN_PREVIEW_BITMAP, BitmapBlobCodec.DEFAULT.encode(preview));
+
+        int pendingCount;
+        synchronized (mPendingWrites) {
+            mPendingWrites.put(key, values);
+            pendingCount = mPendingWrites.size();
+        }
+        if (pendingCount >= WRITE_BATCH_SIZE) {
+            flushPendingWrites();
+        } else if (!mFlushScheduled) {
+            mFlushScheduled = true;
+            mWorkerHandler.postDelayed(mFlushPendingWritesRunnable, WRITE_BATCH_DELAY_MS);
+        }
+    }
+
+    /**
+     * Writes all the pending previews to the DB. Must be called on the worker thread.
+     */
+    @Thunk void flushPendingWrites() {
+        mWorkerHandler.removeCallbacks(mFlushPendingWritesRunnable);
+        mFlushScheduled = false;
+        HashMap<WidgetCacheKey, ContentValues> writes;
+        synchronized (mPendingWrites) {
+            if (mPendingWrites.isEmpty()) {
+                return;
+            }
+            writes = new HashMap<>(mPendingWrites);
+        }
+        mDb.insertOrReplace(writes.values());
+        synchronized (mPendingWrites) {
+            for (WidgetCacheKey key : writes.keySet()) {
+                // Keep the previews which were generated again while writing.
+                if (mPendingWrites.get(key) == writes.get(key)) {
+                    mPendingWrites.remove(key);
+                }
+            }
+        }
     }
 
     public void removePackage(String packageName, UserHandle user) {
@@ -161,6 +227,8 @@ public class WidgetPreviewLoader {
         synchronized(mPackageVersions) {
             mPackageVersions.remove(packageName);
         }
+        // Make sure that pending previews of the package are not written after the delete.
+        flushPendingWrites();
 
         mDb.delete(
                 CacheDb.COLUMN_PACKAGE + " = ? AND " + CacheDb.COLUMN_USER + " = ?",
@@ -179,6 +247,7 @@ public class WidgetPreviewLoader {
     public void removeObsoletePreviews(ArrayList<? extends ComponentKey> list,
             @Nullable PackageUserKey packageUser) {
         Preconditions.assertWorkerThread();
+        flushPendingWrites();
 
         LongSparseArray<HashSet<String>> validPackages = new LongSparseArray<>();
 
@@ -251,6 +320,15 @@ public class WidgetPreviewLoader {
      * Reads the preview bitmap from the DB or null if the preview is not in the DB.
      */
     @Thunk Bitmap readFromDb(WidgetCacheKey key, Bitmap recycle, PreviewLoadTask loadTask) {
+        ContentValues pendingWrite;
+        synchronized (mPendingWrites) {
+            pendingWrite = mPendingWrites.get(key);
+        }
+        if (pendingWrite != null) {
+            return decodePreview(
+                    pendingWrite.getAsByteArray(CacheDb.COLUMN_PREVIEW_BITMAP), recycle);
+        }
+
         Cursor cursor = null;
         try {
             cursor = mDb.query(
@@ -268,14 +346,8 @@ public class WidgetPreviewLoader {
             }
             if (cursor.moveToNext()) {
                 byte[] blob = cursor.getBlob(0);
-                BitmapFactory.Options opts = new BitmapFactory.Options();
-                opts.inBitmap = recycle;
-                try {
-                    if (!loadTask.isCancelled()) {
-                        return BitmapFactory.decodeByteArray(blob, 0, blob.length, opts);
-                    }
-                } catch (Exception e) {
-                    return null;
+                if (!loadTask.isCancelled()) {
+                    return decodePreview(blob, recycle);
                 }
             }
         } catch (SQLException e) {
@@ -288,6 +360,12 @@ public class WidgetPreviewLoader {
         return null;
     }
 
+    private static Bitmap decodePreview(byte[] blob, Bitmap recycle) {
+        BitmapFactory.Options opts = new BitmapFactory.Options();
+        opts.inBitmap = recycle;
+        return BitmapBlobCodec.decode(blob, opts);
+    }
+
     private Bitmap generatePreview(BaseActivity launcher, WidgetItem item, Bitmap recycle,
             int previewWidth, int previewHeight) {
         if (item.widgetInfo != null) {
@@ -326,7 +404,13 @@ public class WidgetPreviewLoader {
                 drawable = null;
             }
             if (drawable != null) {
-                drawable = mutateOnMainThread(drawable);
+                // Draw a private copy, the preview threads must not share the state of the
+                // drawable loaded from the resources.
+                Drawable.ConstantState state = drawable.getConstantState();
+                if (state != null) {
+                    drawable = state.newDrawable();
+                }
+                drawable = drawable.mutate();
             } else {
                 Log.w(TAG, "Can't load widget preview drawable 0x" +
                         Integer.toHexString(info.previewImage) + " for provider: " + info.provider);
@@ -596,6 +680,7 @@ public class WidgetPreviewLoader {
         @Override
         protected void onPostExecute(final Bitmap preview) {
             mCaller.applyPreview(preview, mAnimatePreviewIn);
+            mStats.onFinished(preview != null);
 
             // Write the generated preview to the DB in the worker thread
             if (mVersions != null) {
@@ -625,6 +710,7 @@ public class WidgetPreviewLoader {
 
         @Override
         protected void onCancelled(final Bitmap preview) {
+            mStats.onFinished(false);
             // If we've cancelled while the task is running, then can return the bitmap to the
             // recycled set immediately. Otherwise, it will be recycled after the preview is written
             // to disk.
@@ -663,6 +749,68 @@ public class WidgetPreviewLoader {
         }
     }
 
+    public void dump(String prefix, PrintWriter writer) {
+        mStats.dump(prefix, writer);
+    }
+
+    /**
+     * Measures bursts of preview requests, like the one when the widget tray is opened: how long
+     * until the first preview is shown, and how many previews are shown per second. A burst ends
+     * when all its requests are finished or cancelled. Only used on the main thread.
+     */
+    private static class PreviewStats {
+        private int mPendingCount;
+        private long mBurstStartTime;
+        private long mFirstPreviewMs;
+        private int mPreviewCount;
+
+        private int mBurstCount;
+        private long mLastFirstPreviewMs = -1;
+        private int mLastPreviewCount;
+        private long mLastDurationMs;
+
+        void onRequested() {
+            if (mPendingCount++ == 0) {
+                mBurstStartTime = SystemClock.uptimeMillis();
+                mFirstPreviewMs = -1;
+                mPreviewCount = 0;
+            }
+        }
+
+        void onFinished(boolean shown) {
+            long elapsed = SystemClock.uptimeMillis() - mBurstStartTime;
+            if (shown && mPreviewCount++ == 0) {
+                mFirstPreviewMs = elapsed;
+            }
+            if (--mPendingCount == 0 && mPreviewCount > 0) {
+                mBurstCount++;
+                mLastFirstPreviewMs = mFirstPreviewMs;
+                mLastPreviewCount = mPreviewCount;
+                mLastDurationMs = elapsed;
+                if (DEBUG) {
+                    Log.d(TAG, "Previews: first after " + mFirstPreviewMs + "ms, "
+                            + mPreviewCount + " in " + elapsed + "ms ("
+                            + getPreviewsPerSecond() + "/s)");
+                }
+            }
+        }
+
+        private float getPreviewsPerSecond() {
+            return mLastDurationMs == 0 ? 0 : mLastPreviewCount * 1000f / mLastDurationMs;
+        }
+
+        void dump(String prefix, PrintWriter writer) {
+            writer.println(prefix + "WidgetPreviewLoader: bursts=" + mBurstCount
+                    + " pending=" + mPendingCount);
+            if (mBurstCount > 0) {
+                writer.println(prefix + "  last burst: firstPreview=" + mLastFirstPreviewMs
+                        + "ms previews=" + mLastPreviewCount
+                        + " duration=" + mLastDurationMs
+                        + "ms (" + getPreviewsPerSecond() + "/s)");
+            }
+        }
+    }
+
     private static final class WidgetCacheKey extends ComponentKey {
 
         @Thunk final String size;
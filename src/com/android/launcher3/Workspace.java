@@ -73,6 +73,7 @@ import com.android.launcher3.dragndrop.SpringLoadedDragController;
 import com.android.launcher3.folder.Folder;
 import com.android.launcher3.folder.FolderIcon;
 import com.android.launcher3.folder.PreviewBackground;
+import com.android.launcher3.graphics.BitmapPool;
 import com.android.launcher3.graphics.DragPreviewProvider;
 import com.android.launcher3.graphics.PreloadIconDrawable;
 import com.android.launcher3.popup.PopupContainerWithArrow;
@@ -80,6 +81,7 @@ import com.android.launcher3.shortcuts.ShortcutDragPreviewProvider;
 import com.android.launcher3.userevent.nano.LauncherLogProto.Action;
 import com.android.launcher3.userevent.nano.LauncherLogProto.ContainerType;
 import com.android.launcher3.userevent.nano.LauncherLogProto.Target;
+import com.android.launcher3.util.ExecutorRegistry;
 import com.android.launcher3.util.ItemInfoMatcher;
 import com.android.launcher3.util.LongArrayMap;
 import com.android.launcher3.util.PackageUserKey;
@@ -472,6 +474,26 @@ public class Workspace extends PagedView
         mLauncher.enterSpringLoadedDragMode();
     }
 
+    /**
+     * Releases the drag outline to the {@link BitmapPool} once the drop locations which show it
+     * have faded out.
+     */
+    private void releaseDragOutline(final Bitmap outline) {
+        int fadeTime = getResources().getInteger(R.integer.config_dragOutlineFadeTime);
+        postDelayed(new Runnable() {
+            @Override
+            public void run() {
+                for (CellLayout layout : getWorkspaceAndHotseatCellLayouts()) {
+                    if (layout.isShowingDragOutline(outline)) {
+                        // Leave it to the garbage collector.
+                        return;
+                    }
+                }
+                BitmapPool.getInstance().release(outline);
+            }
+        }, fadeTime * 2);
+    }
+
     public void deferRemoveExtraEmptyScreen() {
         mDeferRemoveExtraEmptyScreen = true;
     }
@@ -493,6 +515,9 @@ public class Workspace extends PagedView
         InstallShortcutReceiver.disableAndFlushInstallQueue(
                 InstallShortcutReceiver.FLAG_DRAG_AND_DROP, getContext());
 
+        if (mOutlineProvider != null && mOutlineProvider.generatedDragOutline != null) {
+            releaseDragOutline(mOutlineProvider.generatedDragOutline);
+        }
         mOutlineProvider = null;
         mDragInfo = null;
         mDragSourceInternal = null;
@@ -1602,7 +1627,7 @@ public class Workspace extends PagedView
     }
 
     protected void setWallpaperDimension() {
-        Utilities.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+        ExecutorRegistry.BACKGROUND_EXECUTOR.execute(new Runnable() {
             @Override
             public void run() {
                 final Point size = LauncherAppState.getIDP(getContext()).defaultWallpaperSize;
@@ -2113,6 +2138,10 @@ public class Workspace extends PagedView
         showCustomContentIfNecessary();
         mForceDrawAdjacentPages = false;
         mTransitionProgress = 1;
+        if (mDragController != null) {
+            // The pages were scaled without a layout.
+            mDragController.invalidateDropTargetRects();
+        }
     }
 
     void updateCustomContentVisibility() {
@@ -2237,7 +2266,8 @@ public class Workspace extends PagedView
                     dragObject, dragVisualizeOffset, dragRect, scale, dragOptions);
             dv.setIntrinsicIconScaleFactor(source.getIntrinsicIconScaleFactor());
         }
-        b.recycle();
+        // The drag view draws a copy of the bitmap.
+        BitmapPool.getInstance().release(b);
         return dv;
     }
 
@@ -3365,7 +3395,7 @@ public class Workspace extends PagedView
 
         int width = MeasureSpec.makeMeasureSpec(unScaledSize[0], MeasureSpec.EXACTLY);
         int height = MeasureSpec.makeMeasureSpec(unScaledSize[1], MeasureSpec.EXACTLY);
-        Bitmap b = Bitmap.createBitmap(unScaledSize[0], unScaledSize[1],
+        Bitmap b = BitmapPool.getInstance().acquire(unScaledSize[0], unScaledSize[1],
                 Bitmap.Config.ARGB_8888);
         mCanvas.setBitmap(b);
 
@@ -3883,7 +3913,7 @@ public class Workspace extends PagedView
                 ItemInfo info = (ItemInfo) item.getTag();
                 if (recurse && info instanceof FolderInfo && item instanceof FolderIcon) {
                     FolderIcon folder = (FolderIcon) item;
-                    ArrayList<View> folderChildren = folder.getFolder().getItemsInReadingOrder();
+                    ArrayList<View> folderChildren = folder.getFolder().getExistingItemViews();
                     // map over all the children in the folder
                     final int childCount = folderChildren.size();
                     for (int childIdx = 0; childIdx < childCount; childIdx++) {
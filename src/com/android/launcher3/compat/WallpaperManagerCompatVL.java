@@ -15,7 +15,6 @@
  */
 package com.android.launcher3.compat;
 
-import android.app.WallpaperInfo;
 import android.app.WallpaperManager;
 import android.app.job.JobInfo;
 import android.app.job.JobParameters;
@@ -29,28 +28,19 @@ import android.content.IntentFilter;
 import android.content.pm.PackageManager;
 import android.content.pm.PermissionInfo;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
-import android.graphics.BitmapRegionDecoder;
 import android.graphics.Canvas;
-import android.graphics.Color;
-import android.graphics.Rect;
 import android.graphics.drawable.Drawable;
 import android.os.Handler;
-import android.os.HandlerThread;
-import android.os.ParcelFileDescriptor;
+import android.os.Process;
 import android.support.annotation.Nullable;
-import android.support.v4.graphics.ColorUtils;
-import android.support.v7.graphics.Palette;
 import android.util.Log;
 import android.util.Pair;
 
 import com.android.launcher3.Utilities;
+import com.android.launcher3.dynamicui.WallpaperColorExtractor;
+import com.android.launcher3.util.ExecutorRegistry;
 
-import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
-import java.util.List;
 
 import static android.app.WallpaperManager.FLAG_SYSTEM;
 import static com.android.launcher3.Utilities.getDevicePrefs;
@@ -180,32 +170,19 @@ public class WallpaperManagerCompatVL extends WallpaperManagerCompat {
      * Intent service to handle color extraction
      */
     public static class ColorExtractionService extends JobService implements Runnable {
-        private static final int MAX_WALLPAPER_EXTRACTION_AREA = 112 * 112;
-
-        // Decides when dark theme is optimal for this wallpaper
-        private static final float DARK_THEME_MEAN_LUMINANCE = 0.25f;
-        // Minimum mean luminosity that an image needs to have to support dark text
-        private static final float BRIGHT_IMAGE_MEAN_LUMINANCE = 0.75f;
-        // We also check if the image has dark pixels in it,
-        // to avoid bright images with some dark spots.
-        private static final float DARK_PIXEL_LUMINANCE = 0.45f;
-        private static final float MAX_DARK_AREA = 0.05f;
-
-        private HandlerThread mWorkerThread;
         private Handler mWorkerHandler;
 
         @Override
         public void onCreate() {
             super.onCreate();
-            mWorkerThread = new HandlerThread("ColorExtractionService");
-            mWorkerThread.start();
-            mWorkerHandler = new Handler(mWorkerThread.getLooper());
+            mWorkerHandler = new Handler(ExecutorRegistry.getSharedLooper(
+                    "ColorExtractionService", Process.THREAD_PRIORITY_BACKGROUND));
         }
 
         @Override
         public void onDestroy() {
             super.onDestroy();
-            mWorkerThread.quit();
+            mWorkerHandler.removeCallbacksAndMessages(null);
         }
 
         @Override
@@ -226,84 +203,15 @@ public class WallpaperManagerCompatVL extends WallpaperManagerCompat {
         @Override
         public void run() {
             int wallpaperId = getWallpaperId(this);
-
-            Bitmap bitmap = null;
-            Drawable drawable = null;
-
-            WallpaperManager wm = WallpaperManager.getInstance(this);
-            WallpaperInfo info = wm.getWallpaperInfo();
-            if (info != null) {
-                // For live wallpaper, extract colors from thumbnail
-                drawable = info.loadThumbnail(getPackageManager());
-            } else {
-                if (Utilities.ATLEAST_NOUGAT) {
-                    try (ParcelFileDescriptor fd = wm.getWallpaperFile(FLAG_SYSTEM)) {
-                        BitmapRegionDecoder decoder = BitmapRegionDecoder
-                                .newInstance(fd.getFileDescriptor(), false);
-
-                        int requestedArea = decoder.getWidth() * decoder.getHeight();
-                        BitmapFactory.Options options = new BitmapFactory.Options();
-
-                        if (requestedArea > MAX_WALLPAPER_EXTRACTION_AREA) {
-                            double areaRatio =
-                                    (double) requestedArea / MAX_WALLPAPER_EXTRACTION_AREA;
-                            double nearestPowOf2 =
-                                    Math.floor(Math.log(areaRatio) / (2 * Math.log(2)));
-                            options.inSampleSize = (int) Math.pow(2, nearestPowOf2);
-                        }
-                        Rect region = new Rect(0, 0, decoder.getWidth(), decoder.getHeight());
-                        bitmap = decoder.decodeRegion(region, options);
-                        decoder.recycle();
-                    } catch (IOException | NullPointerException e) {
-                        Log.e(TAG, "Fetching partial bitmap failed, trying old method", e);
-                    }
-                }
-                if (bitmap == null) {
-                    drawable = wm.getDrawable();
-                }
-            }
-
-            if (drawable != null && drawable.getIntrinsicWidth() > 0 && drawable.getIntrinsicHeight() > 0) {
-                // Calculate how big the bitmap needs to be.
-                // This avoids unnecessary processing and allocation inside Palette.
-                final int requestedArea = drawable.getIntrinsicWidth() *
-                        drawable.getIntrinsicHeight();
-                double scale = 1;
-                if (requestedArea > MAX_WALLPAPER_EXTRACTION_AREA) {
-                    scale = Math.sqrt(MAX_WALLPAPER_EXTRACTION_AREA / (double) requestedArea);
-                }
-                bitmap = Bitmap.createBitmap((int) (drawable.getIntrinsicWidth() * scale),
-                        (int) (drawable.getIntrinsicHeight() * scale), Bitmap.Config.ARGB_8888);
-                final Canvas bmpCanvas = new Canvas(bitmap);
-                drawable.setBounds(0, 0, bitmap.getWidth(), bitmap.getHeight());
-                drawable.draw(bmpCanvas);
-            }
-
             String value = VERSION_PREFIX + wallpaperId;
 
-            if (bitmap != null) {
-                Palette palette = Palette.from(bitmap).generate();
-                int hints = calculateDarkHints(bitmap);
-                bitmap.recycle();
-
+            WallpaperColorExtractor.Result result = WallpaperColorExtractor.extract(this);
+            if (result != null) {
                 StringBuilder builder = new StringBuilder(value);
-                List<Pair<Integer,Integer>> colorsToOccurrences = new ArrayList<>();
-                for (Palette.Swatch swatch : palette.getSwatches()) {
-                    colorsToOccurrences.add(new Pair(swatch.getRgb(), swatch.getPopulation()));
-                }
-
-                Collections.sort(colorsToOccurrences, new Comparator<Pair<Integer, Integer>>() {
-                    @Override
-                    public int compare(Pair<Integer, Integer> a, Pair<Integer, Integer> b) {
-                        return b.second - a.second;
-                    }
-                });
-
-                builder.append(',').append(hints);
-                for (int i=0; i < Math.min(3, colorsToOccurrences.size()); i++) {
-                    builder.append(',').append(colorsToOccurrences.get(i).first);
+                builder.append(',').append(result.getDarkHints());
+                for (int color : result.getMainColors(3)) {
+                    builder.append(',').append(color);
                 }
-
                 value = builder.toString();
             }
 
@@ -312,46 +220,5 @@ public class WallpaperManagerCompatVL extends WallpaperManagerCompat {
                     .setPackage(getPackageName())
                     .putExtra(KEY_COLORS, value));
         }
-
-        /**
-         * Checks if image is bright and clean enough to support light text.
-         *
-         * @param source What to read.
-         * @return Whether image supports dark text or not.
-         */
-        private static int calculateDarkHints(Bitmap source) {
-            if (source == null) {
-                return 0;
-            }
-            int[] pixels = new int[source.getWidth() * source.getHeight()];
-            double totalLuminance = 0;
-            final int maxDarkPixels = (int) (pixels.length * MAX_DARK_AREA);
-            int darkPixels = 0;
-            source.getPixels(pixels, 0 /* offset */, source.getWidth(), 0 /* x */, 0 /* y */,
-                    source.getWidth(), source.getHeight());
-            // This bitmap was already resized to fit the maximum allowed area.
-            // Let's just loop through the pixels, no sweat!
-            float[] tmpHsl = new float[3];
-            for (int i = 0; i < pixels.length; i++) {
-                ColorUtils.colorToHSL(pixels[i], tmpHsl);
-                final float luminance = tmpHsl[2];
-                final int alpha = Color.alpha(pixels[i]);
-                // Make sure we don't have a dark pixel mass that will
-                // make text illegible.
-                if (luminance < DARK_PIXEL_LUMINANCE && alpha != 0) {
-                    darkPixels++;
-                }
-                totalLuminance += luminance;
-            }
-            int hints = 0;
-            double meanLuminance = totalLuminance / pixels.length;
-            if (meanLuminance > BRIGHT_IMAGE_MEAN_LUMINANCE && darkPixels < maxDarkPixels) {
-                hints |= WallpaperColorsCompat.HINT_SUPPORTS_DARK_TEXT;
-            }
-            if (meanLuminance < DARK_THEME_MEAN_LUMINANCE) {
-                hints |= WallpaperColorsCompat.HINT_SUPPORTS_DARK_THEME;
-            }
-            return hints;
-        }
     }
 }
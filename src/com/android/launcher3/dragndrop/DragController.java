@@ -23,11 +23,13 @@ import android.graphics.Bitmap;
 import android.graphics.Point;
 import android.graphics.Rect;
 import android.os.IBinder;
+import android.os.SystemClock;
 import android.view.DragEvent;
 import android.view.HapticFeedbackConstants;
 import android.view.KeyEvent;
 import android.view.MotionEvent;
 import android.view.View;
+import android.view.ViewTreeObserver;
 import android.view.inputmethod.InputMethodManager;
 
 import com.android.launcher3.DragSource;
@@ -36,11 +38,13 @@ import com.android.launcher3.ItemInfo;
 import com.android.launcher3.Launcher;
 import com.android.launcher3.R;
 import com.android.launcher3.ShortcutInfo;
+import com.android.launcher3.Workspace;
 import com.android.launcher3.accessibility.DragViewStateAnnouncer;
 import com.android.launcher3.util.ItemInfoMatcher;
 import com.android.launcher3.util.Thunk;
 import com.android.launcher3.util.TouchController;
 
+import java.io.PrintWriter;
 import java.util.ArrayList;
 
 /**
@@ -53,7 +57,6 @@ public class DragController implements DragDriver.EventListener, TouchController
     private FlingToDeleteHelper mFlingToDeleteHelper;
 
     // temporaries to avoid gc thrash
-    private Rect mRectTemp = new Rect();
     private final int[] mCoordinatesTemp = new int[2];
 
     /**
@@ -77,6 +80,16 @@ public class DragController implements DragDriver.EventListener, TouchController
     private ArrayList<DropTarget> mDropTargets = new ArrayList<>();
     private ArrayList<DragListener> mListeners = new ArrayList<>();
 
+    /** Hit rects of the drop targets, computed again after a layout or a scroll. */
+    private final DropTargetIndex mDropTargetIndex = new DropTargetIndex(mDropTargets);
+    private final DropTargetRectsInvalidator mDropTargetRectsInvalidator =
+            new DropTargetRectsInvalidator();
+    private ViewTreeObserver mObservedViewTree;
+    // Whether the workspace was switching state on the last search of the drop targets.
+    private boolean mWasSwitchingState;
+
+    private final MoveStats mMoveStats = new MoveStats();
+
     /** The window token used as the parent for the DragView. */
     private IBinder mWindowToken;
 
@@ -155,6 +168,8 @@ public class DragController implements DragDriver.EventListener, TouchController
         final int dragRegionTop = dragRegion == null ? 0 : dragRegion.top;
 
         mLastDropTarget = null;
+        observeDropTargetLayout();
+        mMoveStats.onDragStart();
 
         mDragObject = new DropTarget.DragObject();
 
@@ -309,6 +324,8 @@ public class DragController implements DragDriver.EventListener, TouchController
     }
 
     private void callOnDragEnd() {
+        stopObservingDropTargetLayout();
+        mMoveStats.onDragEnd();
         if (mIsInPreDrag && mOptions.preDragCondition != null) {
             mOptions.preDragCondition.onPreDragEnd(mDragObject, false /* dragStarted*/);
         }
@@ -447,6 +464,7 @@ public class DragController implements DragDriver.EventListener, TouchController
     }
 
     private void handleMoveEvent(int x, int y) {
+        long startTime = SystemClock.elapsedRealtimeNanos();
         mDragObject.dragView.move(x, y);
 
         // Drop on someone?
@@ -465,6 +483,7 @@ public class DragController implements DragDriver.EventListener, TouchController
                 && mOptions.preDragCondition.shouldStartDrag(mDistanceSinceScroll)) {
             callOnDragStart();
         }
+        mMoveStats.onMove(SystemClock.elapsedRealtimeNanos() - startTime);
     }
 
     public float getDistanceDragged() {
@@ -591,29 +610,48 @@ public class DragController implements DragDriver.EventListener, TouchController
     }
 
     private DropTarget findDropTarget(int x, int y, int[] dropCoordinates) {
-        final Rect r = mRectTemp;
-
-        final ArrayList<DropTarget> dropTargets = mDropTargets;
-        final int count = dropTargets.size();
-        for (int i=count-1; i>=0; i--) {
-            DropTarget target = dropTargets.get(i);
-            if (!target.isDropEnabled())
-                continue;
-
-            target.getHitRectRelativeToDragLayer(r);
+        Workspace workspace = mLauncher.getWorkspace();
+        boolean switchingState = workspace != null && workspace.isSwitchingState();
+        if (switchingState || mWasSwitchingState) {
+            // The workspace is scaled during state transitions, without a layout. The rects are
+            // also computed again once, at its final scale, after the transition ended.
+            mDropTargetIndex.invalidate();
+        }
+        mWasSwitchingState = switchingState;
+
+        mDragObject.x = x;
+        mDragObject.y = y;
+        DropTarget target = mDropTargetIndex.findDropTarget(x, y);
+        if (target != null) {
+            dropCoordinates[0] = x;
+            dropCoordinates[1] = y;
+            mLauncher.getDragLayer().mapCoordInSelfToDescendant((View) target, dropCoordinates);
+        }
+        return target;
+    }
 
-            mDragObject.x = x;
-            mDragObject.y = y;
-            if (r.contains(x, y)) {
+    /**
+     * Computes the hit rects of the drop targets again, for the changes of position which are
+     * not caused by a layout or a scroll, like the end of an animation.
+     */
+    public void invalidateDropTargetRects() {
+        mDropTargetIndex.invalidate();
+    }
 
-                dropCoordinates[0] = x;
-                dropCoordinates[1] = y;
-                mLauncher.getDragLayer().mapCoordInSelfToDescendant((View) target, dropCoordinates);
+    private void observeDropTargetLayout() {
+        stopObservingDropTargetLayout();
+        mDropTargetIndex.invalidate();
+        mObservedViewTree = mLauncher.getDragLayer().getViewTreeObserver();
+        mObservedViewTree.addOnGlobalLayoutListener(mDropTargetRectsInvalidator);
+        mObservedViewTree.addOnScrollChangedListener(mDropTargetRectsInvalidator);
+    }
 
-                return target;
-            }
+    private void stopObservingDropTargetLayout() {
+        if (mObservedViewTree != null && mObservedViewTree.isAlive()) {
+            mObservedViewTree.removeOnGlobalLayoutListener(mDropTargetRectsInvalidator);
+            mObservedViewTree.removeOnScrollChangedListener(mDropTargetRectsInvalidator);
         }
-        return null;
+        mObservedViewTree = null;
     }
 
     public void setWindowToken(IBinder token) {
@@ -639,6 +677,7 @@ public class DragController implements DragDriver.EventListener, TouchController
      */
     public void addDropTarget(DropTarget target) {
         mDropTargets.add(target);
+        mDropTargetIndex.invalidate();
     }
 
     /**
@@ -646,6 +685,70 @@ public class DragController implements DragDriver.EventListener, TouchController
      */
     public void removeDropTarget(DropTarget target) {
         mDropTargets.remove(target);
+        mDropTargetIndex.invalidate();
+    }
+
+    public void dump(String prefix, PrintWriter writer) {
+        mMoveStats.dump(prefix, writer);
+    }
+
+    private class DropTargetRectsInvalidator implements ViewTreeObserver.OnGlobalLayoutListener,
+            ViewTreeObserver.OnScrollChangedListener {
+
+        @Override
+        public void onGlobalLayout() {
+            mDropTargetIndex.invalidate();
+        }
+
+        @Override
+        public void onScrollChanged() {
+            mDropTargetIndex.invalidate();
+        }
+    }
+
+    /**
+     * Measures the time spent handling the move events of a drag, including the drag over
+     * callbacks of the drop targets. Only used on the main thread.
+     */
+    private static class MoveStats {
+        private int mMoveCount;
+        private long mTotalNs;
+        private long mMaxNs;
+
+        private int mDragCount;
+        private int mLastMoveCount;
+        private long mLastAverageNs;
+        private long mLastMaxNs;
+
+        void onDragStart() {
+            mMoveCount = 0;
+            mTotalNs = 0;
+            mMaxNs = 0;
+        }
+
+        void onMove(long durationNs) {
+            mMoveCount++;
+            mTotalNs += durationNs;
+            mMaxNs = Math.max(mMaxNs, durationNs);
+        }
+
+        void onDragEnd() {
+            if (mMoveCount > 0) {
+                mDragCount++;
+                mLastMoveCount = mMoveCount;
+                mLastAverageNs = mTotalNs / mMoveCount;
+                mLastMaxNs = mMaxNs;
+            }
+        }
+
+        void dump(String prefix, PrintWriter writer) {
+            writer.println(prefix + "DragController: drags=" + mDragCount);
+            if (mDragCount > 0) {
+                writer.println(prefix + "  last drag: moves=" + mLastMoveCount
+                        + " average=" + mLastAverageNs / 1000 + "us"
+                        + " max=" + mLastMaxNs / 1000 + "us");
+            }
+        }
     }
 
 }
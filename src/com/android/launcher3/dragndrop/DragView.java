@@ -57,6 +57,7 @@ import com.android.launcher3.Utilities;
 import com.android.launcher3.compat.LauncherAppsCompat;
 import com.android.launcher3.compat.ShortcutConfigActivityInfo;
 import com.android.launcher3.config.FeatureFlags;
+import com.android.launcher3.graphics.BitmapPool;
 import com.android.launcher3.graphics.IconNormalizer;
 import com.android.launcher3.graphics.LauncherIcons;
 import com.android.launcher3.shortcuts.DeepShortcutManager;
@@ -81,6 +82,8 @@ public class DragView extends View {
     private boolean mDrawBitmap = true;
     private Bitmap mBitmap;
     private Bitmap mCrossFadeBitmap;
+    private FolderAdaptiveIcon mFolderAdaptiveIcon;
+    private boolean mRemoved;
     @Thunk Paint mPaint;
     private final int mBlurSizeOutline;
     private final int mRegistrationX;
@@ -169,7 +172,12 @@ public class DragView extends View {
             }
         });
 
-        mBitmap = Bitmap.createBitmap(bitmap, 0, 0, bitmap.getWidth(), bitmap.getHeight());
+        mBitmap = BitmapPool.getInstance().acquire(bitmap.getWidth(), bitmap.getHeight(),
+                Bitmap.Config.ARGB_8888);
+        mBitmap.setDensity(bitmap.getDensity());
+        Canvas canvas = new Canvas(mBitmap);
+        canvas.drawBitmap(bitmap, 0, 0, null);
+        canvas.setBitmap(null);
         setDragRegion(new Rect(0, 0, bitmap.getWidth(), bitmap.getHeight()));
 
         // The point in our scaled bitmap that the touch events are located
@@ -263,6 +271,12 @@ public class DragView extends View {
 
                             // Do not draw the background in case of folder as its translucent
                             mDrawBitmap = !(dr instanceof FolderAdaptiveIcon);
+                            if (dr instanceof FolderAdaptiveIcon) {
+                                mFolderAdaptiveIcon = (FolderAdaptiveIcon) dr;
+                                if (mRemoved) {
+                                    mFolderAdaptiveIcon.releaseBitmaps();
+                                }
+                            }
 
                             if (info.isDisabled()) {
                                 FastBitmapDrawable d = new FastBitmapDrawable(null);
@@ -461,6 +475,10 @@ public class DragView extends View {
         }
     }
 
+    /**
+     * Sets a bitmap to cross fade to, which is released to the {@link BitmapPool} along with
+     * the drag bitmap once this view is removed.
+     */
     public void setCrossFadeBitmap(Bitmap crossFadeBitmap) {
         mCrossFadeBitmap = crossFadeBitmap;
     }
@@ -616,6 +634,19 @@ public class DragView extends View {
         }
     }
 
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        // The view is never shown again once removed from the drag layer.
+        mRemoved = true;
+        BitmapPool pool = BitmapPool.getInstance();
+        pool.release(mBitmap);
+        pool.release(mCrossFadeBitmap);
+        if (mFolderAdaptiveIcon != null) {
+            mFolderAdaptiveIcon.releaseBitmaps();
+        }
+    }
+
     public int getBlurSizeOutline() {
         return mBlurSizeOutline;
     }
@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.launcher3.dragndrop;
+
+import android.graphics.Rect;
+
+import com.android.launcher3.DropTarget;
+
+import java.util.ArrayList;
+
+/**
+ * Hit rects of the drop targets, relative to the drag layer, so that they are not computed again
+ * for every move event of a drag.
+ *
+ * The rects are computed for the enabled targets only, and again after {@link #invalidate()} or
+ * when a target is enabled or disabled. The last target added takes precedence, as with
+ * {@link DragController#addDropTarget}.
+ */
+class DropTargetIndex {
+
+    private final ArrayList<DropTarget> mTargets;
+
+    private Rect[] mRects = new Rect[0];
+    private boolean[] mEnabled = new boolean[0];
+    private boolean mValid = false;
+    private int mBuildCount;
+
+    /**
+     * @param targets the drop targets, which are only read.
+     */
+    DropTargetIndex(ArrayList<DropTarget> targets) {
+        mTargets = targets;
+    }
+
+    void invalidate() {
+        mValid = false;
+    }
+
+    /**
+     * Returns the target under ({@param x}, {@param y}), in the drag layer coordinates, or null.
+     */
+    DropTarget findDropTarget(int x, int y) {
+        if (!mValid || mRects.length != mTargets.size()) {
+            build();
+        }
+        for (int i = mTargets.size() - 1; i >= 0; i--) {
+            DropTarget target = mTargets.get(i);
+            boolean enabled = target.isDropEnabled();
+            if (enabled != mEnabled[i]) {
+                // The rects of the targets already checked are still valid.
+                build();
+            }
+            if (enabled && mRects[i].contains(x, y)) {
+                return target;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the number of times the rects were computed.
+     */
+    int getBuildCount() {
+        return mBuildCount;
+    }
+
+    private void build() {
+        int count = mTargets.size();
+        if (mRects.length != count) {
+            Rect[] rects = new Rect[count];
+            for (int i = 0; i < count; i++) {
+                rects[i] = i < mRects.length ? mRects[i] : new Rect();
+            }
+            mRects = rects;
+            mEnabled = new boolean[count];
+        }
+        for (int i = 0; i < count; i++) {
+            DropTarget target = mTargets.get(i);
+            mEnabled[i] = target.isDropEnabled();
+            if (mEnabled[i]) {
+                target.getHitRectRelativeToDragLayer(mRects[i]);
+            } else {
+                mRects[i].setEmpty();
+            }
+        }
+        mValid = true;
+        mBuildCount++;
+    }
+}
@@ -36,6 +36,7 @@ import com.android.launcher3.MainThreadExecutor;
 import com.android.launcher3.R;
 import com.android.launcher3.folder.FolderIcon;
 import com.android.launcher3.folder.PreviewBackground;
+import com.android.launcher3.graphics.BitmapPool;
 import com.android.launcher3.util.Preconditions;
 
 import java.util.concurrent.Callable;
@@ -49,11 +50,16 @@ public class FolderAdaptiveIcon extends AdaptiveIconDrawable {
 
     private final Drawable mBadge;
     private final Path mMask;
+    private final Bitmap mBadgeBitmap;
+    private final Bitmap mPreviewBitmap;
 
-    private FolderAdaptiveIcon(Drawable bg, Drawable fg, Drawable badge, Path mask) {
+    private FolderAdaptiveIcon(Drawable bg, Drawable fg, Drawable badge, Path mask,
+            Bitmap badgeBitmap, Bitmap previewBitmap) {
         super(bg, fg);
         mBadge = badge;
         mMask = mask;
+        mBadgeBitmap = badgeBitmap;
+        mPreviewBitmap = previewBitmap;
     }
 
     @Override
@@ -65,6 +71,15 @@ public class FolderAdaptiveIcon extends AdaptiveIconDrawable {
         return mBadge;
     }
 
+    /**
+     * Gives the bitmaps back to the {@link BitmapPool}, once this drawable is no longer drawn.
+     */
+    public void releaseBitmaps() {
+        BitmapPool pool = BitmapPool.getInstance();
+        pool.release(mBadgeBitmap);
+        pool.release(mPreviewBitmap);
+    }
+
     public static FolderAdaptiveIcon createFolderAdaptiveIcon(
             final Launcher launcher, final long folderId, Point dragViewSize) {
         Preconditions.assertNonUiThread();
@@ -72,19 +87,21 @@ public class FolderAdaptiveIcon extends AdaptiveIconDrawable {
                 .getDimensionPixelSize(R.dimen.blur_size_medium_outline);
 
         // Allocate various bitmaps on the background thread, because why not!
-        final Bitmap badge = Bitmap.createBitmap(
+        final BitmapPool pool = BitmapPool.getInstance();
+        final Bitmap badge = pool.acquire(
                 dragViewSize.x - margin, dragViewSize.y - margin, Bitmap.Config.ARGB_8888);
 
         // The bitmap for the preview is generated larger than needed to allow for the spring effect
         float sizeScaleFactor = 1 + 2 * AdaptiveIconDrawable.getExtraInsetFraction();
-        final Bitmap preview = Bitmap.createBitmap(
+        final Bitmap preview = pool.acquire(
                 (int) (dragViewSize.x * sizeScaleFactor), (int) (dragViewSize.y * sizeScaleFactor),
                 Bitmap.Config.ARGB_8888);
 
         // Create the actual drawable on the UI thread to avoid race conditions with
         // FolderIcon draw pass
+        FolderAdaptiveIcon result = null;
         try {
-            return new MainThreadExecutor().submit(new Callable<FolderAdaptiveIcon>() {
+            result = new MainThreadExecutor().submit(new Callable<FolderAdaptiveIcon>() {
                 @Override
                 public FolderAdaptiveIcon call() throws Exception {
                     FolderIcon icon = launcher.findFolderIcon(folderId);
@@ -93,8 +110,12 @@ public class FolderAdaptiveIcon extends AdaptiveIconDrawable {
             }).get();
         } catch (Exception e) {
             Log.e(TAG, "Unable to create folder icon", e);
-            return null;
         }
+        if (result == null) {
+            pool.release(badge);
+            pool.release(preview);
+        }
+        return result;
     }
 
     /**
@@ -135,7 +156,8 @@ public class FolderAdaptiveIcon extends AdaptiveIconDrawable {
         ShiftedBitmapDrawable foreground = new ShiftedBitmapDrawable(previewBitmap,
                 margin - previewShiftX, margin - previewShiftY);
 
-        return new FolderAdaptiveIcon(new ColorDrawable(bg.getBgColor()), foreground, badge, mask);
+        return new FolderAdaptiveIcon(new ColorDrawable(bg.getBgColor()), foreground, badge, mask,
+                badgeBitmap, previewBitmap);
     }
 
     /**
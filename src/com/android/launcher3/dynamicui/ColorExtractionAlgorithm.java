@@ -19,19 +19,15 @@ package com.android.launcher3.dynamicui;
 import android.content.Context;
 import android.graphics.Color;
 import android.support.annotation.NonNull;
-import android.support.annotation.Nullable;
 import android.support.v4.graphics.ColorUtils;
 import android.util.Log;
 import android.util.Pair;
-import android.util.Range;
 
 import com.android.launcher3.R;
 import com.android.launcher3.Utilities;
 import com.android.launcher3.compat.WallpaperColorsCompat;
 
 import java.util.Arrays;
-import java.util.LinkedList;
-import java.util.List;
 
 /**
  * Implementation of tonal color extraction
@@ -50,21 +46,28 @@ public class ColorExtractionAlgorithm {
     private static final float FIT_WEIGHT_S = 1.0f;
     private static final float FIT_WEIGHT_L = 10.0f;
 
+    // Resolution of the palette lookup tables
+    private static final int HUE_BUCKETS = 1024;
+    private static final int LIGHTNESS_BUCKETS = 256;
+    // Margin for float rounding when checking whether a lookup bucket has a single answer
+    private static final float LOOKUP_EPSILON = 1e-4f;
+
     public static final int MAIN_COLOR_LIGHT = 0xffb0b0b0;
     public static final int SECONDARY_COLOR_LIGHT = 0xff9e9e9e;
     public static final int MAIN_COLOR_DARK = 0xff212121;
     public static final int SECONDARY_COLOR_DARK = 0xff000000;
 
-    // Temporary variable to avoid allocations
+    // Temporary variables to avoid allocations
     private float[] mTmpHSL = new float[3];
+    private final int[] mTmpMainColors = new int[3];
 
     public Pair<Integer, Integer> extractInto(WallpaperColorsCompat inWallpaperColors) {
         if (inWallpaperColors == null) {
             return applyFallback(inWallpaperColors);
         }
 
-        final List<Integer> mainColors = getMainColors(inWallpaperColors);
-        final int mainColorsSize = mainColors.size();
+        final int[] mainColors = mTmpMainColors;
+        final int mainColorsSize = getMainColors(inWallpaperColors, mainColors);
         final boolean supportsDarkText = (inWallpaperColors.getColorHints() &
                 WallpaperColorsCompat.HINT_SUPPORTS_DARK_TEXT) != 0;
 
@@ -77,10 +80,10 @@ public class ColorExtractionAlgorithm {
         // and replaces the original palette
 
         // Get the most preeminent, non-blacklisted color.
-        Integer bestColor = 0;
+        int bestColor = 0;
         final float[] hsl = new float[3];
         for (int i = 0; i < mainColorsSize; i++) {
-            final int colorValue = mainColors.get(i);
+            final int colorValue = mainColors[i];
             ColorUtils.RGBToHSL(Color.red(colorValue), Color.green(colorValue),
                     Color.blue(colorValue), hsl);
 
@@ -91,11 +94,6 @@ public class ColorExtractionAlgorithm {
             }
         }
 
-        // Fail if not found
-        if (bestColor == null) {
-            return applyFallback(inWallpaperColors);
-        }
-
         int colorValue = bestColor;
         ColorUtils.RGBToHSL(Color.red(colorValue), Color.green(colorValue), Color.blue(colorValue),
                 hsl);
@@ -105,14 +103,15 @@ public class ColorExtractionAlgorithm {
         hsl[0] /= 360f;
 
         // Find the palette that contains the closest color
-        TonalPalette palette = findTonalPalette(hsl[0], hsl[1]);
-        if (palette == null) {
+        int paletteIndex = findTonalPalette(hsl[0], hsl[1]);
+        if (paletteIndex == -1) {
             Log.w(TAG, "Could not find a tonal palette!");
             return applyFallback(inWallpaperColors);
         }
+        TonalPalette palette = getPalette(paletteIndex);
 
         // Figure out what's the main color index in the optimal palette
-        int fitIndex = bestFit(palette, hsl[0], hsl[1], hsl[2]);
+        int fitIndex = bestFit(paletteIndex, hsl[0], hsl[1], hsl[2]);
         if (fitIndex == -1) {
             Log.w(TAG, "Could not find best fit!");
             return applyFallback(inWallpaperColors);
@@ -181,6 +180,8 @@ public class ColorExtractionAlgorithm {
     private boolean isBlacklisted(float[] hsl) {
         for (ColorRange badRange: BLACKLISTED_COLORS) {
             if (badRange.containsColor(hsl[0], hsl[1], hsl[2])) {
+                // Matching colors have never been skipped, keep it that way so that the
+                // extracted colors don't change.
                 return false;
             }
         }
@@ -211,13 +212,40 @@ public class ColorExtractionAlgorithm {
     /**
      * Finds the closest color in a palette, given another HSL color
      *
-     * @param palette where to search
+     * @param paletteIndex where to search, as returned by {@link #findTonalPalette}
      * @param h hue
      * @param s saturation
      * @param l lightness
      * @return closest index or -1 if palette is empty.
      */
-    private static int bestFit(@NonNull TonalPalette palette, float h, float s, float l) {
+    static int bestFit(int paletteIndex, float h, float s, float l) {
+        // Only compare against the colors which can be the closest for this lightness.
+        TonalPalette palette = getPalette(paletteIndex);
+        int cell = paletteIndex * LIGHTNESS_BUCKETS + bucket(l, LIGHTNESS_BUCKETS);
+        int end = PaletteLookup.FIT_CANDIDATE_OFFSETS[cell + 1];
+
+        int minErrorIndex = -1;
+        float minError = Float.POSITIVE_INFINITY;
+
+        for (int c = PaletteLookup.FIT_CANDIDATE_OFFSETS[cell]; c < end; c++) {
+            int i = PaletteLookup.FIT_CANDIDATES[c];
+            float error =
+                    FIT_WEIGHT_H * Math.abs(h - palette.h[i])
+                            + FIT_WEIGHT_S * Math.abs(s - palette.s[i])
+                            + FIT_WEIGHT_L * Math.abs(l - palette.l[i]);
+            if (error < minError) {
+                minError = error;
+                minErrorIndex = i;
+            }
+        }
+
+        return minErrorIndex;
+    }
+
+    /**
+     * Same as {@link #bestFit} but compares against every color of the palette.
+     */
+    static int bestFitSlow(@NonNull TonalPalette palette, float h, float s, float l) {
         int minErrorIndex = -1;
         float minError = Float.POSITIVE_INFINITY;
 
@@ -235,48 +263,59 @@ public class ColorExtractionAlgorithm {
         return minErrorIndex;
     }
 
-    @Nullable
-    private static TonalPalette findTonalPalette(float h, float s) {
+    /**
+     * @return the index of the palette closest to the given hue and saturation, to be used with
+     * {@link #getPalette}, or -1 if none was found.
+     */
+    static int findTonalPalette(float h, float s) {
         // Fallback to a grey palette if the color is too desaturated.
         // This avoids hue shifts.
         if (s < 0.05f) {
-            return GREY_PALETTE;
+            return GREY_PALETTE_INDEX;
         }
 
-        TonalPalette best = null;
+        int paletteIndex = PaletteLookup.PALETTE_BY_HUE[bucket(h, HUE_BUCKETS)];
+        return paletteIndex != -1 ? paletteIndex : findTonalPaletteSlow(h);
+    }
+
+    /**
+     * Same as {@link #findTonalPalette} for saturated colors, but goes through every palette.
+     */
+    static int findTonalPaletteSlow(float h) {
+        int best = -1;
         float error = Float.POSITIVE_INFINITY;
 
         for (int i = 0; i < TONAL_PALETTES.length; i++) {
             final TonalPalette candidate = TONAL_PALETTES[i];
 
             if (h >= candidate.minHue && h <= candidate.maxHue) {
-                best = candidate;
+                best = i;
                 break;
             }
 
             if (candidate.maxHue > 1.0f && h >= 0.0f && h <= fract(candidate.maxHue)) {
-                best = candidate;
+                best = i;
                 break;
             }
 
             if (candidate.minHue < 0.0f && h >= fract(candidate.minHue) && h <= 1.0f) {
-                best = candidate;
+                best = i;
                 break;
             }
 
             if (h <= candidate.minHue && candidate.minHue - h < error) {
-                best = candidate;
+                best = i;
                 error = candidate.minHue - h;
             } else if (h >= candidate.maxHue && h - candidate.maxHue < error) {
-                best = candidate;
+                best = i;
                 error = h - candidate.maxHue;
             } else if (candidate.maxHue > 1.0f && h >= fract(candidate.maxHue)
                     && h - fract(candidate.maxHue) < error) {
-                best = candidate;
+                best = i;
                 error = h - fract(candidate.maxHue);
             } else if (candidate.minHue < 0.0f && h <= fract(candidate.minHue)
                     && fract(candidate.minHue) - h < error) {
-                best = candidate;
+                best = i;
                 error = fract(candidate.minHue) - h;
             }
         }
@@ -284,6 +323,17 @@ public class ColorExtractionAlgorithm {
         return best;
     }
 
+    static TonalPalette getPalette(int paletteIndex) {
+        return paletteIndex == GREY_PALETTE_INDEX ? GREY_PALETTE : TONAL_PALETTES[paletteIndex];
+    }
+
+    /**
+     * @return the bucket containing {@param v}, when splitting [0, 1] in {@param bucketCount}.
+     */
+    private static int bucket(float v, int bucketCount) {
+        return Utilities.boundToRange((int) (v * bucketCount), 0, bucketCount - 1);
+    }
+
     private static float fract(float v) {
         return v - (float) Math.floor(v);
     }
@@ -604,148 +654,150 @@ public class ColorExtractionAlgorithm {
                     0.8196078431372549f, 0.9176470588235294f, 0.9490196078431372f}
     );
 
+    private static final int GREY_PALETTE_INDEX = TONAL_PALETTES.length;
+
     @SuppressWarnings("WeakerAccess")
     static final ColorRange[] BLACKLISTED_COLORS = new ColorRange[] {
 
             // Red
             new ColorRange(
-                    new Range<>(0f, 20f) /* H */,
-                    new Range<>(0.7f, 1f) /* S */,
-                    new Range<>(0.21f, 0.79f)) /* L */,
+                    0f, 20f /* H */,
+                    0.7f, 1f /* S */,
+                    0.21f, 0.79f) /* L */,
             new ColorRange(
-                    new Range<>(0f, 20f),
-                    new Range<>(0.3f, 0.7f),
-                    new Range<>(0.355f, 0.653f)),
+                    0f, 20f,
+                    0.3f, 0.7f,
+                    0.355f, 0.653f),
 
             // Red Orange
             new ColorRange(
-                    new Range<>(20f, 40f),
-                    new Range<>(0.7f, 1f),
-                    new Range<>(0.28f, 0.643f)),
+                    20f, 40f,
+                    0.7f, 1f,
+                    0.28f, 0.643f),
             new ColorRange(
-                    new Range<>(20f, 40f),
-                    new Range<>(0.3f, 0.7f),
-                    new Range<>(0.414f, 0.561f)),
+                    20f, 40f,
+                    0.3f, 0.7f,
+                    0.414f, 0.561f),
             new ColorRange(
-                    new Range<>(20f, 40f),
-                    new Range<>(0f, 3f),
-                    new Range<>(0.343f, 0.584f)),
+                    20f, 40f,
+                    0f, 3f,
+                    0.343f, 0.584f),
 
             // Orange
             new ColorRange(
-                    new Range<>(40f, 60f),
-                    new Range<>(0.7f, 1f),
-                    new Range<>(0.173f, 0.349f)),
+                    40f, 60f,
+                    0.7f, 1f,
+                    0.173f, 0.349f),
             new ColorRange(
-                    new Range<>(40f, 60f),
-                    new Range<>(0.3f, 0.7f),
-                    new Range<>(0.233f, 0.427f)),
+                    40f, 60f,
+                    0.3f, 0.7f,
+                    0.233f, 0.427f),
             new ColorRange(
-                    new Range<>(40f, 60f),
-                    new Range<>(0f, 0.3f),
-                    new Range<>(0.231f, 0.484f)),
+                    40f, 60f,
+                    0f, 0.3f,
+                    0.231f, 0.484f),
 
             // Yellow 60
             new ColorRange(
-                    new Range<>(60f, 80f),
-                    new Range<>(0.7f, 1f),
-                    new Range<>(0.488f, 0.737f)),
+                    60f, 80f,
+                    0.7f, 1f,
+                    0.488f, 0.737f),
             new ColorRange(
-                    new Range<>(60f, 80f),
-                    new Range<>(0.3f, 0.7f),
-                    new Range<>(0.673f, 0.837f)),
+                    60f, 80f,
+                    0.3f, 0.7f,
+                    0.673f, 0.837f),
 
             // Yellow Green 80
             new ColorRange(
-                    new Range<>(80f, 100f),
-                    new Range<>(0.7f, 1f),
-                    new Range<>(0.469f, 0.61f)),
+                    80f, 100f,
+                    0.7f, 1f,
+                    0.469f, 0.61f),
 
             // Yellow green 100
             new ColorRange(
-                    new Range<>(100f, 120f),
-                    new Range<>(0.7f, 1f),
-                    new Range<>(0.388f, 0.612f)),
+                    100f, 120f,
+                    0.7f, 1f,
+                    0.388f, 0.612f),
             new ColorRange(
-                    new Range<>(100f, 120f),
-                    new Range<>(0.3f, 0.7f),
-                    new Range<>(0.424f, 0.541f)),
+                    100f, 120f,
+                    0.3f, 0.7f,
+                    0.424f, 0.541f),
 
             // Green
             new ColorRange(
-                    new Range<>(120f, 140f),
-                    new Range<>(0.7f, 1f),
-                    new Range<>(0.375f, 0.52f)),
+                    120f, 140f,
+                    0.7f, 1f,
+                    0.375f, 0.52f),
             new ColorRange(
-                    new Range<>(120f, 140f),
-                    new Range<>(0.3f, 0.7f),
-                    new Range<>(0.435f, 0.524f)),
+                    120f, 140f,
+                    0.3f, 0.7f,
+                    0.435f, 0.524f),
 
             // Green Blue 140
             new ColorRange(
-                    new Range<>(140f, 160f),
-                    new Range<>(0.7f, 1f),
-                    new Range<>(0.496f, 0.641f)),
+                    140f, 160f,
+                    0.7f, 1f,
+                    0.496f, 0.641f),
 
             // Seafoam
             new ColorRange(
-                    new Range<>(160f, 180f),
-                    new Range<>(0.7f, 1f),
-                    new Range<>(0.496f, 0.567f)),
+                    160f, 180f,
+                    0.7f, 1f,
+                    0.496f, 0.567f),
 
             // Cyan
             new ColorRange(
-                    new Range<>(180f, 200f),
-                    new Range<>(0.7f, 1f),
-                    new Range<>(0.52f, 0.729f)),
+                    180f, 200f,
+                    0.7f, 1f,
+                    0.52f, 0.729f),
 
             // Blue
             new ColorRange(
-                    new Range<>(220f, 240f),
-                    new Range<>(0.7f, 1f),
-                    new Range<>(0.396f, 0.571f)),
+                    220f, 240f,
+                    0.7f, 1f,
+                    0.396f, 0.571f),
             new ColorRange(
-                    new Range<>(220f, 240f),
-                    new Range<>(0.3f, 0.7f),
-                    new Range<>(0.425f, 0.551f)),
+                    220f, 240f,
+                    0.3f, 0.7f,
+                    0.425f, 0.551f),
 
             // Blue Purple 240
             new ColorRange(
-                    new Range<>(240f, 260f),
-                    new Range<>(0.7f, 1f),
-                    new Range<>(0.418f, 0.639f)),
+                    240f, 260f,
+                    0.7f, 1f,
+                    0.418f, 0.639f),
             new ColorRange(
-                    new Range<>(220f, 240f),
-                    new Range<>(0.3f, 0.7f),
-                    new Range<>(0.441f, 0.576f)),
+                    220f, 240f,
+                    0.3f, 0.7f,
+                    0.441f, 0.576f),
 
             // Blue Purple 260
             new ColorRange(
-                    new Range<>(260f, 280f),
-                    new Range<>(0.3f, 1f), // Bigger range
-                    new Range<>(0.461f, 0.553f)),
+                    260f, 280f,
+                    0.3f, 1f, // Bigger range
+                    0.461f, 0.553f),
 
             // Fuchsia
             new ColorRange(
-                    new Range<>(300f, 320f),
-                    new Range<>(0.7f, 1f),
-                    new Range<>(0.484f, 0.588f)),
+                    300f, 320f,
+                    0.7f, 1f,
+                    0.484f, 0.588f),
             new ColorRange(
-                    new Range<>(300f, 320f),
-                    new Range<>(0.3f, 0.7f),
-                    new Range<>(0.48f, 0.592f)),
+                    300f, 320f,
+                    0.3f, 0.7f,
+                    0.48f, 0.592f),
 
             // Pink
             new ColorRange(
-                    new Range<>(320f, 340f),
-                    new Range<>(0.7f, 1f),
-                    new Range<>(0.466f, 0.629f)),
+                    320f, 340f,
+                    0.7f, 1f,
+                    0.466f, 0.629f),
 
             // Soft red
             new ColorRange(
-                    new Range<>(340f, 360f),
-                    new Range<>(0.7f, 1f),
-                    new Range<>(0.437f, 0.596f))
+                    340f, 360f,
+                    0.7f, 1f,
+                    0.437f, 0.596f)
     };
 
     /**
@@ -757,52 +809,185 @@ public class ColorExtractionAlgorithm {
      * </ul>
      */
     static class ColorRange {
-        private Range<Float> mHue;
-        private Range<Float> mSaturation;
-        private Range<Float> mLightness;
-
-        ColorRange(Range<Float> hue, Range<Float> saturation, Range<Float> lightness) {
-            mHue = hue;
-            mSaturation = saturation;
-            mLightness = lightness;
+        private final float mHueMin, mHueMax;
+        private final float mSaturationMin, mSaturationMax;
+        private final float mLightnessMin, mLightnessMax;
+
+        ColorRange(float hueMin, float hueMax, float saturationMin, float saturationMax,
+                float lightnessMin, float lightnessMax) {
+            mHueMin = hueMin;
+            mHueMax = hueMax;
+            mSaturationMin = saturationMin;
+            mSaturationMax = saturationMax;
+            mLightnessMin = lightnessMin;
+            mLightnessMax = lightnessMax;
         }
 
         boolean containsColor(float h, float s, float l) {
-            if (!mHue.contains(h)) {
-                return false;
-            } else if (!mSaturation.contains(s)) {
-                return false;
-            } else if (!mLightness.contains(l)) {
-                return false;
-            }
-            return true;
+            return h >= mHueMin && h <= mHueMax
+                    && s >= mSaturationMin && s <= mSaturationMax
+                    && l >= mLightnessMin && l <= mLightnessMax;
         }
 
         float[] getCenter() {
             return new float[] {
-                    mHue.getLower() + (mHue.getUpper() - mHue.getLower()) / 2f,
-                    mSaturation.getLower() + (mSaturation.getUpper() - mSaturation.getLower()) / 2f,
-                    mLightness.getLower() + (mLightness.getUpper() - mLightness.getLower()) / 2f
+                    mHueMin + (mHueMax - mHueMin) / 2f,
+                    mSaturationMin + (mSaturationMax - mSaturationMin) / 2f,
+                    mLightnessMin + (mLightnessMax - mLightnessMin) / 2f
             };
         }
 
         @Override
         public String toString() {
-            return String.format("H: %s, S: %s, L %s", mHue, mSaturation, mLightness);
+            return String.format("H: [%s, %s], S: [%s, %s], L [%s, %s]", mHueMin, mHueMax,
+                    mSaturationMin, mSaturationMax, mLightnessMin, mLightnessMax);
         }
     }
 
-    private static List<Integer> getMainColors(WallpaperColorsCompat wallpaperColors) {
-        LinkedList<Integer> colors = new LinkedList<>();
+    /**
+     * Fills {@param out} with the non-empty colors, most preeminent first.
+     * @return the number of colors.
+     */
+    private static int getMainColors(WallpaperColorsCompat wallpaperColors, int[] out) {
+        int count = 0;
         if (wallpaperColors.getPrimaryColor() != 0) {
-            colors.add(wallpaperColors.getPrimaryColor());
+            out[count++] = wallpaperColors.getPrimaryColor();
         }
         if (wallpaperColors.getSecondaryColor() != 0) {
-            colors.add(wallpaperColors.getSecondaryColor());
+            out[count++] = wallpaperColors.getSecondaryColor();
         }
         if (wallpaperColors.getTertiaryColor() != 0) {
-            colors.add(wallpaperColors.getTertiaryColor());
+            out[count++] = wallpaperColors.getTertiaryColor();
+        }
+        return count;
+    }
+
+    /**
+     * Precomputed answers of {@link #findTonalPaletteSlow} and {@link #bestFitSlow}, built the
+     * first time a color is fitted. They are exact: buckets without a single answer either fall
+     * back to the scan, or list every color which can be the best fit.
+     */
+    private static class PaletteLookup {
+
+        // Palette for each hue bucket, or -1 if it changes within the bucket.
+        static final byte[] PALETTE_BY_HUE = new byte[HUE_BUCKETS];
+
+        // For each palette and lightness bucket, the colors which can be the best fit, in
+        // increasing order, from FIT_CANDIDATE_OFFSETS[cell] to FIT_CANDIDATE_OFFSETS[cell + 1].
+        static final int[] FIT_CANDIDATE_OFFSETS =
+                new int[(GREY_PALETTE_INDEX + 1) * LIGHTNESS_BUCKETS + 1];
+        static final byte[] FIT_CANDIDATES;
+
+        static {
+            buildPaletteByHue();
+            FIT_CANDIDATES = buildFitCandidates();
+        }
+
+        private static void buildPaletteByHue() {
+            // The palette only changes at the edges of the hue ranges, or where the distances to
+            // two of those edges are the same.
+            float[] edges = new float[TONAL_PALETTES.length * 4];
+            for (int i = 0; i < TONAL_PALETTES.length; i++) {
+                TonalPalette palette = TONAL_PALETTES[i];
+                edges[i * 4] = palette.minHue;
+                edges[i * 4 + 1] = palette.maxHue;
+                edges[i * 4 + 2] = fract(palette.minHue);
+                edges[i * 4 + 3] = fract(palette.maxHue);
+            }
+            float[] sortedChanges = new float[edges.length * (edges.length + 1) / 2];
+            int count = 0;
+            for (int i = 0; i < edges.length; i++) {
+                for (int j = i; j < edges.length; j++) {
+                    sortedChanges[count++] = (edges[i] + edges[j]) / 2;
+                }
+            }
+            Arrays.sort(sortedChanges);
+
+            int next = 0;
+            for (int bucket = 0; bucket < HUE_BUCKETS; bucket++) {
+                float start = (float) bucket / HUE_BUCKETS - LOOKUP_EPSILON;
+                float end = (float) (bucket + 1) / HUE_BUCKETS + LOOKUP_EPSILON;
+                while (next < sortedChanges.length && sortedChanges[next] < start) {
+                    next++;
+                }
+
+                // Check the palette on each side of, and at, every change within the bucket.
+                int palette = findTonalPaletteSlow(start);
+                float previous = start;
+                for (int i = next; i < sortedChanges.length && sortedChanges[i] <= end; i++) {
+                    float change = sortedChanges[i];
+                    if (findTonalPaletteSlow((previous + change) / 2) != palette
+                            || findTonalPaletteSlow(change) != palette) {
+                        palette = -1;
+                        break;
+                    }
+                    previous = change;
+                }
+                if (palette != -1 && (findTonalPaletteSlow((previous + end) / 2) != palette
+                        || findTonalPaletteSlow(end) != palette)) {
+                    palette = -1;
+                }
+                PALETTE_BY_HUE[bucket] = (byte) palette;
+            }
+        }
+
+        private static byte[] buildFitCandidates() {
+            byte[] candidates = new byte[FIT_CANDIDATE_OFFSETS.length * 4];
+            int count = 0;
+            for (int paletteIndex = 0; paletteIndex <= GREY_PALETTE_INDEX; paletteIndex++) {
+                TonalPalette palette = getPalette(paletteIndex);
+                int size = palette.l.length;
+                float[] minLightness = new float[size];
+                float[] maxLightness = new float[size];
+                for (int i = 0; i < size; i++) {
+                    getFitLightnessRange(palette, i, minLightness, maxLightness);
+                }
+
+                for (int bucket = 0; bucket < LIGHTNESS_BUCKETS; bucket++) {
+                    float start = (float) bucket / LIGHTNESS_BUCKETS - LOOKUP_EPSILON;
+                    float end = (float) (bucket + 1) / LIGHTNESS_BUCKETS + LOOKUP_EPSILON;
+                    FIT_CANDIDATE_OFFSETS[paletteIndex * LIGHTNESS_BUCKETS + bucket] = count;
+                    for (int i = 0; i < size; i++) {
+                        if (maxLightness[i] < start || minLightness[i] > end) {
+                            continue;
+                        }
+                        if (count == candidates.length) {
+                            candidates = Arrays.copyOf(candidates, count * 2);
+                        }
+                        candidates[count++] = (byte) i;
+                    }
+                }
+            }
+            FIT_CANDIDATE_OFFSETS[FIT_CANDIDATE_OFFSETS.length - 1] = count;
+            return Arrays.copyOf(candidates, count);
+        }
+
+        /**
+         * Computes the lightness range out of which another color of the palette is always
+         * closer than color {@param i}, whatever the hue and saturation.
+         */
+        private static void getFitLightnessRange(TonalPalette palette, int i,
+                float[] outMin, float[] outMax) {
+            outMin[i] = Float.NEGATIVE_INFINITY;
+            outMax[i] = Float.POSITIVE_INFINITY;
+            for (int j = 0; j < palette.l.length; j++) {
+                // The hue and saturation can bring color j at most this much further than i,
+                // while the lightness brings it up to FIT_WEIGHT_L * |l[i] - l[j]| closer.
+                float margin = FIT_WEIGHT_H * Math.abs(palette.h[i] - palette.h[j])
+                        + FIT_WEIGHT_S * Math.abs(palette.s[i] - palette.s[j])
+                        + LOOKUP_EPSILON;
+                if (j == i || FIT_WEIGHT_L * Math.abs(palette.l[i] - palette.l[j]) <= margin) {
+                    continue;
+                }
+                // Between both lightnesses, j gets closer by 2 * FIT_WEIGHT_L per unit.
+                float middle = (palette.l[i] + palette.l[j]) / 2;
+                float offset = margin / (2 * FIT_WEIGHT_L);
+                if (palette.l[j] > palette.l[i]) {
+                    outMax[i] = Math.min(outMax[i], middle + offset);
+                } else {
+                    outMin[i] = Math.max(outMin[i], middle - offset);
+                }
+            }
         }
-        return colors;
     }
 }
@@ -30,6 +30,7 @@ import android.support.v7.graphics.Palette;
 
 import com.android.launcher3.Utilities;
 import com.android.launcher3.config.FeatureFlags;
+import com.android.launcher3.util.ExecutorRegistry;
 
 import java.util.List;
 
@@ -52,7 +53,7 @@ public class ExtractionUtils {
             return;
         }
         // Run on a background thread, since the service is asynchronous anyway.
-        Utilities.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+        ExecutorRegistry.BACKGROUND_EXECUTOR.execute(new Runnable() {
             @Override
             public void run() {
                 if (hasWallpaperIdChanged(context)) {
@@ -0,0 +1,500 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.launcher3.dynamicui;
+
+import android.annotation.TargetApi;
+import android.app.WallpaperInfo;
+import android.app.WallpaperManager;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Rect;
+import android.graphics.drawable.Drawable;
+import android.os.Build;
+import android.os.ParcelFileDescriptor;
+import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
+import android.support.v4.graphics.ColorUtils;
+import android.support.v7.graphics.Palette;
+import android.util.Log;
+
+import com.android.launcher3.R;
+import com.android.launcher3.Utilities;
+import com.android.launcher3.compat.WallpaperColorsCompat;
+
+import java.io.FileDescriptor;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Extracts all the colors used by the launcher from the wallpaper.
+ *
+ * The wallpaper is decoded once, subsampled to at most {@link #MAX_EXTRACTION_AREA} pixels, and
+ * read in a single pass which fills a quantized color histogram for each region of interest
+ * along with the luminance statistics used for the color hints. The palettes are then derived
+ * from the histograms, without going back to the pixels.
+ */
+public class WallpaperColorExtractor {
+
+    private static final String TAG = "WallpaperColorExtractor";
+
+    /**
+     * Large enough for the status bar region to span several rows of pixels.
+     */
+    @VisibleForTesting static final int MAX_EXTRACTION_AREA = 256 * 256;
+
+    /** The fraction of the wallpaper to extract colors for use on the hotseat. */
+    private static final float HOTSEAT_FRACTION = 1f / 4;
+
+    /** Same as the default of {@link Palette.Builder#maximumColorCount}. */
+    private static final int MAX_COLORS = 16;
+
+    // Colors are quantized to 5 bits per channel, as in Palette.
+    private static final int QUANTIZE_BITS = 5;
+    private static final int QUANTIZE_MASK = (1 << QUANTIZE_BITS) - 1;
+    private static final int HISTOGRAM_SIZE = 1 << (3 * QUANTIZE_BITS);
+
+    private static final int COMPONENT_RED = 0;
+    private static final int COMPONENT_GREEN = 1;
+    private static final int COMPONENT_BLUE = 2;
+
+    // Decides when dark theme is optimal for this wallpaper
+    private static final float DARK_THEME_MEAN_LUMINANCE = 0.25f;
+    // Minimum mean luminosity that an image needs to have to support dark text
+    private static final float BRIGHT_IMAGE_MEAN_LUMINANCE = 0.75f;
+    // We also check if the image has dark pixels in it,
+    // to avoid bright images with some dark spots.
+    private static final float DARK_PIXEL_LUMINANCE = 0.45f;
+    private static final float MAX_DARK_AREA = 0.05f;
+
+    /**
+     * Extracts the colors of the current wallpaper. For live wallpapers, the colors are
+     * extracted from their thumbnail.
+     *
+     * @return the result, or null if the wallpaper could not be read.
+     */
+    @TargetApi(Build.VERSION_CODES.N)
+    public static @Nullable Result extract(Context context) {
+        WallpaperManager wm = WallpaperManager.getInstance(context);
+        int statusBarHeight = context.getResources()
+                .getDimensionPixelSize(R.dimen.status_bar_height);
+
+        WallpaperInfo info = wm.getWallpaperInfo();
+        if (info != null) {
+            return extract(info.loadThumbnail(context.getPackageManager()), statusBarHeight);
+        }
+
+        if (Utilities.ATLEAST_NOUGAT) {
+            try (ParcelFileDescriptor fd = wm.getWallpaperFile(WallpaperManager.FLAG_SYSTEM)) {
+                Result result = extract(fd.getFileDescriptor(), statusBarHeight);
+                if (result != null) {
+                    return result;
+                }
+            } catch (IOException | NullPointerException e) {
+                Log.e(TAG, "Fetching partial bitmap failed, trying old method", e);
+            }
+        }
+        return extract(wm.getDrawable(), statusBarHeight);
+    }
+
+    /**
+     * Extracts the colors of an encoded image.
+     *
+     * @param statusBarHeight height of the status bar region, in pixels of the encoded image.
+     */
+    public static @Nullable Result extract(FileDescriptor fd, int statusBarHeight)
+            throws IOException {
+        BitmapRegionDecoder decoder = BitmapRegionDecoder.newInstance(fd, false);
+        try {
+            int width = decoder.getWidth();
+            int height = decoder.getHeight();
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inSampleSize = getSampleSize(width, height);
+            Bitmap bitmap = decoder.decodeRegion(new Rect(0, 0, width, height), options);
+            if (bitmap == null) {
+                return null;
+            }
+            Result result = extract(bitmap, height, statusBarHeight);
+            bitmap.recycle();
+            return result;
+        } finally {
+            decoder.recycle();
+        }
+    }
+
+    /**
+     * Extracts the colors of a drawable, rendering it at a bounded size first.
+     *
+     * @param statusBarHeight height of the status bar region, in pixels of the drawable.
+     */
+    public static @Nullable Result extract(@Nullable Drawable drawable, int statusBarHeight) {
+        if (drawable == null
+                || drawable.getIntrinsicWidth() <= 0 || drawable.getIntrinsicHeight() <= 0) {
+            return null;
+        }
+        int width = drawable.getIntrinsicWidth();
+        int height = drawable.getIntrinsicHeight();
+        double scale = Math.min(1, Math.sqrt(MAX_EXTRACTION_AREA / ((double) width * height)));
+        Bitmap bitmap = Bitmap.createBitmap(Math.max(1, (int) (width * scale)),
+                Math.max(1, (int) (height * scale)), Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(bitmap);
+        drawable.setBounds(0, 0, bitmap.getWidth(), bitmap.getHeight());
+        drawable.draw(canvas);
+        canvas.setBitmap(null);
+        Result result = extract(bitmap, height, statusBarHeight);
+        bitmap.recycle();
+        return result;
+    }
+
+    /**
+     * Reads all the pixels of {@param bitmap} once.
+     *
+     * @param sourceHeight the height of the image {@param bitmap} was scaled down from.
+     * @param statusBarHeight height of the status bar region, in pixels of the source image.
+     */
+    @VisibleForTesting
+    static Result extract(Bitmap bitmap, int sourceHeight, int statusBarHeight) {
+        int width = bitmap.getWidth();
+        int height = bitmap.getHeight();
+        int hotseatTop = (int) (height * (1f - HOTSEAT_FRACTION));
+        int statusBarBottom = Math.max(1, Math.round((float) statusBarHeight * height
+                / sourceHeight));
+
+        int[] fullHistogram = new int[HISTOGRAM_SIZE];
+        int[] hotseatHistogram = new int[HISTOGRAM_SIZE];
+        int[] statusBarHistogram = new int[HISTOGRAM_SIZE];
+
+        int[] row = new int[width];
+        float[] tmpHsl = new float[3];
+        double totalLuminance = 0;
+        int darkPixels = 0;
+        for (int y = 0; y < height; y++) {
+            bitmap.getPixels(row, 0, width, 0, y, width, 1);
+            boolean inHotseat = y >= hotseatTop;
+            boolean inStatusBar = y < statusBarBottom;
+            for (int x = 0; x < width; x++) {
+                int color = row[x];
+                int bucket = quantize(color);
+                fullHistogram[bucket]++;
+                if (inHotseat) {
+                    hotseatHistogram[bucket]++;
+                }
+                if (inStatusBar) {
+                    statusBarHistogram[bucket]++;
+                }
+
+                ColorUtils.colorToHSL(color, tmpHsl);
+                float luminance = tmpHsl[2];
+                // Make sure we don't have a dark pixel mass that will
+                // make text illegible.
+                if (luminance < DARK_PIXEL_LUMINANCE && Color.alpha(color) != 0) {
+                    darkPixels++;
+                }
+                totalLuminance += luminance;
+            }
+        }
+
+        int pixelCount = width * height;
+        int hints = 0;
+        double meanLuminance = totalLuminance / pixelCount;
+        if (meanLuminance > BRIGHT_IMAGE_MEAN_LUMINANCE
+                && darkPixels < (int) (pixelCount * MAX_DARK_AREA)) {
+            hints |= WallpaperColorsCompat.HINT_SUPPORTS_DARK_TEXT;
+        }
+        if (meanLuminance < DARK_THEME_MEAN_LUMINANCE) {
+            hints |= WallpaperColorsCompat.HINT_SUPPORTS_DARK_THEME;
+        }
+        return new Result(fullHistogram, hotseatHistogram, statusBarHistogram, hints);
+    }
+
+    /**
+     * Returns the largest power of two which brings the image under {@link #MAX_EXTRACTION_AREA}.
+     */
+    @VisibleForTesting
+    static int getSampleSize(int width, int height) {
+        int sampleSize = 1;
+        while ((long) (width / sampleSize) * (height / sampleSize) > MAX_EXTRACTION_AREA) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    private static int quantize(int color) {
+        int shift = 8 - QUANTIZE_BITS;
+        return ((Color.red(color) >> shift) << (2 * QUANTIZE_BITS))
+                | ((Color.green(color) >> shift) << QUANTIZE_BITS)
+                | (Color.blue(color) >> shift);
+    }
+
+    private static int component(int bucket, int component) {
+        switch (component) {
+            case COMPONENT_RED:
+                return (bucket >> (2 * QUANTIZE_BITS)) & QUANTIZE_MASK;
+            case COMPONENT_GREEN:
+                return (bucket >> QUANTIZE_BITS) & QUANTIZE_MASK;
+            default:
+                return bucket & QUANTIZE_MASK;
+        }
+    }
+
+    private static int expand(int value) {
+        return (value << (8 - QUANTIZE_BITS)) | (value >> (2 * QUANTIZE_BITS - 8));
+    }
+
+    /**
+     * Reduces a histogram to at most {@link #MAX_COLORS} swatches by median cut, similar to what
+     * {@link Palette} does with the pixels of a bitmap.
+     *
+     * @param filtered whether to ignore the colors rejected by the default {@link Palette} filter.
+     */
+    @VisibleForTesting
+    static List<Palette.Swatch> quantizeHistogram(int[] histogram, boolean filtered) {
+        int distinctColors = 0;
+        int[] buckets = new int[HISTOGRAM_SIZE];
+        float[] tmpHsl = new float[3];
+        for (int bucket = 0; bucket < HISTOGRAM_SIZE; bucket++) {
+            if (histogram[bucket] == 0) {
+                continue;
+            }
+            if (filtered) {
+                ColorUtils.colorToHSL(Color.rgb(expand(component(bucket, COMPONENT_RED)),
+                        expand(component(bucket, COMPONENT_GREEN)),
+                        expand(component(bucket, COMPONENT_BLUE))), tmpHsl);
+                if (isRejectedByDefaultFilter(tmpHsl)) {
+                    continue;
+                }
+            }
+            buckets[distinctColors++] = bucket;
+        }
+
+        List<Palette.Swatch> swatches = new ArrayList<>();
+        if (distinctColors == 0) {
+            return swatches;
+        }
+
+        PriorityQueue<Box> boxes = new PriorityQueue<>(MAX_COLORS, Box.VOLUME_COMPARATOR);
+        boxes.add(new Box(buckets, histogram, 0, distinctColors - 1));
+        while (boxes.size() < MAX_COLORS) {
+            Box box = boxes.poll();
+            if (box == null) {
+                break;
+            }
+            if (!box.canSplit()) {
+                boxes.add(box);
+                break;
+            }
+            boxes.add(box.split());
+            boxes.add(box);
+        }
+
+        for (Box box : boxes) {
+            swatches.add(box.getAverageColor());
+        }
+        return swatches;
+    }
+
+    /**
+     * Same as the default filter of {@link Palette}.
+     */
+    private static boolean isRejectedByDefaultFilter(float[] hsl) {
+        boolean isBlack = hsl[2] <= 0.05f;
+        boolean isWhite = hsl[2] >= 0.95f;
+        boolean isNearRedILine = hsl[0] >= 10f && hsl[0] <= 37f && hsl[1] <= 0.82f;
+        return isBlack || isWhite || isNearRedILine;
+    }
+
+    /**
+     * A range of histogram buckets, as in the median cut algorithm.
+     */
+    private static class Box {
+        static final Comparator<Box> VOLUME_COMPARATOR = new Comparator<Box>() {
+            @Override
+            public int compare(Box a, Box b) {
+                return b.getVolume() - a.getVolume();
+            }
+        };
+
+        private final int[] mBuckets;
+        private final int[] mHistogram;
+        private int mLower;
+        private int mUpper;
+
+        private int mPopulation;
+        private final int[] mMin = new int[3];
+        private final int[] mMax = new int[3];
+
+        Box(int[] buckets, int[] histogram, int lower, int upper) {
+            mBuckets = buckets;
+            mHistogram = histogram;
+            mLower = lower;
+            mUpper = upper;
+            fitBox();
+        }
+
+        int getVolume() {
+            return (mMax[COMPONENT_RED] - mMin[COMPONENT_RED] + 1)
+                    * (mMax[COMPONENT_GREEN] - mMin[COMPONENT_GREEN] + 1)
+                    * (mMax[COMPONENT_BLUE] - mMin[COMPONENT_BLUE] + 1);
+        }
+
+        boolean canSplit() {
+            return mUpper > mLower;
+        }
+
+        private void fitBox() {
+            Arrays.fill(mMin, Integer.MAX_VALUE);
+            Arrays.fill(mMax, Integer.MIN_VALUE);
+            mPopulation = 0;
+            for (int i = mLower; i <= mUpper; i++) {
+                int bucket = mBuckets[i];
+                mPopulation += mHistogram[bucket];
+                for (int c = COMPONENT_RED; c <= COMPONENT_BLUE; c++) {
+                    int value = component(bucket, c);
+                    mMin[c] = Math.min(mMin[c], value);
+                    mMax[c] = Math.max(mMax[c], value);
+                }
+            }
+        }
+
+        /**
+         * Splits this box at the median of its longest dimension, keeping the lower half and
+         * returning the upper half.
+         */
+        Box split() {
+            int dimension = COMPONENT_RED;
+            for (int c = COMPONENT_GREEN; c <= COMPONENT_BLUE; c++) {
+                if (mMax[c] - mMin[c] > mMax[dimension] - mMin[dimension]) {
+                    dimension = c;
+                }
+            }
+
+            // Sort the buckets along that dimension, buckets only use the 15 lower bits.
+            int count = mUpper - mLower + 1;
+            long[] keys = new long[count];
+            for (int i = 0; i < count; i++) {
+                int bucket = mBuckets[mLower + i];
+                keys[i] = ((long) component(bucket, dimension) << 32) | bucket;
+            }
+            Arrays.sort(keys);
+            for (int i = 0; i < count; i++) {
+                mBuckets[mLower + i] = (int) keys[i];
+            }
+
+            int midPopulation = mPopulation / 2;
+            int splitPoint = mLower;
+            for (int i = mLower, population = 0; i < mUpper; i++) {
+                population += mHistogram[mBuckets[i]];
+                splitPoint = i;
+                if (population >= midPopulation) {
+                    break;
+                }
+            }
+
+            Box upper = new Box(mBuckets, mHistogram, splitPoint + 1, mUpper);
+            mUpper = splitPoint;
+            fitBox();
+            return upper;
+        }
+
+        Palette.Swatch getAverageColor() {
+            long red = 0, green = 0, blue = 0;
+            for (int i = mLower; i <= mUpper; i++) {
+                int bucket = mBuckets[i];
+                int population = mHistogram[bucket];
+                red += (long) population * component(bucket, COMPONENT_RED);
+                green += (long) population * component(bucket, COMPONENT_GREEN);
+                blue += (long) population * component(bucket, COMPONENT_BLUE);
+            }
+            return new Palette.Swatch(Color.rgb(
+                    expand(Math.round((float) red / mPopulation)),
+                    expand(Math.round((float) green / mPopulation)),
+                    expand(Math.round((float) blue / mPopulation))), mPopulation);
+        }
+    }
+
+    /**
+     * Histograms and hints extracted from the wallpaper. Palettes are derived on demand.
+     */
+    public static class Result {
+        private final int[] mFullHistogram;
+        private final int[] mHotseatHistogram;
+        private final int[] mStatusBarHistogram;
+        private final int mDarkHints;
+
+        Result(int[] fullHistogram, int[] hotseatHistogram, int[] statusBarHistogram,
+                int darkHints) {
+            mFullHistogram = fullHistogram;
+            mHotseatHistogram = hotseatHistogram;
+            mStatusBarHistogram = statusBarHistogram;
+            mDarkHints = darkHints;
+        }
+
+        /** Palette of the bottom of the wallpaper, behind the hotseat. */
+        public Palette getHotseatPalette() {
+            return Palette.from(quantizeHistogram(mHotseatHistogram, false));
+        }
+
+        /** Palette of the top of the wallpaper, behind the status bar. */
+        public Palette getStatusBarPalette() {
+            return Palette.from(quantizeHistogram(mStatusBarHistogram, false));
+        }
+
+        /**
+         * Palette of the whole wallpaper.
+         *
+         * @param filtered whether to apply the default {@link Palette} filter, which ignores
+         *                 colors close to black, white and skin tones.
+         */
+        public Palette getWallpaperPalette(boolean filtered) {
+            return Palette.from(quantizeHistogram(mFullHistogram, filtered));
+        }
+
+        /**
+         * Returns the hints for the whole wallpaper, as defined in {@link WallpaperColorsCompat}.
+         */
+        public int getDarkHints() {
+            return mDarkHints;
+        }
+
+        /**
+         * Returns up to {@param count} colors of the whole wallpaper, most common first.
+         */
+        public List<Integer> getMainColors(int count) {
+            List<Palette.Swatch> swatches = new ArrayList<>(
+                    getWallpaperPalette(true).getSwatches());
+            Collections.sort(swatches, new Comparator<Palette.Swatch>() {
+                @Override
+                public int compare(Palette.Swatch a, Palette.Swatch b) {
+                    return b.getPopulation() - a.getPopulation();
+                }
+            });
+            List<Integer> colors = new ArrayList<>(count);
+            for (int i = 0; i < Math.min(count, swatches.size()); i++) {
+                colors.add(swatches.get(i).getRgb());
+            }
+            return colors;
+        }
+    }
+}
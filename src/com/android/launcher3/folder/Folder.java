@@ -25,8 +25,10 @@ import android.annotation.SuppressLint;
 import android.content.Context;
 import android.content.res.Resources;
 import android.graphics.Rect;
+import android.support.annotation.VisibleForTesting;
 import android.text.InputType;
 import android.text.Selection;
+import android.util.ArrayMap;
 import android.util.AttributeSet;
 import android.util.Log;
 import android.view.ActionMode;
@@ -132,6 +134,7 @@ public class Folder extends AbstractFloatingView implements DragSource, View.OnC
     private final Alarm mOnExitAlarm = new Alarm();
     private final Alarm mOnScrollHintAlarm = new Alarm();
     @Thunk final Alarm mScrollPauseAlarm = new Alarm();
+    private final Alarm mUnbindContentAlarm = new Alarm();
 
     @Thunk final ArrayList<View> mItemsInReadingOrder = new ArrayList<View>();
 
@@ -140,6 +143,7 @@ public class Folder extends AbstractFloatingView implements DragSource, View.OnC
     private final int mExpandDuration;
     public final int mMaterialExpandDuration;
     private final int mMaterialExpandStagger;
+    private final int mContentIdleTimeout;
 
     protected final Launcher mLauncher;
     protected DragController mDragController;
@@ -191,6 +195,11 @@ public class Folder extends AbstractFloatingView implements DragSource, View.OnC
     @Thunk int mScrollHintDir = SCROLL_NONE;
     @Thunk int mCurrentScrollDir = SCROLL_NONE;
 
+    // The views of the items and the pages are only created when the folder is about to be
+    // opened, see bindContentIfNeeded(). Until then, only the views drawn by the folder icon exist.
+    private boolean mContentBound;
+    private final ArrayMap<ShortcutInfo, BubbleTextView> mPreviewViews = new ArrayMap<>();
+
     /**
      * Used to inflate the Workspace from XML.
      *
@@ -204,6 +213,7 @@ public class Folder extends AbstractFloatingView implements DragSource, View.OnC
         mExpandDuration = res.getInteger(R.integer.config_folderExpandDuration);
         mMaterialExpandDuration = res.getInteger(R.integer.config_materialFolderExpandDuration);
         mMaterialExpandStagger = res.getInteger(R.integer.config_materialFolderExpandStagger);
+        mContentIdleTimeout = res.getInteger(R.integer.config_folderContentIdleTimeout);
 
         if (sDefaultFolderName == null) {
             sDefaultFolderName = res.getString(R.string.folder_name);
@@ -432,7 +442,7 @@ public class Folder extends AbstractFloatingView implements DragSource, View.OnC
         ArrayList<ShortcutInfo> children = info.contents;
         Collections.sort(children, ITEM_POS_COMPARATOR);
 
-        ArrayList<ShortcutInfo> overflow = mContent.bindItems(children);
+        ArrayList<ShortcutInfo> overflow = mContent.getOverflowItems(children);
 
         // If our folder has too many items we prune them from the list. This is an issue
         // when upgrading from the old Folders implementation which could contain an unlimited
@@ -454,7 +464,6 @@ public class Folder extends AbstractFloatingView implements DragSource, View.OnC
         }
 
         mItemsInvalidated = true;
-        updateTextViewFocus();
         mInfo.addListener(this);
 
         if (!sDefaultFolderName.contentEquals(mInfo.title)) {
@@ -475,6 +484,112 @@ public class Folder extends AbstractFloatingView implements DragSource, View.OnC
         });
     }
 
+    /**
+     * Creates the views of the items and the pages of the folder. This is not done when the
+     * folder is bound, as most folders are never opened, but when it is about to be opened or
+     * when its items are changed. The content is unbound again after being idle for
+     * {@link R.integer#config_folderContentIdleTimeout}.
+     */
+    public void bindContentIfNeeded() {
+        if (mContentBound) {
+            return;
+        }
+        mContentBound = true;
+        // The views of the preview items are reused by the content, so that the folder icon
+        // keeps drawing the same views.
+        mContent.bindItems(getContentsInReadingOrder());
+        mPreviewViews.clear();
+        mItemsInvalidated = true;
+        updateTextViewFocus();
+        if (!mIsOpen) {
+            scheduleUnbindContent();
+        }
+    }
+
+    public boolean isContentBound() {
+        return mContentBound;
+    }
+
+    /**
+     * Returns a copy of the items sorted by {@link #ITEM_POS_COMPARATOR}. The contents are only
+     * sorted when the folder is bound, and moving an item only changes its rank, so the order of
+     * the list is not the reading order once the folder has been rearranged.
+     */
+    ArrayList<ShortcutInfo> getContentsInReadingOrder() {
+        ArrayList<ShortcutInfo> contents = new ArrayList<>(mInfo.contents);
+        Collections.sort(contents, ITEM_POS_COMPARATOR);
+        return contents;
+    }
+
+    /**
+     * Returns the view created for {@param item} by {@link #getPreviewView} and forgets it.
+     */
+    View takePreviewView(ShortcutInfo item) {
+        return mPreviewViews.remove(item);
+    }
+
+    /**
+     * Returns the view of {@param item} to be drawn by the folder icon while the content is not
+     * bound, creating only that view.
+     */
+    BubbleTextView getPreviewView(ShortcutInfo item) {
+        BubbleTextView view = mPreviewViews.get(item);
+        if (view == null) {
+            view = (BubbleTextView) mContent.createNewView(item);
+            view.verifyHighRes();
+            mPreviewViews.put(item, view);
+        }
+        return view;
+    }
+
+    /**
+     * Returns the views of the items which exist, without creating the others: all of them once
+     * the content is bound, otherwise only the ones drawn by the folder icon.
+     */
+    public ArrayList<View> getExistingItemViews() {
+        if (mContentBound) {
+            return getItemsInReadingOrder();
+        }
+        return new ArrayList<View>(mPreviewViews.values());
+    }
+
+    private void scheduleUnbindContent() {
+        mUnbindContentAlarm.setOnAlarmListener(mUnbindContentListener);
+        mUnbindContentAlarm.setAlarm(mContentIdleTimeout);
+    }
+
+    private final OnAlarmListener mUnbindContentListener = new OnAlarmListener() {
+        @Override
+        public void onAlarm(Alarm alarm) {
+            if (mIsOpen || mDragInProgress || mState == STATE_ANIMATING) {
+                scheduleUnbindContent();
+            } else {
+                unbindContent();
+            }
+        }
+    };
+
+    /**
+     * Releases the views of the items and the pages, keeping only the views drawn by the folder
+     * icon. They are created again by {@link #bindContentIfNeeded}.
+     */
+    @VisibleForTesting
+    void unbindContent() {
+        if (!mContentBound || mDestroyed) {
+            return;
+        }
+        mUnbindContentAlarm.cancelAlarm();
+        // Keep the views drawn by the folder icon.
+        List<BubbleTextView> previewItems = mFolderIcon.getPreviewItems();
+        mContent.unbindItems();
+        for (BubbleTextView view : previewItems) {
+            mPreviewViews.put((ShortcutInfo) view.getTag(), view);
+        }
+        mItemsInReadingOrder.clear();
+        mContentBound = false;
+        mItemsInvalidated = true;
+    }
+
     /**
      * Creates a new UserFolder, inflated from R.layout.user_folder.
      *
@@ -522,6 +637,8 @@ public class Folder extends AbstractFloatingView implements DragSource, View.OnC
             @Override
             public void onAnimationEnd(Animator animation) {
                 mCurrentAnimator = null;
+                // The folder moved without a layout.
+                mDragController.invalidateDropTargetRects();
             }
         });
         a.start();
@@ -588,6 +705,9 @@ public class Folder extends AbstractFloatingView implements DragSource, View.OnC
      * is played.
      */
     public void animateOpen() {
+        mUnbindContentAlarm.cancelAlarm();
+        bindContentIfNeeded();
+
         Folder openFolder = getOpen(mLauncher);
         if (openFolder != null && openFolder != this) {
             // Close any open folder before opening a folder.
@@ -707,6 +827,7 @@ public class Folder extends AbstractFloatingView implements DragSource, View.OnC
     }
 
     public void beginExternalDrag() {
+        bindContentIfNeeded();
         mEmptyCellRank = mContent.allocateRankForNewItem();
         mIsExternalDrag = true;
         mDragInProgress = true;
@@ -824,6 +945,7 @@ public class Folder extends AbstractFloatingView implements DragSource, View.OnC
         clearDragInfo();
         mState = STATE_SMALL;
         mContent.setCurrentPage(0);
+        scheduleUnbindContent();
     }
 
     public boolean acceptDrop(DragObject d) {
@@ -1104,7 +1226,7 @@ public class Folder extends AbstractFloatingView implements DragSource, View.OnC
     }
 
     public boolean isFull() {
-        return mContent.isFull();
+        return mContent.isFull(getItemCount());
     }
 
     private void centerAboutIcon() {
@@ -1243,7 +1365,7 @@ public class Folder extends AbstractFloatingView implements DragSource, View.OnC
     }
 
     public int getItemCount() {
-        return mContent.getItemCount();
+        return mContentBound ? mContent.getItemCount() : mInfo.contents.size();
     }
 
     @Thunk void replaceFolderWithFinalItem() {
@@ -1284,6 +1406,7 @@ public class Folder extends AbstractFloatingView implements DragSource, View.OnC
                 }
             }
         };
+        bindContentIfNeeded();
         View finalChild = mContent.getLastItem();
         if (finalChild != null) {
             mFolderIcon.performDestroyAnimation(onCompleteRunnable);
@@ -1448,15 +1571,25 @@ public class Folder extends AbstractFloatingView implements DragSource, View.OnC
     // to correspond to the animation of the icon back into the folder. This is
     public void hideItem(ShortcutInfo info) {
         View v = getViewForInfo(info);
-        v.setVisibility(INVISIBLE);
+        if (v != null) {
+            v.setVisibility(INVISIBLE);
+        }
     }
     public void showItem(ShortcutInfo info) {
         View v = getViewForInfo(info);
-        v.setVisibility(VISIBLE);
+        if (v != null) {
+            v.setVisibility(VISIBLE);
+        }
     }
 
     @Override
     public void onAdd(ShortcutInfo item, int rank) {
+        if (!mContentBound) {
+            // The item is already in mInfo.contents, bind the other items and add it below.
+            mInfo.contents.remove(item);
+            bindContentIfNeeded();
+            mInfo.contents.add(rank, item);
+        }
         View view = mContent.createAndAddViewForRank(item, rank);
         mLauncher.getModelWriter().addOrMoveItemInDatabase(item, mInfo.id, 0, item.cellX,
                 item.cellY);
@@ -1468,9 +1601,13 @@ public class Folder extends AbstractFloatingView implements DragSource, View.OnC
     }
 
     public void onRemove(ShortcutInfo item) {
+        // The item is no longer in mInfo.contents, so it has no view if the content was not bound.
+        bindContentIfNeeded();
         mItemsInvalidated = true;
         View v = getViewForInfo(item);
-        mContent.removeItem(v);
+        if (v != null) {
+            mContent.removeItem(v);
+        }
         if (mState == STATE_ANIMATING) {
             mRearrangeOnClose = true;
         } else {
@@ -1497,7 +1634,9 @@ public class Folder extends AbstractFloatingView implements DragSource, View.OnC
 
     @Override
     public void onItemsChanged(boolean animate) {
-        updateTextViewFocus();
+        if (mContentBound) {
+            updateTextViewFocus();
+        }
     }
 
     @Override
@@ -1508,7 +1647,13 @@ public class Folder extends AbstractFloatingView implements DragSource, View.OnC
     public void onTitleChanged(CharSequence title) {
     }
 
-    public ArrayList<View> getItemsInReadingOrder() {
+    /**
+     * Returns the views of all the items, binding the content if needed. This is meant for the
+     * paths which change the content, like a drop or a rearrangement, and for an open folder;
+     * the others should use {@link #getExistingItemViews} to keep the content unbound.
+     */
+    ArrayList<View> getItemsInReadingOrder() {
+        bindContentIfNeeded();
         if (mItemsInvalidated) {
             mItemsInReadingOrder.clear();
             mContent.iterateOverItems(new ItemOperator() {
@@ -540,6 +540,24 @@ public class FolderIcon extends FrameLayout implements FolderListener {
         mPreviewVerifier.setFolderInfo(mFolder.getInfo());
 
         List<BubbleTextView> itemsToDisplay = new ArrayList<>();
+        if (!mFolder.isContentBound()) {
+            // Only create the views which are drawn by the icon.
+            List<ShortcutInfo> contents = mFolder.getContentsInReadingOrder();
+            int itemsPerPage = mFolder.mContent.itemsPerPage();
+            int start = page * itemsPerPage;
+            int end = Math.min(contents.size(), start + itemsPerPage);
+            for (int i = start; i < end; i++) {
+                if (mPreviewVerifier.isItemInPreview(page, i - start)) {
+                    itemsToDisplay.add(mFolder.getPreviewView(contents.get(i)));
+                }
+
+                if (itemsToDisplay.size() == FolderIcon.NUM_ITEMS_IN_PREVIEW) {
+                    break;
+                }
+            }
+            return itemsToDisplay;
+        }
+
         List<BubbleTextView> itemsOnPage = mFolder.getItemsOnPage(page);
         int numItems = itemsOnPage.size();
         for (int rank = 0; rank < numItems; ++rank) {
@@ -559,6 +577,20 @@ public class FolderIcon extends FrameLayout implements FolderListener {
         return mPreviewItemManager.verifyDrawable(who) || super.verifyDrawable(who);
     }
 
+    @Override
+    public void invalidateDrawable(@NonNull Drawable drawable) {
+        if (mPreviewItemManager.verifyDrawable(drawable)) {
+            mPreviewItemManager.onPreviewDrawableChanged();
+        }
+        super.invalidateDrawable(drawable);
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        mPreviewItemManager.releasePreviewLayer();
+    }
+
     @Override
     public void onItemsChanged(boolean animate) {
         mPreviewItemManager.updateItemDrawingParams(animate);
@@ -611,9 +643,13 @@ public class FolderIcon extends FrameLayout implements FolderListener {
         switch (event.getAction()) {
             case MotionEvent.ACTION_DOWN:
                 mLongPressHelper.postCheckForLongPress();
+                // The touch is likely to open the folder, start creating its content.
+                postDelayed(mBindFolderContent, ViewConfiguration.getTapTimeout());
                 break;
             case MotionEvent.ACTION_CANCEL:
             case MotionEvent.ACTION_UP:
+                // A tap opens the folder from the click, which binds the content itself.
+                removeCallbacks(mBindFolderContent);
                 mLongPressHelper.cancelLongPress();
                 break;
             case MotionEvent.ACTION_MOVE:
@@ -625,6 +661,13 @@ public class FolderIcon extends FrameLayout implements FolderListener {
         return result;
     }
 
+    private final Runnable mBindFolderContent = new Runnable() {
+        @Override
+        public void run() {
+            mFolder.bindContentIfNeeded();
+        }
+    };
+
     @Override
     public void cancelLongPress() {
         super.cancelLongPress();
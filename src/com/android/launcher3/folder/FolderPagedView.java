@@ -68,6 +68,9 @@ public class FolderPagedView extends PagedView {
 
     private static final int[] sTmpArray = new int[2];
 
+    // Number of item views created by all the folders, see Launcher#dump.
+    private static int sCreatedViewCount;
+
     public final boolean mIsRtl;
 
     private final LayoutInflater mInflater;
@@ -193,13 +196,38 @@ public class FolderPagedView extends PagedView {
             if (!ALLOW_FOLDER_SCROLL && icons.size() >= mMaxItemsPerPage) {
                 extra.add(item);
             } else {
-                icons.add(createNewView(item));
+                View icon = mFolder.takePreviewView(item);
+                icons.add(icon != null ? icon : createNewView(item));
             }
         }
         arrangeChildren(icons, icons.size(), false);
         return extra;
     }
 
+    /**
+     * @return the items which would not be bound by {@link #bindItems}, without binding any.
+     */
+    public ArrayList<ShortcutInfo> getOverflowItems(ArrayList<ShortcutInfo> items) {
+        ArrayList<ShortcutInfo> extra = new ArrayList<>();
+        if (!ALLOW_FOLDER_SCROLL) {
+            for (int i = mMaxItemsPerPage; i < items.size(); i++) {
+                extra.add(items.get(i));
+            }
+        }
+        return extra;
+    }
+
+    /**
+     * Removes the views of all the items and all the pages.
+     */
+    public void unbindItems() {
+        for (int i = getChildCount() - 1; i >= 0; i--) {
+            getPageAt(i).removeAllViews();
+        }
+        removeAllViews();
+        setCurrentPage(0);
+    }
+
     public void allocateSpaceForRank(int rank) {
         ArrayList<View> views = new ArrayList<>(mFolder.getItemsInReadingOrder());
         views.add(rank, null);
@@ -247,6 +275,7 @@ public class FolderPagedView extends PagedView {
     public View createNewView(ShortcutInfo item) {
         final BubbleTextView textView = (BubbleTextView) mInflater.inflate(
                 R.layout.folder_application, null, false);
+        sCreatedViewCount++;
         textView.applyFromShortcutInfo(item);
         textView.setHapticFeedbackEnabled(false);
         textView.setOnClickListener(mFolder);
@@ -432,7 +461,15 @@ public class FolderPagedView extends PagedView {
     }
 
     public boolean isFull() {
-        return !ALLOW_FOLDER_SCROLL && getItemCount() >= mMaxItemsPerPage;
+        return isFull(getItemCount());
+    }
+
+    public boolean isFull(int itemCount) {
+        return !ALLOW_FOLDER_SCROLL && itemCount >= mMaxItemsPerPage;
+    }
+
+    public static int getCreatedViewCount() {
+        return sCreatedViewCount;
     }
 
     public View getFirstItem() {
@@ -28,6 +28,7 @@ import android.graphics.Path;
 import android.graphics.PorterDuff;
 import android.graphics.PorterDuffXfermode;
 import android.graphics.RadialGradient;
+import android.graphics.Rect;
 import android.graphics.Region;
 import android.graphics.Shader;
 import android.support.v4.graphics.ColorUtils;
@@ -164,6 +165,19 @@ public class PreviewBackground {
         return (int) (mScale * getRadius());
     }
 
+    /**
+     * Sets {@param outBounds} to the area covered by the background at its largest scale, in the
+     * coordinates of the folder icon. The preview items are drawn within it.
+     */
+    void getMaxBounds(Rect outBounds) {
+        int radius = getRadius();
+        int maxRadius = (int) Math.ceil(ACCEPT_SCALE_FACTOR * radius);
+        int centerX = basePreviewOffsetX + radius;
+        int centerY = basePreviewOffsetY + radius;
+        outBounds.set(centerX - maxRadius, centerY - maxRadius,
+                centerX + maxRadius, centerY + maxRadius);
+    }
+
     int getOffsetX() {
         return basePreviewOffsetX - (getScaledRadius() - getRadius());
     }
@@ -58,6 +58,15 @@ public class PreviewItemManager {
     private float mCurrentPageItemsTransX = 0;
     private boolean mShouldSlideInFirstPage;
 
+    // Copy of the preview items, so that they are not drawn again on every frame of the icon.
+    private final PreviewLayer mPreviewLayer = new PreviewLayer(new PreviewLayer.Renderer() {
+        @Override
+        public void render(Canvas canvas) {
+            drawItems(canvas);
+        }
+    });
+    private final Rect mPreviewLayerBounds = new Rect();
+
     static final int INITIAL_ITEM_ANIMATION_DURATION = 350;
     private static final int FINAL_ITEM_ANIMATION_DURATION = 200;
 
@@ -146,6 +155,15 @@ public class PreviewItemManager {
     }
 
     public void draw(Canvas canvas) {
+        // The items are only visible over the background, the label is not part of the copy.
+        mIcon.getFolderBackground().getMaxBounds(mPreviewLayerBounds);
+        if (!mPreviewLayerBounds.intersect(0, 0, mIcon.getWidth(), mIcon.getHeight())) {
+            mPreviewLayerBounds.setEmpty();
+        }
+        mPreviewLayer.draw(canvas, mPreviewLayerBounds);
+    }
+
+    private void drawItems(Canvas canvas) {
         // The items are drawn in coordinates relative to the preview offset
         PreviewBackground bg = mIcon.getFolderBackground();
         canvas.translate(bg.basePreviewOffsetX, bg.basePreviewOffsetY);
@@ -162,9 +180,21 @@ public class PreviewItemManager {
     }
 
     public void onParamsChanged() {
+        mPreviewLayer.onAnimationFrame();
         mIcon.invalidate();
     }
 
+    /**
+     * Called when a drawable of the preview items changed.
+     */
+    void onPreviewDrawableChanged() {
+        mPreviewLayer.onAnimationFrame();
+    }
+
+    void releasePreviewLayer() {
+        mPreviewLayer.release();
+    }
+
     private void drawPreviewItem(Canvas canvas, PreviewItemDrawingParams params) {
         canvas.save(Canvas.MATRIX_SAVE_FLAG);
         canvas.translate(params.transX, params.transY);
@@ -187,12 +217,14 @@ public class PreviewItemManager {
                 mFirstPageParams.get(index) : null;
         if (params != null) {
             params.hidden = hidden;
+            mPreviewLayer.invalidate();
         }
     }
 
     void buildParamsForPage(int page, ArrayList<PreviewItemDrawingParams> params, boolean animate) {
         List<BubbleTextView> items = mIcon.getPreviewItemsOnPage(page);
         int prevNumItems = params.size();
+        mPreviewLayer.invalidate();
 
         // We adjust the size of the list to match the number of items in the preview.
         while (items.size() < params.size()) {
@@ -239,6 +271,9 @@ public class PreviewItemManager {
         // If we are not closing on the first page, we animate the current page preview items
         // out, and animate the first page preview items in.
         mShouldSlideInFirstPage = currentPage != 0;
+        // The drawables are not drawn by the icon while the folder is open, they may have
+        // changed in the meantime.
+        mPreviewLayer.invalidate();
         if (mShouldSlideInFirstPage) {
             mCurrentPageItemsTransX = 0;
             buildParamsForPage(currentPage, mCurrentPageParams, false);
@@ -256,6 +291,7 @@ public class PreviewItemManager {
                 @Override
                 public void onAnimationEnd(Animator animation) {
                     mCurrentPageParams.clear();
+                    mPreviewLayer.invalidate();
                 }
             });
             slideAnimator.setStartDelay(SLIDE_IN_FIRST_PAGE_ANIMATION_DURATION_DELAY);
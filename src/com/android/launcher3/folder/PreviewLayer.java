@@ -0,0 +1,174 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.launcher3.folder;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.os.SystemClock;
+import android.support.annotation.VisibleForTesting;
+
+/**
+ * Offscreen copy of the preview items of a {@link FolderIcon}, so that the icon can be redrawn,
+ * for example while its background or badge animates, by drawing a single bitmap.
+ *
+ * The copy is rendered again on the first draw after {@link #invalidate()}. On frames following
+ * {@link #onAnimationFrame()}, the items change on every frame and are drawn directly instead.
+ *
+ * The copy only covers the bounds given to {@link #draw}, which are those of the preview
+ * background, so that the label is not copied. It costs an ARGB_8888 bitmap of that size for every
+ * attached folder icon, and each time it is rendered again its texture is uploaded to the GPU
+ * again, on hardware accelerated windows. It is freed when the icon is detached, the total is in
+ * Launcher#dump.
+ */
+public class PreviewLayer {
+
+    interface Renderer {
+        /**
+         * Draws the preview items, in the coordinates of the folder icon.
+         */
+        void render(Canvas canvas);
+    }
+
+    // Number of times the preview items were drawn by all the folder icons, see Launcher#dump.
+    private static int sRenderCount;
+    private static int sWindowRenderCount;
+    private static long sWindowStartMs;
+    private static int sRendersPerSecond;
+    // Bytes of the bitmaps of all the layers.
+    private static long sBitmapBytes;
+
+    private final Renderer mRenderer;
+    private final Canvas mCanvas = new Canvas();
+    private final Paint mPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    // Bounds of the copy, in the coordinates of the folder icon.
+    private final Rect mBounds = new Rect();
+
+    private Bitmap mBitmap;
+    private boolean mValid;
+    private boolean mAnimationFrame;
+    private int mRenderCount;
+
+    PreviewLayer(Renderer renderer) {
+        mRenderer = renderer;
+    }
+
+    /**
+     * Marks the copy as stale, after the items or their drawables changed.
+     */
+    void invalidate() {
+        mValid = false;
+    }
+
+    /**
+     * Marks the copy as stale, and draws the items directly on the next frame.
+     */
+    void onAnimationFrame() {
+        mValid = false;
+        mAnimationFrame = true;
+    }
+
+    /**
+     * Draws the preview items, from the copy if it is valid.
+     *
+     * @param bounds the area where the items can be visible, in the coordinates of the folder
+     *               icon. Nothing is drawn outside of it, unless the items are drawn directly.
+     */
+    void draw(Canvas canvas, Rect bounds) {
+        if (mAnimationFrame || bounds.isEmpty()) {
+            mAnimationFrame = false;
+            onRender();
+            mRenderer.render(canvas);
+            return;
+        }
+
+        if (mBitmap == null || mBitmap.getWidth() != bounds.width()
+                || mBitmap.getHeight() != bounds.height()) {
+            release();
+            mBitmap = Bitmap.createBitmap(bounds.width(), bounds.height(),
+                    Bitmap.Config.ARGB_8888);
+            sBitmapBytes += mBitmap.getAllocationByteCount();
+        }
+        if (!mValid || !mBounds.equals(bounds)) {
+            mBounds.set(bounds);
+            mBitmap.eraseColor(0);
+            mCanvas.setBitmap(mBitmap);
+            int saveCount = mCanvas.save(Canvas.MATRIX_SAVE_FLAG);
+            mCanvas.translate(-bounds.left, -bounds.top);
+            onRender();
+            mRenderer.render(mCanvas);
+            mCanvas.restoreToCount(saveCount);
+            mCanvas.setBitmap(null);
+            mValid = true;
+        }
+        canvas.drawBitmap(mBitmap, bounds.left, bounds.top, mPaint);
+    }
+
+    /**
+     * Frees the copy, it is rendered again on the next draw.
+     */
+    void release() {
+        if (mBitmap != null) {
+            sBitmapBytes -= mBitmap.getAllocationByteCount();
+            mBitmap = null;
+        }
+        mValid = false;
+    }
+
+    @VisibleForTesting
+    int getRenderCount() {
+        return mRenderCount;
+    }
+
+    private void onRender() {
+        updateRendersPerSecond();
+        mRenderCount++;
+        sRenderCount++;
+        sWindowRenderCount++;
+    }
+
+    private static void updateRendersPerSecond() {
+        long now = SystemClock.uptimeMillis();
+        long elapsed = now - sWindowStartMs;
+        if (elapsed >= 1000) {
+            // The count of the window which just ended, unless nothing was drawn for a while.
+            sRendersPerSecond = elapsed < 2000 ? (int) (sWindowRenderCount * 1000 / elapsed) : 0;
+            sWindowRenderCount = 0;
+            sWindowStartMs = now;
+        }
+    }
+
+    /**
+     * Returns the memory used by the bitmaps of all the layers, in bytes.
+     */
+    public static long getTotalBitmapBytes() {
+        return sBitmapBytes;
+    }
+
+    public static int getTotalRenderCount() {
+        return sRenderCount;
+    }
+
+    /**
+     * Returns the number of times the preview items were drawn during the last second.
+     */
+    public static int getRendersPerSecond() {
+        updateRendersPerSecond();
+        return sRendersPerSecond;
+    }
+}
@@ -0,0 +1,251 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.launcher3.graphics;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Encodes bitmaps into blobs for the on-disk icon and widget preview caches.
+ *
+ * {@link #decode} recognizes the format from the blob header, so blobs written by any codec can
+ * be read back regardless of which one is used for writing.
+ */
+public abstract class BitmapBlobCodec {
+
+    private static final String TAG = "BitmapBlobCodec";
+
+    /**
+     * Lossless PNG at quality 100. Smallest blobs, but slow to encode and decode.
+     */
+    public static final BitmapBlobCodec PNG = new PngCodec();
+
+    /**
+     * Raw premultiplied pixels, compressed with the fastest deflate level. Several times faster
+     * than PNG to encode and decode at icon sizes, for blobs up to twice as large, see
+     * BitmapBlobCodecTest#testBenchmark.
+     */
+    public static final BitmapBlobCodec RAW_DEFLATE = new RawDeflateCodec();
+
+    /**
+     * Codec used for writing the icon and widget preview caches. Changing this requires bumping
+     * the version of those databases.
+     */
+    public static final BitmapBlobCodec DEFAULT = RAW_DEFLATE;
+
+    /**
+     * Returns the encoded bitmap, or null if it could not be encoded.
+     */
+    public abstract byte[] encode(Bitmap bitmap);
+
+    protected abstract Bitmap decodeInternal(byte[] data, BitmapFactory.Options options);
+
+    protected abstract boolean canDecode(byte[] data);
+
+    /**
+     * Decodes a blob written by any of the codecs.
+     *
+     * @param options optional decoding options. For raw blobs, only {@link
+     *                BitmapFactory.Options#inBitmap}, when it matches the stored size and config,
+     *                and {@link BitmapFactory.Options#inPreferredConfig} are honored.
+     * @return the decoded bitmap or null on failure.
+     */
+    public static Bitmap decode(byte[] data, BitmapFactory.Options options) {
+        if (data == null) {
+            return null;
+        }
+        try {
+            if (RAW_DEFLATE.canDecode(data)) {
+                return RAW_DEFLATE.decodeInternal(data, options);
+            }
+            return PNG.decodeInternal(data, options);
+        } catch (Exception e) {
+            Log.w(TAG, "Could not decode bitmap", e);
+            return null;
+        }
+    }
+
+    private static class PngCodec extends BitmapBlobCodec {
+
+        @Override
+        public byte[] encode(Bitmap bitmap) {
+            // Try go guesstimate how much space the icon will take when serialized
+            // to avoid unnecessary allocations/copies during the write.
+            int size = bitmap.getWidth() * bitmap.getHeight() * 4;
+            ByteArrayOutputStream out = new ByteArrayOutputStream(size);
+            try {
+                bitmap.compress(Bitmap.CompressFormat.PNG, 100, out);
+                out.flush();
+                out.close();
+                return out.toByteArray();
+            } catch (IOException e) {
+                Log.w(TAG, "Could not write bitmap");
+                return null;
+            }
+        }
+
+        @Override
+        protected boolean canDecode(byte[] data) {
+            return true;
+        }
+
+        @Override
+        protected Bitmap decodeInternal(byte[] data, BitmapFactory.Options options) {
+            return BitmapFactory.decodeByteArray(data, 0, data.length, options);
+        }
+    }
+
+    /**
+     * Layout: magic (4 bytes), width (int), height (int), config ordinal (byte),
+     * hasAlpha (byte), followed by the deflated output of {@link Bitmap#copyPixelsToBuffer}.
+     *
+     * Bitmaps whose blob would be larger than {@link #MAX_BLOB_SIZE}, such as large widget
+     * previews of photos, are encoded as PNG instead.
+     */
+    private static class RawDeflateCodec extends BitmapBlobCodec {
+
+        private static final byte[] MAGIC = new byte[] {'L', 'R', 'B', 1};
+        private static final int HEADER_SIZE = MAGIC.length + 4 + 4 + 1 + 1;
+
+        // Half of the 2MB cursor window, so that a row with the blob can always be read back.
+        private static final int MAX_BLOB_SIZE = 1024 * 1024;
+
+        private static final Bitmap.Config[] CONFIGS = Bitmap.Config.values();
+
+        @Override
+        public byte[] encode(Bitmap bitmap) {
+            Bitmap.Config config = bitmap.getConfig();
+            if (config != Bitmap.Config.ARGB_8888 && config != Bitmap.Config.RGB_565
+                    && config != Bitmap.Config.ALPHA_8) {
+                // Hardware and unknown configs can't expose their pixels directly.
+                bitmap = bitmap.copy(Bitmap.Config.ARGB_8888, false);
+                if (bitmap == null) {
+                    return null;
+                }
+                config = Bitmap.Config.ARGB_8888;
+            }
+
+            ByteBuffer pixels = ByteBuffer.allocate(bitmap.getByteCount());
+            bitmap.copyPixelsToBuffer(pixels);
+
+            Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+            deflater.setInput(pixels.array(), 0, pixels.position());
+            deflater.finish();
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream(pixels.position() / 2);
+            out.write(MAGIC, 0, MAGIC.length);
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE - MAGIC.length);
+            header.putInt(bitmap.getWidth())
+                    .putInt(bitmap.getHeight())
+                    .put((byte) config.ordinal())
+                    .put((byte) (bitmap.hasAlpha() ? 1 : 0));
+            out.write(header.array(), 0, header.position());
+
+            byte[] buffer = new byte[8192];
+            try {
+                while (!deflater.finished()) {
+                    int count = deflater.deflate(buffer);
+                    out.write(buffer, 0, count);
+                    if (out.size() > MAX_BLOB_SIZE) {
+                        return PNG.encode(bitmap);
+                    }
+                }
+            } finally {
+                deflater.end();
+            }
+            return out.toByteArray();
+        }
+
+        @Override
+        protected boolean canDecode(byte[] data) {
+            if (data.length < HEADER_SIZE) {
+                return false;
+            }
+            for (int i = 0; i < MAGIC.length; i++) {
+                if (data[i] != MAGIC[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        protected Bitmap decodeInternal(byte[] data, BitmapFactory.Options options) {
+            ByteBuffer header = ByteBuffer.wrap(data, MAGIC.length, HEADER_SIZE - MAGIC.length);
+            int width = header.getInt();
+            int height = header.getInt();
+            Bitmap.Config config = CONFIGS[header.get()];
+            boolean hasAlpha = header.get() != 0;
+
+            // As BitmapFactory, only decode to RGB_565 when there is no alpha to lose.
+            Bitmap.Config preferredConfig = options == null ? null : options.inPreferredConfig;
+            if (preferredConfig == config
+                    || (preferredConfig == Bitmap.Config.RGB_565 && hasAlpha)) {
+                preferredConfig = null;
+            }
+
+            Bitmap bitmap = options == null || preferredConfig != null ? null : options.inBitmap;
+            if (bitmap == null || !bitmap.isMutable() || bitmap.getConfig() != config
+                    || bitmap.getWidth() != width || bitmap.getHeight() != height) {
+                bitmap = Bitmap.createBitmap(width, height, config);
+            }
+
+            byte[] pixels = new byte[bitmap.getByteCount()];
+            Inflater inflater = new Inflater();
+            inflater.setInput(data, HEADER_SIZE, data.length - HEADER_SIZE);
+            try {
+                int offset = 0;
+                while (offset < pixels.length && !inflater.finished()) {
+                    int count = inflater.inflate(pixels, offset, pixels.length - offset);
+                    if (count == 0 && inflater.needsInput()) {
+                        break;
+                    }
+                    offset += count;
+                }
+                if (offset != pixels.length) {
+                    Log.w(TAG, "Truncated bitmap blob");
+                    return null;
+                }
+            } catch (DataFormatException e) {
+                Log.w(TAG, "Corrupt bitmap blob", e);
+                return null;
+            } finally {
+                inflater.end();
+            }
+
+            bitmap.copyPixelsFromBuffer(ByteBuffer.wrap(pixels));
+            bitmap.setHasAlpha(hasAlpha);
+            if (preferredConfig != null) {
+                // The pixels are stored in their original config, convert them.
+                Bitmap converted = bitmap.copy(preferredConfig, options.inMutable);
+                if (converted != null) {
+                    bitmap.recycle();
+                    bitmap = converted;
+                }
+            }
+            return bitmap;
+        }
+    }
+}
@@ -0,0 +1,215 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.launcher3.graphics;
+
+import android.content.ComponentCallbacks2;
+import android.graphics.Bitmap;
+import android.graphics.Color;
+import android.support.annotation.VisibleForTesting;
+import android.util.SparseArray;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+
+/**
+ * Pool for the short-lived bitmaps of drag and drop, like drag previews and drop outlines, so
+ * that starting a drag doesn't allocate several large bitmaps at once.
+ *
+ * Bitmaps are grouped by their allocation size, rounded up to a power of two, and are reused for
+ * any size and config which fits in their allocation, see {@link Bitmap#reconfigure}. Acquired
+ * bitmaps are transparent, and should be released once they are no longer drawn.
+ */
+public class BitmapPool {
+
+    // A bitmap is not reused for a request which is about 8 times smaller than it.
+    private static final int MAX_SIZE_CLASS_DIFFERENCE = 2;
+
+    private static BitmapPool sInstance;
+
+    public static synchronized BitmapPool getInstance() {
+        if (sInstance == null) {
+            sInstance = new BitmapPool(Runtime.getRuntime().maxMemory() / 32);
+        }
+        return sInstance;
+    }
+
+    private final long mMaxBytes;
+
+    // Pooled bitmaps, by size class.
+    private final SparseArray<ArrayList<Bitmap>> mBuckets = new SparseArray<>();
+    // Pooled bitmaps, least recently released first.
+    private final ArrayList<Bitmap> mLru = new ArrayList<>();
+    private long mPooledBytes;
+
+    private int mAcquireCount;
+    private int mReuseCount;
+    private int mReleaseCount;
+    private int mEvictionCount;
+    private long mAllocatedBytes;
+    private long mPeakPooledBytes;
+
+    @VisibleForTesting
+    BitmapPool(long maxBytes) {
+        mMaxBytes = maxBytes;
+    }
+
+    /**
+     * Returns a transparent mutable bitmap of the given size, reusing a released one if possible.
+     */
+    public synchronized Bitmap acquire(int width, int height, Bitmap.Config config) {
+        mAcquireCount++;
+        int bytesPerPixel = getBytesPerPixel(config);
+        long byteCount = (long) width * height * bytesPerPixel;
+        if (bytesPerPixel > 0 && byteCount <= mMaxBytes) {
+            int sizeClass = getSizeClass(byteCount);
+            for (int i = sizeClass; i <= sizeClass + MAX_SIZE_CLASS_DIFFERENCE; i++) {
+                Bitmap bitmap = removeFromBucket(i, byteCount);
+                if (bitmap != null) {
+                    mReuseCount++;
+                    bitmap.reconfigure(width, height, config);
+                    bitmap.setHasAlpha(true);
+                    bitmap.eraseColor(Color.TRANSPARENT);
+                    return bitmap;
+                }
+            }
+        }
+
+        Bitmap bitmap = Bitmap.createBitmap(width, height, config);
+        mAllocatedBytes += bitmap.getAllocationByteCount();
+        return bitmap;
+    }
+
+    /**
+     * Gives {@param bitmap} back to the pool. It must not be used by the caller afterwards.
+     */
+    public synchronized void release(Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled() || !bitmap.isMutable()
+                || getBytesPerPixel(bitmap.getConfig()) == 0 || mLru.contains(bitmap)) {
+            return;
+        }
+        int byteCount = bitmap.getAllocationByteCount();
+        if (byteCount > mMaxBytes) {
+            return;
+        }
+        mReleaseCount++;
+
+        int sizeClass = getSizeClass(byteCount);
+        ArrayList<Bitmap> bucket = mBuckets.get(sizeClass);
+        if (bucket == null) {
+            bucket = new ArrayList<>();
+            mBuckets.put(sizeClass, bucket);
+        }
+        bucket.add(bitmap);
+        mLru.add(bitmap);
+        mPooledBytes += byteCount;
+        mPeakPooledBytes = Math.max(mPeakPooledBytes, mPooledBytes);
+        trimToSize(mMaxBytes);
+    }
+
+    /**
+     * Drops the least recently released bitmaps until the pool holds at most {@param maxBytes}.
+     */
+    public synchronized void trimToSize(long maxBytes) {
+        while (mPooledBytes > maxBytes && !mLru.isEmpty()) {
+            Bitmap bitmap = mLru.remove(0);
+            int byteCount = bitmap.getAllocationByteCount();
+            mBuckets.get(getSizeClass(byteCount)).remove(bitmap);
+            mPooledBytes -= byteCount;
+            mEvictionCount++;
+        }
+    }
+
+    public void onTrimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) {
+            // Nothing can be dragged until the launcher is visible again.
+            trimToSize(0);
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            trimToSize(mMaxBytes / 4);
+        }
+    }
+
+    /**
+     * @return the fraction of the acquired bitmaps which were reused.
+     */
+    public synchronized float getReuseRate() {
+        return mAcquireCount == 0 ? 0 : (float) mReuseCount / mAcquireCount;
+    }
+
+    /**
+     * @return the memory currently held by the released bitmaps.
+     */
+    public synchronized long getPooledByteCount() {
+        return mPooledBytes;
+    }
+
+    public synchronized void dump(String prefix, PrintWriter writer) {
+        writer.println(prefix + "BitmapPool:"
+                + " acquired=" + mAcquireCount
+                + " reused=" + mReuseCount
+                + " (" + Math.round(getReuseRate() * 100) + "%)"
+                + " released=" + mReleaseCount
+                + " evicted=" + mEvictionCount);
+        writer.println(prefix + "  pooled=" + mLru.size() + " bitmaps, " + (mPooledBytes / 1024)
+                + "KB peak=" + (mPeakPooledBytes / 1024)
+                + "KB max=" + (mMaxBytes / 1024)
+                + "KB allocated=" + (mAllocatedBytes / 1024) + "KB");
+    }
+
+    /**
+     * Removes and returns a bitmap of the given size class which can hold {@param byteCount}.
+     */
+    private Bitmap removeFromBucket(int sizeClass, long byteCount) {
+        ArrayList<Bitmap> bucket = mBuckets.get(sizeClass);
+        if (bucket == null) {
+            return null;
+        }
+        for (int i = bucket.size() - 1; i >= 0; i--) {
+            Bitmap bitmap = bucket.get(i);
+            if (bitmap.getAllocationByteCount() >= byteCount) {
+                bucket.remove(i);
+                mLru.remove(bitmap);
+                mPooledBytes -= bitmap.getAllocationByteCount();
+                return bitmap;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the smallest n such that {@param byteCount} <= 2^n.
+     */
+    private static int getSizeClass(long byteCount) {
+        return 64 - Long.numberOfLeadingZeros(Math.max(byteCount - 1, 0));
+    }
+
+    /**
+     * @return the number of bytes per pixel of {@param config}, or 0 if it can't be pooled.
+     */
+    private static int getBytesPerPixel(Bitmap.Config config) {
+        if (config == null) {
+            return 0;
+        }
+        switch (config) {
+            case ALPHA_8:
+                return 1;
+            case ARGB_8888:
+                return 4;
+            default:
+                return 0;
+        }
+    }
+}
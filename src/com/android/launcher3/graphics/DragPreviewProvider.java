@@ -104,7 +104,8 @@ public class DragPreviewProvider {
 
     /**
      * Returns a new bitmap to show when the {@link #mView} is being dragged around.
-     * Responsibility for the bitmap is transferred to the caller.
+     * Responsibility for the bitmap is transferred to the caller, which should release it to the
+     * {@link BitmapPool} once it is no longer used.
      */
     public Bitmap createDragBitmap(Canvas canvas) {
         float scale = 1f;
@@ -122,8 +123,8 @@ public class DragPreviewProvider {
             height = (int) (mView.getHeight() * scale);
         }
 
-        Bitmap b = Bitmap.createBitmap(width + blurSizeOutline, height + blurSizeOutline,
-                Bitmap.Config.ARGB_8888);
+        Bitmap b = BitmapPool.getInstance().acquire(width + blurSizeOutline,
+                height + blurSizeOutline, Bitmap.Config.ARGB_8888);
         canvas.setBitmap(b);
 
         canvas.save();
@@ -146,7 +147,8 @@ public class DragPreviewProvider {
 
     /**
      * Returns a new bitmap to be used as the object outline, e.g. to visualize the drop location.
-     * Responsibility for the bitmap is transferred to the caller.
+     * Responsibility for the bitmap is transferred to the caller, which should release it to the
+     * {@link BitmapPool} once it is no longer drawn.
      */
     public Bitmap createDragOutline(Canvas canvas) {
         float scale = 1f;
@@ -159,8 +161,8 @@ public class DragPreviewProvider {
             height = (int) Math.floor(mView.getHeight() * scale);
         }
 
-        Bitmap b = Bitmap.createBitmap(width + blurSizeOutline, height + blurSizeOutline,
-                Bitmap.Config.ALPHA_8);
+        Bitmap b = BitmapPool.getInstance().acquire(width + blurSizeOutline,
+                height + blurSizeOutline, Bitmap.Config.ALPHA_8);
         canvas.setBitmap(b);
 
         canvas.save();
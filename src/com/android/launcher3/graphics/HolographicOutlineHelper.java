@@ -21,13 +21,11 @@ import android.content.res.Resources;
 import android.graphics.Bitmap;
 import android.graphics.BlurMaskFilter;
 import android.graphics.Canvas;
-import android.graphics.Color;
 import android.graphics.Paint;
 import android.graphics.PorterDuff;
 import android.graphics.PorterDuffXfermode;
 import android.graphics.Rect;
 import android.graphics.drawable.Drawable;
-import android.util.SparseArray;
 
 import com.android.launcher3.BubbleTextView;
 import com.android.launcher3.R;
@@ -55,9 +53,6 @@ public class HolographicOutlineHelper {
     private final float mShadowBitmapShift;
     private final BlurMaskFilter mShadowBlurMaskFilter;
 
-    // We have 4 different icon sizes: homescreen, hotseat, folder & all-apps
-    private final SparseArray<Bitmap> mBitmapCache = new SparseArray<>(4);
-
     private HolographicOutlineHelper(Context context) {
         Resources res = context.getResources();
 
@@ -166,16 +161,9 @@ public class HolographicOutlineHelper {
             return null;
         }
 
-        int key = (bitmapWidth << 16) | bitmapHeight;
-        Bitmap cache = mBitmapCache.get(key);
-        if (cache == null) {
-            cache = Bitmap.createBitmap(bitmapWidth, bitmapHeight, Bitmap.Config.ALPHA_8);
-            mCanvas.setBitmap(cache);
-            mBitmapCache.put(key, cache);
-        } else {
-            mCanvas.setBitmap(cache);
-            mCanvas.drawColor(Color.BLACK, PorterDuff.Mode.CLEAR);
-        }
+        BitmapPool pool = BitmapPool.getInstance();
+        Bitmap cache = pool.acquire(bitmapWidth, bitmapHeight, Bitmap.Config.ALPHA_8);
+        mCanvas.setBitmap(cache);
 
         int saveCount = mCanvas.save();
         mCanvas.scale(scaleX, scaleY);
@@ -190,25 +178,15 @@ public class HolographicOutlineHelper {
 
         int resultWidth = bitmapWidth + extraSize;
         int resultHeight = bitmapHeight + extraSize;
-        key = (resultWidth << 16) | resultHeight;
-        Bitmap result = mBitmapCache.get(key);
-        if (result == null) {
-            result = Bitmap.createBitmap(resultWidth, resultHeight, Bitmap.Config.ALPHA_8);
-            mCanvas.setBitmap(result);
-        } else {
-            // Use put instead of delete, to avoid unnecessary shrinking of cache array
-            mBitmapCache.put(key, null);
-            mCanvas.setBitmap(result);
-            mCanvas.drawColor(Color.BLACK, PorterDuff.Mode.CLEAR);
-        }
+        Bitmap result = pool.acquire(resultWidth, resultHeight, Bitmap.Config.ALPHA_8);
+        mCanvas.setBitmap(result);
         mCanvas.drawBitmap(cache, mShadowBitmapShift, mShadowBitmapShift, mBlurPaint);
         mCanvas.setBitmap(null);
+        pool.release(cache);
         return result;
     }
 
     public void recycleShadowBitmap(Bitmap bitmap) {
-        if (bitmap != null) {
-            mBitmapCache.put((bitmap.getWidth() << 16) | bitmap.getHeight(), bitmap);
-        }
+        BitmapPool.getInstance().release(bitmap);
     }
 }
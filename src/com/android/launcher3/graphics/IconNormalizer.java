@@ -257,55 +257,16 @@ public class IconNormalizer {
         buffer.rewind();
         mBitmap.copyPixelsToBuffer(buffer);
 
-        // Overall bounds of the visible icon.
-        int topY = -1;
-        int bottomY = -1;
-        int leftX = mMaxSize + 1;
-        int rightX = -1;
-
-        // Create border by going through all pixels one row at a time and for each row find
-        // the first and the last non-transparent pixel. Set those values to mLeftBorder and
-        // mRightBorder and use -1 if there are no visible pixel in the row.
-
-        // buffer position
-        int index = 0;
-        // buffer shift after every row, width of buffer = mMaxSize
-        int rowSizeDiff = mMaxSize - width;
-        // first and last position for any row.
-        int firstX, lastX;
-
-        for (int y = 0; y < height; y++) {
-            firstX = lastX = -1;
-            for (int x = 0; x < width; x++) {
-                if ((mPixels[index] & 0xFF) > MIN_VISIBLE_ALPHA) {
-                    if (firstX == -1) {
-                        firstX = x;
-                    }
-                    lastX = x;
-                }
-                index++;
-            }
-            index += rowSizeDiff;
-
-            mLeftBorder[y] = firstX;
-            mRightBorder[y] = lastX;
-
-            // If there is at least one visible pixel, update the overall bounds.
-            if (firstX != -1) {
-                bottomY = y;
-                if (topY == -1) {
-                    topY = y;
-                }
-
-                leftX = Math.min(leftX, firstX);
-                rightX = Math.max(rightX, lastX);
-            }
-        }
-
-        if (topY == -1 || rightX == -1) {
+        if (!findVisibleBorders(mPixels, mMaxSize, width, height, mLeftBorder, mRightBorder,
+                mBounds)) {
             // No valid pixels found. Do not scale.
             return 1;
         }
+        // Overall bounds of the visible icon.
+        int topY = mBounds.top;
+        int bottomY = mBounds.bottom;
+        int leftX = mBounds.left;
+        int rightX = mBounds.right;
 
         convertToConvexArray(mLeftBorder, 1, topY, bottomY);
         convertToConvexArray(mRightBorder, -1, topY, bottomY);
@@ -329,11 +290,6 @@ public class IconNormalizer {
         } else {
             scaleRequired = MAX_SQUARE_AREA_FACTOR + LINEAR_SCALE_SLOPE * (1 - hullByRect);
         }
-        mBounds.left = leftX;
-        mBounds.right = rightX;
-
-        mBounds.top = topY;
-        mBounds.bottom = bottomY;
 
         if (outBounds != null) {
             outBounds.set(((float) mBounds.left) / width, ((float) mBounds.top),
@@ -355,6 +311,67 @@ public class IconNormalizer {
         return scale;
     }
 
+    /**
+     * Creates the borders of an alpha mask by going through all pixels one row at a time, and
+     * for each row finding the first and the last pixel which is not transparent.
+     *
+     * @param pixels the alpha values of the mask, row by row.
+     * @param stride the number of values per row in {@param pixels}.
+     * @param outLeftBorder receives the first visible x of each row, or -1 if there is none.
+     * @param outRightBorder receives the last visible x of each row, or -1 if there is none.
+     * @param outBounds receives the bounds of the visible pixels, with inclusive right and
+     *                  bottom edges.
+     * @return false if no pixel is visible, in which case {@param outBounds} is not changed.
+     */
+    public static boolean findVisibleBorders(byte[] pixels, int stride, int width, int height,
+            float[] outLeftBorder, float[] outRightBorder, Rect outBounds) {
+        int topY = -1;
+        int bottomY = -1;
+        int leftX = width + 1;
+        int rightX = -1;
+
+        // buffer position
+        int index = 0;
+        // buffer shift after every row
+        int rowSizeDiff = stride - width;
+        // first and last position for any row.
+        int firstX, lastX;
+
+        for (int y = 0; y < height; y++) {
+            firstX = lastX = -1;
+            for (int x = 0; x < width; x++) {
+                if ((pixels[index] & 0xFF) > MIN_VISIBLE_ALPHA) {
+                    if (firstX == -1) {
+                        firstX = x;
+                    }
+                    lastX = x;
+                }
+                index++;
+            }
+            index += rowSizeDiff;
+
+            outLeftBorder[y] = firstX;
+            outRightBorder[y] = lastX;
+
+            // If there is at least one visible pixel, update the overall bounds.
+            if (firstX != -1) {
+                bottomY = y;
+                if (topY == -1) {
+                    topY = y;
+                }
+
+                leftX = Math.min(leftX, firstX);
+                rightX = Math.max(rightX, lastX);
+            }
+        }
+
+        if (topY == -1 || rightX == -1) {
+            return false;
+        }
+        outBounds.set(leftX, topY, rightX, bottomY);
+        return true;
+    }
+
     /**
      * Modifies {@param xCoordinates} to represent a convex border. Fills in all missing values
      * (except on either ends) with appropriate values.
@@ -3,11 +3,13 @@ package com.android.launcher3.logging;
 import android.os.Handler;
 import android.os.HandlerThread;
 import android.os.Message;
+import android.os.Process;
 import android.util.Log;
 import android.util.Pair;
 
 import com.android.launcher3.Utilities;
 import com.android.launcher3.config.FeatureFlags;
+import com.android.launcher3.util.ExecutorRegistry;
 
 import java.io.BufferedReader;
 import java.io.File;
@@ -91,8 +93,8 @@ public final class FileLog {
     private static Handler getHandler() {
         synchronized (DATE_FORMAT) {
             if (sHandler == null) {
-                HandlerThread thread = new HandlerThread("file-logger");
-                thread.start();
+                HandlerThread thread = ExecutorRegistry.newLooperThread(
+                        "file-logger", Process.THREAD_PRIORITY_BACKGROUND);
                 sHandler = new Handler(thread.getLooper(), new LogWriterCallback());
             }
         }
@@ -237,18 +237,19 @@ public class AddWorkspaceItemsTask extends BaseModelUpdateTask {
             ArrayList<Long> workspaceScreens,
             ArrayList<Long> addedWorkspaceScreensFinal,
             int spanX, int spanY) {
-        LongSparseArray<ArrayList<ItemInfo>> screenItems = new LongSparseArray<>();
+        InvariantDeviceProfile profile = app.getInvariantDeviceProfile();
+        LongSparseArray<GridOccupancy> screenOccupancy = new LongSparseArray<>();
 
         // Use sBgItemsIdMap as all the items are already loaded.
         synchronized (dataModel) {
             for (ItemInfo info : dataModel.itemsIdMap) {
                 if (info.container == LauncherSettings.Favorites.CONTAINER_DESKTOP) {
-                    ArrayList<ItemInfo> items = screenItems.get(info.screenId);
-                    if (items == null) {
-                        items = new ArrayList<>();
-                        screenItems.put(info.screenId, items);
+                    GridOccupancy occupied = screenOccupancy.get(info.screenId);
+                    if (occupied == null) {
+                        occupied = new GridOccupancy(profile.numColumns, profile.numRows);
+                        screenOccupancy.put(info.screenId, occupied);
                     }
-                    items.add(info);
+                    occupied.markCells(info, true);
                 }
             }
         }
@@ -264,7 +265,7 @@ public class AddWorkspaceItemsTask extends BaseModelUpdateTask {
         if (preferredScreenIndex < screenCount) {
             screenId = workspaceScreens.get(preferredScreenIndex);
             found = findNextAvailableIconSpaceInScreen(
-                    app, screenItems.get(screenId), cordinates, spanX, spanY);
+                    app, screenOccupancy.get(screenId), cordinates, spanX, spanY);
         }
 
         if (!found) {
@@ -272,7 +273,7 @@ public class AddWorkspaceItemsTask extends BaseModelUpdateTask {
             for (int screen = 1; screen < screenCount; screen++) {
                 screenId = workspaceScreens.get(screen);
                 if (findNextAvailableIconSpaceInScreen(
-                        app, screenItems.get(screenId), cordinates, spanX, spanY)) {
+                        app, screenOccupancy.get(screenId), cordinates, spanX, spanY)) {
                     // We found a space for it
                     found = true;
                     break;
@@ -292,7 +293,7 @@ public class AddWorkspaceItemsTask extends BaseModelUpdateTask {
 
             // If we still can't find an empty space, then God help us all!!!
             if (!findNextAvailableIconSpaceInScreen(
-                    app, screenItems.get(screenId), cordinates, spanX, spanY)) {
+                    app, screenOccupancy.get(screenId), cordinates, spanX, spanY)) {
                 throw new RuntimeException("Can't find space to add the item");
             }
         }
@@ -300,15 +301,10 @@ public class AddWorkspaceItemsTask extends BaseModelUpdateTask {
     }
 
     private boolean findNextAvailableIconSpaceInScreen(
-            LauncherAppState app, ArrayList<ItemInfo> occupiedPos,
-            int[] xy, int spanX, int spanY) {
-        InvariantDeviceProfile profile = app.getInvariantDeviceProfile();
-
-        GridOccupancy occupied = new GridOccupancy(profile.numColumns, profile.numRows);
-        if (occupiedPos != null) {
-            for (ItemInfo r : occupiedPos) {
-                occupied.markCells(r, true);
-            }
+            LauncherAppState app, GridOccupancy occupied, int[] xy, int spanX, int spanY) {
+        if (occupied == null) {
+            InvariantDeviceProfile profile = app.getInvariantDeviceProfile();
+            occupied = new GridOccupancy(profile.numColumns, profile.numRows);
         }
         return occupied.findVacantCell(xy, spanX, spanY);
     }
@@ -59,6 +59,7 @@ import com.android.launcher3.graphics.LauncherIcons;
 import com.android.launcher3.logging.FileLog;
 import com.android.launcher3.provider.ImportDataTask;
 import com.android.launcher3.shortcuts.DeepShortcutManager;
+import com.android.launcher3.shortcuts.ShortcutCache;
 import com.android.launcher3.shortcuts.ShortcutInfoCompat;
 import com.android.launcher3.shortcuts.ShortcutKey;
 import com.android.launcher3.util.ComponentKey;
@@ -188,6 +189,10 @@ public class LoaderTask implements Runnable {
             if (DEBUG_LOADERS) Log.d(TAG, "step 3.2: bind deep shortcuts");
             mResults.bindDeepShortcuts();
 
+            verifyNotStopped();
+            if (DEBUG_LOADERS) Log.d(TAG, "step 3.3: prewarm popup shortcuts");
+            prewarmPopupShortcuts();
+
             // Take a break
             if (DEBUG_LOADERS) Log.d(TAG, "step 3 completed, wait for idle");
             waitForIdle();
@@ -842,6 +847,7 @@ public class LoaderTask implements Runnable {
 
     private void loadDeepShortcuts() {
         mBgDataModel.deepShortcutMap.clear();
+        mShortcutManager.getShortcutCache().clear();
         mBgDataModel.hasShortcutHostPermission = mShortcutManager.hasHostPermission();
         if (mBgDataModel.hasShortcutHostPermission) {
             for (UserHandle user : mUserManager.getUserProfiles()) {
@@ -854,6 +860,36 @@ public class LoaderTask implements Runnable {
         }
     }
 
+    /**
+     * Loads the long-press shortcuts of the apps in the hotseat and on the first page, which are
+     * the most likely to be long-pressed, so that their container opens fully populated.
+     */
+    private void prewarmPopupShortcuts() {
+        if (!mBgDataModel.hasShortcutHostPermission || mBgDataModel.workspaceScreens.isEmpty()) {
+            return;
+        }
+        long firstScreenId = mBgDataModel.workspaceScreens.get(0);
+        ShortcutCache shortcutCache = mShortcutManager.getShortcutCache();
+        ArrayList<ItemInfo> workspaceItems;
+        synchronized (mBgDataModel) {
+            workspaceItems = new ArrayList<>(mBgDataModel.workspaceItems);
+        }
+        for (ItemInfo info : workspaceItems) {
+            boolean isVisible = info.container == LauncherSettings.Favorites.CONTAINER_HOTSEAT
+                    || (info.container == LauncherSettings.Favorites.CONTAINER_DESKTOP
+                            && info.screenId == firstScreenId);
+            if (!isVisible || !DeepShortcutManager.supportsShortcuts(info)
+                    || info.getTargetComponent() == null) {
+                continue;
+            }
+            ComponentKey key = new ComponentKey(info.getTargetComponent(), info.user);
+            List<String> ids = mBgDataModel.deepShortcutMap.get(key);
+            if (ids != null && !ids.isEmpty()) {
+                shortcutCache.prewarm(key, ids);
+            }
+        }
+    }
+
     public static boolean isValidProvider(AppWidgetProviderInfo provider) {
         return (provider != null) && (provider.provider != null)
                 && (provider.provider.getPackageName() != null);
@@ -16,22 +16,19 @@
 
 package com.android.launcher3.model;
 
-import android.content.ContentProviderOperation;
 import android.content.ContentResolver;
 import android.content.ContentValues;
 import android.content.Context;
-import android.net.Uri;
 import android.util.Log;
 
 import com.android.launcher3.FolderInfo;
 import com.android.launcher3.ItemInfo;
 import com.android.launcher3.LauncherAppState;
 import com.android.launcher3.LauncherModel;
-import com.android.launcher3.LauncherProvider;
-import com.android.launcher3.LauncherSettings;
 import com.android.launcher3.LauncherSettings.Favorites;
 import com.android.launcher3.LauncherSettings.Settings;
 import com.android.launcher3.ShortcutInfo;
+import com.android.launcher3.provider.ModelWriteBatch;
 import com.android.launcher3.util.ContentWriter;
 import com.android.launcher3.util.ItemInfoMatcher;
 import com.android.launcher3.util.LooperExecutor;
@@ -59,6 +56,14 @@ public class ModelWriter {
         mHasVerticalHotseat = hasVerticalHotseat;
     }
 
+    private void commit(ModelWriteBatch batch) {
+        try {
+            batch.commit(mContext);
+        } catch (Exception e) {
+            Log.e(TAG, "Error writing to the database", e);
+        }
+    }
+
     private void updateItemInfoProps(
             ItemInfo item, long container, long screenId, int cellX, int cellY) {
         item.container = container;
@@ -219,7 +224,8 @@ public class ModelWriter {
         final StackTraceElement[] stackTrace = new Throwable().getStackTrace();
         mWorkerExecutor.execute(new Runnable() {
             public void run() {
-                cr.insert(Favorites.CONTENT_URI, writer.getValues(mContext));
+                commit(new ModelWriteBatch().insert(Favorites.TABLE_NAME,
+                        writer.getValues(mContext)));
 
                 synchronized (mBgDataModel) {
                     checkItemInfoLocked(item.id, item, stackTrace);
@@ -249,10 +255,13 @@ public class ModelWriter {
     public void deleteItemsFromDatabase(final Iterable<? extends ItemInfo> items) {
         mWorkerExecutor.execute(new Runnable() {
             public void run() {
+                ModelWriteBatch batch = new ModelWriteBatch();
                 for (ItemInfo item : items) {
-                    final Uri uri = Favorites.getContentUri(item.id);
-                    mContext.getContentResolver().delete(uri, null, null);
+                    batch.delete(Favorites.TABLE_NAME, item.id);
+                }
+                commit(batch);
 
+                for (ItemInfo item : items) {
                     mBgDataModel.removeItem(mContext, item);
                 }
             }
@@ -265,13 +274,11 @@ public class ModelWriter {
     public void deleteFolderAndContentsFromDatabase(final FolderInfo info) {
         mWorkerExecutor.execute(new Runnable() {
             public void run() {
-                ContentResolver cr = mContext.getContentResolver();
-                cr.delete(LauncherSettings.Favorites.CONTENT_URI,
-                        LauncherSettings.Favorites.CONTAINER + "=" + info.id, null);
+                commit(new ModelWriteBatch()
+                        .delete(Favorites.TABLE_NAME, Favorites.CONTAINER + "=" + info.id)
+                        .delete(Favorites.TABLE_NAME, info.id));
                 mBgDataModel.removeItem(mContext, info.contents);
                 info.contents.clear();
-
-                cr.delete(LauncherSettings.Favorites.getContentUri(info.id), null, null);
                 mBgDataModel.removeItem(mContext, info);
             }
         });
@@ -290,8 +297,8 @@ public class ModelWriter {
 
         @Override
         public void run() {
-            Uri uri = Favorites.getContentUri(mItemId);
-            mContext.getContentResolver().update(uri, mWriter.getValues(mContext), null, null);
+            commit(new ModelWriteBatch().update(
+                    Favorites.TABLE_NAME, mItemId, mWriter.getValues(mContext)));
             updateItemArrays(mItem, mItemId);
         }
     }
@@ -307,22 +314,15 @@ public class ModelWriter {
 
         @Override
         public void run() {
-            ArrayList<ContentProviderOperation> ops = new ArrayList<>();
+            ModelWriteBatch batch = new ModelWriteBatch();
             int count = mItems.size();
             for (int i = 0; i < count; i++) {
                 ItemInfo item = mItems.get(i);
                 final long itemId = item.id;
-                final Uri uri = Favorites.getContentUri(itemId);
-                ContentValues values = mValues.get(i);
-
-                ops.add(ContentProviderOperation.newUpdate(uri).withValues(values).build());
+                batch.update(Favorites.TABLE_NAME, itemId, mValues.get(i));
                 updateItemArrays(item, itemId);
             }
-            try {
-                mContext.getContentResolver().applyBatch(LauncherProvider.AUTHORITY, ops);
-            } catch (Exception e) {
-                e.printStackTrace();
-            }
+            commit(batch);
         }
     }
 
@@ -56,7 +56,6 @@ public class ShortcutsChangedTask extends BaseModelUpdateTask {
     public void execute(LauncherAppState app, BgDataModel dataModel, AllAppsList apps) {
         final Context context = app.getContext();
         DeepShortcutManager deepShortcutManager = DeepShortcutManager.getInstance(context);
-        deepShortcutManager.onShortcutsChanged(mShortcuts);
 
         // Find ShortcutInfo's that have changed on the workspace.
         HashSet<ShortcutKey> removedKeys = new HashSet<>();
@@ -114,5 +113,8 @@ public class ShortcutsChangedTask extends BaseModelUpdateTask {
             dataModel.updateDeepShortcutMap(mPackageName, mUser, mShortcuts);
             bindDeepShortcuts(dataModel);
         }
+
+        deepShortcutManager.getShortcutCache().onShortcutsChanged(
+                mPackageName, mUser, dataModel.deepShortcutMap);
     }
 }
@@ -21,25 +21,28 @@ import android.app.Notification;
 import android.app.NotificationChannel;
 import android.os.Build;
 import android.os.Handler;
+import android.os.HandlerThread;
 import android.os.Looper;
 import android.os.Message;
+import android.os.Process;
 import android.service.notification.NotificationListenerService;
 import android.service.notification.StatusBarNotification;
 import android.support.annotation.Nullable;
 import android.text.TextUtils;
 import android.util.ArraySet;
 import android.util.Log;
-import android.util.Pair;
 
-import com.android.launcher3.LauncherModel;
 import com.android.launcher3.Utilities;
+import com.android.launcher3.util.ExecutorRegistry;
 import com.android.launcher3.util.PackageUserKey;
 import com.android.launcher3.util.SettingsObserver;
 
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import static com.android.launcher3.SettingsActivity.NOTIFICATION_BADGING;
@@ -49,6 +52,10 @@ import static com.android.launcher3.SettingsActivity.NOTIFICATION_BADGING;
  * {@link NotificationsChangedListener} when notifications are posted or canceled,
  * as well and when this service first connects. An instance of NotificationListener,
  * and its methods for getting notifications, can be obtained via {@link #getInstanceIfConnected()}.
+ *
+ * Notifications are processed on a dedicated thread, separate from the model's worker thread,
+ * which also keeps a mirror of the active notifications so that lookups don't need any binder
+ * call. Successive updates to the same notification are coalesced before reaching the UI.
  */
 @TargetApi(Build.VERSION_CODES.O)
 public class NotificationListener extends NotificationListenerService {
@@ -58,6 +65,11 @@ public class NotificationListener extends NotificationListenerService {
     private static final int MSG_NOTIFICATION_POSTED = 1;
     private static final int MSG_NOTIFICATION_REMOVED = 2;
     private static final int MSG_NOTIFICATION_FULL_REFRESH = 3;
+    private static final int MSG_NOTIFICATIONS_CHANGED = 4;
+    private static final int MSG_LISTENER_DISCONNECTED = 5;
+
+    private static final HandlerThread sWorkerThread = ExecutorRegistry.newLooperThread(
+            "notification-worker", Process.THREAD_PRIORITY_BACKGROUND);
 
     private static NotificationListener sNotificationListenerInstance = null;
     private static NotificationsChangedListener sNotificationsChangedListener;
@@ -68,34 +80,61 @@ public class NotificationListener extends NotificationListenerService {
     private final Handler mUiHandler;
     private final Ranking mTempRanking = new Ranking();
 
+    // Mirror of the active notifications, written on the worker thread only.
+    private final Object mActiveNotificationsLock = new Object();
+    private final Map<String, StatusBarNotification> mActiveNotifications = new HashMap<>();
+    private final Map<PackageUserKey, Set<String>> mActiveKeysByPackage = new HashMap<>();
+
+    // Updates waiting to be dispatched on the UI thread, keyed by package and notification key
+    // so that only the latest update to a notification is delivered.
+    private final Object mPendingUpdatesLock = new Object();
+    private LinkedHashMap<PackageUserKey, LinkedHashMap<String, NotificationUpdate>>
+            mPendingUpdates = new LinkedHashMap<>();
+
     private SettingsObserver mNotificationBadgingObserver;
 
     private final Handler.Callback mWorkerCallback = new Handler.Callback() {
         @Override
         public boolean handleMessage(Message message) {
             switch (message.what) {
-                case MSG_NOTIFICATION_POSTED:
-                    mUiHandler.obtainMessage(message.what, message.obj).sendToTarget();
+                case MSG_NOTIFICATION_POSTED: {
+                    StatusBarNotification sbn = (StatusBarNotification) message.obj;
+                    NotificationUpdate update = new NotificationUpdate(sbn, false);
+                    update.shouldBeFilteredOut = shouldBeFilteredOut(sbn);
+                    addToMirror(update.packageUserKey, sbn);
+                    enqueueUpdate(update);
                     break;
-                case MSG_NOTIFICATION_REMOVED:
-                    mUiHandler.obtainMessage(message.what, message.obj).sendToTarget();
+                }
+                case MSG_NOTIFICATION_REMOVED: {
+                    StatusBarNotification sbn = (StatusBarNotification) message.obj;
+                    NotificationUpdate update = new NotificationUpdate(sbn, true);
+                    removeFromMirror(update.packageUserKey, sbn.getKey());
+                    enqueueUpdate(update);
                     break;
+                }
                 case MSG_NOTIFICATION_FULL_REFRESH:
-                    List<StatusBarNotification> activeNotifications;
+                    StatusBarNotification[] allNotifications = null;
                     if (sIsConnected) {
                         try {
-                            activeNotifications = filterNotifications(getActiveNotifications());
+                            allNotifications = getActiveNotifications();
                         } catch (SecurityException ex) {
                             Log.e(TAG, "SecurityException: failed to fetch notifications");
-                            activeNotifications = new ArrayList<StatusBarNotification>();
-
                         }
-                    } else {
-                        activeNotifications = new ArrayList<StatusBarNotification>();
                     }
-
+                    List<StatusBarNotification> activeNotifications =
+                            allNotifications == null ? new ArrayList<StatusBarNotification>()
+                                    : filterNotifications(allNotifications);
+                    resetMirror(allNotifications);
+
+                    // The refresh supersedes any update which hasn't been dispatched yet.
+                    synchronized (mPendingUpdatesLock) {
+                        mPendingUpdates.clear();
+                    }
                     mUiHandler.obtainMessage(message.what, activeNotifications).sendToTarget();
                     break;
+                case MSG_LISTENER_DISCONNECTED:
+                    resetMirror(null);
+                    break;
             }
             return true;
         }
@@ -105,19 +144,8 @@ public class NotificationListener extends NotificationListenerService {
         @Override
         public boolean handleMessage(Message message) {
             switch (message.what) {
-                case MSG_NOTIFICATION_POSTED:
-                    if (sNotificationsChangedListener != null) {
-                        NotificationPostedMsg msg = (NotificationPostedMsg) message.obj;
-                        sNotificationsChangedListener.onNotificationPosted(msg.packageUserKey,
-                                msg.notificationKey, msg.shouldBeFilteredOut);
-                    }
-                    break;
-                case MSG_NOTIFICATION_REMOVED:
-                    if (sNotificationsChangedListener != null) {
-                        Pair<PackageUserKey, NotificationKeyData> pair
-                                = (Pair<PackageUserKey, NotificationKeyData>) message.obj;
-                        sNotificationsChangedListener.onNotificationRemoved(pair.first, pair.second);
-                    }
+                case MSG_NOTIFICATIONS_CHANGED:
+                    dispatchPendingUpdates();
                     break;
                 case MSG_NOTIFICATION_FULL_REFRESH:
                     if (sNotificationsChangedListener != null) {
@@ -132,7 +160,7 @@ public class NotificationListener extends NotificationListenerService {
 
     public NotificationListener() {
         super();
-        mWorkerHandler = new Handler(LauncherModel.getWorkerLooper(), mWorkerCallback);
+        mWorkerHandler = new Handler(sWorkerThread.getLooper(), mWorkerCallback);
         mUiHandler = new Handler(Looper.getMainLooper(), mUiCallback);
         sNotificationListenerInstance = this;
     }
@@ -196,47 +224,141 @@ public class NotificationListener extends NotificationListenerService {
     public void onListenerDisconnected() {
         super.onListenerDisconnected();
         sIsConnected = false;
+        mWorkerHandler.obtainMessage(MSG_LISTENER_DISCONNECTED).sendToTarget();
     }
 
     @Override
     public void onNotificationPosted(final StatusBarNotification sbn) {
         super.onNotificationPosted(sbn);
-        mWorkerHandler.obtainMessage(MSG_NOTIFICATION_POSTED, new NotificationPostedMsg(sbn))
-                .sendToTarget();
+        mWorkerHandler.obtainMessage(MSG_NOTIFICATION_POSTED, sbn).sendToTarget();
+    }
+
+    @Override
+    public void onNotificationRemoved(final StatusBarNotification sbn) {
+        super.onNotificationRemoved(sbn);
+        mWorkerHandler.obtainMessage(MSG_NOTIFICATION_REMOVED, sbn).sendToTarget();
     }
 
     /**
-     * An object containing data to send to MSG_NOTIFICATION_POSTED targets.
+     * Returns the active notifications for the given keys, in the same order, skipping the ones
+     * which are no longer active. Served from the local mirror, so safe to call on any thread.
      */
-    private class NotificationPostedMsg {
-        final PackageUserKey packageUserKey;
-        final NotificationKeyData notificationKey;
-        final boolean shouldBeFilteredOut;
+    public List<StatusBarNotification> getNotificationsForKeys(List<NotificationKeyData> keys) {
+        List<StatusBarNotification> notifications = new ArrayList<>(keys.size());
+        synchronized (mActiveNotificationsLock) {
+            for (NotificationKeyData key : keys) {
+                StatusBarNotification sbn = mActiveNotifications.get(key.notificationKey);
+                if (sbn != null) {
+                    notifications.add(sbn);
+                }
+            }
+        }
+        return notifications;
+    }
 
-        NotificationPostedMsg(StatusBarNotification sbn) {
-            packageUserKey = PackageUserKey.fromNotification(sbn);
-            notificationKey = NotificationKeyData.fromNotification(sbn);
-            shouldBeFilteredOut = shouldBeFilteredOut(sbn);
+    /**
+     * Returns the active notification with the given key, or null if there is none. Served from
+     * the local mirror, so safe to call on any thread.
+     */
+    public @Nullable StatusBarNotification getNotificationForKey(String notificationKey) {
+        synchronized (mActiveNotificationsLock) {
+            return mActiveNotifications.get(notificationKey);
         }
     }
 
-    @Override
-    public void onNotificationRemoved(final StatusBarNotification sbn) {
-        super.onNotificationRemoved(sbn);
-        Pair<PackageUserKey, NotificationKeyData> packageUserKeyAndNotificationKey
-                = new Pair<>(PackageUserKey.fromNotification(sbn),
-                        NotificationKeyData.fromNotification(sbn));
-        mWorkerHandler.obtainMessage(MSG_NOTIFICATION_REMOVED, packageUserKeyAndNotificationKey)
-                .sendToTarget();
+    private void addToMirror(PackageUserKey packageUserKey, StatusBarNotification sbn) {
+        synchronized (mActiveNotificationsLock) {
+            mActiveNotifications.put(sbn.getKey(), sbn);
+            Set<String> keys = mActiveKeysByPackage.get(packageUserKey);
+            if (keys == null) {
+                keys = new ArraySet<>();
+                mActiveKeysByPackage.put(packageUserKey, keys);
+            }
+            keys.add(sbn.getKey());
+        }
     }
 
-    /** This makes a potentially expensive binder call and should be run on a background thread. */
-    public List<StatusBarNotification> getNotificationsForKeys(List<NotificationKeyData> keys) {
-        StatusBarNotification[] notifications = NotificationListener.this
-                .getActiveNotifications(NotificationKeyData.extractKeysOnly(keys)
-                        .toArray(new String[keys.size()]));
-        return notifications == null
-                ? Collections.<StatusBarNotification>emptyList() : Arrays.asList(notifications);
+    private void removeFromMirror(PackageUserKey packageUserKey, String notificationKey) {
+        synchronized (mActiveNotificationsLock) {
+            mActiveNotifications.remove(notificationKey);
+            Set<String> keys = mActiveKeysByPackage.get(packageUserKey);
+            if (keys != null && keys.remove(notificationKey) && keys.isEmpty()) {
+                mActiveKeysByPackage.remove(packageUserKey);
+            }
+        }
+    }
+
+    private void resetMirror(@Nullable StatusBarNotification[] notifications) {
+        synchronized (mActiveNotificationsLock) {
+            mActiveNotifications.clear();
+            mActiveKeysByPackage.clear();
+        }
+        if (notifications != null) {
+            for (StatusBarNotification sbn : notifications) {
+                addToMirror(PackageUserKey.fromNotification(sbn), sbn);
+            }
+        }
+    }
+
+    /**
+     * Queues an update for the UI thread, replacing any pending update to the same notification.
+     */
+    private void enqueueUpdate(NotificationUpdate update) {
+        boolean scheduleDispatch;
+        synchronized (mPendingUpdatesLock) {
+            scheduleDispatch = mPendingUpdates.isEmpty();
+            LinkedHashMap<String, NotificationUpdate> updates =
+                    mPendingUpdates.get(update.packageUserKey);
+            if (updates == null) {
+                updates = new LinkedHashMap<>();
+                mPendingUpdates.put(update.packageUserKey, updates);
+            }
+            updates.put(update.notificationKey.notificationKey, update);
+        }
+        if (scheduleDispatch) {
+            mUiHandler.obtainMessage(MSG_NOTIFICATIONS_CHANGED).sendToTarget();
+        }
+    }
+
+    private void dispatchPendingUpdates() {
+        LinkedHashMap<PackageUserKey, LinkedHashMap<String, NotificationUpdate>> pendingUpdates;
+        synchronized (mPendingUpdatesLock) {
+            if (mPendingUpdates.isEmpty()) {
+                return;
+            }
+            pendingUpdates = mPendingUpdates;
+            mPendingUpdates = new LinkedHashMap<>();
+        }
+        if (sNotificationsChangedListener == null) {
+            return;
+        }
+        for (LinkedHashMap<String, NotificationUpdate> updates : pendingUpdates.values()) {
+            for (NotificationUpdate update : updates.values()) {
+                if (update.removed) {
+                    sNotificationsChangedListener.onNotificationRemoved(
+                            update.packageUserKey, update.notificationKey);
+                } else {
+                    sNotificationsChangedListener.onNotificationPosted(update.packageUserKey,
+                            update.notificationKey, update.shouldBeFilteredOut);
+                }
+            }
+        }
+    }
+
+    /**
+     * A posted or removed notification, waiting to be sent to the UI thread.
+     */
+    private static class NotificationUpdate {
+        final PackageUserKey packageUserKey;
+        final NotificationKeyData notificationKey;
+        final boolean removed;
+        boolean shouldBeFilteredOut;
+
+        NotificationUpdate(StatusBarNotification sbn, boolean removed) {
+            packageUserKey = PackageUserKey.fromNotification(sbn);
+            notificationKey = NotificationKeyData.fromNotification(sbn);
+            this.removed = removed;
+        }
     }
 
     /**
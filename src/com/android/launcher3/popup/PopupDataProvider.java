@@ -196,10 +196,10 @@ public class PopupDataProvider implements NotificationListener.NotificationsChan
             // Look for the most recent notification that has an icon that should be shown in badge.
             for (NotificationKeyData notificationKeyData : badgeInfo.getNotificationKeys()) {
                 String notificationKey = notificationKeyData.notificationKey;
-                StatusBarNotification[] activeNotifications = notificationListener
-                        .getActiveNotifications(new String[]{notificationKey});
-                if (activeNotifications.length == 1) {
-                    notificationInfo = new NotificationInfo(mLauncher, activeNotifications[0]);
+                StatusBarNotification activeNotification =
+                        notificationListener.getNotificationForKey(notificationKey);
+                if (activeNotification != null) {
+                    notificationInfo = new NotificationInfo(mLauncher, activeNotification);
                     if (notificationInfo.shouldShowIconInBadge()) {
                         // Found an appropriate icon.
                         break;
@@ -255,7 +255,6 @@ public class PopupDataProvider implements NotificationListener.NotificationsChan
         return badgeInfo == null ? Collections.EMPTY_LIST : badgeInfo.getNotificationKeys();
     }
 
-    /** This makes a potentially expensive binder call and should be run on a background thread. */
     public @NonNull List<StatusBarNotification> getStatusBarNotificationsForKeys(
             List<NotificationKeyData> notificationKeys) {
         NotificationListener notificationListener = NotificationListener.getInstanceIfConnected();
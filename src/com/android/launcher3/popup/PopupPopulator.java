@@ -18,12 +18,14 @@ package com.android.launcher3.popup;
 
 import android.content.ComponentName;
 import android.content.Context;
+import android.graphics.Bitmap;
 import android.os.Handler;
 import android.os.UserHandle;
 import android.service.notification.StatusBarNotification;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.support.annotation.VisibleForTesting;
+import android.util.ArrayMap;
 import android.view.View;
 import android.widget.ImageView;
 
@@ -31,12 +33,12 @@ import com.android.launcher3.ItemInfo;
 import com.android.launcher3.Launcher;
 import com.android.launcher3.R;
 import com.android.launcher3.ShortcutInfo;
-import com.android.launcher3.graphics.LauncherIcons;
 import com.android.launcher3.notification.NotificationInfo;
 import com.android.launcher3.notification.NotificationItemView;
 import com.android.launcher3.notification.NotificationKeyData;
 import com.android.launcher3.shortcuts.DeepShortcutManager;
 import com.android.launcher3.shortcuts.DeepShortcutView;
+import com.android.launcher3.shortcuts.ShortcutCache.CachedShortcut;
 import com.android.launcher3.shortcuts.ShortcutInfoCompat;
 import com.android.launcher3.util.PackageUserKey;
 
@@ -45,6 +47,7 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Contains logic relevant to populating a {@link PopupContainerWithArrow}. In particular,
@@ -198,17 +201,21 @@ public class PopupPopulator {
                     uiHandler.post(new UpdateNotificationChild(notificationView, infos));
                 }
 
-                List<ShortcutInfoCompat> shortcuts = DeepShortcutManager.getInstance(launcher)
-                        .queryForShortcutsContainer(activity, shortcutIds, user);
+                List<CachedShortcut> cachedShortcuts = DeepShortcutManager.getInstance(launcher)
+                        .getShortcutCache().getShortcuts(activity, shortcutIds, user);
+                Map<ShortcutInfoCompat, Bitmap> icons = new ArrayMap<>(cachedShortcuts.size());
+                List<ShortcutInfoCompat> shortcuts = new ArrayList<>(cachedShortcuts.size());
+                for (CachedShortcut cachedShortcut : cachedShortcuts) {
+                    icons.put(cachedShortcut.detail, cachedShortcut.icon);
+                    shortcuts.add(cachedShortcut.detail);
+                }
                 String shortcutIdToDeDupe = notificationKeys.isEmpty() ? null
                         : notificationKeys.get(0).shortcutId;
                 shortcuts = PopupPopulator.sortAndFilterShortcuts(shortcuts, shortcutIdToDeDupe);
                 for (int i = 0; i < shortcuts.size() && i < shortcutViews.size(); i++) {
                     final ShortcutInfoCompat shortcut = shortcuts.get(i);
                     ShortcutInfo si = new ShortcutInfo(shortcut, launcher);
-                    // Use unbadged icon for the menu.
-                    si.iconBitmap = LauncherIcons.createShortcutIcon(
-                            shortcut, launcher, false /* badged */);
+                    si.iconBitmap = icons.get(shortcut);
                     si.rank = i;
                     uiHandler.post(new UpdateShortcutChild(container, shortcutViews.get(i),
                             si, shortcut));
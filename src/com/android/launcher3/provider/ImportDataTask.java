@@ -18,7 +18,7 @@ package com.android.launcher3.provider;
 
 import static com.android.launcher3.Utilities.getDevicePrefs;
 
-import android.content.ContentProviderOperation;
+import android.content.ContentProviderClient;
 import android.content.ContentValues;
 import android.content.Context;
 import android.content.Intent;
@@ -30,6 +30,7 @@ import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.net.Uri;
 import android.os.Process;
+import android.support.annotation.VisibleForTesting;
 import android.text.TextUtils;
 import android.util.ArrayMap;
 import android.util.LongSparseArray;
@@ -54,6 +55,7 @@ import com.android.launcher3.util.LongArrayMap;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.concurrent.Callable;
 
 /**
  * Utility class to import data from another Launcher which is based on Launcher3 schema.
@@ -65,10 +67,26 @@ public class ImportDataTask {
 
     private static final String TAG = "ImportDataTask";
     private static final int MIN_ITEM_COUNT_FOR_SUCCESSFUL_MIGRATION = 6;
-    // Insert items progressively to avoid OOM exception when loading icons.
+    // Number of items written at once, so that the source items are not all kept in memory.
     private static final int BATCH_INSERT_SIZE = 15;
+    // Number of source items read between two progress updates.
+    private static final int PROGRESS_INTERVAL = 100;
+
+    /**
+     * Receives the progress of an import.
+     */
+    public interface ProgressListener {
+        /**
+         * Called while the source items are read, and once all of them have been read.
+         *
+         * @param read the number of source items read so far.
+         * @param total the number of source items.
+         */
+        void onProgress(int read, int total);
+    }
 
     private final Context mContext;
+    private final ProgressListener mListener;
 
     private final Uri mOtherScreensUri;
     private final Uri mOtherFavoritesUri;
@@ -77,15 +95,23 @@ public class ImportDataTask {
     private int mMaxGridSizeX;
     private int mMaxGridSizeY;
 
-    private ImportDataTask(Context context, String sourceAuthority) {
+    // Set of package names present in hotseat
+    private final HashSet<String> mHotseatTargetApps = new HashSet<>();
+    private long mMaxItemId;
+    // Number of imported items on workspace and hotseat
+    private int mWorkspaceItemCount;
+
+    @VisibleForTesting
+    ImportDataTask(Context context, String sourceAuthority, ProgressListener listener) {
         mContext = context;
+        mListener = listener;
         mOtherScreensUri = Uri.parse("content://" +
                 sourceAuthority + "/" + WorkspaceScreens.TABLE_NAME);
         mOtherFavoritesUri = Uri.parse("content://" + sourceAuthority + "/" + Favorites.TABLE_NAME);
     }
 
     public boolean importWorkspace() throws Exception {
-        ArrayList<Long> allScreens = LauncherDbUtils.getScreenIdsFromCursor(
+        final ArrayList<Long> allScreens = LauncherDbUtils.getScreenIdsFromCursor(
                 mContext.getContentResolver().query(mOtherScreensUri, null, null, null,
                         LauncherSettings.WorkspaceScreens.SCREEN_RANK));
         FileLog.d(TAG, "Importing DB from " + mOtherFavoritesUri);
@@ -100,19 +126,34 @@ public class ImportDataTask {
         mHotseatSize = mMaxGridSizeX = mMaxGridSizeY = 0;
 
         // Build screen update
-        ArrayList<ContentProviderOperation> screenOps = new ArrayList<>();
+        final ModelWriteBatch screenBatch = new ModelWriteBatch();
         int count = allScreens.size();
-        LongSparseArray<Long> screenIdMap = new LongSparseArray<>(count);
+        final LongSparseArray<Long> screenIdMap = new LongSparseArray<>(count);
         for (int i = 0; i < count; i++) {
             ContentValues v = new ContentValues();
             v.put(LauncherSettings.WorkspaceScreens._ID, i);
             v.put(LauncherSettings.WorkspaceScreens.SCREEN_RANK, i);
             screenIdMap.put(allScreens.get(i), (long) i);
-            screenOps.add(ContentProviderOperation.newInsert(
-                    LauncherSettings.WorkspaceScreens.CONTENT_URI).withValues(v).build());
+            screenBatch.insert(WorkspaceScreens.TABLE_NAME, v);
+        }
+
+        // The screens and items are written in a single transaction, so that nothing is left in
+        // the DB if the import fails.
+        ContentProviderClient client = mContext.getContentResolver()
+                .acquireContentProviderClient(LauncherProvider.AUTHORITY);
+        try {
+            ((LauncherProvider) client.getLocalContentProvider()).runInTransaction(
+                    new Callable<Void>() {
+                        @Override
+                        public Void call() throws Exception {
+                            screenBatch.commit(mContext);
+                            importWorkspaceItems(allScreens.get(0), screenIdMap);
+                            return null;
+                        }
+                    });
+        } finally {
+            client.release();
         }
-        mContext.getContentResolver().applyBatch(LauncherProvider.AUTHORITY, screenOps);
-        importWorkspaceItems(allScreens.get(0), screenIdMap);
 
         GridSizeMigrationTask.markForMigration(mContext, mMaxGridSizeX, mMaxGridSizeY, mHotseatSize);
 
@@ -126,33 +167,15 @@ public class ImportDataTask {
      * 1) Imports all the workspace entries from the source provider.
      * 2) For home screen entries, maps the screen id based on {@param screenIdMap}
      * 3) In the end fills any holes in hotseat with items from default hotseat layout.
+     *
+     * The source items are read in a single pass, and written as they are read. Must be called
+     * in a transaction, which is rolled back if too few items are imported.
      */
-    private void importWorkspaceItems(
-            long firsetScreenId, LongSparseArray<Long> screenIdMap) throws Exception {
+    private void importWorkspaceItems(long firstScreenId, LongSparseArray<Long> screenIdMap)
+            throws Exception {
         String profileId = Long.toString(UserManagerCompat.getInstance(mContext)
                 .getSerialNumberForUser(Process.myUserHandle()));
 
-        boolean createEmptyRowOnFirstScreen = false;
-        if (FeatureFlags.QSB_ON_FIRST_SCREEN) {
-            try (Cursor c = mContext.getContentResolver().query(mOtherFavoritesUri, null,
-                    // get items on the first row of the first screen
-                    "profileId = ? AND container = -100 AND screen = ? AND cellY = 0",
-                    new String[]{profileId, Long.toString(firsetScreenId)},
-                    null)) {
-                // First row of first screen is not empty
-                createEmptyRowOnFirstScreen = c.moveToNext();
-            }
-        }
-
-        ArrayList<ContentProviderOperation> insertOperations = new ArrayList<>(BATCH_INSERT_SIZE);
-
-        // Set of package names present in hotseat
-        final HashSet<String> hotseatTargetApps = new HashSet<>();
-        int maxId = 0;
-
-        // Number of imported items on workspace and hotseat
-        int totalItemsOnWorkspace = 0;
-
         try (Cursor c = mContext.getContentResolver()
                 .query(mOtherFavoritesUri, null,
                         // Only migrate the primary user
@@ -160,168 +183,196 @@ public class ImportDataTask {
                         // Get the items sorted by container, so that the folders are loaded
                         // before the corresponding items.
                         Favorites.CONTAINER)) {
+            readWorkspaceItems(c, firstScreenId, screenIdMap);
+        }
+        FileLog.d(TAG, mWorkspaceItemCount + " items imported from external source");
+        if (mWorkspaceItemCount < MIN_ITEM_COUNT_FOR_SUCCESSFUL_MIGRATION) {
+            throw new Exception("Insufficient data");
+        }
 
-            // various columns we expect to exist.
-            final int idIndex = c.getColumnIndexOrThrow(Favorites._ID);
-            final int intentIndex = c.getColumnIndexOrThrow(Favorites.INTENT);
-            final int titleIndex = c.getColumnIndexOrThrow(Favorites.TITLE);
-            final int containerIndex = c.getColumnIndexOrThrow(Favorites.CONTAINER);
-            final int itemTypeIndex = c.getColumnIndexOrThrow(Favorites.ITEM_TYPE);
-            final int widgetProviderIndex = c.getColumnIndexOrThrow(Favorites.APPWIDGET_PROVIDER);
-            final int screenIndex = c.getColumnIndexOrThrow(Favorites.SCREEN);
-            final int cellXIndex = c.getColumnIndexOrThrow(Favorites.CELLX);
-            final int cellYIndex = c.getColumnIndexOrThrow(Favorites.CELLY);
-            final int spanXIndex = c.getColumnIndexOrThrow(Favorites.SPANX);
-            final int spanYIndex = c.getColumnIndexOrThrow(Favorites.SPANY);
-            final int rankIndex = c.getColumnIndexOrThrow(Favorites.RANK);
-            final int iconIndex = c.getColumnIndexOrThrow(Favorites.ICON);
-            final int iconPackageIndex = c.getColumnIndexOrThrow(Favorites.ICON_PACKAGE);
-            final int iconResourceIndex = c.getColumnIndexOrThrow(Favorites.ICON_RESOURCE);
-
-            SparseBooleanArray mValidFolders = new SparseBooleanArray();
-            ContentValues values = new ContentValues();
-
-            while (c.moveToNext()) {
-                values.clear();
-                int id = c.getInt(idIndex);
-                maxId = Math.max(maxId, id);
-                int type = c.getInt(itemTypeIndex);
-                int container = c.getInt(containerIndex);
-
-                long screen = c.getLong(screenIndex);
-
-                int cellX = c.getInt(cellXIndex);
-                int cellY = c.getInt(cellYIndex);
-                int spanX = c.getInt(spanXIndex);
-                int spanY = c.getInt(spanYIndex);
-
-                switch (container) {
-                    case Favorites.CONTAINER_DESKTOP: {
-                        Long newScreenId = screenIdMap.get(screen);
-                        if (newScreenId == null) {
-                            FileLog.d(TAG, String.format("Skipping item %d, type %d not on a valid screen %d", id, type, screen));
-                            continue;
-                        }
-                        // Reset the screen to 0-index value
-                        screen = newScreenId;
-                        if (createEmptyRowOnFirstScreen && screen == Workspace.FIRST_SCREEN_ID) {
-                            // Shift items by 1.
-                            cellY++;
-                        }
-
-                        mMaxGridSizeX = Math.max(mMaxGridSizeX, cellX + spanX);
-                        mMaxGridSizeY = Math.max(mMaxGridSizeY, cellY + spanY);
-                        break;
-                    }
-                    case Favorites.CONTAINER_HOTSEAT: {
-                        mHotseatSize = Math.max(mHotseatSize, (int) screen + 1);
-                        break;
-                    }
-                    default:
-                        if (!mValidFolders.get(container)) {
-                            FileLog.d(TAG, String.format("Skipping item %d, type %d not in a valid folder %d", id, type, container));
-                            continue;
-                        }
-                }
+        LongArrayMap<Object> hotseatItems = GridSizeMigrationTask.removeBrokenHotseatItems(mContext);
+        int myHotseatCount = LauncherAppState.getIDP(mContext).numHotseatIcons;
+        if (!FeatureFlags.NO_ALL_APPS_ICON) {
+            myHotseatCount--;
+        }
+        if (hotseatItems.size() < myHotseatCount) {
+            // Insufficient hotseat items. Add a few more.
+            ModelWriteBatch hotseatBatch = new ModelWriteBatch();
+            HotseatParserCallback parserCallback = new HotseatParserCallback(
+                    mHotseatTargetApps, hotseatItems, hotseatBatch, mMaxItemId + 1,
+                    myHotseatCount);
+            new HotseatLayoutParser(mContext,
+                    parserCallback).loadLayout(null, new ArrayList<Long>());
+            mHotseatSize = (int) hotseatItems.keyAt(hotseatItems.size() - 1) + 1;
+            hotseatBatch.commit(mContext);
+        }
+    }
 
-                Intent intent = null;
-                switch (type) {
-                    case Favorites.ITEM_TYPE_FOLDER: {
-                        mValidFolders.put(id, true);
-                        // Use a empty intent to indicate a folder.
-                        intent = new Intent();
-                        break;
+    /**
+     * Validates the items of the source cursor {@param c} and writes them in batches of
+     * {@link #BATCH_INSERT_SIZE}, with their screens mapped based on {@param screenIdMap}.
+     */
+    @VisibleForTesting
+    void readWorkspaceItems(Cursor c, long firstScreenId, LongSparseArray<Long> screenIdMap)
+            throws Exception {
+        // various columns we expect to exist.
+        final int idIndex = c.getColumnIndexOrThrow(Favorites._ID);
+        final int intentIndex = c.getColumnIndexOrThrow(Favorites.INTENT);
+        final int titleIndex = c.getColumnIndexOrThrow(Favorites.TITLE);
+        final int containerIndex = c.getColumnIndexOrThrow(Favorites.CONTAINER);
+        final int itemTypeIndex = c.getColumnIndexOrThrow(Favorites.ITEM_TYPE);
+        final int widgetProviderIndex = c.getColumnIndexOrThrow(Favorites.APPWIDGET_PROVIDER);
+        final int screenIndex = c.getColumnIndexOrThrow(Favorites.SCREEN);
+        final int cellXIndex = c.getColumnIndexOrThrow(Favorites.CELLX);
+        final int cellYIndex = c.getColumnIndexOrThrow(Favorites.CELLY);
+        final int spanXIndex = c.getColumnIndexOrThrow(Favorites.SPANX);
+        final int spanYIndex = c.getColumnIndexOrThrow(Favorites.SPANY);
+        final int rankIndex = c.getColumnIndexOrThrow(Favorites.RANK);
+        final int iconIndex = c.getColumnIndexOrThrow(Favorites.ICON);
+        final int iconPackageIndex = c.getColumnIndexOrThrow(Favorites.ICON_PACKAGE);
+        final int iconResourceIndex = c.getColumnIndexOrThrow(Favorites.ICON_RESOURCE);
+
+        SparseBooleanArray mValidFolders = new SparseBooleanArray();
+        ModelWriteBatch batch = new ModelWriteBatch();
+        // Ids and rows of the items imported on the first screen, which are shifted down if its
+        // first row is used.
+        LongArrayMap<Integer> firstScreenCellY = new LongArrayMap<>();
+        int firstScreenMaxY = 0;
+        boolean firstRowUsed = false;
+
+        int total = c.getCount();
+        int read = 0;
+        while (c.moveToNext()) {
+            if (mListener != null && ++read % PROGRESS_INTERVAL == 0) {
+                mListener.onProgress(read, total);
+            }
+            ContentValues values = new ContentValues();
+            int id = c.getInt(idIndex);
+            mMaxItemId = Math.max(mMaxItemId, id);
+            int type = c.getInt(itemTypeIndex);
+            int container = c.getInt(containerIndex);
+
+            long screen = c.getLong(screenIndex);
+
+            int cellX = c.getInt(cellXIndex);
+            int cellY = c.getInt(cellYIndex);
+            int spanX = c.getInt(spanXIndex);
+            int spanY = c.getInt(spanYIndex);
+
+            switch (container) {
+                case Favorites.CONTAINER_DESKTOP: {
+                    if (screen == firstScreenId && cellY == 0) {
+                        firstRowUsed = true;
                     }
-                    case Favorites.ITEM_TYPE_APPWIDGET: {
-                        values.put(Favorites.RESTORED,
-                                LauncherAppWidgetInfo.FLAG_ID_NOT_VALID |
-                                        LauncherAppWidgetInfo.FLAG_PROVIDER_NOT_READY |
-                                        LauncherAppWidgetInfo.FLAG_UI_NOT_READY);
-                        values.put(Favorites.APPWIDGET_PROVIDER, c.getString(widgetProviderIndex));
-                        break;
+                    Long newScreenId = screenIdMap.get(screen);
+                    if (newScreenId == null) {
+                        FileLog.d(TAG, String.format("Skipping item %d, type %d not on a valid screen %d", id, type, screen));
+                        continue;
                     }
-                    case Favorites.ITEM_TYPE_SHORTCUT:
-                    case Favorites.ITEM_TYPE_APPLICATION: {
-                        intent = Intent.parseUri(c.getString(intentIndex), 0);
-                        if (Utilities.isLauncherAppTarget(intent)) {
-                            type = Favorites.ITEM_TYPE_APPLICATION;
-                        } else {
-                            values.put(Favorites.ICON_PACKAGE, c.getString(iconPackageIndex));
-                            values.put(Favorites.ICON_RESOURCE, c.getString(iconResourceIndex));
-                        }
-                        values.put(Favorites.ICON,  c.getBlob(iconIndex));
-                        values.put(Favorites.INTENT, intent.toUri(0));
-                        values.put(Favorites.RANK, c.getInt(rankIndex));
+                    // Reset the screen to 0-index value
+                    screen = newScreenId;
 
-                        values.put(Favorites.RESTORED, 1);
-                        break;
-                    }
-                    default:
-                        FileLog.d(TAG, String.format("Skipping item %d, not a valid type %d", id, type));
-                        continue;
+                    mMaxGridSizeX = Math.max(mMaxGridSizeX, cellX + spanX);
+                    mMaxGridSizeY = Math.max(mMaxGridSizeY, cellY + spanY);
+                    break;
                 }
-
-                if (container == Favorites.CONTAINER_HOTSEAT) {
-                    if (intent == null) {
-                        FileLog.d(TAG, String.format("Skipping item %d, null intent on hotseat", id));
+                case Favorites.CONTAINER_HOTSEAT: {
+                    mHotseatSize = Math.max(mHotseatSize, (int) screen + 1);
+                    break;
+                }
+                default:
+                    if (!mValidFolders.get(container)) {
+                        FileLog.d(TAG, String.format("Skipping item %d, type %d not in a valid folder %d", id, type, container));
                         continue;
                     }
-                    if (intent.getComponent() != null) {
-                        intent.setPackage(intent.getComponent().getPackageName());
-                    }
-                    hotseatTargetApps.add(getPackage(intent));
+            }
+
+            Intent intent = null;
+            switch (type) {
+                case Favorites.ITEM_TYPE_FOLDER: {
+                    mValidFolders.put(id, true);
+                    // Use a empty intent to indicate a folder.
+                    intent = new Intent();
+                    break;
+                }
+                case Favorites.ITEM_TYPE_APPWIDGET: {
+                    values.put(Favorites.RESTORED,
+                            LauncherAppWidgetInfo.FLAG_ID_NOT_VALID |
+                                    LauncherAppWidgetInfo.FLAG_PROVIDER_NOT_READY |
+                                    LauncherAppWidgetInfo.FLAG_UI_NOT_READY);
+                    values.put(Favorites.APPWIDGET_PROVIDER, c.getString(widgetProviderIndex));
+                    break;
                 }
+                case Favorites.ITEM_TYPE_SHORTCUT:
+                case Favorites.ITEM_TYPE_APPLICATION: {
+                    intent = Intent.parseUri(c.getString(intentIndex), 0);
+                    if (Utilities.isLauncherAppTarget(intent)) {
+                        type = Favorites.ITEM_TYPE_APPLICATION;
+                    } else {
+                        values.put(Favorites.ICON_PACKAGE, c.getString(iconPackageIndex));
+                        values.put(Favorites.ICON_RESOURCE, c.getString(iconResourceIndex));
+                    }
+                    values.put(Favorites.ICON,  c.getBlob(iconIndex));
+                    values.put(Favorites.INTENT, intent.toUri(0));
+                    values.put(Favorites.RANK, c.getInt(rankIndex));
 
-                values.put(Favorites._ID, id);
-                values.put(Favorites.ITEM_TYPE, type);
-                values.put(Favorites.CONTAINER, container);
-                values.put(Favorites.SCREEN, screen);
-                values.put(Favorites.CELLX, cellX);
-                values.put(Favorites.CELLY, cellY);
-                values.put(Favorites.SPANX, spanX);
-                values.put(Favorites.SPANY, spanY);
-                values.put(Favorites.TITLE, c.getString(titleIndex));
-                insertOperations.add(ContentProviderOperation
-                        .newInsert(Favorites.CONTENT_URI).withValues(values).build());
-                if (container < 0) {
-                    totalItemsOnWorkspace++;
+                    values.put(Favorites.RESTORED, 1);
+                    break;
                 }
+                default:
+                    FileLog.d(TAG, String.format("Skipping item %d, not a valid type %d", id, type));
+                    continue;
+            }
 
-                if (insertOperations.size() >= BATCH_INSERT_SIZE) {
-                    mContext.getContentResolver().applyBatch(LauncherProvider.AUTHORITY,
-                            insertOperations);
-                    insertOperations.clear();
+            if (container == Favorites.CONTAINER_HOTSEAT) {
+                if (intent == null) {
+                    FileLog.d(TAG, String.format("Skipping item %d, null intent on hotseat", id));
+                    continue;
                 }
+                if (intent.getComponent() != null) {
+                    intent.setPackage(intent.getComponent().getPackageName());
+                }
+                mHotseatTargetApps.add(getPackage(intent));
             }
-        }
-        FileLog.d(TAG, totalItemsOnWorkspace + " items imported from external source");
-        if (totalItemsOnWorkspace < MIN_ITEM_COUNT_FOR_SUCCESSFUL_MIGRATION) {
-            throw new Exception("Insufficient data");
-        }
-        if (!insertOperations.isEmpty()) {
-            mContext.getContentResolver().applyBatch(LauncherProvider.AUTHORITY,
-                    insertOperations);
-            insertOperations.clear();
-        }
 
-        LongArrayMap<Object> hotseatItems = GridSizeMigrationTask.removeBrokenHotseatItems(mContext);
-        int myHotseatCount = LauncherAppState.getIDP(mContext).numHotseatIcons;
-        if (!FeatureFlags.NO_ALL_APPS_ICON) {
-            myHotseatCount--;
+            values.put(Favorites._ID, id);
+            values.put(Favorites.ITEM_TYPE, type);
+            values.put(Favorites.CONTAINER, container);
+            values.put(Favorites.SCREEN, screen);
+            values.put(Favorites.CELLX, cellX);
+            values.put(Favorites.CELLY, cellY);
+            values.put(Favorites.SPANX, spanX);
+            values.put(Favorites.SPANY, spanY);
+            values.put(Favorites.TITLE, c.getString(titleIndex));
+            batch.insert(Favorites.TABLE_NAME, values);
+            if (container == Favorites.CONTAINER_DESKTOP && screen == Workspace.FIRST_SCREEN_ID) {
+                firstScreenCellY.put(id, cellY);
+                firstScreenMaxY = Math.max(firstScreenMaxY, cellY + spanY);
+            }
+            if (container < 0) {
+                mWorkspaceItemCount++;
+            }
+
+            if (batch.size() >= BATCH_INSERT_SIZE) {
+                batch.commit(mContext);
+                batch = new ModelWriteBatch();
+            }
+        }
+        if (mListener != null) {
+            mListener.onProgress(read, total);
         }
-        if (hotseatItems.size() < myHotseatCount) {
-            // Insufficient hotseat items. Add a few more.
-            HotseatParserCallback parserCallback = new HotseatParserCallback(
-                    hotseatTargetApps, hotseatItems, insertOperations, maxId + 1, myHotseatCount);
-            new HotseatLayoutParser(mContext,
-                    parserCallback).loadLayout(null, new ArrayList<Long>());
-            mHotseatSize = (int) hotseatItems.keyAt(hotseatItems.size() - 1) + 1;
 
-            if (!insertOperations.isEmpty()) {
-                mContext.getContentResolver().applyBatch(LauncherProvider.AUTHORITY,
-                        insertOperations);
+        if (FeatureFlags.QSB_ON_FIRST_SCREEN && firstRowUsed) {
+            // Shift the items of the first screen by 1, to make room for the QSB. The first row
+            // is only known to be used once all the items were read and some written.
+            for (int i = 0; i < firstScreenCellY.size(); i++) {
+                ContentValues values = new ContentValues();
+                values.put(Favorites.CELLY, firstScreenCellY.valueAt(i) + 1);
+                batch.update(Favorites.TABLE_NAME, firstScreenCellY.keyAt(i), values);
             }
+            mMaxGridSizeY = Math.max(mMaxGridSizeY, firstScreenMaxY + 1);
         }
+        batch.commit(mContext);
     }
 
     private static String getPackage(Intent intent) {
@@ -335,6 +386,15 @@ public class ImportDataTask {
      * @throws Exception if the import failed
      */
     public static boolean performImportIfPossible(Context context) throws Exception {
+        return performImportIfPossible(context, null);
+    }
+
+    /**
+     * Performs data import if possible, reporting the progress to {@param listener}.
+     * @see #performImportIfPossible(Context)
+     */
+    public static boolean performImportIfPossible(Context context, ProgressListener listener)
+            throws Exception {
         SharedPreferences devicePrefs = getDevicePrefs(context);
         String sourcePackage = devicePrefs.getString(KEY_DATA_IMPORT_SRC_PKG, "");
         String sourceAuthority = devicePrefs.getString(KEY_DATA_IMPORT_SRC_AUTHORITY, "");
@@ -368,7 +428,8 @@ public class ImportDataTask {
                             context.checkPermission(info.readPermission, Process.myPid(),
                                     Process.myUid()) == PackageManager.PERMISSION_GRANTED) {
                         // All checks passed, run the import task.
-                        return new ImportDataTask(context, sourceAuthority).importWorkspace();
+                        return new ImportDataTask(context, sourceAuthority, listener)
+                                .importWorkspace();
                     }
                 }
             }
@@ -407,16 +468,16 @@ public class ImportDataTask {
     private static class HotseatParserCallback implements LayoutParserCallback {
         private final HashSet<String> mExistingApps;
         private final LongArrayMap<Object> mExistingItems;
-        private final ArrayList<ContentProviderOperation> mOutOps;
+        private final ModelWriteBatch mOutBatch;
         private final int mRequiredSize;
-        private int mStartItemId;
+        private long mStartItemId;
 
         HotseatParserCallback(
                 HashSet<String> existingApps, LongArrayMap<Object> existingItems,
-                ArrayList<ContentProviderOperation> outOps, int startItemId, int requiredSize) {
+                ModelWriteBatch outBatch, long startItemId, int requiredSize) {
             mExistingApps = existingApps;
             mExistingItems = existingItems;
-            mOutOps = outOps;
+            mOutBatch = outBatch;
             mRequiredSize = requiredSize;
             mStartItemId = startItemId;
         }
@@ -452,7 +513,8 @@ public class ImportDataTask {
             }
             mExistingItems.put(screen, intent);
             values.put(Favorites.SCREEN, screen);
-            mOutOps.add(ContentProviderOperation.newInsert(Favorites.CONTENT_URI).withValues(values).build());
+            // The parser reuses its values for the next items.
+            mOutBatch.insert(Favorites.TABLE_NAME, new ContentValues(values));
             return 0;
         }
     }
@@ -0,0 +1,186 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.launcher3.provider;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+
+import com.android.launcher3.provider.LauncherDbUtils.SQLiteTransaction;
+import com.android.launcher3.util.NoLocaleSqliteContext;
+
+import java.util.ArrayList;
+import java.util.Collection;
+
+/**
+ * Queue of the shortcuts pending install, in the order they were added.
+ *
+ * Each row keeps the encoded entry, along with the package and user it is for, so that the entries
+ * of a package can be removed through the index without decoding any entry. An entry is only
+ * queued once, as it was when the queue was a set of strings.
+ */
+public class InstallQueueDb extends SQLiteOpenHelper {
+
+    private static final int VERSION = 2;
+
+    private static final String TABLE_NAME = "install_queue";
+
+    private static final String _ID = "_id";
+    private static final String PACKAGE = "package";
+    private static final String PROFILE_ID = "profileId";
+    // Id of the deep shortcut, or null for the other types.
+    private static final String SHORTCUT_ID = "shortcutId";
+    private static final String ENTRY = "entry";
+
+    /**
+     * @param name the name of the DB file, or null for an in-memory DB.
+     */
+    public InstallQueueDb(Context context, String name) {
+        super(new NoLocaleSqliteContext(context), name, null, VERSION);
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE IF NOT EXISTS " + TABLE_NAME + " (" +
+                _ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                PACKAGE + " TEXT NOT NULL, " +
+                PROFILE_ID + " INTEGER NOT NULL, " +
+                SHORTCUT_ID + " TEXT, " +
+                ENTRY + " TEXT NOT NULL);");
+        db.execSQL("CREATE INDEX IF NOT EXISTS " + TABLE_NAME + "_package ON " + TABLE_NAME +
+                " (" + PACKAGE + ", " + PROFILE_ID + ");");
+        createEntryIndex(db);
+    }
+
+    private static void createEntryIndex(SQLiteDatabase db) {
+        db.execSQL("CREATE UNIQUE INDEX IF NOT EXISTS " + TABLE_NAME + "_entry ON " + TABLE_NAME +
+                " (" + ENTRY + ");");
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        if (oldVersion < 2) {
+            // Keep the first of the duplicate entries.
+            db.delete(TABLE_NAME, _ID + " NOT IN (SELECT MIN(" + _ID + ") FROM " + TABLE_NAME +
+                    " GROUP BY " + ENTRY + ")", null);
+            createEntryIndex(db);
+        }
+    }
+
+    /**
+     * Appends an entry to the queue, unless it is already queued.
+     *
+     * @param values the row created by {@link #toValues}.
+     * @return true if the entry was added.
+     */
+    public boolean add(ContentValues values) {
+        return insert(getWritableDatabase(), values);
+    }
+
+    /**
+     * Appends all the {@param entries} which are not already queued in a single transaction, none
+     * of them are added if any of them is invalid.
+     */
+    public void addAll(Collection<ContentValues> entries) {
+        SQLiteDatabase db = getWritableDatabase();
+        try (SQLiteTransaction t = new SQLiteTransaction(db)) {
+            for (ContentValues values : entries) {
+                insert(db, values);
+            }
+            t.commit();
+        }
+    }
+
+    private static boolean insert(SQLiteDatabase db, ContentValues values) {
+        // Looked up through the unique index. A conflict is not ignored by the insert itself, as
+        // that would also drop the invalid entries without failing.
+        String entry = values.getAsString(ENTRY);
+        if (entry != null && DatabaseUtils.queryNumEntries(
+                db, TABLE_NAME, ENTRY + "=?", new String[] {entry}) > 0) {
+            return false;
+        }
+        db.insertOrThrow(TABLE_NAME, null, values);
+        return true;
+    }
+
+    /**
+     * @return the row of an entry.
+     * @param shortcutId the id of the deep shortcut, or null if the entry is not a deep shortcut.
+     */
+    public static ContentValues toValues(
+            String entry, String packageName, long profileId, String shortcutId) {
+        ContentValues values = new ContentValues();
+        values.put(ENTRY, entry);
+        values.put(PACKAGE, packageName == null ? "" : packageName);
+        values.put(PROFILE_ID, profileId);
+        values.put(SHORTCUT_ID, shortcutId);
+        return values;
+    }
+
+    /**
+     * Removes all the entries of {@param packageNames} for the given user.
+     */
+    public void remove(Collection<String> packageNames, long profileId) {
+        SQLiteDatabase db = getWritableDatabase();
+        try (SQLiteTransaction t = new SQLiteTransaction(db)) {
+            String[] args = new String[2];
+            args[1] = Long.toString(profileId);
+            for (String packageName : packageNames) {
+                args[0] = packageName;
+                db.delete(TABLE_NAME, PACKAGE + "=? AND " + PROFILE_ID + "=?", args);
+            }
+            t.commit();
+        }
+    }
+
+    /**
+     * Removes all the entries from the queue in a single transaction.
+     *
+     * @return the removed entries, in the order they were added.
+     */
+    public ArrayList<String> getAndClear() {
+        ArrayList<String> entries = new ArrayList<>();
+        SQLiteDatabase db = getWritableDatabase();
+        try (SQLiteTransaction t = new SQLiteTransaction(db)) {
+            try (Cursor c = db.query(TABLE_NAME, new String[] {ENTRY},
+                    null, null, null, null, _ID)) {
+                while (c.moveToNext()) {
+                    entries.add(c.getString(0));
+                }
+            }
+            db.delete(TABLE_NAME, null, null);
+            t.commit();
+        }
+        return entries;
+    }
+
+    /**
+     * Returns the deep shortcuts in the queue, as rows of (package, profile id, shortcut id).
+     */
+    public Cursor queryDeepShortcuts() {
+        return getReadableDatabase().query(TABLE_NAME,
+                new String[] {PACKAGE, PROFILE_ID, SHORTCUT_ID},
+                SHORTCUT_ID + " IS NOT NULL", null, null, null, _ID);
+    }
+
+    public long size() {
+        return DatabaseUtils.queryNumEntries(getReadableDatabase(), TABLE_NAME);
+    }
+}
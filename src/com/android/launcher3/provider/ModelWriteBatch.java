@@ -0,0 +1,208 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.launcher3.provider;
+
+import android.content.ContentProviderClient;
+import android.content.ContentProviderOperation;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.OperationApplicationException;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.net.Uri;
+import android.os.RemoteException;
+
+import com.android.launcher3.LauncherProvider;
+import com.android.launcher3.LauncherProvider.DatabaseHelper;
+import com.android.launcher3.LauncherSettings;
+
+import java.util.ArrayList;
+import java.util.Collections;
+
+/**
+ * Writes of the model to the launcher DB, which are applied in a single transaction by
+ * {@link LauncherProvider#applyModelBatch}.
+ *
+ * Unlike the {@link ContentProviderOperation}s, the rows with the same table and columns are
+ * written through the same compiled statement, and the provider listeners are notified once.
+ * Only meant for callers in the launcher process.
+ */
+public class ModelWriteBatch {
+
+    private static final int INSERT = 0;
+    private static final int UPDATE = 1;
+    private static final int DELETE = 2;
+
+    private static class Op {
+        final int type;
+        final String table;
+        final long id;
+        final ContentValues values;
+        final String where;
+
+        Op(int type, String table, long id, ContentValues values, String where) {
+            this.type = type;
+            this.table = table;
+            this.id = id;
+            this.values = values;
+            this.where = where;
+        }
+    }
+
+    private final ArrayList<Op> mOps = new ArrayList<>();
+
+    /**
+     * Inserts a row, {@param values} must contain its id.
+     */
+    public ModelWriteBatch insert(String table, ContentValues values) {
+        if (!values.containsKey(LauncherSettings.ChangeLogColumns._ID)) {
+            throw new RuntimeException("Error: attempting to add item without specifying an id");
+        }
+        mOps.add(new Op(INSERT, table, 0, values, null));
+        return this;
+    }
+
+    public ModelWriteBatch update(String table, long id, ContentValues values) {
+        mOps.add(new Op(UPDATE, table, id, values, null));
+        return this;
+    }
+
+    public ModelWriteBatch delete(String table, long id) {
+        mOps.add(new Op(DELETE, table, id, null, null));
+        return this;
+    }
+
+    /**
+     * Deletes the rows matching {@param where}, or all the rows of the table if it is null.
+     */
+    public ModelWriteBatch delete(String table, String where) {
+        mOps.add(new Op(DELETE, table, -1, null, where));
+        return this;
+    }
+
+    public int size() {
+        return mOps.size();
+    }
+
+    /**
+     * Applies the batch through the launcher provider.
+     */
+    public void commit(Context context) throws RemoteException, OperationApplicationException {
+        if (mOps.isEmpty()) {
+            return;
+        }
+        ContentProviderClient client = context.getContentResolver()
+                .acquireContentProviderClient(LauncherProvider.AUTHORITY);
+        try {
+            if (client.getLocalContentProvider() instanceof LauncherProvider) {
+                ((LauncherProvider) client.getLocalContentProvider()).applyModelBatch(this);
+            } else {
+                client.applyBatch(toOperations());
+            }
+        } finally {
+            client.release();
+        }
+    }
+
+    /**
+     * Writes all the rows to {@param db}, which must be in a transaction.
+     *
+     * @return the number of rows changed.
+     */
+    public int applyTo(SQLiteDatabase db, DatabaseHelper helper,
+            SQLiteStatementCache statements) {
+        int count = 0;
+        long now = System.currentTimeMillis();
+        StringBuilder sql = new StringBuilder();
+        ArrayList<String> columns = new ArrayList<>();
+        for (Op op : mOps) {
+            SQLiteStatement statement;
+            sql.setLength(0);
+            if (op.type == DELETE) {
+                if (op.id >= 0) {
+                    sql.append("DELETE FROM ").append(op.table).append(" WHERE _id=?");
+                    statement = statements.get(db, sql.toString());
+                    statement.bindLong(1, op.id);
+                    count += statement.executeUpdateDelete();
+                } else {
+                    // The selections are not worth caching, as they differ every time.
+                    count += db.delete(op.table, op.where, null);
+                }
+                continue;
+            }
+
+            op.values.put(LauncherSettings.ChangeLogColumns.MODIFIED, now);
+            // Sort the columns so that the same set of columns always gives the same statement.
+            columns.clear();
+            columns.addAll(op.values.keySet());
+            Collections.sort(columns);
+            int columnCount = columns.size();
+            if (op.type == INSERT) {
+                sql.append("INSERT INTO ").append(op.table).append(" (");
+                for (int i = 0; i < columnCount; i++) {
+                    sql.append(i > 0 ? "," : "").append(columns.get(i));
+                }
+                sql.append(") VALUES (");
+                for (int i = 0; i < columnCount; i++) {
+                    sql.append(i > 0 ? ",?" : "?");
+                }
+                sql.append(')');
+            } else {
+                sql.append("UPDATE ").append(op.table).append(" SET ");
+                for (int i = 0; i < columnCount; i++) {
+                    sql.append(i > 0 ? "," : "").append(columns.get(i)).append("=?");
+                }
+                sql.append(" WHERE _id=?");
+            }
+            statement = statements.get(db, sql.toString());
+            for (int i = 0; i < columnCount; i++) {
+                DatabaseUtils.bindObjectToProgram(statement, i + 1, op.values.get(columns.get(i)));
+            }
+            if (op.type == INSERT) {
+                statement.executeInsert();
+                helper.checkId(op.table, op.values);
+                count++;
+            } else {
+                statement.bindLong(columnCount + 1, op.id);
+                count += statement.executeUpdateDelete();
+            }
+        }
+        return count;
+    }
+
+    private ArrayList<ContentProviderOperation> toOperations() {
+        ArrayList<ContentProviderOperation> ops = new ArrayList<>(mOps.size());
+        for (Op op : mOps) {
+            Uri uri = Uri.parse("content://" + LauncherProvider.AUTHORITY + "/" + op.table);
+            if (op.type == INSERT) {
+                ops.add(ContentProviderOperation.newInsert(uri).withValues(op.values).build());
+            } else if (op.type == UPDATE) {
+                ops.add(ContentProviderOperation.newUpdate(ContentUris.withAppendedId(uri, op.id))
+                        .withValues(op.values).build());
+            } else if (op.id >= 0) {
+                ops.add(ContentProviderOperation.newDelete(
+                        ContentUris.withAppendedId(uri, op.id)).build());
+            } else {
+                ops.add(ContentProviderOperation.newDelete(uri).withSelection(op.where, null)
+                        .build());
+            }
+        }
+        return ops;
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.launcher3.provider;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import java.util.HashMap;
+
+/**
+ * Compiled statements of a database, keyed by their SQL, so that repeated writes with the same
+ * table and columns only bind their arguments.
+ *
+ * Not thread safe, callers must synchronize on the cache.
+ */
+public class SQLiteStatementCache {
+
+    private final HashMap<String, SQLiteStatement> mStatements = new HashMap<>();
+    private SQLiteDatabase mDb;
+
+    /**
+     * @return the statement compiled for {@param sql} on {@param db}, with no bound arguments.
+     */
+    public SQLiteStatement get(SQLiteDatabase db, String sql) {
+        if (db != mDb) {
+            // The statements of the previous database can no longer be used.
+            close();
+            mDb = db;
+        }
+        SQLiteStatement statement = mStatements.get(sql);
+        if (statement == null) {
+            statement = db.compileStatement(sql);
+            mStatements.put(sql, statement);
+        } else {
+            statement.clearBindings();
+        }
+        return statement;
+    }
+
+    public void close() {
+        for (SQLiteStatement statement : mStatements.values()) {
+            statement.close();
+        }
+        mStatements.clear();
+        mDb = null;
+    }
+}
@@ -59,11 +59,13 @@ public class DeepShortcutManager {
 
     private final Context mContext;
     private final LauncherApps mLauncherApps;
+    private final ShortcutCache mShortcutCache;
     private boolean mWasLastCallSuccess;
 
     private DeepShortcutManager(Context context) {
         mContext = context;
         mLauncherApps = (LauncherApps) context.getSystemService(Context.LAUNCHER_APPS_SERVICE);
+        mShortcutCache = new ShortcutCache(context, this);
         if (Utilities.ATLEAST_MARSHMALLOW && !Utilities.ATLEAST_NOUGAT_MR1) {
             mWasLastCallSuccess = true;
         }
@@ -80,8 +82,11 @@ public class DeepShortcutManager {
         return mWasLastCallSuccess;
     }
 
-    public void onShortcutsChanged(List<ShortcutInfoCompat> shortcuts) {
-        // mShortcutCache.removeShortcuts(shortcuts);
+    /**
+     * Returns the cache of the shortcuts shown in the long-press container.
+     */
+    public ShortcutCache getShortcutCache() {
+        return mShortcutCache;
     }
 
     /**
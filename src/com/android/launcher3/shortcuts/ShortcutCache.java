@@ -16,58 +16,176 @@
 
 package com.android.launcher3.shortcuts;
 
-import android.annotation.TargetApi;
-import android.os.Build;
+import android.content.ComponentName;
+import android.content.Context;
+import android.graphics.Bitmap;
 import android.os.UserHandle;
 import android.util.ArrayMap;
 import android.util.LruCache;
+
+import com.android.launcher3.graphics.LauncherIcons;
+import com.android.launcher3.util.ComponentKey;
+import com.android.launcher3.util.MultiHashMap;
+import com.android.launcher3.util.PackageUserKey;
+import com.android.launcher3.util.Preconditions;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 
 /**
- * Loads {@link ShortcutInfoCompat}s on demand (e.g. when launcher
- * loads for pinned shortcuts and on long-press for dynamic shortcuts), and caches them
- * for handful of apps in an LruCache while launcher lives.
+ * Caches the shortcuts shown in the long-press container, along with their rendered icons, per
+ * package so that the container can be populated without any binder call or icon rendering.
+ *
+ * Entries are loaded on demand, or ahead of time for the apps which are the most likely to be
+ * long-pressed, and dropped whenever the shortcuts of their package change.
+ * All methods must be called on the worker thread.
  */
-@TargetApi(Build.VERSION_CODES.N)
 public class ShortcutCache {
-    private static final int CACHE_SIZE = 30; // Max number shortcuts we cache.
 
-    private final LruCache<ShortcutKey, ShortcutInfoCompat> mCachedShortcuts;
-    // We always keep pinned shortcuts in the cache.
-    private final ArrayMap<ShortcutKey, ShortcutInfoCompat> mPinnedShortcuts;
+    private final Context mContext;
+    private final DeepShortcutManager mShortcutManager;
+    private final LruCache<PackageUserKey, PackageEntry> mCache;
 
-    public ShortcutCache() {
-        mCachedShortcuts = new LruCache<>(CACHE_SIZE);
-        mPinnedShortcuts = new ArrayMap<>();
+    // Activities which are kept warm across invalidations.
+    private final HashSet<ComponentKey> mWarmActivities = new HashSet<>();
+
+    ShortcutCache(Context context, DeepShortcutManager shortcutManager) {
+        mContext = context;
+        mShortcutManager = shortcutManager;
+        // Rendered icons make up almost all of the size.
+        int maxBytes = (int) Math.min(Runtime.getRuntime().maxMemory() / 32, Integer.MAX_VALUE);
+        mCache = new LruCache<PackageUserKey, PackageEntry>(maxBytes) {
+            @Override
+            protected int sizeOf(PackageUserKey key, PackageEntry value) {
+                return value.byteCount;
+            }
+        };
     }
 
     /**
-     * Removes shortcuts from the cache when shortcuts change for a given package.
-     *
-     * Returns a map of ids to their evicted shortcuts.
-     *
-     * @see android.content.pm.LauncherApps.Callback#onShortcutsChanged(String, List, UserHandle).
+     * Returns the container shortcuts of {@param activity} matching {@param ids}, with their
+     * unbadged icons, loading and caching them if needed.
      */
-    public void removeShortcuts(List<ShortcutInfoCompat> shortcuts) {
-        for (ShortcutInfoCompat shortcut : shortcuts) {
-            ShortcutKey key = ShortcutKey.fromInfo(shortcut);
-            mCachedShortcuts.remove(key);
-            mPinnedShortcuts.remove(key);
+    public List<CachedShortcut> getShortcuts(ComponentName activity, List<String> ids,
+            UserHandle user) {
+        Preconditions.assertWorkerThread();
+        PackageUserKey key = new PackageUserKey(activity.getPackageName(), user);
+        PackageEntry entry = mCache.get(key);
+        ActivityEntry activityEntry = entry == null ? null : entry.activities.get(activity);
+        if (activityEntry != null && activityEntry.ids.equals(ids)) {
+            return activityEntry.shortcuts;
         }
+
+        List<ShortcutInfoCompat> details =
+                mShortcutManager.queryForShortcutsContainer(activity, ids, user);
+        if (!mShortcutManager.wasLastCallSuccess()) {
+            // Don't cache the result of a failed query.
+            return createShortcuts(details);
+        }
+        activityEntry = new ActivityEntry(new ArrayList<>(ids), createShortcuts(details));
+        mCache.put(key, new PackageEntry(entry, activity, activityEntry));
+        return activityEntry.shortcuts;
     }
 
-    public ShortcutInfoCompat get(ShortcutKey key) {
-        if (mPinnedShortcuts.containsKey(key)) {
-            return mPinnedShortcuts.get(key);
+    /**
+     * Loads the shortcuts of {@param activity} if they are not already cached, and keeps them
+     * loaded when the shortcuts of the package change.
+     */
+    public void prewarm(ComponentKey activity, List<String> ids) {
+        mWarmActivities.add(activity);
+        getShortcuts(activity.componentName, ids, activity.user);
+    }
+
+    /**
+     * Drops the cached shortcuts of the given package, and reloads the ones which were prewarmed
+     * based on the updated {@param deepShortcutMap}.
+     */
+    public void onShortcutsChanged(String packageName, UserHandle user,
+            MultiHashMap<ComponentKey, String> deepShortcutMap) {
+        Preconditions.assertWorkerThread();
+        mCache.remove(new PackageUserKey(packageName, user));
+
+        for (ComponentKey activity : new ArrayList<>(mWarmActivities)) {
+            if (!activity.componentName.getPackageName().equals(packageName)
+                    || !activity.user.equals(user)) {
+                continue;
+            }
+            List<String> ids = deepShortcutMap.get(activity);
+            if (ids == null || ids.isEmpty()) {
+                mWarmActivities.remove(activity);
+            } else {
+                getShortcuts(activity.componentName, ids, user);
+            }
         }
-        return mCachedShortcuts.get(key);
     }
 
-    public void put(ShortcutKey key, ShortcutInfoCompat shortcut) {
-        if (shortcut.isPinned()) {
-            mPinnedShortcuts.put(key, shortcut);
-        } else {
-            mCachedShortcuts.put(key, shortcut);
+    /**
+     * Drops all the cached shortcuts, e.g. when the model is reloaded.
+     */
+    public void clear() {
+        Preconditions.assertWorkerThread();
+        mCache.evictAll();
+        mWarmActivities.clear();
+    }
+
+    private List<CachedShortcut> createShortcuts(List<ShortcutInfoCompat> details) {
+        List<CachedShortcut> shortcuts = new ArrayList<>(details.size());
+        for (ShortcutInfoCompat detail : details) {
+            // Use unbadged icon for the menu.
+            shortcuts.add(new CachedShortcut(detail,
+                    LauncherIcons.createShortcutIcon(detail, mContext, false /* badged */)));
+        }
+        return Collections.unmodifiableList(shortcuts);
+    }
+
+    /**
+     * A shortcut with the icon to show in the long-press container.
+     */
+    public static class CachedShortcut {
+        public final ShortcutInfoCompat detail;
+        public final Bitmap icon;
+
+        CachedShortcut(ShortcutInfoCompat detail, Bitmap icon) {
+            this.detail = detail;
+            this.icon = icon;
+        }
+    }
+
+    private static class ActivityEntry {
+        final List<String> ids;
+        final List<CachedShortcut> shortcuts;
+        final int byteCount;
+
+        ActivityEntry(List<String> ids, List<CachedShortcut> shortcuts) {
+            this.ids = ids;
+            this.shortcuts = shortcuts;
+            int bytes = 0;
+            for (CachedShortcut shortcut : shortcuts) {
+                bytes += shortcut.icon == null ? 0 : shortcut.icon.getByteCount();
+            }
+            byteCount = bytes;
+        }
+    }
+
+    /**
+     * Immutable once created, so that its size stays consistent with the LruCache accounting.
+     */
+    private static class PackageEntry {
+        final ArrayMap<ComponentName, ActivityEntry> activities = new ArrayMap<>();
+        final int byteCount;
+
+        PackageEntry(PackageEntry previous, ComponentName activity, ActivityEntry entry) {
+            if (previous != null) {
+                activities.putAll(previous.activities);
+            }
+            activities.put(activity, entry);
+            int bytes = 0;
+            for (int i = 0; i < activities.size(); i++) {
+                bytes += activities.valueAt(i).byteCount;
+            }
+            byteCount = bytes;
         }
     }
 }
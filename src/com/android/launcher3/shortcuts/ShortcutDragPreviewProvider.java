@@ -25,6 +25,7 @@ import android.view.View;
 
 import com.android.launcher3.Launcher;
 import com.android.launcher3.Utilities;
+import com.android.launcher3.graphics.BitmapPool;
 import com.android.launcher3.graphics.DragPreviewProvider;
 import com.android.launcher3.graphics.HolographicOutlineHelper;
 
@@ -63,7 +64,7 @@ public class ShortcutDragPreviewProvider extends DragPreviewProvider {
 
         int size = Launcher.getLauncher(mView.getContext()).getDeviceProfile().iconSizePx;
 
-        final Bitmap b = Bitmap.createBitmap(
+        final Bitmap b = BitmapPool.getInstance().acquire(
                 size + blurSizeOutline,
                 size + blurSizeOutline,
                 config);
@@ -0,0 +1,346 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.launcher3.util;
+
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Central registry of the background threads used by the launcher.
+ *
+ * Every pool and looper thread has a name and a priority, and is listed by {@link #dump} along
+ * with its queue depth, active count, rejected tasks and latency histograms, so that contention
+ * between the different kinds of background work can be observed and the pools sized accordingly.
+ */
+public class ExecutorRegistry {
+
+    private static final int CPU_COUNT = Runtime.getRuntime().availableProcessors();
+
+    private static final ArrayList<MonitoredExecutor> sExecutors = new ArrayList<>();
+    private static final ArrayList<HandlerThread> sLooperThreads = new ArrayList<>();
+
+    /**
+     * Runs the tasks rejected by a full pool on the thread which submitted them, for work which
+     * can't be dropped. The submitting thread is slowed down until the pool catches up.
+     */
+    public static final RejectedExecutionHandler RUN_ON_CALLER = new CountingPolicy(false);
+
+    /**
+     * Drops the task which was queued the longest to make room for the rejected one, for work
+     * which is superseded by newer requests.
+     */
+    public static final RejectedExecutionHandler DISCARD_OLDEST = new CountingPolicy(true);
+
+    /**
+     * General purpose pool for short, independent tasks. Sized like {@link android.os.AsyncTask}.
+     */
+    public static final MonitoredExecutor BACKGROUND_EXECUTOR = newPool("launcher-background",
+            CPU_COUNT + 1, CPU_COUNT * 2 + 1, Process.THREAD_PRIORITY_BACKGROUND, 128,
+            RUN_ON_CALLER);
+
+    /**
+     * Pool for generating widget previews, which are costly and can be requested by the dozen
+     * while scrolling the widget tray. The oldest requests are for rows scrolled away long ago.
+     */
+    public static final MonitoredExecutor WIDGET_PREVIEW_EXECUTOR = newLifoPool("widget-preview",
+            2, Process.THREAD_PRIORITY_BACKGROUND, 64);
+
+    /**
+     * Pool for the asynchronous inflation of widget views, which is visible to the user and
+     * therefore runs at a higher priority than other background work. When it is full, widgets
+     * are inflated synchronously as without an executor.
+     */
+    public static final MonitoredExecutor WIDGET_INFLATION_EXECUTOR = newPool("widget-inflation",
+            CPU_COUNT, CPU_COUNT, Process.THREAD_PRIORITY_DEFAULT, 64, RUN_ON_CALLER);
+
+    /**
+     * Serial executor for switching icon packs, only the latest pending switches matter.
+     */
+    public static final MonitoredExecutor ICON_PACK_EXECUTOR = newPool("icon-pack",
+            1, 1, Process.THREAD_PRIORITY_BACKGROUND, 4, DISCARD_OLDEST);
+
+    /**
+     * Creates a pool whose queue holds at most {@param queueCapacity} tasks. As with any
+     * {@link ThreadPoolExecutor}, the pool only grows beyond {@param coreSize} threads when the
+     * queue is full, and the tasks submitted when it is full at {@param maxSize} threads are
+     * counted and handed to {@param rejectionPolicy}. Idle threads are released after a second,
+     * so rarely used pools don't hold on to threads.
+     */
+    public static MonitoredExecutor newPool(String name, int coreSize, int maxSize,
+            int priority, int queueCapacity, RejectedExecutionHandler rejectionPolicy) {
+        MonitoredExecutor executor = new MonitoredExecutor(name, coreSize, maxSize, priority,
+                new LinkedBlockingQueue<Runnable>(queueCapacity), rejectionPolicy);
+        synchronized (sExecutors) {
+            sExecutors.add(executor);
+        }
+        return executor;
+    }
+
+    /**
+     * Creates a pool which runs the most recently submitted task first, for work requested by
+     * views which may have been scrolled away by the time older tasks would run. When
+     * {@param queueCapacity} tasks are queued, the oldest one is dropped.
+     */
+    public static MonitoredExecutor newLifoPool(String name, int size, int priority,
+            int queueCapacity) {
+        MonitoredExecutor executor = new MonitoredExecutor(name, size, size, priority,
+                new LifoBlockingDeque(queueCapacity), DISCARD_OLDEST);
+        synchronized (sExecutors) {
+            sExecutors.add(executor);
+        }
+        return executor;
+    }
+
+    /**
+     * Creates and starts a looper thread which is listed in {@link #dump}.
+     */
+    public static HandlerThread newLooperThread(String name, int priority) {
+        HandlerThread thread = new HandlerThread(name, priority);
+        thread.start();
+        synchronized (sLooperThreads) {
+            // Forget the threads which have been quit since.
+            for (int i = sLooperThreads.size() - 1; i >= 0; i--) {
+                if (sLooperThreads.get(i).getState() == Thread.State.TERMINATED) {
+                    sLooperThreads.remove(i);
+                }
+            }
+            sLooperThreads.add(thread);
+        }
+        return thread;
+    }
+
+    /**
+     * Returns the looper of the registered looper thread with the given name, starting the thread
+     * if needed. Allows components with a short lifecycle, like services, to share one thread.
+     */
+    public static Looper getSharedLooper(String name, int priority) {
+        synchronized (sLooperThreads) {
+            for (HandlerThread thread : sLooperThreads) {
+                if (thread.getName().equals(name)
+                        && thread.getState() != Thread.State.TERMINATED) {
+                    return thread.getLooper();
+                }
+            }
+            // Started under the lock, so that concurrent callers share the same thread.
+            return newLooperThread(name, priority).getLooper();
+        }
+    }
+
+    public static void dump(String prefix, PrintWriter writer) {
+        writer.println(prefix + "Executors:");
+        synchronized (sExecutors) {
+            for (MonitoredExecutor executor : sExecutors) {
+                executor.dump(prefix + "  ", writer);
+            }
+        }
+        writer.println(prefix + "Looper threads:");
+        synchronized (sLooperThreads) {
+            for (HandlerThread thread : sLooperThreads) {
+                int tid = thread.getThreadId();
+                writer.println(prefix + "  " + thread.getName() + " tid=" + tid
+                        + " priority=" + (tid == -1 ? "?" : Process.getThreadPriority(tid))
+                        + " state=" + thread.getState());
+            }
+        }
+    }
+
+    /**
+     * A {@link ThreadPoolExecutor} which records how long tasks wait in the queue and how long
+     * they run.
+     */
+    public static class MonitoredExecutor extends ThreadPoolExecutor {
+
+        private final String mName;
+        private final AtomicInteger mRejectedCount = new AtomicInteger();
+        private final LatencyHistogram mWaitTimes = new LatencyHistogram();
+        private final LatencyHistogram mRunTimes = new LatencyHistogram();
+
+        MonitoredExecutor(String name, int coreSize, int maxSize, int priority,
+                BlockingQueue<Runnable> queue, RejectedExecutionHandler rejectionPolicy) {
+            super(coreSize, maxSize, 1, TimeUnit.SECONDS, queue,
+                    new PriorityThreadFactory(name, priority), rejectionPolicy);
+            mName = name;
+            allowCoreThreadTimeOut(true);
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            // Tasks resubmitted by the rejection policy are already timed.
+            super.execute(command instanceof TimedRunnable ? command : new TimedRunnable(command));
+        }
+
+        /**
+         * Returns the number of tasks submitted while the pool was full, or shut down.
+         */
+        public int getRejectedCount() {
+            return mRejectedCount.get();
+        }
+
+        public String getName() {
+            return mName;
+        }
+
+        @Override
+        protected void terminated() {
+            super.terminated();
+            // Pools which have been shut down are no longer listed in the dump.
+            synchronized (sExecutors) {
+                sExecutors.remove(this);
+            }
+        }
+
+        void dump(String prefix, PrintWriter writer) {
+            writer.println(prefix + mName + ": poolSize=" + getPoolSize()
+                    + " max=" + getMaximumPoolSize()
+                    + " active=" + getActiveCount()
+                    + " queued=" + getQueue().size()
+                    + " completed=" + getCompletedTaskCount()
+                    + " rejected=" + mRejectedCount.get());
+            writer.println(prefix + "  wait " + mWaitTimes);
+            writer.println(prefix + "  run  " + mRunTimes);
+        }
+
+        private class TimedRunnable implements Runnable {
+            private final Runnable mTask;
+            private final long mEnqueueTime = SystemClock.uptimeMillis();
+
+            TimedRunnable(Runnable task) {
+                mTask = task;
+            }
+
+            @Override
+            public void run() {
+                long start = SystemClock.uptimeMillis();
+                mWaitTimes.add(start - mEnqueueTime);
+                try {
+                    mTask.run();
+                } finally {
+                    mRunTimes.add(SystemClock.uptimeMillis() - start);
+                }
+            }
+        }
+    }
+
+    /**
+     * Queue which hands out the last added task first. {@link ThreadPoolExecutor} only adds tasks
+     * with {@link #offer} and takes them from the head.
+     */
+    private static class LifoBlockingDeque extends LinkedBlockingDeque<Runnable> {
+        LifoBlockingDeque(int capacity) {
+            super(capacity);
+        }
+
+        @Override
+        public boolean offer(Runnable r) {
+            return offerFirst(r);
+        }
+    }
+
+    private static class CountingPolicy implements RejectedExecutionHandler {
+        private final boolean mDiscardOldest;
+
+        CountingPolicy(boolean discardOldest) {
+            mDiscardOldest = discardOldest;
+        }
+
+        @Override
+        public void rejectedExecution(Runnable r, ThreadPoolExecutor e) {
+            ((MonitoredExecutor) e).mRejectedCount.incrementAndGet();
+            if (e.isShutdown()) {
+                // As the standard policies, the tasks submitted after a shutdown are dropped.
+                return;
+            }
+            if (!mDiscardOldest) {
+                r.run();
+                return;
+            }
+            BlockingQueue<Runnable> queue = e.getQueue();
+            if (queue instanceof LifoBlockingDeque) {
+                // The head of the queue is the latest task.
+                ((LifoBlockingDeque) queue).pollLast();
+            } else {
+                queue.poll();
+            }
+            e.execute(r);
+        }
+    }
+
+    private static class PriorityThreadFactory implements ThreadFactory {
+        private final String mName;
+        private final int mPriority;
+        private final AtomicInteger mCount = new AtomicInteger(1);
+
+        PriorityThreadFactory(String name, int priority) {
+            mName = name;
+            mPriority = priority;
+        }
+
+        @Override
+        public Thread newThread(final Runnable r) {
+            return new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Process.setThreadPriority(mPriority);
+                    r.run();
+                }
+            }, mName + "-" + mCount.getAndIncrement());
+        }
+    }
+
+    /**
+     * Counts durations in power-of-four millisecond buckets, from under 1ms to over a second.
+     */
+    static class LatencyHistogram {
+        private static final long[] BUCKET_LIMITS_MS = {1, 4, 16, 64, 256, 1024};
+
+        private final long[] mCounts = new long[BUCKET_LIMITS_MS.length + 1];
+        private long mMaxMs;
+
+        synchronized void add(long durationMs) {
+            int bucket = 0;
+            while (bucket < BUCKET_LIMITS_MS.length && durationMs >= BUCKET_LIMITS_MS[bucket]) {
+                bucket++;
+            }
+            mCounts[bucket]++;
+            mMaxMs = Math.max(mMaxMs, durationMs);
+        }
+
+        @Override
+        public synchronized String toString() {
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < mCounts.length; i++) {
+                sb.append(i < BUCKET_LIMITS_MS.length ? "<" + BUCKET_LIMITS_MS[i]
+                        : ">=" + BUCKET_LIMITS_MS[i - 1]).append("ms=").append(mCounts[i])
+                        .append(' ');
+            }
+            return sb.append("max=").append(mMaxMs).append("ms").toString();
+        }
+    }
+}
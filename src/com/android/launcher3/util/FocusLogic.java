@@ -16,6 +16,7 @@
 
 package com.android.launcher3.util;
 
+import android.support.annotation.VisibleForTesting;
 import android.util.Log;
 import android.view.KeyEvent;
 import android.view.View;
@@ -71,6 +72,12 @@ public class FocusLogic {
     public static final int EMPTY = -1;
     public static final int PIVOT = 100;
 
+    // Buffers of the matrices which are only used for a single key event. They are reused as long
+    // as the grid size does not change, which is the case across the pages of the workspace.
+    // Only accessed from the main thread.
+    private static int[][] sHotseatMatrix;
+    private static int[][] sPivotMatrix;
+
     /**
      * Returns true only if this utility class handles the key code.
      */
@@ -145,10 +152,14 @@ public class FocusLogic {
      *
      * @param m                 number of columns in the matrix
      * @param n                 number of rows in the matrix
+     * @param reuse             matrix returned if it has the same size, or null
      */
-    // TODO: get rid of dynamic matrix creation.
-    private static int[][] createFullMatrix(int m, int n) {
-        int[][] matrix = new int [m][n];
+    @VisibleForTesting
+    static int[][] obtainFullMatrix(int m, int n, int[][] reuse) {
+        int[][] matrix = reuse;
+        if (matrix == null || matrix.length != m || (m > 0 && matrix[0].length != n)) {
+            matrix = new int [m][n];
+        }
 
         for (int i=0; i < m;i++) {
             Arrays.fill(matrix[i], EMPTY);
@@ -159,15 +170,21 @@ public class FocusLogic {
     /**
      * Returns a matrix of size same as the {@link CellLayout} dimension that is initialized with the
      * index of the child view.
+     *
+     * The matrix is cached by the layout until its children change, see
+     * {@link CellLayout#invalidateFocusMatrix()}, and must not be modified.
      */
-    // TODO: get rid of the dynamic matrix creation
     public static int[][] createSparseMatrix(CellLayout layout) {
+        if (layout.isFocusMatrixValid()) {
+            return layout.getFocusMatrix();
+        }
+
         ShortcutAndWidgetContainer parent = layout.getShortcutsAndWidgets();
         final int m = layout.getCountX();
         final int n = layout.getCountY();
         final boolean invert = parent.invertLayoutHorizontally();
 
-        int[][] matrix = createFullMatrix(m, n);
+        int[][] matrix = obtainFullMatrix(m, n, layout.getFocusMatrix());
 
         // Iterate thru the children.
         for (int i = 0; i < parent.getChildCount(); i++ ) {
@@ -179,6 +196,7 @@ public class FocusLogic {
             int cy = ((CellLayout.LayoutParams) cell.getLayoutParams()).cellY;
             matrix[invert ? (m - cx - 1) : cx][cy] = i;
         }
+        layout.setFocusMatrix(matrix);
         if (DEBUG) {
             printMatrix(matrix);
         }
@@ -189,8 +207,9 @@ public class FocusLogic {
      * Creates a sparse matrix that merges the icon and hotseat view group using the cell layout.
      * The size of the returning matrix is [icon column count x (icon + hotseat row count)]
      * in portrait orientation. In landscape, [(icon + hotseat) column count x (icon row count)]
+     *
+     * The returned matrix is only valid until the next call.
      */
-    // TODO: get rid of the dynamic matrix creation
     public static int[][] createSparseMatrixWithHotseat(
             CellLayout iconLayout, CellLayout hotseatLayout, DeviceProfile dp) {
 
@@ -211,7 +230,7 @@ public class FocusLogic {
             m = iconLayout.getCountX() + hotseatLayout.getCountX();
             n = hotseatLayout.getCountY();
         }
-        int[][] matrix = createFullMatrix(m, n);
+        int[][] matrix = sHotseatMatrix = obtainFullMatrix(m, n, sHotseatMatrix);
         if (moreIconsInHotseatThanWorkspace) {
             int allappsiconRank = dp.inv.getAllAppsButtonRank();
             if (isHotseatHorizontal) {
@@ -273,14 +292,16 @@ public class FocusLogic {
      *
      * @param pivotX    x coordinate of the focused item in the current page
      * @param pivotY    y coordinate of the focused item in the current page
+     *
+     * The returned matrix is only valid until the next call.
      */
-    // TODO: get rid of the dynamic matrix creation
     public static int[][] createSparseMatrixWithPivotColumn(CellLayout iconLayout,
             int pivotX, int pivotY) {
 
         ViewGroup iconParent = iconLayout.getShortcutsAndWidgets();
 
-        int[][] matrix = createFullMatrix(iconLayout.getCountX() + 1, iconLayout.getCountY());
+        int[][] matrix = sPivotMatrix = obtainFullMatrix(
+                iconLayout.getCountX() + 1, iconLayout.getCountY(), sPivotMatrix);
 
         // Iterate thru the children of the top parent.
         for (int i = 0; i < iconParent.getChildCount(); i++) {
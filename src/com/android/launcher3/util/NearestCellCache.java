@@ -0,0 +1,98 @@
+package com.android.launcher3.util;
+
+/**
+ * Finds the cell of a grid whose center is nearest to a point, remembering the last result with
+ * the range of points for which it does not change, so that the small moves of a drag within a
+ * cell do not search the grid again.
+ *
+ * The result is the same as the search of CellLayout#findNearestArea when it does not ignore the
+ * occupied cells: the nearest center by euclidean distance, the last one in row-major order for
+ * equal distances, or -1, -1 if the grid is empty.
+ */
+public class NearestCellCache {
+
+    private int mOriginX;
+    private int mOriginY;
+    private int mCellWidth;
+    private int mCellHeight;
+    private int mColumns;
+    private int mRows;
+
+    private boolean mValid = false;
+    private int mCellX;
+    private int mCellY;
+    // Bounds of the points for which the last cell is the nearest, exclusive and doubled so that
+    // they are integers.
+    private long mMinX2;
+    private long mMaxX2;
+    private long mMinY2;
+    private long mMaxY2;
+
+    private int mSearchCount;
+
+    /**
+     * Sets the grid to search, whose cell centers are at
+     * ({@param originX} + x * {@param cellWidth}, {@param originY} + y * {@param cellHeight})
+     * for x in [0, {@param columns}) and y in [0, {@param rows}).
+     */
+    public void setGrid(int originX, int originY, int cellWidth, int cellHeight,
+            int columns, int rows) {
+        if (originX != mOriginX || originY != mOriginY || cellWidth != mCellWidth
+                || cellHeight != mCellHeight || columns != mColumns || rows != mRows) {
+            mOriginX = originX;
+            mOriginY = originY;
+            mCellWidth = cellWidth;
+            mCellHeight = cellHeight;
+            mColumns = columns;
+            mRows = rows;
+            mValid = false;
+        }
+    }
+
+    public int[] findNearestCell(int pixelX, int pixelY, int[] result) {
+        long x2 = 2L * pixelX;
+        long y2 = 2L * pixelY;
+        if (!mValid || x2 <= mMinX2 || x2 >= mMaxX2 || y2 <= mMinY2 || y2 >= mMaxY2) {
+            search(pixelX, pixelY);
+        }
+        result[0] = mCellX;
+        result[1] = mCellY;
+        return result;
+    }
+
+    /**
+     * Returns the number of times the grid was searched.
+     */
+    public int getSearchCount() {
+        return mSearchCount;
+    }
+
+    private void search(int pixelX, int pixelY) {
+        mSearchCount++;
+        double bestDistance = Double.MAX_VALUE;
+        mCellX = mCellY = -1;
+        for (int y = 0; y < mRows; y++) {
+            for (int x = 0; x < mColumns; x++) {
+                double distance = Math.hypot(mOriginX + x * mCellWidth - pixelX,
+                        mOriginY + y * mCellHeight - pixelY);
+                if (distance <= bestDistance) {
+                    bestDistance = distance;
+                    mCellX = x;
+                    mCellY = y;
+                }
+            }
+        }
+
+        // The centers form a regular grid, so the nearest one is the nearest column and row. It
+        // stays the same for the points strictly between the midpoints to the neighbor centers.
+        mValid = mCellX >= 0 && mCellWidth > 0 && mCellHeight > 0;
+        if (mValid) {
+            long centerX2 = 2L * (mOriginX + mCellX * mCellWidth);
+            long centerY2 = 2L * (mOriginY + mCellY * mCellHeight);
+            mMinX2 = mCellX > 0 ? centerX2 - mCellWidth : Long.MIN_VALUE;
+            mMaxX2 = mCellX < mColumns - 1 ? centerX2 + mCellWidth : Long.MAX_VALUE;
+            mMinY2 = mCellY > 0 ? centerY2 - mCellHeight : Long.MIN_VALUE;
+            mMaxY2 = mCellY < mRows - 1 ? centerY2 + mCellHeight : Long.MAX_VALUE;
+        }
+    }
+}
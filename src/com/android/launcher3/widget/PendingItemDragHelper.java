@@ -35,6 +35,7 @@ import com.android.launcher3.R;
 import com.android.launcher3.Workspace;
 import com.android.launcher3.dragndrop.DragOptions;
 import com.android.launcher3.dragndrop.LivePreviewWidgetCell;
+import com.android.launcher3.graphics.BitmapPool;
 import com.android.launcher3.graphics.DragPreviewProvider;
 import com.android.launcher3.graphics.HolographicOutlineHelper;
 import com.android.launcher3.graphics.LauncherIcons;
@@ -161,8 +162,8 @@ public class PendingItemDragHelper extends DragPreviewProvider {
         if (mAddInfo instanceof PendingAddShortcutInfo) {
             int width = mPreviewBitmap.getWidth();
             int height = mPreviewBitmap.getHeight();
-            Bitmap b = Bitmap.createBitmap(width + blurSizeOutline, height + blurSizeOutline,
-                    Bitmap.Config.ALPHA_8);
+            Bitmap b = BitmapPool.getInstance().acquire(width + blurSizeOutline,
+                    height + blurSizeOutline, Bitmap.Config.ALPHA_8);
             canvas.setBitmap(b);
 
             Launcher launcher = Launcher.getLauncher(mView.getContext());
@@ -185,7 +186,7 @@ public class PendingItemDragHelper extends DragPreviewProvider {
 
         int w = size[0];
         int h = size[1];
-        final Bitmap b = Bitmap.createBitmap(w, h, Bitmap.Config.ALPHA_8);
+        final Bitmap b = BitmapPool.getInstance().acquire(w, h, Bitmap.Config.ALPHA_8);
         canvas.setBitmap(b);
 
         Rect src = new Rect(0, 0, mPreviewBitmap.getWidth(), mPreviewBitmap.getHeight());
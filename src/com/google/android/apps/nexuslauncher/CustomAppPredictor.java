@@ -5,6 +5,7 @@ import android.content.Context;
 import android.content.Intent;
 import android.content.SharedPreferences;
 import android.content.pm.PackageManager;
+import android.os.Handler;
 import android.os.Process;
 import android.os.UserHandle;
 import android.util.Log;
@@ -13,6 +14,7 @@ import android.view.ViewParent;
 
 import com.android.launcher3.AppFilter;
 import com.android.launcher3.AppInfo;
+import com.android.launcher3.LauncherModel;
 import com.android.launcher3.Utilities;
 import com.android.launcher3.allapps.AllAppsContainerView;
 import com.android.launcher3.logging.UserEventDispatcher;
@@ -20,22 +22,21 @@ import com.android.launcher3.util.ComponentKey;
 import com.android.launcher3.util.ComponentKeyMapper;
 
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
 public class CustomAppPredictor extends UserEventDispatcher implements SharedPreferences.OnSharedPreferenceChangeListener {
     private static final int MAX_PREDICTIONS = 10;
     private static final int BOOST_ON_OPEN = 9;
+    private static final String PREDICTION_FILE = "app_predictions.bin";
+    // The launch counts used to be kept in the prefs, they are only read to be moved to the file.
     private static final String PREDICTION_SET = "pref_prediction_set";
     private static final String PREDICTION_PREFIX = "pref_prediction_count_";
-    private static final Set<String> EMPTY_SET = new HashSet<>();
     private final Context mContext;
     private final AppFilter mAppFilter;
     private final SharedPreferences mPrefs;
     private final PackageManager mPackageManager;
+    private final LaunchCountStore mLaunchCounts;
 
     private final static String[] PLACE_HOLDERS = new String[] {
             "com.google.android.apps.photos",
@@ -76,6 +77,25 @@ public class CustomAppPredictor extends UserEventDispatcher implements SharedPre
         mPrefs = Utilities.getPrefs(context);
         mPrefs.registerOnSharedPreferenceChangeListener(this);
         mPackageManager = context.getPackageManager();
+        mLaunchCounts = new LaunchCountStore(context, PREDICTION_FILE, MAX_PREDICTIONS,
+                BOOST_ON_OPEN, new Handler(LauncherModel.getWorkerLooper()));
+        if (!mLaunchCounts.load()) {
+            migrateFromPrefs();
+        }
+    }
+
+    private void migrateFromPrefs() {
+        Set<String> predictionSet = mPrefs.getStringSet(PREDICTION_SET, null);
+        if (predictionSet == null) {
+            return;
+        }
+        SharedPreferences.Editor edit = mPrefs.edit();
+        for (String prediction : predictionSet) {
+            mLaunchCounts.add(prediction, mPrefs.getInt(PREDICTION_PREFIX + prediction, 0));
+            edit.remove(PREDICTION_PREFIX + prediction);
+        }
+        edit.remove(PREDICTION_SET);
+        edit.apply();
     }
 
     List<ComponentKeyMapper<AppInfo>> getPredictions() {
@@ -83,14 +103,7 @@ public class CustomAppPredictor extends UserEventDispatcher implements SharedPre
         if (isPredictorEnabled()) {
             clearNonExistentPackages();
 
-            List<String> predictionList = new ArrayList<>(getStringSetCopy());
-
-            Collections.sort(predictionList, new Comparator<String>() {
-                @Override
-                public int compare(String o1, String o2) {
-                    return Integer.compare(getLaunchCount(o2), getLaunchCount(o1));
-                }
-            });
+            List<String> predictionList = mLaunchCounts.getRanking();
 
             for (String prediction : predictionList) {
                 list.add(getComponentFromString(prediction));
@@ -125,51 +138,11 @@ public class CustomAppPredictor extends UserEventDispatcher implements SharedPre
             ComponentName componentInfo = intent.getComponent();
             if (componentInfo != null && mAppFilter.shouldShowApp(componentInfo, user)) {
                 clearNonExistentPackages();
-                
-                Set<String> predictionSet = getStringSetCopy();
-                SharedPreferences.Editor edit = mPrefs.edit();
-
-                String prediction = new ComponentKey(componentInfo, user).toString();
-                if (predictionSet.contains(prediction)) {
-                    edit.putInt(PREDICTION_PREFIX + prediction, getLaunchCount(prediction) + BOOST_ON_OPEN);
-                } else if (predictionSet.size() < MAX_PREDICTIONS || decayHasSpotFree(predictionSet, edit)) {
-                    predictionSet.add(prediction);
-                }
-
-                edit.putStringSet(PREDICTION_SET, predictionSet);
-                edit.apply();
+                mLaunchCounts.onLaunch(new ComponentKey(componentInfo, user).toString());
             }
         }
     }
 
-    private boolean decayHasSpotFree(Set<String> toDecay, SharedPreferences.Editor edit) {
-        boolean spotFree = false;
-        Set<String> toRemove = new HashSet<>();
-        for (String prediction : toDecay) {
-            int launchCount = getLaunchCount(prediction);
-            if (launchCount > 0) {
-                edit.putInt(PREDICTION_PREFIX + prediction, --launchCount);
-            } else if (!spotFree) {
-                edit.remove(PREDICTION_PREFIX + prediction);
-                toRemove.add(prediction);
-                spotFree = true;
-            }
-        }
-        for (String prediction : toRemove) {
-            toDecay.remove(prediction);
-        }
-        return spotFree;
-    }
-
-    /**
-     * Zero-based launch count of a shortcut
-     * @param component serialized component
-     * @return the number of launches, at least zero
-     */
-    private int getLaunchCount(String component) {
-        return mPrefs.getInt(PREDICTION_PREFIX + component, 0);
-    }
-
     private boolean recursiveIsDrawer(View v) {
         if (v != null) {
             ViewParent parent = v.getParent();
@@ -190,15 +163,11 @@ public class CustomAppPredictor extends UserEventDispatcher implements SharedPre
     @Override
     public void onSharedPreferenceChanged(SharedPreferences sharedPreferences, String key) {
         if (key.equals(SettingsActivity.SHOW_PREDICTIONS_PREF) && !isPredictorEnabled()) {
-            Set<String> predictionSet = getStringSetCopy();
-
-            SharedPreferences.Editor edit = mPrefs.edit();
-            for (String prediction : predictionSet) {
-                Log.i("Predictor", "Clearing " + prediction + " at " + getLaunchCount(prediction));
-                edit.remove(PREDICTION_PREFIX + prediction);
+            for (String prediction : mLaunchCounts.getKeys()) {
+                Log.i("Predictor", "Clearing " + prediction + " at "
+                        + mLaunchCounts.getLaunchCount(prediction));
             }
-            edit.putStringSet(PREDICTION_SET, EMPTY_SET);
-            edit.apply();
+            mLaunchCounts.clear();
         }
     }
 
@@ -207,26 +176,12 @@ public class CustomAppPredictor extends UserEventDispatcher implements SharedPre
     }
 
     private void clearNonExistentPackages() {
-        Set<String> originalSet = mPrefs.getStringSet(PREDICTION_SET, EMPTY_SET);
-        Set<String> predictionSet = new HashSet<>(originalSet);
-
-        SharedPreferences.Editor edit = mPrefs.edit();
-        for (String prediction : originalSet) {
+        for (String prediction : mLaunchCounts.getKeys()) {
             try {
                 mPackageManager.getPackageInfo(new ComponentKey(mContext, prediction).componentName.getPackageName(), 0);
             } catch (PackageManager.NameNotFoundException e) {
-                predictionSet.remove(prediction);
-                edit.remove(PREDICTION_PREFIX + prediction);
+                mLaunchCounts.remove(prediction);
             }
         }
-
-        edit.putStringSet(PREDICTION_SET, predictionSet);
-        edit.apply();
-    }
-
-    private Set<String> getStringSetCopy() {
-        Set<String> set = new HashSet<>();
-        set.addAll(mPrefs.getStringSet(PREDICTION_SET, EMPTY_SET));
-        return set;
     }
 }
@@ -10,6 +10,7 @@ import android.os.Handler;
 import android.os.Process;
 
 import com.android.launcher3.FastBitmapDrawable;
+import com.android.launcher3.IconPackModel;
 import com.android.launcher3.ItemInfo;
 import com.android.launcher3.LauncherModel;
 import com.android.launcher3.LauncherSettings;
@@ -19,7 +20,7 @@ import com.android.launcher3.util.LooperExecutor;
 import com.google.android.apps.nexuslauncher.clock.CustomClock;
 import com.google.android.apps.nexuslauncher.utils.ActionIntentFilter;
 
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.Map;
 import java.util.concurrent.Semaphore;
 
@@ -29,9 +30,10 @@ public class CustomDrawableFactory extends DynamicDrawableFactory implements Run
     private boolean mRegistered = false;
 
     String iconPack;
-    final Map<ComponentName, Integer> packComponents = new HashMap<>();
-    final Map<ComponentName, String> packCalendars = new HashMap<>();
-    final Map<Integer, CustomClock.Metadata> packClocks = new HashMap<>();
+    // Views on the shared IconPackModel of the current pack, replaced as a whole on reload.
+    Map<ComponentName, Integer> packComponents = Collections.emptyMap();
+    Map<ComponentName, String> packCalendars = Collections.emptyMap();
+    Map<Integer, CustomClock.Metadata> packClocks = Collections.emptyMap();
 
     private CustomClock mCustomClockDrawer;
     private Semaphore waiter = new Semaphore(0);
@@ -43,6 +45,7 @@ public class CustomDrawableFactory extends DynamicDrawableFactory implements Run
         mAutoUpdatePack = new BroadcastReceiver() {
             @Override
             public void onReceive(Context context, Intent intent) {
+                IconPackModel.invalidate(iconPack);
                 if (!CustomIconUtils.usingValidPack(context)) {
                     CustomIconUtils.setCurrentPack(context, "");
                 }
@@ -76,11 +79,17 @@ public class CustomDrawableFactory extends DynamicDrawableFactory implements Run
             mRegistered = true;
         }
 
-        packComponents.clear();
-        packCalendars.clear();
-        packClocks.clear();
-        if (CustomIconUtils.usingValidPack(mContext)) {
-            CustomIconUtils.parsePack(this, mContext.getPackageManager(), iconPack);
+        IconPackModel model = CustomIconUtils.usingValidPack(mContext)
+                ? IconPackModel.get(mContext.getPackageManager(), iconPack)
+                : null;
+        if (model != null) {
+            packComponents = model.components;
+            packCalendars = model.calendars;
+            packClocks = model.clocks;
+        } else {
+            packComponents = Collections.emptyMap();
+            packCalendars = Collections.emptyMap();
+            packClocks = Collections.emptyMap();
         }
     }
 
@@ -0,0 +1,302 @@
+package com.google.android.apps.nexuslauncher;
+
+import android.content.Context;
+import android.os.Handler;
+import android.support.annotation.VisibleForTesting;
+import android.util.AtomicFile;
+import android.util.Log;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Launch counts of a bounded set of apps, ranked in memory and persisted in a binary file.
+ *
+ * Launching a tracked app boosts its count. Launching an untracked app while the store is full
+ * decays the count of every tracked app by one, and replaces the least recently launched app
+ * whose count was already zero, if any. The decay is lazy: each app keeps the number of decays
+ * after which its count is zero, so a launch only updates the launched app.
+ *
+ * The file is read at most once per process. Writes are persisted atomically on the provided
+ * handler, coalescing updates that arrive within {@link #WRITE_DELAY_MS}.
+ */
+public class LaunchCountStore {
+    private static final String TAG = "LaunchCountStore";
+    private static final long WRITE_DELAY_MS = 500;
+    private static final int VERSION = 1;
+
+    private final AtomicFile mFile;
+    private final String mName;
+    private final Handler mWriteHandler;
+    private final int mCapacity;
+    private final int mBoost;
+
+    private final Runnable mWriteRunnable = new Runnable() {
+        @Override
+        public void run() {
+            writeToDisk();
+        }
+    };
+
+    // The apps sorted by ascending expiry, the number of decays after which their count is zero.
+    private final String[] mKeys;
+    private final long[] mExpiries;
+    private final long[] mLastLaunches;
+    private int mSize;
+    private long mDecayCount;
+    private long mLaunchCount;
+
+    private boolean mWritePending = false;
+    private boolean mLoaded = false;
+
+    /**
+     * @param capacity the maximum number of tracked apps.
+     * @param boost the increase of the count of a tracked app when it is launched.
+     */
+    public LaunchCountStore(Context context, String name, int capacity, int boost,
+            Handler writeHandler) {
+        mFile = new AtomicFile(context.getApplicationContext().getFileStreamPath(name));
+        mName = name;
+        mWriteHandler = writeHandler;
+        mCapacity = capacity;
+        mBoost = boost;
+        mKeys = new String[capacity];
+        mExpiries = new long[capacity];
+        mLastLaunches = new long[capacity];
+    }
+
+    /**
+     * Returns false if there was no stored file.
+     */
+    public synchronized boolean load() {
+        if (!mLoaded) {
+            mLoaded = true;
+            return readFromDisk();
+        }
+        return true;
+    }
+
+    public synchronized void onLaunch(String key) {
+        load();
+        mLaunchCount++;
+        int index = indexOf(key);
+        if (index >= 0) {
+            long count = getCount(index) + mBoost;
+            removeAt(index);
+            insert(key, mDecayCount + count, mLaunchCount);
+        } else if (mSize < mCapacity) {
+            insert(key, mDecayCount, mLaunchCount);
+        } else {
+            int evicted = findEvictable();
+            if (evicted >= 0) {
+                removeAt(evicted);
+            }
+            mDecayCount++;
+            if (evicted >= 0) {
+                insert(key, mDecayCount, mLaunchCount);
+            }
+        }
+        scheduleWrite();
+    }
+
+    /**
+     * Adds an app with the given count, if it is not tracked and the store is not full.
+     */
+    public synchronized void add(String key, int count) {
+        load();
+        if (indexOf(key) < 0 && mSize < mCapacity) {
+            insert(key, mDecayCount + Math.max(count, 0), ++mLaunchCount);
+            scheduleWrite();
+        }
+    }
+
+    public synchronized void remove(String key) {
+        load();
+        int index = indexOf(key);
+        if (index >= 0) {
+            removeAt(index);
+            scheduleWrite();
+        }
+    }
+
+    public synchronized void clear() {
+        mLoaded = true;
+        Arrays.fill(mKeys, null);
+        mSize = 0;
+        mDecayCount = mLaunchCount = 0;
+        scheduleWrite();
+    }
+
+    /**
+     * Returns the launch count of an app, zero if it is not tracked.
+     */
+    public synchronized int getLaunchCount(String key) {
+        load();
+        int index = indexOf(key);
+        return index >= 0 ? (int) getCount(index) : 0;
+    }
+
+    public synchronized List<String> getKeys() {
+        load();
+        ArrayList<String> keys = new ArrayList<>(mSize);
+        Collections.addAll(keys, Arrays.copyOf(mKeys, mSize));
+        return keys;
+    }
+
+    /**
+     * Returns the tracked apps by descending launch count, the most recently launched first
+     * for equal counts.
+     */
+    public synchronized List<String> getRanking() {
+        load();
+        final long[] counts = new long[mSize];
+        Integer[] order = new Integer[mSize];
+        for (int i = 0; i < mSize; i++) {
+            counts[i] = getCount(i);
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                int result = Long.compare(counts[b], counts[a]);
+                return result != 0 ? result
+                        : Long.compare(mLastLaunches[b], mLastLaunches[a]);
+            }
+        });
+        ArrayList<String> ranking = new ArrayList<>(mSize);
+        for (Integer i : order) {
+            ranking.add(mKeys[i]);
+        }
+        return ranking;
+    }
+
+    private long getCount(int index) {
+        return Math.max(mExpiries[index] - mDecayCount, 0);
+    }
+
+    private int indexOf(String key) {
+        for (int i = 0; i < mSize; i++) {
+            if (mKeys[i].equals(key)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the least recently launched app whose count is zero, or -1 if there is none.
+     */
+    private int findEvictable() {
+        int evictable = -1;
+        for (int i = 0; i < mSize && mExpiries[i] <= mDecayCount; i++) {
+            if (evictable < 0 || mLastLaunches[i] < mLastLaunches[evictable]) {
+                evictable = i;
+            }
+        }
+        return evictable;
+    }
+
+    private void insert(String key, long expiry, long lastLaunch) {
+        int index = mSize;
+        while (index > 0 && mExpiries[index - 1] > expiry) {
+            mKeys[index] = mKeys[index - 1];
+            mExpiries[index] = mExpiries[index - 1];
+            mLastLaunches[index] = mLastLaunches[index - 1];
+            index--;
+        }
+        mKeys[index] = key;
+        mExpiries[index] = expiry;
+        mLastLaunches[index] = lastLaunch;
+        mSize++;
+    }
+
+    private void removeAt(int index) {
+        int moved = mSize - index - 1;
+        System.arraycopy(mKeys, index + 1, mKeys, index, moved);
+        System.arraycopy(mExpiries, index + 1, mExpiries, index, moved);
+        System.arraycopy(mLastLaunches, index + 1, mLastLaunches, index, moved);
+        mKeys[--mSize] = null;
+    }
+
+    private void scheduleWrite() {
+        mWritePending = true;
+        mWriteHandler.removeCallbacks(mWriteRunnable);
+        mWriteHandler.postDelayed(mWriteRunnable, WRITE_DELAY_MS);
+    }
+
+    private boolean readFromDisk() {
+        try (DataInputStream in = new DataInputStream(
+                new ByteArrayInputStream(mFile.readFully()))) {
+            if (in.readInt() != VERSION) {
+                Log.d(TAG, "ignoring data of an older version " + mName);
+                return true;
+            }
+            long decayCount = in.readLong();
+            long launchCount = in.readLong();
+            int size = Math.min(in.readInt(), mCapacity);
+            for (int i = 0; i < size; i++) {
+                insert(in.readUTF(), in.readLong(), in.readLong());
+            }
+            mDecayCount = decayCount;
+            mLaunchCount = launchCount;
+            return true;
+        } catch (FileNotFoundException e) {
+            Log.d(TAG, "no cached data " + mName);
+            return false;
+        } catch (IOException e) {
+            Log.e(TAG, "unable to load data " + mName, e);
+            Arrays.fill(mKeys, null);
+            mSize = 0;
+            return true;
+        }
+    }
+
+    @VisibleForTesting
+    void writeToDisk() {
+        byte[] data;
+        synchronized (this) {
+            if (!mWritePending) {
+                return;
+            }
+            mWritePending = false;
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (DataOutputStream out = new DataOutputStream(bytes)) {
+                out.writeInt(VERSION);
+                out.writeLong(mDecayCount);
+                out.writeLong(mLaunchCount);
+                out.writeInt(mSize);
+                for (int i = 0; i < mSize; i++) {
+                    out.writeUTF(mKeys[i]);
+                    out.writeLong(mExpiries[i]);
+                    out.writeLong(mLastLaunches[i]);
+                }
+            } catch (IOException e) {
+                // Not expected when writing to memory.
+                throw new RuntimeException(e);
+            }
+            data = bytes.toByteArray();
+        }
+
+        FileOutputStream fos = null;
+        try {
+            fos = mFile.startWrite();
+            fos.write(data);
+            mFile.finishWrite(fos);
+        } catch (IOException e) {
+            Log.e(TAG, "unable to write file " + mName, e);
+            if (fos != null) {
+                mFile.failWrite(fos);
+            }
+        }
+    }
+}
@@ -2,32 +2,31 @@ package com.google.android.apps.nexuslauncher.clock;
 
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
+import android.graphics.Paint;
 import android.graphics.Rect;
-import android.os.SystemClock;
 
 import com.android.launcher3.FastBitmapDrawable;
 
 import java.util.TimeZone;
 
-public class AutoUpdateClock extends FastBitmapDrawable implements Runnable {
+public class AutoUpdateClock extends FastBitmapDrawable {
+    // Draws the background inside the layer of mPaint, which applies its alpha and color filter.
+    private final Paint mLayerPaint = new Paint(Paint.FILTER_BITMAP_FLAG | Paint.ANTI_ALIAS_FLAG);
     private ClockLayers mLayers;
 
     AutoUpdateClock(Bitmap bitmap, ClockLayers layers) {
         super(bitmap);
         mLayers = layers;
-    }
-
-    private void rescheduleUpdate() {
-        long millisInSecond = 1000L;
-        unscheduleSelf(this);
-        long uptimeMillis = SystemClock.uptimeMillis();
-        scheduleSelf(this, uptimeMillis - uptimeMillis % millisInSecond + millisInSecond);
+        if (mLayers != null) {
+            mLayers.updateAngles();
+        }
     }
 
     void updateLayers(ClockLayers layers) {
         mLayers = layers;
         if (mLayers != null) {
             mLayers.mDrawable.setBounds(getBounds());
+            mLayers.updateAngles();
         }
         invalidateSelf();
     }
@@ -35,6 +34,7 @@ public class AutoUpdateClock extends FastBitmapDrawable implements Runnable {
     void setTimeZone(TimeZone timeZone) {
         if (mLayers != null) {
             mLayers.setTimeZone(timeZone);
+            mLayers.updateAngles();
             invalidateSelf();
         }
     }
@@ -45,11 +45,40 @@ public class AutoUpdateClock extends FastBitmapDrawable implements Runnable {
         if (mLayers == null) {
             return;
         }
-        mLayers.updateAngles();
         Rect bounds = getBounds();
+        int saveCount;
+        if (mPaint.getAlpha() < 255 || mPaint.getColorFilter() != null) {
+            // The hands are drawn by their own drawables, apply the paint to all the layers at once.
+            saveCount = canvas.saveLayer(bounds.left, bounds.top, bounds.right, bounds.bottom,
+                    mPaint);
+        } else {
+            saveCount = canvas.save();
+        }
         canvas.scale(mLayers.scale, mLayers.scale, bounds.exactCenterX(), bounds.exactCenterY());
-        mLayers.mDrawable.draw(canvas);
-        rescheduleUpdate();
+        Bitmap background = mLayers.getBackground(bounds.width(), bounds.height());
+        if (background != null) {
+            canvas.drawBitmap(background, bounds.left, bounds.top, mLayerPaint);
+            mLayers.drawHands(canvas);
+        } else {
+            mLayers.mDrawable.draw(canvas);
+        }
+        canvas.restoreToCount(saveCount);
+        ClockTicker.getInstance().register(this);
+    }
+
+    /**
+     * Called by {@link ClockTicker} once per second while this clock is visible.
+     */
+    void onTick() {
+        if (mLayers == null) {
+            return;
+        }
+        if (mLayers.updateAngles()) {
+            invalidateSelf();
+        } else if (getCallback() != null) {
+            // Nothing to redraw, but keep ticking as the clock is still attached.
+            ClockTicker.getInstance().register(this);
+        }
     }
 
     @Override
@@ -59,13 +88,4 @@ public class AutoUpdateClock extends FastBitmapDrawable implements Runnable {
             mLayers.mDrawable.setBounds(bounds);
         }
     }
-
-    @Override
-    public void run() {
-        if (mLayers.updateAngles()) {
-            invalidateSelf();
-        } else {
-            rescheduleUpdate();
-        }
-    }
 }
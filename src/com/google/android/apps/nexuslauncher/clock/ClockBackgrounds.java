@@ -0,0 +1,35 @@
+package com.google.android.apps.nexuslauncher.clock;
+
+import android.graphics.Bitmap;
+import android.util.SparseArray;
+
+/**
+ * Static (non-hand) layers of a clock icon, rendered once per icon size and shared by all the
+ * icons drawing that clock. Callers must synchronize on this object.
+ */
+class ClockBackgrounds {
+    // Icon sizes in use at the same time: workspace, hotseat, folders and all apps.
+    private static final int MAX_BACKGROUNDS = 4;
+
+    private final SparseArray<Bitmap> mBackgrounds = new SparseArray<>();
+
+    Bitmap get(int width, int height) {
+        return mBackgrounds.get(getKey(width, height));
+    }
+
+    void put(int width, int height, Bitmap background) {
+        if (mBackgrounds.size() >= MAX_BACKGROUNDS) {
+            // The icon sizes changed, the old backgrounds are no longer drawn.
+            mBackgrounds.clear();
+        }
+        mBackgrounds.put(getKey(width, height), background);
+    }
+
+    void clear() {
+        mBackgrounds.clear();
+    }
+
+    private static int getKey(int width, int height) {
+        return (width << 16) | height;
+    }
+}
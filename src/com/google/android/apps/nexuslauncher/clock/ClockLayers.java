@@ -1,5 +1,8 @@
 package com.google.android.apps.nexuslauncher.clock;
 
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Rect;
 import android.graphics.drawable.AdaptiveIconDrawable;
 import android.graphics.drawable.Drawable;
 import android.graphics.drawable.LayerDrawable;
@@ -21,6 +24,9 @@ public class ClockLayers {
     int mDefaultSecond;
     float scale;
 
+    // Shared by all clones of these layers, and by the other icons of the same clock.
+    ClockBackgrounds mBackgrounds = new ClockBackgrounds();
+
     ClockLayers() {
         mCurrentTime = Calendar.getInstance();
     }
@@ -39,6 +45,7 @@ public class ClockLayers {
         clone.mDefaultHour = mDefaultHour;
         clone.mDefaultMinute = mDefaultMinute;
         clone.mDefaultSecond = mDefaultSecond;
+        clone.mBackgrounds = mBackgrounds;
         clone.mDrawable = mDrawable.getConstantState().newDrawable();
         clone.mLayerDrawable = clone.getLayerDrawable();
         if (clone.mLayerDrawable != null) {
@@ -67,6 +74,79 @@ public class ClockLayers {
         return hasChanged;
     }
 
+    /**
+     * Returns a bitmap of all the layers except the hands, at the given size.
+     */
+    Bitmap getBackground(int width, int height) {
+        if (width <= 0 || height <= 0 || mLayerDrawable == null) {
+            return null;
+        }
+        synchronized (mBackgrounds) {
+            Bitmap background = mBackgrounds.get(width, height);
+            if (background == null) {
+                background = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+                Canvas canvas = new Canvas(background);
+                Rect bounds = mDrawable.getBounds();
+                canvas.translate(-bounds.left, -bounds.top);
+
+                int hourAlpha = setHandAlpha(mHourIndex, 0);
+                int minuteAlpha = setHandAlpha(mMinuteIndex, 0);
+                int secondAlpha = setHandAlpha(mSecondIndex, 0);
+                mDrawable.draw(canvas);
+                setHandAlpha(mHourIndex, hourAlpha);
+                setHandAlpha(mMinuteIndex, minuteAlpha);
+                setHandAlpha(mSecondIndex, secondAlpha);
+
+                canvas.setBitmap(null);
+                mBackgrounds.put(width, height, background);
+            }
+            return background;
+        }
+    }
+
+    /**
+     * Drops the backgrounds rendered so far, for all the icons sharing them, so that they are
+     * rendered again with the current resources.
+     */
+    void clearBackgrounds() {
+        synchronized (mBackgrounds) {
+            mBackgrounds.clear();
+        }
+    }
+
+    /**
+     * Draws only the hand layers, on top of the bitmap returned by {@link #getBackground}.
+     */
+    void drawHands(Canvas canvas) {
+        int saveCount = canvas.save();
+        if (Utilities.ATLEAST_OREO && mDrawable instanceof AdaptiveIconDrawable) {
+            // Adaptive icon layers are laid out relative to the icon origin and masked.
+            Rect bounds = mDrawable.getBounds();
+            canvas.translate(bounds.left, bounds.top);
+            canvas.clipPath(((AdaptiveIconDrawable) mDrawable).getIconMask());
+        }
+        if (mHourIndex != -1) {
+            mLayerDrawable.getDrawable(mHourIndex).draw(canvas);
+        }
+        if (mMinuteIndex != -1) {
+            mLayerDrawable.getDrawable(mMinuteIndex).draw(canvas);
+        }
+        if (mSecondIndex != -1) {
+            mLayerDrawable.getDrawable(mSecondIndex).draw(canvas);
+        }
+        canvas.restoreToCount(saveCount);
+    }
+
+    private int setHandAlpha(int index, int alpha) {
+        if (index == -1) {
+            return alpha;
+        }
+        Drawable hand = mLayerDrawable.getDrawable(index);
+        int oldAlpha = hand.getAlpha();
+        hand.setAlpha(alpha);
+        return oldAlpha;
+    }
+
     void setTimeZone(TimeZone timeZone) {
         mCurrentTime.setTimeZone(timeZone);
     }
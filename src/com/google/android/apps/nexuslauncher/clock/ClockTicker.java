@@ -0,0 +1,57 @@
+package com.google.android.apps.nexuslauncher.clock;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+/**
+ * Single once-per-second timer shared by all visible clock icons. Clocks register themselves
+ * when they are drawn, and are dropped after a tick unless they are drawn again, so clocks that
+ * are no longer on screen stop costing anything.
+ */
+class ClockTicker implements Runnable {
+    private static final long TICK_MS = 1000L;
+
+    private static ClockTicker sInstance;
+
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final Set<AutoUpdateClock> mClocks =
+            Collections.newSetFromMap(new WeakHashMap<AutoUpdateClock, Boolean>());
+    private final ArrayList<AutoUpdateClock> mTicking = new ArrayList<>();
+    private boolean mScheduled = false;
+
+    static ClockTicker getInstance() {
+        if (sInstance == null) {
+            sInstance = new ClockTicker();
+        }
+        return sInstance;
+    }
+
+    /**
+     * Must be called on the main thread.
+     */
+    void register(AutoUpdateClock clock) {
+        mClocks.add(clock);
+        if (!mScheduled) {
+            mScheduled = true;
+            long uptimeMillis = SystemClock.uptimeMillis();
+            mHandler.postAtTime(this, uptimeMillis - uptimeMillis % TICK_MS + TICK_MS);
+        }
+    }
+
+    @Override
+    public void run() {
+        mScheduled = false;
+        mTicking.addAll(mClocks);
+        mClocks.clear();
+        for (AutoUpdateClock clock : mTicking) {
+            clock.onTick();
+        }
+        mTicking.clear();
+    }
+}
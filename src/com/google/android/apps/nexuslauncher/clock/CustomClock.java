@@ -2,9 +2,11 @@ package com.google.android.apps.nexuslauncher.clock;
 
 import android.annotation.TargetApi;
 import android.content.BroadcastReceiver;
+import android.content.ComponentCallbacks;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
+import android.content.res.Configuration;
 import android.graphics.Bitmap;
 import android.graphics.drawable.Drawable;
 import android.graphics.drawable.LayerDrawable;
@@ -18,6 +20,7 @@ import com.android.launcher3.graphics.IconNormalizer;
 import com.android.launcher3.util.Preconditions;
 
 import java.util.Collections;
+import java.util.Map;
 import java.util.Set;
 import java.util.TimeZone;
 import java.util.WeakHashMap;
@@ -26,6 +29,8 @@ import java.util.WeakHashMap;
 public class CustomClock {
     private final Context mContext;
     private final Set<AutoUpdateClock> mUpdaters = Collections.newSetFromMap(new WeakHashMap<AutoUpdateClock, Boolean>());
+    // Backgrounds shared by the icons of each clock of the icon pack, dropped with the pack.
+    private final Map<Metadata, ClockBackgrounds> mBackgrounds = new WeakHashMap<>();
 
     public CustomClock(Context context) {
         mContext = context;
@@ -36,6 +41,29 @@ public class CustomClock {
                 loadTimeZone(intent.getStringExtra("time-zone"));
             }
         }, new IntentFilter(Intent.ACTION_TIMEZONE_CHANGED), null, new Handler(Looper.getMainLooper()));
+
+        mContext.registerComponentCallbacks(new ComponentCallbacks() {
+            @Override
+            public void onConfigurationChanged(Configuration newConfig) {
+                // The density, theme or icon size may have changed.
+                clearBackgrounds();
+            }
+
+            @Override
+            public void onLowMemory() {
+                clearBackgrounds();
+            }
+        });
+    }
+
+    private void clearBackgrounds() {
+        synchronized (mBackgrounds) {
+            for (ClockBackgrounds backgrounds : mBackgrounds.values()) {
+                synchronized (backgrounds) {
+                    backgrounds.clear();
+                }
+            }
+        }
     }
 
     public static Drawable getClock(Context context, Drawable drawable, Metadata metadata, int iconDpi) {
@@ -78,11 +106,20 @@ public class CustomClock {
     }
 
     public FastBitmapDrawable drawIcon(Bitmap bitmap, Drawable drawableForDensity, Metadata metadata) {
-        final AutoUpdateClock updater = new AutoUpdateClock(bitmap, getClockLayers(mContext,
+        ClockLayers layers = getClockLayers(mContext,
                 drawableForDensity,
                 metadata,
                 LauncherAppState.getIDP(mContext).fillResIconDpi,
-                !FeatureFlags.LAUNCHER3_DISABLE_ICON_NORMALIZATION).clone());
+                !FeatureFlags.LAUNCHER3_DISABLE_ICON_NORMALIZATION);
+        synchronized (mBackgrounds) {
+            ClockBackgrounds backgrounds = mBackgrounds.get(metadata);
+            if (backgrounds == null) {
+                backgrounds = layers.mBackgrounds;
+                mBackgrounds.put(metadata, backgrounds);
+            }
+            layers.mBackgrounds = backgrounds;
+        }
+        final AutoUpdateClock updater = new AutoUpdateClock(bitmap, layers.clone());
         mUpdaters.add(updater);
         return updater;
     }
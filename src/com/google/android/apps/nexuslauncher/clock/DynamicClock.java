@@ -1,12 +1,14 @@
 package com.google.android.apps.nexuslauncher.clock;
 
 import android.content.BroadcastReceiver;
+import android.content.ComponentCallbacks;
 import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
 import android.content.pm.ApplicationInfo;
 import android.content.pm.PackageManager;
+import android.content.res.Configuration;
 import android.graphics.Bitmap;
 import android.graphics.drawable.Drawable;
 import android.graphics.drawable.LayerDrawable;
@@ -58,6 +60,19 @@ public class DynamicClock extends BroadcastReceiver
                 loadTimeZone(intent.getStringExtra("time-zone"));
             }
         }, new IntentFilter(Intent.ACTION_TIMEZONE_CHANGED), null, new Handler(Looper.getMainLooper()));
+
+        mContext.registerComponentCallbacks(new ComponentCallbacks() {
+            @Override
+            public void onConfigurationChanged(Configuration newConfig) {
+                // The density, theme or icon size may have changed.
+                mLayers.clearBackgrounds();
+            }
+
+            @Override
+            public void onLowMemory() {
+                mLayers.clearBackgrounds();
+            }
+        });
     }
     
     public static Drawable getClock(Context context, int iconDpi) {
@@ -136,6 +151,8 @@ public class DynamicClock extends BroadcastReceiver
     }
     
     private void updateWrapper(ClockLayers wrapper) {
+        // The backgrounds of the previous clock icon are shared by the clocks still drawing it.
+        this.mLayers.clearBackgrounds();
         this.mLayers = wrapper;
         for (AutoUpdateClock updater : mUpdaters) {
             updater.updateLayers(wrapper.clone());
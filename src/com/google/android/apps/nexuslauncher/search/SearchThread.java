@@ -6,9 +6,11 @@ import android.net.Uri;
 import android.os.Handler;
 import android.os.HandlerThread;
 import android.os.Message;
+import android.os.Process;
 
 import com.android.launcher3.allapps.search.AllAppsSearchBarController;
 import com.android.launcher3.allapps.search.SearchAlgorithm;
+import com.android.launcher3.util.ExecutorRegistry;
 
 public class SearchThread implements SearchAlgorithm, Handler.Callback {
     private static HandlerThread handlerThread;
@@ -21,8 +23,8 @@ public class SearchThread implements SearchAlgorithm, Handler.Callback {
         mContext = context;
         mUiHandler = new Handler(this);
         if (handlerThread == null) {
-            handlerThread = new HandlerThread("search-thread", -2);
-            handlerThread.start();
+            handlerThread = ExecutorRegistry.newLooperThread("search-thread",
+                    Process.THREAD_PRIORITY_FOREGROUND);
         }
         mHandler = new Handler(SearchThread.handlerThread.getLooper(), this);
     }
@@ -15,6 +15,7 @@ import com.google.android.apps.nexuslauncher.smartspace.nano.SmartspaceProto.i;
 import com.google.android.apps.nexuslauncher.utils.ProtoStore;
 
 import java.io.PrintWriter;
+import java.util.ArrayList;
 import java.util.List;
 
 public class SmartspaceController implements Handler.Callback {
@@ -29,11 +30,18 @@ public class SmartspaceController implements Handler.Callback {
         }
     }
 
+    private static final ProtoStore.Factory<i> CARD_FACTORY = new ProtoStore.Factory<i>() {
+        @Override
+        public i newInstance() {
+            return new i();
+        }
+    };
+
     private static SmartspaceController dU;
     private final SmartspaceDataContainer dQ;
     private final Alarm dR;
     private ISmartspace dS;
-    private final ProtoStore dT;
+    private final List<ProtoStore<i>> dT;
     private final Context mAppContext;
     private final Handler mUiHandler;
     private final Handler mWorker;
@@ -43,7 +51,11 @@ public class SmartspaceController implements Handler.Callback {
         this.mUiHandler = new Handler(Looper.getMainLooper(), this);
         this.mAppContext = mAppContext;
         this.dQ = new SmartspaceDataContainer();
-        this.dT = new ProtoStore(mAppContext);
+        final Store[] stores = Store.values();
+        this.dT = new ArrayList<>(stores.length);
+        for (Store store : stores) {
+            this.dT.add(new ProtoStore<>(mAppContext, store.filename, CARD_FACTORY, mWorker));
+        }
         (this.dR = new Alarm()).setOnAlarmListener(new OnAlarmListener() {
             @Override
             public void onAlarm(Alarm alarm) {
@@ -159,20 +171,20 @@ public class SmartspaceController implements Handler.Callback {
         SmartspaceCard dVar = null;
         switch (message.what) {
             case 1:
-                i data = new i();
-                SmartspaceCard weatherCard = this.dT.dv(SmartspaceController.Store.WEATHER.filename, data) ?
+                i data = this.dT.get(SmartspaceController.Store.WEATHER.ordinal()).get();
+                SmartspaceCard weatherCard = data != null ?
                         SmartspaceCard.cD(this.mAppContext, data, true) :
                         null;
 
-                data = new i();
-                SmartspaceCard eventCard = this.dT.dv(SmartspaceController.Store.CURRENT.filename, data) ?
+                data = this.dT.get(SmartspaceController.Store.CURRENT.ordinal()).get();
+                SmartspaceCard eventCard = data != null ?
                         SmartspaceCard.cD(this.mAppContext, data, false) :
                         null;
 
                 Message.obtain(this.mUiHandler, 101, new SmartspaceCard[]{ weatherCard, eventCard }).sendToTarget();
                 break;
             case 2:
-                this.dT.dw(SmartspaceCard.cQ(this.mAppContext, (NewCardInfo) message.obj), SmartspaceController.Store.values()[message.arg1].filename);
+                this.dT.get(message.arg1).put(SmartspaceCard.cQ(this.mAppContext, (NewCardInfo) message.obj));
                 Message.obtain(this.mUiHandler, 1).sendToTarget();
                 break;
             case 101:
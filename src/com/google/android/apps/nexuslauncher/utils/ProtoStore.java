@@ -1,50 +1,120 @@
 package com.google.android.apps.nexuslauncher.utils;
 
 import android.content.Context;
+import android.os.Handler;
+import android.util.AtomicFile;
 import android.util.Log;
 
-import com.android.launcher3.util.IOUtils;
 import com.google.protobuf.nano.MessageNano;
 
-import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
+import java.io.IOException;
 
-public class ProtoStore {
-    private final Context mContext;
+/**
+ * Typed store for a single proto message, backed by a file in the app's files directory.
+ * The file is read at most once per process, after which reads are served from memory.
+ * Writes update the in-memory copy immediately and are persisted atomically on the provided
+ * handler, coalescing updates that arrive within {@link #WRITE_DELAY_MS}.
+ */
+public class ProtoStore<T extends MessageNano> {
+    private static final String TAG = "ProtoStore";
+    private static final long WRITE_DELAY_MS = 500;
 
-    public ProtoStore(Context context) {
-        mContext = context.getApplicationContext();
+    public interface Factory<T> {
+        T newInstance();
     }
 
-    public void dw(MessageNano p1, String name) {
-        try {
-            FileOutputStream fos = mContext.openFileOutput(name, 0);
-            if (p1 != null) {
-                fos.write(MessageNano.toByteArray(p1));
-            } else {
-                Log.d("ProtoStore", "deleting " + name);
-                mContext.deleteFile(name);
+    private final Object mLock = new Object();
+    private final AtomicFile mFile;
+    private final String mName;
+    private final Factory<T> mFactory;
+    private final Handler mWriteHandler;
+
+    private final Runnable mWriteRunnable = new Runnable() {
+        @Override
+        public void run() {
+            writeToDisk();
+        }
+    };
+
+    private boolean mWritePending = false;
+    private boolean mLoaded = false;
+    private T mValue;
+
+    public ProtoStore(Context context, String name, Factory<T> factory, Handler writeHandler) {
+        mFile = new AtomicFile(context.getApplicationContext().getFileStreamPath(name));
+        mName = name;
+        mFactory = factory;
+        mWriteHandler = writeHandler;
+    }
+
+    /**
+     * Returns the stored message, or null if nothing is stored. Callers must not modify the
+     * returned message.
+     */
+    public T get() {
+        synchronized (mLock) {
+            if (!mLoaded) {
+                mValue = readFromDisk();
+                mLoaded = true;
             }
+            return mValue;
+        }
+    }
+
+    /**
+     * Replaces the stored message, a null value deletes the backing file. The message must not
+     * be modified after this call.
+     */
+    public void put(T value) {
+        synchronized (mLock) {
+            mValue = value;
+            mLoaded = true;
+            mWritePending = true;
+        }
+        mWriteHandler.removeCallbacks(mWriteRunnable);
+        mWriteHandler.postDelayed(mWriteRunnable, WRITE_DELAY_MS);
+    }
+
+    private T readFromDisk() {
+        try {
+            T value = mFactory.newInstance();
+            MessageNano.mergeFrom(value, mFile.readFully());
+            return value;
         } catch (FileNotFoundException e) {
-            Log.d("ProtoStore", "file does not exist " + name);
+            Log.d(TAG, "no cached data " + mName);
         } catch (Exception e) {
-            Log.e("ProtoStore", "unable to write file " + name, e);
+            Log.e(TAG, "unable to load data " + mName, e);
         }
+        return null;
     }
 
-    public boolean dv(String name, MessageNano a) {
-        File fileStreamPath = mContext.getFileStreamPath(name);
-        try {
-            MessageNano.mergeFrom(a, IOUtils.toByteArray(fileStreamPath));
-            return true;
+    private void writeToDisk() {
+        byte[] data;
+        synchronized (mLock) {
+            if (!mWritePending) {
+                return;
+            }
+            mWritePending = false;
+            data = mValue == null ? null : MessageNano.toByteArray(mValue);
         }
-        catch (FileNotFoundException ex2) {
-            Log.d("ProtoStore", "no cached data");
+        if (data == null) {
+            Log.d(TAG, "deleting " + mName);
+            mFile.delete();
+            return;
         }
-        catch (Exception ex) {
-            Log.e("ProtoStore", "unable to load data", ex);
+
+        FileOutputStream fos = null;
+        try {
+            fos = mFile.startWrite();
+            fos.write(data);
+            mFile.finishWrite(fos);
+        } catch (IOException e) {
+            Log.e(TAG, "unable to write file " + mName, e);
+            if (fos != null) {
+                mFile.failWrite(fos);
+            }
         }
-        return false;
     }
 }
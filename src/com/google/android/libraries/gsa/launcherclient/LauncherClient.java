@@ -17,11 +17,13 @@ import android.os.Message;
 import android.os.Process;
 import android.os.RemoteException;
 import android.util.Log;
+import android.view.Choreographer;
 import android.view.Window;
 import android.view.WindowManager;
 import android.view.WindowManager.LayoutParams;
 import com.google.android.libraries.launcherclient.ILauncherOverlay;
 import com.google.android.libraries.launcherclient.ILauncherOverlayCallback;
+import java.io.PrintWriter;
 import java.lang.ref.WeakReference;
 
 public class LauncherClient {
@@ -56,6 +58,25 @@ public class LauncherClient {
     public boolean mDestroyed = false;
     private Bundle mLayoutBundle;
 
+    // Scroll updates are coalesced to one binder call per frame, only the latest value is sent.
+    private final Choreographer.FrameCallback mScrollFrameCallback =
+            new Choreographer.FrameCallback() {
+                @Override
+                public void doFrame(long frameTimeNanos) {
+                    mScrollFramePending = false;
+                    flushScroll();
+                }
+            };
+    private boolean mScrollFramePending = false;
+    private boolean mHasPendingScroll = false;
+    private float mPendingScroll;
+
+    // Per gesture counters, used to verify the coalescing in dumpsys.
+    private int mGestureScrollRequests;
+    private int mGestureTransactions;
+    private int mLastGestureScrollRequests;
+    private int mLastGestureTransactions;
+
     public class OverlayCallback extends ILauncherOverlayCallback.Stub implements Callback {
         public LauncherClient mClient;
         private final Handler mUIHandler = new Handler(Looper.getMainLooper(), this);
@@ -281,8 +302,12 @@ public class LauncherClient {
     }
 
     public final void startScroll() {
+        flushScroll();
+        mGestureScrollRequests = 0;
+        mGestureTransactions = 0;
         if (isConnected()) {
             try {
+                mGestureTransactions++;
                 mOverlay.startScroll();
             } catch (RemoteException ignored) {
             }
@@ -290,23 +315,55 @@ public class LauncherClient {
     }
 
     public final void endScroll() {
+        // Deliver the last position before ending, so the overlay settles on the final value.
+        flushScroll();
         if (isConnected()) {
             try {
+                mGestureTransactions++;
                 mOverlay.endScroll();
             } catch (RemoteException ignored) {
             }
         }
+        mLastGestureScrollRequests = mGestureScrollRequests;
+        mLastGestureTransactions = mGestureTransactions;
     }
 
     public final void setScroll(float f) {
         if (isConnected()) {
-            try {
-                mOverlay.onScroll(f);
-            } catch (RemoteException ignored) {
+            mGestureScrollRequests++;
+            mPendingScroll = f;
+            mHasPendingScroll = true;
+            if (!mScrollFramePending) {
+                mScrollFramePending = true;
+                Choreographer.getInstance().postFrameCallback(mScrollFrameCallback);
+            }
+        }
+    }
+
+    private void flushScroll() {
+        if (mScrollFramePending) {
+            mScrollFramePending = false;
+            Choreographer.getInstance().removeFrameCallback(mScrollFrameCallback);
+        }
+        if (mHasPendingScroll) {
+            mHasPendingScroll = false;
+            if (isConnected()) {
+                try {
+                    mGestureTransactions++;
+                    mOverlay.onScroll(mPendingScroll);
+                } catch (RemoteException ignored) {
+                }
             }
         }
     }
 
+    public void dump(String prefix, PrintWriter w) {
+        w.println(prefix + "LauncherClient");
+        w.println(prefix + "  apiVersion: " + apiVersion);
+        w.println(prefix + "  lastGesture: scrollRequests=" + mLastGestureScrollRequests
+                + " transactions=" + mLastGestureTransactions);
+    }
+
     public final void hideOverlay(boolean feedRunning) {
         if (mOverlay != null) {
             try {
@@ -0,0 +1,187 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.android.launcher3;
+
+import android.support.test.filters.LargeTest;
+import android.support.test.runner.AndroidJUnit4;
+import android.view.View;
+
+import com.android.launcher3.ui.AbstractLauncherUiTest;
+import com.android.launcher3.util.Condition;
+import com.android.launcher3.util.FocusLogic;
+import com.android.launcher3.util.Wait;
+import com.android.launcher3.util.rule.LauncherActivityRule;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests that the focus matrix cached by {@link CellLayout} follows the changes of its children.
+ *
+ * Note running these tests will clear the workspace on the device.
+ */
+@LargeTest
+@RunWith(AndroidJUnit4.class)
+public class CellLayoutFocusMatrixTest extends AbstractLauncherUiTest {
+
+    @Rule public LauncherActivityRule mActivityMonitor = new LauncherActivityRule();
+
+    @Test
+    public void testCachedMatrixFollowsChildren() throws Throwable {
+        final CellLayout layout = startAndGetFirstPage();
+        final View[] child = new View[1];
+
+        // The matrix is reused while nothing changes.
+        getOnUiThread(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                int[][] matrix = FocusLogic.createSparseMatrix(layout);
+                assertTrue(layout.isFocusMatrixValid());
+                assertSame(matrix, FocusLogic.createSparseMatrix(layout));
+                assertMatrixIsFresh(layout);
+                return null;
+            }
+        });
+
+        // Add a child
+        getOnUiThread(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                child[0] = new View(layout.getContext());
+                child[0].setFocusable(true);
+                layout.addViewToCellLayout(child[0], -1, View.generateViewId(),
+                        new CellLayout.LayoutParams(0, 0, 1, 1), true);
+                assertFalse(layout.isFocusMatrixValid());
+                assertMatrixIsFresh(layout);
+                assertEquals(layout.getShortcutsAndWidgets().indexOfChild(child[0]),
+                        FocusLogic.createSparseMatrix(layout)[0][0]);
+                return null;
+            }
+        });
+
+        // Layout the child in another cell
+        getOnUiThread(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                CellLayout.LayoutParams lp = (CellLayout.LayoutParams) child[0].getLayoutParams();
+                lp.cellX = layout.getCountX() - 1;
+                lp.cellY = layout.getCountY() - 1;
+                child[0].requestLayout();
+                return null;
+            }
+        });
+        waitForLayout(layout);
+        getOnUiThread(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                assertMatrixIsFresh(layout);
+                assertEquals(FocusLogic.EMPTY, FocusLogic.createSparseMatrix(layout)[0][0]);
+                return null;
+            }
+        });
+
+        // Remove the child
+        getOnUiThread(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                layout.removeView(child[0]);
+                assertFalse(layout.isFocusMatrixValid());
+                assertMatrixIsFresh(layout);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Compares the matrix returned by {@link FocusLogic}, which may come from the cache, with a
+     * matrix computed from the current children.
+     */
+    private static void assertMatrixIsFresh(CellLayout layout) {
+        int[][] matrix = FocusLogic.createSparseMatrix(layout);
+        int[][] expected = computeMatrix(layout);
+        assertEquals(expected.length, matrix.length);
+        for (int i = 0; i < expected.length; i++) {
+            assertArrayEquals(expected[i], matrix[i]);
+        }
+    }
+
+    private static int[][] computeMatrix(CellLayout layout) {
+        ShortcutAndWidgetContainer parent = layout.getShortcutsAndWidgets();
+        int m = layout.getCountX();
+        boolean invert = parent.invertLayoutHorizontally();
+        int[][] matrix = new int[m][layout.getCountY()];
+        for (int[] column : matrix) {
+            Arrays.fill(column, FocusLogic.EMPTY);
+        }
+        for (int i = 0; i < parent.getChildCount(); i++) {
+            View cell = parent.getChildAt(i);
+            if (cell.isFocusable()) {
+                CellLayout.LayoutParams lp = (CellLayout.LayoutParams) cell.getLayoutParams();
+                matrix[invert ? (m - lp.cellX - 1) : lp.cellX][lp.cellY] = i;
+            }
+        }
+        return matrix;
+    }
+
+    private void waitForLayout(final CellLayout layout) {
+        assertTrue(Wait.atMost(new Condition() {
+            @Override
+            public boolean isTrue() throws Throwable {
+                return getOnUiThread(new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() throws Exception {
+                        return !layout.getShortcutsAndWidgets().isLayoutRequested();
+                    }
+                });
+            }
+        }, DEFAULT_UI_TIMEOUT));
+    }
+
+    private CellLayout startAndGetFirstPage() throws Throwable {
+        clearHomescreen();
+        mActivityMonitor.startLauncher();
+
+        final CellLayout[] layout = new CellLayout[1];
+        assertTrue(Wait.atMost(new Condition() {
+            @Override
+            public boolean isTrue() throws Throwable {
+                return getOnUiThread(new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() throws Exception {
+                        Launcher launcher = mActivityMonitor.getActivity();
+                        if (launcher == null || launcher.isWorkspaceLoading()) {
+                            return false;
+                        }
+                        layout[0] = launcher.getWorkspace()
+                                .getScreenWithId(Workspace.FIRST_SCREEN_ID);
+                        return layout[0] != null;
+                    }
+                });
+            }
+        }, DEFAULT_ACTIVITY_TIMEOUT));
+        return layout[0];
+    }
+}
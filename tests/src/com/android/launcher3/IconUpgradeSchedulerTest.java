@@ -0,0 +1,72 @@
+package com.android.launcher3;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+import android.view.View;
+
+import com.android.launcher3.model.PackageItemInfo;
+
+/**
+ * Tests for {@link IconUpgradeScheduler}
+ */
+@SmallTest
+public class IconUpgradeSchedulerTest extends AndroidTestCase {
+
+    private IconUpgradeScheduler mScheduler;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mScheduler = new IconUpgradeScheduler(null, new Handler(Looper.getMainLooper()));
+    }
+
+    public void testPendingWidgetRequestIsKept() {
+        // A pending widget is tagged with its widget info, and requests the icon of its package.
+        LauncherAppWidgetInfo widgetInfo = new LauncherAppWidgetInfo(1,
+                new ComponentName("com.android.test", "com.android.test.Widget"));
+        PackageItemInfo pendingItemInfo = new PackageItemInfo("com.android.test");
+        pendingItemInfo.user = Process.myUserHandle();
+
+        ReceiverView view = new ReceiverView(getContext());
+        view.setTag(widgetInfo);
+        IconUpgradeScheduler.Request request = mScheduler.new Request(view, pendingItemInfo);
+        assertEquals(IconUpgradeScheduler.PRIORITY_OTHER, mScheduler.getPriority(request));
+    }
+
+    public void testRecycledViewRequestIsDropped() {
+        AppInfo first = new AppInfo();
+        AppInfo second = new AppInfo();
+
+        ReceiverView view = new ReceiverView(getContext());
+        view.setTag(first);
+        IconUpgradeScheduler.Request request = mScheduler.new Request(view, first);
+        assertEquals(IconUpgradeScheduler.PRIORITY_OTHER, mScheduler.getPriority(request));
+
+        view.setTag(second);
+        assertEquals(IconUpgradeScheduler.PRIORITY_DROP, mScheduler.getPriority(request));
+    }
+
+    public void testNonViewRequestIsKept() {
+        IconCache.ItemInfoUpdateReceiver receiver = new IconCache.ItemInfoUpdateReceiver() {
+            @Override
+            public void reapplyItemInfo(ItemInfoWithIcon info) { }
+        };
+        IconUpgradeScheduler.Request request = mScheduler.new Request(receiver, new AppInfo());
+        assertEquals(IconUpgradeScheduler.PRIORITY_OTHER, mScheduler.getPriority(request));
+    }
+
+    private static class ReceiverView extends View implements IconCache.ItemInfoUpdateReceiver {
+
+        ReceiverView(Context context) {
+            super(context);
+        }
+
+        @Override
+        public void reapplyItemInfo(ItemInfoWithIcon info) { }
+    }
+}
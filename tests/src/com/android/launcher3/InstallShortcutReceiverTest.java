@@ -0,0 +1,177 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.launcher3;
+
+import android.content.ComponentName;
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.ContextWrapper;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.database.sqlite.SQLiteException;
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.MediumTest;
+import android.util.Pair;
+
+import com.android.launcher3.provider.InstallQueueDb;
+
+import org.json.JSONObject;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests for the install queue of {@link InstallShortcutReceiver}.
+ *
+ * Note running these tests will clear the install queue on the device.
+ */
+@MediumTest
+public class InstallShortcutReceiverTest extends AndroidTestCase {
+
+    private static final String ACTION_INSTALL_SHORTCUT =
+            "com.android.launcher.action.INSTALL_SHORTCUT";
+    private static final String APPS_PENDING_INSTALL = "apps_to_install";
+    private static final String TEST_PREFS_PREFIX = "install_shortcut_test_";
+
+    private Context mPrefsContext;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        // Stop the launcher from adding the queued items while the queue is checked.
+        InstallShortcutReceiver.enableInstallQueue(InstallShortcutReceiver.FLAG_DRAG_AND_DROP);
+        drainQueue();
+
+        mPrefsContext = new ContextWrapper(getContext()) {
+            @Override
+            public SharedPreferences getSharedPreferences(String name, int mode) {
+                return super.getSharedPreferences(TEST_PREFS_PREFIX + name, mode);
+            }
+        };
+        Utilities.getPrefs(mPrefsContext).edit().clear().commit();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        Utilities.getPrefs(mPrefsContext).edit().clear().commit();
+        drainQueue();
+        InstallShortcutReceiver.disableAndFlushInstallQueue(
+                InstallShortcutReceiver.FLAG_DRAG_AND_DROP, getContext());
+        super.tearDown();
+    }
+
+    public void testLegacyQueueIsMigrated() throws Exception {
+        Set<String> legacy = new HashSet<>(Arrays.asList(
+                encodeLegacyEntry("shortcut0"), encodeLegacyEntry("shortcut1")));
+        Utilities.getPrefs(mPrefsContext).edit()
+                .putStringSet(APPS_PENDING_INSTALL, legacy).commit();
+
+        InstallQueueDb queue = new InstallQueueDb(getContext(), null);
+        try {
+            assertTrue(InstallShortcutReceiver.migrateLegacyQueue(mPrefsContext, queue));
+            assertFalse(Utilities.getPrefs(mPrefsContext).contains(APPS_PENDING_INSTALL));
+            assertEquals(legacy, new HashSet<>(queue.getAndClear()));
+
+            // Nothing is left to migrate.
+            assertTrue(InstallShortcutReceiver.migrateLegacyQueue(mPrefsContext, queue));
+            assertEquals(0, queue.size());
+        } finally {
+            queue.close();
+        }
+    }
+
+    public void testFailedMigrationKeepsLegacyQueue() throws Exception {
+        Set<String> legacy = new HashSet<>(Arrays.asList(encodeLegacyEntry("shortcut0")));
+        Utilities.getPrefs(mPrefsContext).edit()
+                .putStringSet(APPS_PENDING_INSTALL, legacy).commit();
+
+        InstallQueueDb queue = new InstallQueueDb(getContext(), null) {
+            @Override
+            public void addAll(Collection<ContentValues> entries) {
+                throw new SQLiteException("disk full");
+            }
+        };
+        try {
+            assertFalse(InstallShortcutReceiver.migrateLegacyQueue(mPrefsContext, queue));
+            // Kept to be migrated again later.
+            assertEquals(legacy, Utilities.getPrefs(mPrefsContext)
+                    .getStringSet(APPS_PENDING_INSTALL, null));
+        } finally {
+            queue.close();
+        }
+    }
+
+    public void testReceivedShortcutsAreFlushedInOrder() throws Exception {
+        InstallShortcutReceiver receiver = new InstallShortcutReceiver();
+        for (int i = 0; i < 3; i++) {
+            receiver.onReceive(getContext(), createInstallIntent("shortcut" + i));
+            // The add is written on the worker thread, but a flush already sees it.
+            assertFalse(InstallShortcutReceiver.isInstallQueueEmpty());
+        }
+        // The same shortcut is only queued once.
+        receiver.onReceive(getContext(), createInstallIntent("shortcut0"));
+        waitForWorker();
+
+        List<Pair<ItemInfo, Object>> items = drainQueue();
+        assertEquals(3, items.size());
+        for (int i = 0; i < items.size(); i++) {
+            assertEquals("shortcut" + i, items.get(i).first.title.toString());
+        }
+        assertTrue(InstallShortcutReceiver.isInstallQueueEmpty());
+    }
+
+    private List<Pair<ItemInfo, Object>> drainQueue() throws Exception {
+        waitForWorker();
+        return new InstallShortcutReceiver.LazyShortcutsProvider(getContext()).get();
+    }
+
+    private void waitForWorker() throws Exception {
+        final CountDownLatch latch = new CountDownLatch(1);
+        LauncherModel.runOnWorkerThread(new Runnable() {
+            @Override
+            public void run() {
+                latch.countDown();
+            }
+        });
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+    }
+
+    private Intent createLaunchIntent(String name) {
+        // An activity of the launcher, which does not need any permission.
+        return new Intent(Intent.ACTION_VIEW)
+                .setComponent(new ComponentName(getContext(), ChooseIconActivity.class))
+                .putExtra("name", name);
+    }
+
+    private Intent createInstallIntent(String name) {
+        return new Intent(ACTION_INSTALL_SHORTCUT)
+                .putExtra(Intent.EXTRA_SHORTCUT_INTENT, createLaunchIntent(name))
+                .putExtra(Intent.EXTRA_SHORTCUT_NAME, name);
+    }
+
+    private String encodeLegacyEntry(String name) throws Exception {
+        return new JSONObject()
+                .put("intent.launch", createLaunchIntent(name).toUri(0))
+                .put("name", name)
+                .toString();
+    }
+}
@@ -0,0 +1,105 @@
+package com.android.launcher3;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import java.util.ArrayList;
+
+/**
+ * Tests for the grid resolution of {@link InvariantDeviceProfile}
+ */
+@SmallTest
+public class InvariantDeviceProfileTest extends AndroidTestCase {
+
+    private static final String PREFS_NAME = "idp_test_prefs";
+
+    private SharedPreferences mPrefs;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mPrefs = getContext().getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        mPrefs.edit().clear().commit();
+        InvariantDeviceProfile.clearGridCache();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mPrefs.edit().clear().commit();
+        InvariantDeviceProfile.clearGridCache();
+        super.tearDown();
+    }
+
+    public void testCachedGridMatchesInterpolation() {
+        for (float width = 200; width <= 1000; width += 37.5f) {
+            for (float height = width; height <= 1600; height += 53.25f) {
+                InvariantDeviceProfile expected = interpolate(width, height);
+                assertGridEquals(expected, InvariantDeviceProfile.getGrid(
+                        getContext(), mPrefs, width, height));
+                // From the in-memory cache
+                assertGridEquals(expected, InvariantDeviceProfile.getGrid(
+                        getContext(), mPrefs, width, height));
+            }
+        }
+    }
+
+    public void testPersistedGridMatchesInterpolation() {
+        for (float width = 250; width <= 1000; width += 125) {
+            float height = width * 16 / 9;
+            InvariantDeviceProfile expected = interpolate(width, height);
+            InvariantDeviceProfile.getGrid(getContext(), mPrefs, width, height);
+
+            // Simulate a restart, the grid is read back from the prefs.
+            InvariantDeviceProfile.clearGridCache();
+            InvariantDeviceProfile grid =
+                    InvariantDeviceProfile.getGrid(getContext(), mPrefs, width, height);
+            assertGridEquals(expected, grid);
+        }
+    }
+
+    public void testExactProfileSize() {
+        for (InvariantDeviceProfile profile :
+                InvariantDeviceProfile.parseDeviceProfiles(getContext())) {
+            InvariantDeviceProfile grid = InvariantDeviceProfile.getGrid(
+                    getContext(), mPrefs, profile.minWidthDps, profile.minHeightDps);
+            assertEquals(profile.iconSize, grid.iconSize);
+            assertEquals(profile.numRows, grid.numRows);
+            assertEquals(profile.numColumns, grid.numColumns);
+        }
+    }
+
+    /**
+     * Resolves the grid with freshly parsed profiles and no caching.
+     */
+    private InvariantDeviceProfile interpolate(float width, float height) {
+        ArrayList<InvariantDeviceProfile> closestProfiles =
+                InvariantDeviceProfile.findClosestDeviceProfiles(width, height,
+                        InvariantDeviceProfile.parseDeviceProfiles(getContext()));
+        InvariantDeviceProfile interpolated = InvariantDeviceProfile.invDistWeightedInterpolate(
+                width, height, closestProfiles);
+        InvariantDeviceProfile closest = closestProfiles.get(0);
+        return new InvariantDeviceProfile(closest.name, closest.minWidthDps,
+                closest.minHeightDps, closest.numRows, closest.numColumns, closest.numFolderRows,
+                closest.numFolderColumns, closest.minAllAppsPredictionColumns,
+                interpolated.iconSize, interpolated.landscapeIconSize, interpolated.iconTextSize,
+                closest.numHotseatIcons, closest.defaultLayoutId, closest.demoModeLayoutId);
+    }
+
+    private static void assertGridEquals(InvariantDeviceProfile expected,
+            InvariantDeviceProfile actual) {
+        assertEquals(expected.name, actual.name);
+        assertEquals(expected.numRows, actual.numRows);
+        assertEquals(expected.numColumns, actual.numColumns);
+        assertEquals(expected.numFolderRows, actual.numFolderRows);
+        assertEquals(expected.numFolderColumns, actual.numFolderColumns);
+        assertEquals(expected.minAllAppsPredictionColumns, actual.minAllAppsPredictionColumns);
+        assertEquals(expected.numHotseatIcons, actual.numHotseatIcons);
+        assertEquals(expected.defaultLayoutId, actual.defaultLayoutId);
+        assertEquals(expected.demoModeLayoutId, actual.demoModeLayoutId);
+        assertEquals(expected.iconSize, actual.iconSize);
+        assertEquals(expected.landscapeIconSize, actual.landscapeIconSize);
+        assertEquals(expected.iconTextSize, actual.iconTextSize);
+    }
+}
@@ -0,0 +1,189 @@
+package com.android.launcher3.dragndrop;
+
+import android.graphics.Rect;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.android.launcher3.DropTarget;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * Unit tests for {@link DropTargetIndex}
+ */
+@SmallTest
+public class DropTargetIndexTest extends TestCase {
+
+    private static final int WIDTH = 1080;
+    private static final int HEIGHT = 1920;
+    private static final int PATH_LENGTH = 2000;
+
+    private ArrayList<DropTarget> mTargets;
+    private DropTargetIndex mIndex;
+    private TestDropTarget mWorkspace;
+    private TestDropTarget mDelete;
+    private TestDropTarget mUninstall;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mTargets = new ArrayList<>();
+        mIndex = new DropTargetIndex(mTargets);
+
+        // The targets of a drag on the workspace: the workspace, and the buttons of the drop
+        // target bar above it.
+        mWorkspace = addTarget(0, 200, WIDTH, HEIGHT);
+        mDelete = addTarget(0, 0, WIDTH / 2, 250);
+        mUninstall = addTarget(WIDTH / 2, 0, WIDTH, 250);
+    }
+
+    public void testDragPathMatchesLinearSearch() {
+        Random random = new Random(42);
+        int[] position = {WIDTH / 2, HEIGHT / 2};
+        for (int i = 0; i < PATH_LENGTH; i++) {
+            assertSameTarget(move(position, random));
+        }
+        // The rects did not change, they were computed once.
+        assertEquals(1, mIndex.getBuildCount());
+    }
+
+    public void testDragPathWithChanges() {
+        Random random = new Random(7);
+        int[] position = {WIDTH / 2, HEIGHT / 2};
+        TestDropTarget folder = null;
+        for (int i = 0; i < PATH_LENGTH; i++) {
+            switch (random.nextInt(50)) {
+                case 0:
+                    // A button is enabled or disabled when the dragged item changes.
+                    mUninstall.enabled = !mUninstall.enabled;
+                    break;
+                case 1:
+                    // The drop target bar is laid out again.
+                    int height = 150 + random.nextInt(200);
+                    mDelete.rect.bottom = height;
+                    mUninstall.rect.bottom = height;
+                    mIndex.invalidate();
+                    break;
+                case 2:
+                    // A folder opens or closes over the workspace.
+                    if (folder == null) {
+                        int left = random.nextInt(WIDTH / 2);
+                        int top = 300 + random.nextInt(HEIGHT / 2);
+                        folder = addTarget(left, top, left + WIDTH / 2, top + 600);
+                    } else {
+                        mTargets.remove(folder);
+                        folder = null;
+                    }
+                    mIndex.invalidate();
+                    break;
+                case 3:
+                    // The folder animates, and is only enabled once the animation ended.
+                    if (folder != null) {
+                        folder.enabled = !folder.enabled;
+                        folder.rect.offset(random.nextInt(21) - 10, random.nextInt(21) - 10);
+                        if (folder.enabled) {
+                            mIndex.invalidate();
+                        }
+                    }
+                    break;
+            }
+            assertSameTarget(move(position, random));
+        }
+    }
+
+    public void testNoEnabledTarget() {
+        mWorkspace.enabled = mDelete.enabled = mUninstall.enabled = false;
+        assertNull(mIndex.findDropTarget(WIDTH / 2, HEIGHT / 2));
+        mWorkspace.enabled = true;
+        assertSame(mWorkspace, mIndex.findDropTarget(WIDTH / 2, HEIGHT / 2));
+    }
+
+    public void testLastTargetTakesPrecedence() {
+        // The workspace and the buttons overlap.
+        assertSame(mDelete, mIndex.findDropTarget(10, 220));
+        mDelete.enabled = false;
+        assertSame(mWorkspace, mIndex.findDropTarget(10, 220));
+    }
+
+    private TestDropTarget addTarget(int left, int top, int right, int bottom) {
+        TestDropTarget target = new TestDropTarget(new Rect(left, top, right, bottom));
+        mTargets.add(target);
+        return target;
+    }
+
+    private int[] move(int[] position, Random random) {
+        position[0] = Math.max(0, Math.min(WIDTH - 1, position[0] + random.nextInt(81) - 40));
+        position[1] = Math.max(0, Math.min(HEIGHT - 1, position[1] + random.nextInt(81) - 40));
+        if (random.nextInt(100) == 0) {
+            // Flings across the screen
+            position[0] = random.nextInt(WIDTH);
+            position[1] = random.nextInt(HEIGHT);
+        }
+        return position;
+    }
+
+    private void assertSameTarget(int[] position) {
+        int x = position[0];
+        int y = position[1];
+        assertSame(x + "," + y, findDropTarget(x, y), mIndex.findDropTarget(x, y));
+    }
+
+    /**
+     * The search of DragController#findDropTarget before the rects were cached.
+     */
+    private DropTarget findDropTarget(int x, int y) {
+        Rect r = new Rect();
+        for (int i = mTargets.size() - 1; i >= 0; i--) {
+            DropTarget target = mTargets.get(i);
+            if (!target.isDropEnabled()) {
+                continue;
+            }
+            target.getHitRectRelativeToDragLayer(r);
+            if (r.contains(x, y)) {
+                return target;
+            }
+        }
+        return null;
+    }
+
+    private static class TestDropTarget implements DropTarget {
+        final Rect rect;
+        boolean enabled = true;
+
+        TestDropTarget(Rect rect) {
+            this.rect = rect;
+        }
+
+        @Override
+        public boolean isDropEnabled() {
+            return enabled;
+        }
+
+        @Override
+        public void onDrop(DragObject dragObject) { }
+
+        @Override
+        public void onDragEnter(DragObject dragObject) { }
+
+        @Override
+        public void onDragOver(DragObject dragObject) { }
+
+        @Override
+        public void onDragExit(DragObject dragObject) { }
+
+        @Override
+        public boolean acceptDrop(DragObject dragObject) {
+            return true;
+        }
+
+        @Override
+        public void prepareAccessibilityDrop() { }
+
+        @Override
+        public void getHitRectRelativeToDragLayer(Rect outRect) {
+            outRect.set(rect);
+        }
+    }
+}
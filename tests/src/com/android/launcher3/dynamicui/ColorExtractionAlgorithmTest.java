@@ -0,0 +1,71 @@
+package com.android.launcher3.dynamicui;
+
+import android.graphics.Color;
+import android.support.v4.graphics.ColorUtils;
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.MediumTest;
+import android.util.Pair;
+
+import com.android.launcher3.compat.WallpaperColorsCompat;
+
+/**
+ * Tests for {@link ColorExtractionAlgorithm}, checking that the palette lookup tables give the
+ * same results as scanning the palettes.
+ */
+@MediumTest
+public class ColorExtractionAlgorithmTest extends AndroidTestCase {
+
+    // Covers 64 values per channel, including 0 and 255.
+    private static final int SWEEP_STEP = 4;
+
+    public void testLookupMatchesScanOverRgbCube() {
+        float[] hsl = new float[3];
+        for (int r = 0; r < 256; r = nextChannelValue(r)) {
+            for (int g = 0; g < 256; g = nextChannelValue(g)) {
+                for (int b = 0; b < 256; b = nextChannelValue(b)) {
+                    ColorUtils.RGBToHSL(r, g, b, hsl);
+                    assertSameFit(Color.rgb(r, g, b), hsl[0] / 360f, hsl[1], hsl[2]);
+                }
+            }
+        }
+    }
+
+    public void testLookupMatchesScanOverHslGrid() {
+        // Also hit the edges of the lookup buckets.
+        for (int h = 0; h <= 1024; h++) {
+            for (int s = 0; s <= 20; s++) {
+                for (int l = 0; l <= 256; l += 4) {
+                    assertSameFit(0, h / 1024f, s / 20f, l / 256f);
+                }
+            }
+        }
+    }
+
+    public void testSkipsEmptyMainColors() {
+        ColorExtractionAlgorithm algorithm = new ColorExtractionAlgorithm();
+        int color = Color.rgb(30, 90, 160);
+        Pair<Integer, Integer> expected = algorithm.extractInto(
+                new WallpaperColorsCompat(color, 0, 0, 0));
+        Pair<Integer, Integer> actual = algorithm.extractInto(
+                new WallpaperColorsCompat(0, 0, color, 0));
+        assertEquals(expected.first, actual.first);
+        assertEquals(expected.second, actual.second);
+    }
+
+    private static int nextChannelValue(int value) {
+        return value == 255 ? 256 : Math.min(value + SWEEP_STEP, 255);
+    }
+
+    private static void assertSameFit(int color, float h, float s, float l) {
+        String message = "color=" + Integer.toHexString(color) + " h=" + h + " s=" + s
+                + " l=" + l;
+        int paletteIndex = ColorExtractionAlgorithm.findTonalPalette(h, s);
+        if (s >= 0.05f) {
+            assertEquals(message, ColorExtractionAlgorithm.findTonalPaletteSlow(h), paletteIndex);
+        }
+        ColorExtractionAlgorithm.TonalPalette palette =
+                ColorExtractionAlgorithm.getPalette(paletteIndex);
+        assertEquals(message, ColorExtractionAlgorithm.bestFitSlow(palette, h, s, l),
+                ColorExtractionAlgorithm.bestFit(paletteIndex, h, s, l));
+    }
+}
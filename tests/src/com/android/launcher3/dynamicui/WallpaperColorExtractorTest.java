@@ -0,0 +1,253 @@
+package com.android.launcher3.dynamicui;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.os.Debug;
+import android.os.ParcelFileDescriptor;
+import android.os.SystemClock;
+import android.support.v7.graphics.Palette;
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.MediumTest;
+import android.util.Log;
+
+import com.android.launcher3.compat.WallpaperColorsCompat;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Tests for {@link WallpaperColorExtractor}, and a benchmark against decoding each region
+ * separately on a large wallpaper.
+ */
+@MediumTest
+public class WallpaperColorExtractorTest extends AndroidTestCase {
+
+    private static final String TAG = "WallpaperColorExtractorTest";
+
+    private static final int WALLPAPER_WIDTH = 2880;
+    private static final int WALLPAPER_HEIGHT = 5120;
+    private static final int STATUS_BAR_HEIGHT = 192;
+
+    public void testSampleSize() {
+        assertEquals(1, WallpaperColorExtractor.getSampleSize(100, 100));
+        int sampleSize = WallpaperColorExtractor.getSampleSize(WALLPAPER_WIDTH, WALLPAPER_HEIGHT);
+        long area = (long) (WALLPAPER_WIDTH / sampleSize) * (WALLPAPER_HEIGHT / sampleSize);
+        assertTrue(area <= WallpaperColorExtractor.MAX_EXTRACTION_AREA);
+        assertTrue(area * 4 > WallpaperColorExtractor.MAX_EXTRACTION_AREA);
+    }
+
+    public void testRegions() {
+        // White status bar, grey middle, black hotseat.
+        Bitmap bitmap = Bitmap.createBitmap(100, 400, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(bitmap);
+        Paint paint = new Paint();
+        canvas.drawColor(Color.GRAY);
+        paint.setColor(Color.WHITE);
+        canvas.drawRect(0, 0, 100, 40, paint);
+        paint.setColor(Color.BLACK);
+        canvas.drawRect(0, 300, 100, 400, paint);
+
+        // The bitmap is a quarter of the size of the source image.
+        WallpaperColorExtractor.Result result =
+                WallpaperColorExtractor.extract(bitmap, 1600, 160);
+        assertTrue(ExtractionUtils.isSuperLight(result.getStatusBarPalette()));
+        assertTrue(ExtractionUtils.isSuperDark(result.getHotseatPalette()));
+        assertFalse(ExtractionUtils.isSuperDark(result.getStatusBarPalette()));
+        assertFalse(ExtractionUtils.isSuperLight(result.getHotseatPalette()));
+    }
+
+    public void testDarkHints() {
+        Bitmap bitmap = Bitmap.createBitmap(50, 50, Bitmap.Config.ARGB_8888);
+        bitmap.eraseColor(Color.WHITE);
+        assertEquals(WallpaperColorsCompat.HINT_SUPPORTS_DARK_TEXT,
+                WallpaperColorExtractor.extract(bitmap, 50, 5).getDarkHints());
+        bitmap.eraseColor(Color.BLACK);
+        assertEquals(WallpaperColorsCompat.HINT_SUPPORTS_DARK_THEME,
+                WallpaperColorExtractor.extract(bitmap, 50, 5).getDarkHints());
+    }
+
+    public void testQuantizeKeepsPopulation() {
+        Bitmap bitmap = createNoise(200, 200);
+        int[] histogram = new int[1 << 15];
+        int[] pixels = new int[200 * 200];
+        bitmap.getPixels(pixels, 0, 200, 0, 0, 200, 200);
+        for (int pixel : pixels) {
+            histogram[((Color.red(pixel) >> 3) << 10) | ((Color.green(pixel) >> 3) << 5)
+                    | (Color.blue(pixel) >> 3)]++;
+        }
+
+        List<Palette.Swatch> swatches = WallpaperColorExtractor.quantizeHistogram(histogram, false);
+        assertTrue(swatches.size() <= 16);
+        int population = 0;
+        for (Palette.Swatch swatch : swatches) {
+            population += swatch.getPopulation();
+        }
+        assertEquals(pixels.length, population);
+    }
+
+    public void testMainColors() {
+        Bitmap bitmap = Bitmap.createBitmap(100, 100, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(bitmap);
+        Paint paint = new Paint();
+        canvas.drawColor(Color.BLUE);
+        paint.setColor(Color.GREEN);
+        canvas.drawRect(0, 0, 100, 30, paint);
+
+        List<Integer> colors = WallpaperColorExtractor.extract(bitmap, 100, 10).getMainColors(3);
+        assertEquals(2, colors.size());
+        assertEquals(Color.BLUE, (int) colors.get(0));
+        assertEquals(Color.GREEN, (int) colors.get(1));
+    }
+
+    public void testBenchmark() throws Exception {
+        File file = new File(getContext().getCacheDir(), "wallpaper_benchmark.jpg");
+        Bitmap wallpaper = createNoise(WALLPAPER_WIDTH, WALLPAPER_HEIGHT);
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            wallpaper.compress(Bitmap.CompressFormat.JPEG, 90, out);
+        }
+        wallpaper.recycle();
+
+        try {
+            // Warm up both paths.
+            extractPerRegion(file);
+            extractOnce(file);
+
+            PeakMemorySampler sampler = new PeakMemorySampler();
+            sampler.start();
+            long start = SystemClock.elapsedRealtime();
+            long perRegionBytes = extractPerRegion(file);
+            long perRegionMs = SystemClock.elapsedRealtime() - start;
+            long perRegionPeak = sampler.stop();
+
+            sampler = new PeakMemorySampler();
+            sampler.start();
+            start = SystemClock.elapsedRealtime();
+            long onceBytes = extractOnce(file);
+            long onceMs = SystemClock.elapsedRealtime() - start;
+            long oncePeak = sampler.stop();
+
+            Log.d(TAG, String.format("%dx%d wallpaper: per region %dms, largest bitmap %dKB, "
+                    + "peak memory %dKB; single pass %dms, largest bitmap %dKB, "
+                    + "peak memory %dKB", WALLPAPER_WIDTH, WALLPAPER_HEIGHT,
+                    perRegionMs, perRegionBytes / 1024, perRegionPeak / 1024,
+                    onceMs, onceBytes / 1024, oncePeak / 1024));
+            assertTrue(onceBytes < perRegionBytes);
+            assertTrue(oncePeak < perRegionPeak);
+        } finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * Same as what the extraction services used to do: decode the hotseat region, the status bar
+     * region and the full image, and generate a palette for each.
+     *
+     * @return the size of the largest bitmap decoded.
+     */
+    private long extractPerRegion(File file) throws Exception {
+        long maxBytes = 0;
+        Rect[] regions = new Rect[] {
+                new Rect(0, WALLPAPER_HEIGHT * 3 / 4, WALLPAPER_WIDTH, WALLPAPER_HEIGHT),
+                new Rect(0, 0, WALLPAPER_WIDTH, STATUS_BAR_HEIGHT)};
+        for (Rect region : regions) {
+            try (ParcelFileDescriptor fd = open(file)) {
+                BitmapRegionDecoder decoder =
+                        BitmapRegionDecoder.newInstance(fd.getFileDescriptor(), false);
+                Bitmap bitmap = decoder.decodeRegion(region, null);
+                decoder.recycle();
+                maxBytes = Math.max(maxBytes, bitmap.getByteCount());
+                Palette.from(bitmap).clearFilters().generate();
+                bitmap.recycle();
+            }
+        }
+        try (ParcelFileDescriptor fd = open(file)) {
+            Bitmap bitmap = BitmapFactory.decodeFileDescriptor(fd.getFileDescriptor());
+            maxBytes = Math.max(maxBytes, bitmap.getByteCount());
+            Palette.from(bitmap).clearFilters().generate();
+            bitmap.recycle();
+        }
+        return maxBytes;
+    }
+
+    /**
+     * @return the size of the bitmap decoded, computed from the sample size.
+     */
+    private long extractOnce(File file) throws Exception {
+        try (ParcelFileDescriptor fd = open(file)) {
+            WallpaperColorExtractor.Result result =
+                    WallpaperColorExtractor.extract(fd.getFileDescriptor(), STATUS_BAR_HEIGHT);
+            result.getHotseatPalette();
+            result.getStatusBarPalette();
+            result.getWallpaperPalette(false);
+            result.getDarkHints();
+        }
+        int sampleSize = WallpaperColorExtractor.getSampleSize(WALLPAPER_WIDTH, WALLPAPER_HEIGHT);
+        return (long) (WALLPAPER_WIDTH / sampleSize) * (WALLPAPER_HEIGHT / sampleSize) * 4;
+    }
+
+    /**
+     * Samples the memory used by the process while an extraction runs, the bitmaps being on the
+     * java heap or on the native heap depending on the platform version.
+     */
+    private static class PeakMemorySampler extends Thread {
+        private final long mBaseline;
+        private volatile boolean mRunning = true;
+        private long mPeak;
+
+        PeakMemorySampler() {
+            Runtime.getRuntime().gc();
+            Runtime.getRuntime().runFinalization();
+            mBaseline = getUsedMemory();
+        }
+
+        @Override
+        public void run() {
+            while (mRunning) {
+                mPeak = Math.max(mPeak, getUsedMemory());
+                SystemClock.sleep(1);
+            }
+        }
+
+        /**
+         * @return the peak memory used since the start, above the memory used before.
+         */
+        long stop() throws InterruptedException {
+            mRunning = false;
+            join();
+            return Math.max(0, Math.max(mPeak, getUsedMemory()) - mBaseline);
+        }
+
+        private static long getUsedMemory() {
+            Runtime runtime = Runtime.getRuntime();
+            return runtime.totalMemory() - runtime.freeMemory()
+                    + Debug.getNativeHeapAllocatedSize();
+        }
+    }
+
+    private static ParcelFileDescriptor open(File file) throws Exception {
+        return ParcelFileDescriptor.open(file, ParcelFileDescriptor.MODE_READ_ONLY);
+    }
+
+    private static Bitmap createNoise(int width, int height) {
+        Random random = new Random(42);
+        Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        int[] row = new int[width];
+        for (int y = 0; y < height; y++) {
+            // Smooth gradients with some noise, closer to a photo than pure noise.
+            for (int x = 0; x < width; x++) {
+                row[x] = Color.rgb((x * 255 / width + random.nextInt(16)) & 0xFF,
+                        (y * 255 / height + random.nextInt(16)) & 0xFF,
+                        random.nextInt(256));
+            }
+            bitmap.setPixels(row, 0, width, 0, y, width, 1);
+        }
+        return bitmap;
+    }
+}
@@ -0,0 +1,420 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.android.launcher3.folder;
+
+import android.content.ComponentName;
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.os.Process;
+import android.os.SystemClock;
+import android.support.test.filters.LargeTest;
+import android.support.test.runner.AndroidJUnit4;
+import android.view.View;
+
+import com.android.launcher3.AppInfo;
+import com.android.launcher3.BubbleTextView;
+import com.android.launcher3.FolderInfo;
+import com.android.launcher3.InvariantDeviceProfile;
+import com.android.launcher3.ItemInfo;
+import com.android.launcher3.LauncherAppState;
+import com.android.launcher3.LauncherSettings;
+import com.android.launcher3.ShortcutInfo;
+import com.android.launcher3.Workspace;
+import com.android.launcher3.ui.AbstractLauncherUiTest;
+import com.android.launcher3.util.BenchmarkReporter;
+import com.android.launcher3.util.Condition;
+import com.android.launcher3.util.ContentWriter;
+import com.android.launcher3.util.Wait;
+import com.android.launcher3.util.rule.LauncherActivityRule;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for the folder content, which is only bound when the folder is opened.
+ *
+ * Note running these tests will clear the workspace on the device.
+ */
+@LargeTest
+@RunWith(AndroidJUnit4.class)
+public class FolderContentBindTest extends AbstractLauncherUiTest {
+
+    private static final int FOLDER_COUNT = 20;
+    private static final int ITEMS_PER_FOLDER = 30;
+
+    @Rule public LauncherActivityRule mActivityMonitor = new LauncherActivityRule();
+
+    private ContentResolver mResolver;
+
+    @Override
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+
+        mResolver = mTargetContext.getContentResolver();
+
+        // Clear all existing data
+        LauncherSettings.Settings.call(mResolver, LauncherSettings.Settings.METHOD_CREATE_EMPTY_DB);
+        LauncherSettings.Settings.call(mResolver, LauncherSettings.Settings.METHOD_CLEAR_EMPTY_DB_FLAG);
+    }
+
+    @Test
+    public void testBindOnOpen_unbindAfterClose_rebind() throws Throwable {
+        List<Long> folderIds = setupFolders(1, ITEMS_PER_FOLDER);
+        final FolderIcon icon = startAndGetFolderIcon(folderIds.get(0));
+        final Folder folder = icon.getFolder();
+
+        // Only the views drawn by the icon exist before the folder is opened.
+        final List<BubbleTextView> previewItems = getOnUiThread(
+                new Callable<List<BubbleTextView>>() {
+                    @Override
+                    public List<BubbleTextView> call() throws Exception {
+                        assertFalse(folder.isContentBound());
+                        assertEquals(ITEMS_PER_FOLDER, folder.getItemCount());
+                        assertEquals(icon.getPreviewItems().size(),
+                                folder.getExistingItemViews().size());
+                        return new ArrayList<>(icon.getPreviewItems());
+                    }
+                });
+
+        // Bind on open
+        openFolder(folder);
+        final WeakReference<View> lastItemView = getOnUiThread(
+                new Callable<WeakReference<View>>() {
+                    @Override
+                    public WeakReference<View> call() throws Exception {
+                        assertTrue(folder.isContentBound());
+                        ArrayList<View> items = folder.getItemsInReadingOrder();
+                        assertEquals(ITEMS_PER_FOLDER, items.size());
+                        // The preview views are reused by the content.
+                        for (BubbleTextView view : previewItems) {
+                            assertTrue(items.contains(view));
+                        }
+                        View lastItem = items.get(items.size() - 1);
+                        assertFalse(previewItems.contains(lastItem));
+                        return new WeakReference<>(lastItem);
+                    }
+                });
+
+        // Unbind after close
+        getOnUiThread(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                folder.close(false);
+                // Instead of waiting for the idle timeout.
+                folder.unbindContent();
+                assertFalse(folder.isContentBound());
+                assertEquals(previewItems.size(), folder.getExistingItemViews().size());
+                return null;
+            }
+        });
+        assertTrue("The item views were not released", Wait.atMost(new Condition() {
+            @Override
+            public boolean isTrue() throws Throwable {
+                Runtime.getRuntime().gc();
+                Runtime.getRuntime().runFinalization();
+                return lastItemView.get() == null;
+            }
+        }, DEFAULT_UI_TIMEOUT));
+
+        // Rebind
+        openFolder(folder);
+        getOnUiThread(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                assertTrue(folder.isContentBound());
+                ArrayList<View> items = folder.getItemsInReadingOrder();
+                assertEquals(ITEMS_PER_FOLDER, items.size());
+                for (int i = 0; i < previewItems.size(); i++) {
+                    assertSame(previewItems.get(i), icon.getPreviewItems().get(i));
+                }
+                folder.close(false);
+                return null;
+            }
+        });
+    }
+
+    @Test
+    public void testReorder_unbind_rebindKeepsOrder() throws Throwable {
+        List<Long> folderIds = setupFolders(1, ITEMS_PER_FOLDER);
+        final FolderIcon icon = startAndGetFolderIcon(folderIds.get(0));
+        final Folder folder = icon.getFolder();
+
+        // Move the last item to the front, which changes the ranks but not the contents order.
+        openFolder(folder);
+        final ItemInfo movedItem = getOnUiThread(new Callable<ItemInfo>() {
+            @Override
+            public ItemInfo call() throws Exception {
+                ArrayList<View> items = new ArrayList<>(folder.getItemsInReadingOrder());
+                View lastItem = items.remove(items.size() - 1);
+                items.add(0, lastItem);
+                folder.mContent.arrangeChildren(items, items.size());
+                folder.close(false);
+                folder.unbindContent();
+                return (ItemInfo) lastItem.getTag();
+            }
+        });
+
+        // The unbound preview draws the moved item first.
+        getOnUiThread(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                assertFalse(folder.isContentBound());
+                assertEquals(0, movedItem.rank);
+                assertSame(movedItem, icon.getPreviewItems().get(0).getTag());
+                return null;
+            }
+        });
+
+        // The content is bound again in the new order.
+        openFolder(folder);
+        getOnUiThread(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                ArrayList<View> items = folder.getItemsInReadingOrder();
+                assertEquals(ITEMS_PER_FOLDER, items.size());
+                for (int i = 0; i < items.size(); i++) {
+                    assertEquals(i, ((ItemInfo) items.get(i).getTag()).rank);
+                }
+                assertSame(movedItem, items.get(0).getTag());
+                folder.close(false);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Measures the item views created when the workspace is bound, and the time it takes to bind
+     * the content of all the folders, which used to be part of the workspace binding.
+     */
+    @Test
+    public void testBindManyFolders() throws Throwable {
+        BenchmarkReporter reporter = new BenchmarkReporter("FolderContentBind");
+        List<Long> folderIds = setupFolders(FOLDER_COUNT, ITEMS_PER_FOLDER);
+
+        int viewsBefore = FolderPagedView.getCreatedViewCount();
+        startAndGetFolderIcon(folderIds.get(folderIds.size() - 1));
+        final Workspace workspace = mActivityMonitor.getActivity().getWorkspace();
+        reporter.record("viewsCreatedOnWorkspaceBind", "views",
+                FolderPagedView.getCreatedViewCount() - viewsBefore);
+
+        final List<Folder> folders = new ArrayList<>();
+        for (final long id : folderIds) {
+            folders.add(getOnUiThread(new Callable<Folder>() {
+                @Override
+                public Folder call() throws Exception {
+                    return ((FolderIcon) workspace.getHomescreenIconByItemId(id)).getFolder();
+                }
+            }));
+        }
+
+        viewsBefore = FolderPagedView.getCreatedViewCount();
+        long bindNanos = getOnUiThread(new Callable<Long>() {
+            @Override
+            public Long call() throws Exception {
+                long start = SystemClock.elapsedRealtimeNanos();
+                for (Folder folder : folders) {
+                    folder.bindContentIfNeeded();
+                }
+                return SystemClock.elapsedRealtimeNanos() - start;
+            }
+        });
+        reporter.record("viewsCreatedOnContentBind", "views",
+                FolderPagedView.getCreatedViewCount() - viewsBefore);
+        reporter.record("contentBindTime", "ns", bindNanos);
+        reporter.write(getInstrumentation().getContext());
+
+        getOnUiThread(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                for (Folder folder : folders) {
+                    assertTrue(folder.isContentBound());
+                    assertEquals(ITEMS_PER_FOLDER, folder.getItemsInReadingOrder().size());
+                    folder.unbindContent();
+                }
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Measures the time it takes the folder icon to draw its preview from the layer and directly,
+     * and the memory of the layer compared to a copy of the whole icon, label included.
+     *
+     * The icon is drawn on a software canvas, so this is the time spent on the UI thread, not the
+     * time of the whole frame.
+     */
+    @Test
+    public void testPreviewDrawTime() throws Throwable {
+        List<Long> folderIds = setupFolders(1, ITEMS_PER_FOLDER);
+        final FolderIcon icon = startAndGetFolderIcon(folderIds.get(0));
+        final BenchmarkReporter reporter = new BenchmarkReporter("FolderPreviewDraw");
+
+        getOnUiThread(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                Bitmap bitmap = Bitmap.createBitmap(
+                        icon.getWidth(), icon.getHeight(), Bitmap.Config.ARGB_8888);
+                final Canvas canvas = new Canvas(bitmap);
+                final PreviewItemManager manager = icon.getPreviewItemManager();
+
+                manager.releasePreviewLayer();
+                long bytesBefore = PreviewLayer.getTotalBitmapBytes();
+                icon.draw(canvas);
+                reporter.record("previewLayerBytes", "bytes",
+                        PreviewLayer.getTotalBitmapBytes() - bytesBefore);
+                reporter.record("wholeIconBytes", "bytes", bitmap.getAllocationByteCount());
+
+                reporter.run("drawFromLayer", new Runnable() {
+                    @Override
+                    public void run() {
+                        icon.draw(canvas);
+                    }
+                });
+                reporter.run("drawDirectly", new Runnable() {
+                    @Override
+                    public void run() {
+                        manager.onPreviewDrawableChanged();
+                        icon.draw(canvas);
+                    }
+                });
+                bitmap.recycle();
+                return null;
+            }
+        });
+        reporter.write(getInstrumentation().getContext());
+    }
+
+    private void openFolder(final Folder folder) {
+        getOnUiThread(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                folder.animateOpen();
+                return null;
+            }
+        });
+        assertTrue(Wait.atMost(new Condition() {
+            @Override
+            public boolean isTrue() throws Throwable {
+                return getOnUiThread(new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() throws Exception {
+                        return folder.mState == Folder.STATE_OPEN;
+                    }
+                });
+            }
+        }, DEFAULT_UI_TIMEOUT));
+    }
+
+    private FolderIcon startAndGetFolderIcon(final long folderId) {
+        resetLoaderState();
+        mActivityMonitor.startLauncher();
+
+        final FolderIcon[] icon = new FolderIcon[1];
+        assertTrue(Wait.atMost(new Condition() {
+            @Override
+            public boolean isTrue() throws Throwable {
+                return getOnUiThread(new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() throws Exception {
+                        if (mActivityMonitor.getActivity() == null) {
+                            return false;
+                        }
+                        View view = mActivityMonitor.getActivity().getWorkspace()
+                                .getHomescreenIconByItemId(folderId);
+                        icon[0] = view instanceof FolderIcon ? (FolderIcon) view : null;
+                        return icon[0] != null;
+                    }
+                });
+            }
+        }, DEFAULT_ACTIVITY_TIMEOUT));
+        return icon[0];
+    }
+
+    /**
+     * Adds {@param folderCount} folders of {@param itemsPerFolder} items to the home screen,
+     * below the first row, on as many screens as needed.
+     *
+     * @return the ids of the folders.
+     */
+    private List<Long> setupFolders(int folderCount, int itemsPerFolder) {
+        InvariantDeviceProfile idp = LauncherAppState.getIDP(mTargetContext);
+        ComponentName component = getSettingsApp().getComponentName();
+        int foldersPerScreen = idp.numColumns * (idp.numRows - 1);
+
+        List<Long> folderIds = new ArrayList<>();
+        for (int i = 0; i < folderCount; i++) {
+            int screen = i / foldersPerScreen;
+            long screenId = Workspace.FIRST_SCREEN_ID + screen;
+            if (i % foldersPerScreen == 0) {
+                LauncherSettings.Settings.call(mResolver,
+                        LauncherSettings.Settings.METHOD_NEW_SCREEN_ID);
+                ContentValues v = new ContentValues();
+                v.put(LauncherSettings.WorkspaceScreens._ID, screenId);
+                v.put(LauncherSettings.WorkspaceScreens.SCREEN_RANK, screen);
+                mResolver.insert(LauncherSettings.WorkspaceScreens.CONTENT_URI, v);
+            }
+
+            FolderInfo folder = new FolderInfo();
+            folder.title = "Folder " + i;
+            folder.container = LauncherSettings.Favorites.CONTAINER_DESKTOP;
+            folder.screenId = screenId;
+            folder.cellX = (i % foldersPerScreen) % idp.numColumns;
+            folder.cellY = (i % foldersPerScreen) / idp.numColumns + 1;
+            insertItem(folder);
+            folderIds.add(folder.id);
+
+            for (int rank = 0; rank < itemsPerFolder; rank++) {
+                ShortcutInfo item = new ShortcutInfo();
+                item.itemType = LauncherSettings.Favorites.ITEM_TYPE_APPLICATION;
+                item.intent = AppInfo.makeLaunchIntent(component);
+                item.title = "Item " + rank;
+                item.user = Process.myUserHandle();
+                item.usingLowResIcon = true;
+                item.container = folder.id;
+                item.rank = rank;
+                item.cellX = rank % idp.numFolderColumns;
+                item.cellY = rank / idp.numFolderColumns;
+                insertItem(item);
+            }
+        }
+        return folderIds;
+    }
+
+    private void insertItem(ItemInfo item) {
+        ContentWriter writer = new ContentWriter(mTargetContext);
+        item.id = LauncherSettings.Settings.call(
+                mResolver, LauncherSettings.Settings.METHOD_NEW_ITEM_ID)
+                .getLong(LauncherSettings.Settings.EXTRA_VALUE);
+        item.onAddToDatabase(writer);
+        writer.put(LauncherSettings.Favorites._ID, item.id);
+        mResolver.insert(LauncherSettings.Favorites.CONTENT_URI, writer.getValues(mTargetContext));
+    }
+}
@@ -0,0 +1,166 @@
+package com.android.launcher3.folder;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+
+/**
+ * Tests for {@link PreviewLayer}
+ */
+@SmallTest
+public class PreviewLayerTest extends AndroidTestCase {
+
+    private static final int SIZE = 64;
+
+    private TestRenderer mRenderer;
+    private PreviewLayer mLayer;
+    private Bitmap mTarget;
+    private Canvas mCanvas;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mRenderer = new TestRenderer();
+        mLayer = new PreviewLayer(mRenderer);
+        mTarget = Bitmap.createBitmap(SIZE, SIZE, Bitmap.Config.ARGB_8888);
+        mCanvas = new Canvas(mTarget);
+    }
+
+    public void testRenderedOnceUntilInvalidated() {
+        draw();
+        draw();
+        draw();
+        assertEquals(1, mLayer.getRenderCount());
+
+        mLayer.invalidate();
+        draw();
+        draw();
+        assertEquals(2, mLayer.getRenderCount());
+    }
+
+    public void testInvalidateUpdatesContent() {
+        draw();
+        assertEquals(Color.RED, mTarget.getPixel(SIZE / 4, SIZE / 4));
+
+        // Without an invalidation, the copy is drawn.
+        mRenderer.color = Color.BLUE;
+        draw();
+        assertEquals(Color.RED, mTarget.getPixel(SIZE / 4, SIZE / 4));
+
+        mLayer.invalidate();
+        draw();
+        assertEquals(Color.BLUE, mTarget.getPixel(SIZE / 4, SIZE / 4));
+    }
+
+    public void testAnimationFramesDrawDirectly() {
+        draw();
+        mRenderer.color = Color.GREEN;
+        for (int i = 0; i < 3; i++) {
+            mLayer.onAnimationFrame();
+            draw();
+            assertSame(mCanvas, mRenderer.lastCanvas);
+            assertEquals(Color.GREEN, mTarget.getPixel(SIZE / 4, SIZE / 4));
+        }
+        assertEquals(4, mLayer.getRenderCount());
+
+        // Once the animation ends, the copy is rendered again with the last state.
+        draw();
+        assertNotSame(mCanvas, mRenderer.lastCanvas);
+        assertEquals(5, mLayer.getRenderCount());
+        assertEquals(Color.GREEN, mTarget.getPixel(SIZE / 4, SIZE / 4));
+        draw();
+        assertEquals(5, mLayer.getRenderCount());
+    }
+
+    public void testResizeRendersAgain() {
+        draw();
+        Rect bounds = new Rect(0, 0, SIZE / 2, SIZE / 2);
+        mLayer.draw(mCanvas, bounds);
+        assertEquals(2, mLayer.getRenderCount());
+        mLayer.draw(mCanvas, bounds);
+        assertEquals(2, mLayer.getRenderCount());
+
+        // Same size, but the copy holds another area.
+        bounds.offset(SIZE / 4, SIZE / 4);
+        mLayer.draw(mCanvas, bounds);
+        assertEquals(3, mLayer.getRenderCount());
+    }
+
+    public void testCopyOnlyCoversBounds() {
+        long bytes = PreviewLayer.getTotalBitmapBytes();
+        Rect bounds = new Rect(SIZE / 4, SIZE / 4, SIZE * 3 / 4, SIZE * 3 / 4);
+        mTarget.eraseColor(Color.WHITE);
+        mLayer.draw(mCanvas, bounds);
+        assertEquals(bounds.width() * bounds.height() * 4,
+                PreviewLayer.getTotalBitmapBytes() - bytes);
+
+        // Drawn at the same place as the items, and clipped to the bounds.
+        assertEquals(Color.RED, mTarget.getPixel(SIZE / 4 + 1, SIZE / 4 + 1));
+        assertEquals(Color.WHITE, mTarget.getPixel(SIZE / 4 - 1, SIZE / 4 - 1));
+
+        mLayer.release();
+        assertEquals(bytes, PreviewLayer.getTotalBitmapBytes());
+    }
+
+    public void testReleaseRendersAgain() {
+        draw();
+        mLayer.release();
+        draw();
+        assertEquals(2, mLayer.getRenderCount());
+        assertEquals(Color.RED, mTarget.getPixel(SIZE / 4, SIZE / 4));
+    }
+
+    public void testCopyMatchesDirectDrawing() {
+        draw();
+
+        Bitmap direct = Bitmap.createBitmap(SIZE, SIZE, Bitmap.Config.ARGB_8888);
+        direct.eraseColor(Color.WHITE);
+        mRenderer.render(new Canvas(direct));
+        // The translucent pixels are blended twice through the copy, allow for rounding.
+        for (int y = 0; y < SIZE; y++) {
+            for (int x = 0; x < SIZE; x++) {
+                int expected = direct.getPixel(x, y);
+                int actual = mTarget.getPixel(x, y);
+                assertTrue(x + "," + y, Math.abs(Color.red(expected) - Color.red(actual)) <= 2
+                        && Math.abs(Color.green(expected) - Color.green(actual)) <= 2
+                        && Math.abs(Color.blue(expected) - Color.blue(actual)) <= 2);
+            }
+        }
+    }
+
+    public void testTotalRenderCount() {
+        int count = PreviewLayer.getTotalRenderCount();
+        draw();
+        draw();
+        mLayer.onAnimationFrame();
+        draw();
+        assertEquals(count + 2, PreviewLayer.getTotalRenderCount());
+    }
+
+    private void draw() {
+        mTarget.eraseColor(Color.WHITE);
+        mLayer.draw(mCanvas, new Rect(0, 0, SIZE, SIZE));
+    }
+
+    /**
+     * Draws a translucent circle over an opaque square, so that the copy has to keep the alpha.
+     */
+    private static class TestRenderer implements PreviewLayer.Renderer {
+        final Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        int color = Color.RED;
+        Canvas lastCanvas;
+
+        @Override
+        public void render(Canvas canvas) {
+            lastCanvas = canvas;
+            paint.setColor(color);
+            canvas.drawRect(0, 0, SIZE / 2, SIZE / 2, paint);
+            paint.setColor(Color.argb(128, 0, 0, 255));
+            canvas.drawCircle(SIZE / 2, SIZE / 2, SIZE / 4, paint);
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package com.android.launcher3.graphics;
+
+import android.content.Intent;
+import android.content.pm.PackageManager;
+import android.content.pm.ResolveInfo;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.drawable.Drawable;
+import android.os.SystemClock;
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.MediumTest;
+
+import com.android.launcher3.InvariantDeviceProfile;
+import com.android.launcher3.LauncherAppState;
+import com.android.launcher3.util.BenchmarkReporter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Tests for {@link BitmapBlobCodec}, and a benchmark against PNG using the icons of the apps
+ * installed on the device.
+ */
+@MediumTest
+public class BitmapBlobCodecTest extends AndroidTestCase {
+
+    // Encode and decode passes over all the icons, the fastest one is kept.
+    private static final int BENCHMARK_RUNS = 5;
+    // Largest size of the raw blobs, relative to PNG, for which they are worth their speed.
+    private static final int MAX_RAW_SIZE_RATIO = 2;
+
+    private List<Bitmap> mIcons;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        InvariantDeviceProfile idp = LauncherAppState.getIDP(getContext());
+        PackageManager pm = getContext().getPackageManager();
+        Intent intent = new Intent(Intent.ACTION_MAIN).addCategory(Intent.CATEGORY_LAUNCHER);
+
+        mIcons = new ArrayList<>();
+        for (ResolveInfo info : pm.queryIntentActivities(intent, 0)) {
+            Drawable d = info.loadIcon(pm);
+            Bitmap icon = Bitmap.createBitmap(idp.iconBitmapSize, idp.iconBitmapSize,
+                    Bitmap.Config.ARGB_8888);
+            Canvas canvas = new Canvas(icon);
+            d.setBounds(0, 0, icon.getWidth(), icon.getHeight());
+            d.draw(canvas);
+            canvas.setBitmap(null);
+            mIcons.add(icon);
+        }
+        assertFalse(mIcons.isEmpty());
+    }
+
+    public void testRawDeflateRoundTrip() {
+        for (Bitmap icon : mIcons) {
+            Bitmap decoded = BitmapBlobCodec.decode(
+                    BitmapBlobCodec.RAW_DEFLATE.encode(icon), null);
+            assertNotNull(decoded);
+            assertTrue(icon.sameAs(decoded));
+        }
+    }
+
+    public void testRawDeflateReusesBitmap() {
+        Bitmap icon = mIcons.get(0);
+        Bitmap reuse = Bitmap.createBitmap(icon.getWidth(), icon.getHeight(), icon.getConfig());
+        BitmapFactory.Options opts = new BitmapFactory.Options();
+        opts.inBitmap = reuse;
+        assertSame(reuse, BitmapBlobCodec.decode(BitmapBlobCodec.RAW_DEFLATE.encode(icon), opts));
+        assertTrue(icon.sameAs(reuse));
+    }
+
+    public void testRawDeflateHonorsPreferredConfig() {
+        Bitmap opaque = Bitmap.createBitmap(32, 32, Bitmap.Config.ARGB_8888);
+        opaque.eraseColor(Color.RED);
+        opaque.setHasAlpha(false);
+        BitmapFactory.Options opts = new BitmapFactory.Options();
+        opts.inPreferredConfig = Bitmap.Config.RGB_565;
+        Bitmap decoded = BitmapBlobCodec.decode(BitmapBlobCodec.RAW_DEFLATE.encode(opaque), opts);
+        assertEquals(Bitmap.Config.RGB_565, decoded.getConfig());
+        assertEquals(Color.RED, decoded.getPixel(16, 16));
+
+        // As with BitmapFactory, the alpha is not dropped.
+        Bitmap icon = mIcons.get(0);
+        decoded = BitmapBlobCodec.decode(BitmapBlobCodec.RAW_DEFLATE.encode(icon), opts);
+        assertEquals(Bitmap.Config.ARGB_8888, decoded.getConfig());
+        assertTrue(icon.sameAs(decoded));
+    }
+
+    public void testLargeBitmapFallsBackToPng() {
+        // Noise does not compress, the raw blob would not fit in a cursor window.
+        int[] colors = new int[1024 * 768];
+        Random random = new Random(42);
+        for (int i = 0; i < colors.length; i++) {
+            colors[i] = random.nextInt() | 0xFF000000;
+        }
+        Bitmap preview = Bitmap.createBitmap(colors, 1024, 768, Bitmap.Config.ARGB_8888);
+        byte[] blob = BitmapBlobCodec.RAW_DEFLATE.encode(preview);
+        assertFalse(BitmapBlobCodec.RAW_DEFLATE.canDecode(blob));
+        assertTrue(preview.sameAs(BitmapBlobCodec.decode(blob, null)));
+    }
+
+    public void testDecodesPng() {
+        Bitmap icon = mIcons.get(0);
+        Bitmap decoded = BitmapBlobCodec.decode(BitmapBlobCodec.PNG.encode(icon), null);
+        assertNotNull(decoded);
+        assertEquals(icon.getWidth(), decoded.getWidth());
+        assertEquals(icon.getHeight(), decoded.getHeight());
+    }
+
+    public void testCorruptBlob() {
+        byte[] blob = BitmapBlobCodec.RAW_DEFLATE.encode(mIcons.get(0));
+        byte[] truncated = new byte[blob.length / 2];
+        System.arraycopy(blob, 0, truncated, 0, truncated.length);
+        assertNull(BitmapBlobCodec.decode(truncated, null));
+    }
+
+    /**
+     * Compares the codecs on the installed icons. The raw blobs are larger than the PNG ones, which
+     * is only worth it if they are faster to both encode and decode, and stay within
+     * {@link #MAX_RAW_SIZE_RATIO} of the PNG size.
+     */
+    public void testBenchmark() {
+        BenchmarkReporter reporter = new BenchmarkReporter("BitmapBlobCodec");
+        long[] png = benchmark(reporter, "PNG", BitmapBlobCodec.PNG);
+        long[] raw = benchmark(reporter, "RAW_DEFLATE", BitmapBlobCodec.RAW_DEFLATE);
+        reporter.write(getContext());
+
+        assertTrue("Raw encode " + raw[0] + "ns, PNG " + png[0] + "ns", raw[0] < png[0]);
+        assertTrue("Raw decode " + raw[1] + "ns, PNG " + png[1] + "ns", raw[1] < png[1]);
+        assertTrue("Raw blobs " + raw[2] + " bytes, PNG " + png[2] + " bytes",
+                raw[2] <= png[2] * MAX_RAW_SIZE_RATIO);
+    }
+
+    /**
+     * @return the fastest encode and decode time of all the icons out of
+     * {@link #BENCHMARK_RUNS}, and the bytes of all their blobs.
+     */
+    private long[] benchmark(BenchmarkReporter reporter, String name, BitmapBlobCodec codec) {
+        long bestEncodeNanos = Long.MAX_VALUE;
+        long bestDecodeNanos = Long.MAX_VALUE;
+        long bytes = 0;
+        for (int run = 0; run < BENCHMARK_RUNS; run++) {
+            List<byte[]> blobs = new ArrayList<>(mIcons.size());
+            bytes = 0;
+            long start = SystemClock.elapsedRealtimeNanos();
+            for (Bitmap icon : mIcons) {
+                byte[] blob = codec.encode(icon);
+                bytes += blob.length;
+                blobs.add(blob);
+            }
+            bestEncodeNanos = Math.min(bestEncodeNanos, SystemClock.elapsedRealtimeNanos() - start);
+
+            start = SystemClock.elapsedRealtimeNanos();
+            for (byte[] blob : blobs) {
+                assertNotNull(BitmapBlobCodec.decode(blob, null));
+            }
+            bestDecodeNanos = Math.min(bestDecodeNanos, SystemClock.elapsedRealtimeNanos() - start);
+        }
+        reporter.record(name + "_encodePerIcon", "ns", bestEncodeNanos / mIcons.size());
+        reporter.record(name + "_decodePerIcon", "ns", bestDecodeNanos / mIcons.size());
+        reporter.record(name + "_bytesPerIcon", "bytes", bytes / mIcons.size());
+        return new long[] {bestEncodeNanos, bestDecodeNanos, bytes};
+    }
+}
@@ -0,0 +1,82 @@
+package com.android.launcher3.graphics;
+
+import android.content.ComponentCallbacks2;
+import android.graphics.Bitmap;
+import android.graphics.Color;
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+
+/**
+ * Tests for {@link BitmapPool}.
+ */
+@SmallTest
+public class BitmapPoolTest extends AndroidTestCase {
+
+    private static final long MAX_BYTES = 1024 * 1024;
+
+    private BitmapPool mPool;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mPool = new BitmapPool(MAX_BYTES);
+    }
+
+    public void testReusesReleasedBitmap() {
+        Bitmap bitmap = mPool.acquire(100, 100, Bitmap.Config.ARGB_8888);
+        bitmap.eraseColor(Color.RED);
+        mPool.release(bitmap);
+        assertEquals(bitmap.getAllocationByteCount(), mPool.getPooledByteCount());
+
+        // Smaller and with another config, but in the same allocation.
+        Bitmap reused = mPool.acquire(90, 110, Bitmap.Config.ALPHA_8);
+        assertSame(bitmap, reused);
+        assertEquals(90, reused.getWidth());
+        assertEquals(110, reused.getHeight());
+        assertEquals(Bitmap.Config.ALPHA_8, reused.getConfig());
+        assertEquals(0, Color.alpha(reused.getPixel(45, 55)));
+        assertEquals(0, mPool.getPooledByteCount());
+        assertEquals(0.5f, mPool.getReuseRate());
+    }
+
+    public void testDoesNotReuseMuchLargerBitmap() {
+        Bitmap bitmap = mPool.acquire(200, 200, Bitmap.Config.ARGB_8888);
+        mPool.release(bitmap);
+        assertNotSame(bitmap, mPool.acquire(20, 20, Bitmap.Config.ARGB_8888));
+        assertNotSame(bitmap, mPool.acquire(201, 200, Bitmap.Config.ARGB_8888));
+        assertSame(bitmap, mPool.acquire(150, 150, Bitmap.Config.ARGB_8888));
+    }
+
+    public void testIgnoresDoubleRelease() {
+        Bitmap bitmap = mPool.acquire(100, 100, Bitmap.Config.ARGB_8888);
+        mPool.release(bitmap);
+        mPool.release(bitmap);
+        assertEquals(bitmap.getAllocationByteCount(), mPool.getPooledByteCount());
+        assertSame(bitmap, mPool.acquire(100, 100, Bitmap.Config.ARGB_8888));
+        assertNotSame(bitmap, mPool.acquire(100, 100, Bitmap.Config.ARGB_8888));
+    }
+
+    public void testEvictsLeastRecentlyReleased() {
+        // Each bitmap takes 40% of the pool.
+        Bitmap first = mPool.acquire(256, 400, Bitmap.Config.ARGB_8888);
+        Bitmap second = mPool.acquire(256, 400, Bitmap.Config.ARGB_8888);
+        Bitmap third = mPool.acquire(256, 400, Bitmap.Config.ARGB_8888);
+        mPool.release(first);
+        mPool.release(second);
+        mPool.release(third);
+        assertTrue(mPool.getPooledByteCount() <= MAX_BYTES);
+
+        assertSame(third, mPool.acquire(256, 400, Bitmap.Config.ARGB_8888));
+        assertSame(second, mPool.acquire(256, 400, Bitmap.Config.ARGB_8888));
+        assertNotSame(first, mPool.acquire(256, 400, Bitmap.Config.ARGB_8888));
+    }
+
+    public void testTrimMemory() {
+        mPool.release(mPool.acquire(100, 100, Bitmap.Config.ARGB_8888));
+        mPool.release(mPool.acquire(300, 300, Bitmap.Config.ALPHA_8));
+        mPool.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE);
+        assertTrue(mPool.getPooledByteCount() > 0);
+        mPool.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN);
+        assertEquals(0, mPool.getPooledByteCount());
+    }
+}
@@ -0,0 +1,235 @@
+package com.android.launcher3.provider;
+
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.net.Uri;
+import android.os.SystemClock;
+import android.test.ProviderTestCase2;
+import android.test.mock.MockContentProvider;
+import android.test.suitebuilder.annotation.MediumTest;
+import android.util.Log;
+import android.util.LongSparseArray;
+
+import com.android.launcher3.LauncherProvider;
+import com.android.launcher3.LauncherSettings.Favorites;
+import com.android.launcher3.LauncherSettings.WorkspaceScreens;
+import com.android.launcher3.config.FeatureFlags;
+import com.android.launcher3.util.TestLauncherProvider;
+
+/**
+ * Tests for {@link ImportDataTask}
+ */
+@MediumTest
+public class ImportDataTaskTest extends ProviderTestCase2<TestLauncherProvider> {
+
+    private static final String TAG = "ImportDataTaskTest";
+    private static final String SOURCE_AUTHORITY = "com.android.launcher3.tests.importsource";
+
+    private static final int ITEM_COUNT = 1000;
+    private static final int SCREEN_COUNT = 10;
+    // Id of the first screen in the source DB.
+    private static final long FIRST_SOURCE_SCREEN = 100;
+    private static final long INVALID_SOURCE_SCREEN = 999;
+    private static final long INVALID_FOLDER = 5000;
+
+    private static final int HOTSEAT_COUNT = 5;
+    private static final int INVALID_SCREEN_COUNT = 15;
+    private static final int FOLDER_COUNT = 20;
+    private static final int FOLDER_ITEM_COUNT = 390;
+    private static final int INVALID_FOLDER_ITEM_COUNT = 10;
+
+    private static final long IMPORT_BUDGET_MS = 3000;
+
+    private static final String[] COLUMNS = new String[] {
+            Favorites._ID, Favorites.INTENT, Favorites.TITLE, Favorites.CONTAINER,
+            Favorites.ITEM_TYPE, Favorites.APPWIDGET_PROVIDER, Favorites.SCREEN, Favorites.CELLX,
+            Favorites.CELLY, Favorites.SPANX, Favorites.SPANY, Favorites.RANK, Favorites.ICON,
+            Favorites.ICON_PACKAGE, Favorites.ICON_RESOURCE};
+
+    private int mProgressCount;
+    private int mLastRead;
+    private int mLastTotal;
+
+    public ImportDataTaskTest() {
+        super(TestLauncherProvider.class, LauncherProvider.AUTHORITY);
+    }
+
+    public void testImportSyntheticLauncher() throws Exception {
+        int[] desktopItemsPerScreen = new int[SCREEN_COUNT];
+        MatrixCursor source = createSourceItems(desktopItemsPerScreen);
+        LongSparseArray<Long> screenIdMap = new LongSparseArray<>();
+        for (int i = 0; i < SCREEN_COUNT; i++) {
+            screenIdMap.put(FIRST_SOURCE_SCREEN + i, (long) i);
+        }
+
+        ImportDataTask task = new ImportDataTask(getMockContext(), "unused",
+                new ImportDataTask.ProgressListener() {
+                    @Override
+                    public void onProgress(int read, int total) {
+                        mProgressCount++;
+                        mLastRead = read;
+                        mLastTotal = total;
+                    }
+                });
+        long start = SystemClock.elapsedRealtime();
+        task.readWorkspaceItems(source, FIRST_SOURCE_SCREEN, screenIdMap);
+        long importMs = SystemClock.elapsedRealtime() - start;
+        Log.d(TAG, String.format("Imported %d items in %dms", ITEM_COUNT, importMs));
+
+        assertEquals(ITEM_COUNT, mLastRead);
+        assertEquals(ITEM_COUNT, mLastTotal);
+        assertTrue(mProgressCount >= ITEM_COUNT / 100);
+
+        // Including the folders.
+        int desktopItemCount = ITEM_COUNT - HOTSEAT_COUNT - INVALID_SCREEN_COUNT
+                - FOLDER_ITEM_COUNT - INVALID_FOLDER_ITEM_COUNT;
+        assertEquals(HOTSEAT_COUNT + desktopItemCount + FOLDER_ITEM_COUNT, getCount(null));
+        assertEquals(HOTSEAT_COUNT,
+                getCount(Favorites.CONTAINER + "=" + Favorites.CONTAINER_HOTSEAT));
+        assertEquals(FOLDER_ITEM_COUNT, getCount(Favorites.CONTAINER + ">0"));
+        assertEquals(FOLDER_COUNT,
+                getCount(Favorites.ITEM_TYPE + "=" + Favorites.ITEM_TYPE_FOLDER));
+        for (int i = 0; i < SCREEN_COUNT; i++) {
+            assertEquals(desktopItemsPerScreen[i], getCount(Favorites.CONTAINER + "="
+                    + Favorites.CONTAINER_DESKTOP + " AND " + Favorites.SCREEN + "=" + i));
+        }
+        assertEquals(0, getCount(Favorites.SCREEN + "=" + INVALID_SOURCE_SCREEN));
+        assertEquals(0, getCount(Favorites.CONTAINER + "=" + INVALID_FOLDER));
+
+        assertTrue("Import took " + importMs + "ms", importMs < IMPORT_BUDGET_MS);
+    }
+
+    public void testImportShiftsFirstRowForQsb() throws Exception {
+        // Two screens, with 6 items on the first one, starting on its first row.
+        MatrixCursor source = new MatrixCursor(COLUMNS);
+        for (int i = 0; i < 6; i++) {
+            addApp(source, i + 1, Favorites.CONTAINER_DESKTOP, FIRST_SOURCE_SCREEN, i % 4, i / 4);
+        }
+        addApp(source, 7, Favorites.CONTAINER_DESKTOP, FIRST_SOURCE_SCREEN + 1, 0, 0);
+        addApp(source, 8, Favorites.CONTAINER_DESKTOP, FIRST_SOURCE_SCREEN + 1, 1, 2);
+        addSourceProvider(2, source);
+
+        assertTrue(new ImportDataTask(getMockContext(), SOURCE_AUTHORITY, null)
+                .importWorkspace());
+
+        assertEquals(2, getCount(WorkspaceScreens.CONTENT_URI, null));
+        int shift = FeatureFlags.QSB_ON_FIRST_SCREEN ? 1 : 0;
+        for (int i = 0; i < 6; i++) {
+            assertEquals(i / 4 + shift, getCellY(i + 1));
+        }
+        // Only the first screen is shifted.
+        assertEquals(0, getCellY(7));
+        assertEquals(2, getCellY(8));
+    }
+
+    public void testInsufficientDataIsRolledBack() throws Exception {
+        MatrixCursor source = new MatrixCursor(COLUMNS);
+        for (int i = 0; i < 3; i++) {
+            addApp(source, i + 1, Favorites.CONTAINER_DESKTOP, FIRST_SOURCE_SCREEN, i, 1);
+        }
+        addSourceProvider(1, source);
+
+        try {
+            new ImportDataTask(getMockContext(), SOURCE_AUTHORITY, null).importWorkspace();
+            fail("The import should have failed");
+        } catch (Exception e) {
+            // Expected
+        }
+        assertEquals(0, getCount(Favorites.CONTENT_URI, null));
+        assertEquals(0, getCount(WorkspaceScreens.CONTENT_URI, null));
+    }
+
+    /**
+     * Registers a source launcher with {@param screenCount} screens, starting at
+     * {@link #FIRST_SOURCE_SCREEN}, and the items of {@param favorites}.
+     */
+    private void addSourceProvider(int screenCount, final MatrixCursor favorites) {
+        final MatrixCursor screens = new MatrixCursor(
+                new String[] {WorkspaceScreens._ID, WorkspaceScreens.SCREEN_RANK});
+        for (int i = 0; i < screenCount; i++) {
+            screens.addRow(new Object[] {FIRST_SOURCE_SCREEN + i, i});
+        }
+        getMockContentResolver().addProvider(SOURCE_AUTHORITY, new MockContentProvider() {
+            @Override
+            public Cursor query(Uri uri, String[] projection, String selection,
+                    String[] selectionArgs, String sortOrder) {
+                return WorkspaceScreens.TABLE_NAME.equals(uri.getLastPathSegment())
+                        ? screens : favorites;
+            }
+        });
+    }
+
+    private int getCellY(long id) {
+        try (Cursor c = getMockContentResolver().query(Favorites.CONTENT_URI,
+                new String[] {Favorites.CELLY}, Favorites._ID + "=" + id, null, null)) {
+            assertTrue(c.moveToNext());
+            return c.getInt(0);
+        }
+    }
+
+    /**
+     * Creates the items of a source launcher, sorted by container.
+     */
+    private static MatrixCursor createSourceItems(int[] desktopItemsPerScreen) {
+        MatrixCursor c = new MatrixCursor(COLUMNS);
+        byte[] icon = new byte[1024];
+        int id = 1;
+        for (int i = 0; i < HOTSEAT_COUNT; i++, id++) {
+            addApp(c, id, Favorites.CONTAINER_HOTSEAT, i, i, 0);
+        }
+        for (int i = 0; i < INVALID_SCREEN_COUNT; i++, id++) {
+            addApp(c, id, Favorites.CONTAINER_DESKTOP, INVALID_SOURCE_SCREEN, i % 4, 1 + i / 4);
+        }
+        int firstFolderId = id;
+        int desktopEnd = ITEM_COUNT - FOLDER_ITEM_COUNT - INVALID_FOLDER_ITEM_COUNT;
+        while (id <= desktopEnd) {
+            int screen = id % SCREEN_COUNT;
+            desktopItemsPerScreen[screen]++;
+            if (id < firstFolderId + FOLDER_COUNT) {
+                c.addRow(new Object[] {id, null, "Folder " + id, Favorites.CONTAINER_DESKTOP,
+                        Favorites.ITEM_TYPE_FOLDER, null, FIRST_SOURCE_SCREEN + screen, 0, 1, 1,
+                        1, 0, null, null, null});
+            } else if (id % 10 == 0) {
+                c.addRow(new Object[] {id,
+                        "#Intent;action=android.intent.action.VIEW;package=com.example.app" + id
+                                + ";end",
+                        "Shortcut " + id, Favorites.CONTAINER_DESKTOP, Favorites.ITEM_TYPE_SHORTCUT,
+                        null, FIRST_SOURCE_SCREEN + screen, id % 4, 1 + id % 3, 1, 1, 0, icon,
+                        "com.example.app" + id, "com.example.app" + id + ":drawable/icon"});
+            } else {
+                addApp(c, id, Favorites.CONTAINER_DESKTOP, FIRST_SOURCE_SCREEN + screen, id % 4,
+                        1 + id % 3);
+            }
+            id++;
+        }
+        for (int i = 0; i < FOLDER_ITEM_COUNT; i++, id++) {
+            addApp(c, id, firstFolderId + i % FOLDER_COUNT, 0, 0, 0);
+        }
+        for (int i = 0; i < INVALID_FOLDER_ITEM_COUNT; i++, id++) {
+            addApp(c, id, INVALID_FOLDER, 0, 0, 0);
+        }
+        assertEquals(ITEM_COUNT, c.getCount());
+        return c;
+    }
+
+    private static void addApp(MatrixCursor c, int id, long container, long screen, int cellX,
+            int cellY) {
+        c.addRow(new Object[] {id,
+                "#Intent;action=android.intent.action.MAIN;"
+                        + "category=android.intent.category.LAUNCHER;"
+                        + "component=com.example.app" + id + "/.Main;end",
+                "App " + id, container, Favorites.ITEM_TYPE_APPLICATION, null, screen, cellX, cellY,
+                1, 1, id % 16, null, null, null});
+    }
+
+    private int getCount(String selection) {
+        return getCount(Favorites.CONTENT_URI, selection);
+    }
+
+    private int getCount(Uri uri, String selection) {
+        try (Cursor c = getMockContentResolver().query(uri,
+                new String[] {Favorites._ID}, selection, null, null)) {
+            return c.getCount();
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package com.android.launcher3.provider;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Tests for {@link InstallQueueDb}
+ */
+@SmallTest
+public class InstallQueueDbTest extends AndroidTestCase {
+
+    private static final String DB_NAME = "install_queue_test.db";
+
+    private InstallQueueDb mQueue;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        getContext().deleteDatabase(DB_NAME);
+        mQueue = new InstallQueueDb(getContext(), DB_NAME);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mQueue.close();
+        getContext().deleteDatabase(DB_NAME);
+        super.tearDown();
+    }
+
+    public void testEntriesAreReturnedInOrder() {
+        for (int i = 0; i < 20; i++) {
+            mQueue.add(InstallQueueDb.toValues("entry" + i, "com.example.app" + (i % 3), 0, null));
+        }
+        ArrayList<String> entries = mQueue.getAndClear();
+        assertEquals(20, entries.size());
+        for (int i = 0; i < 20; i++) {
+            assertEquals("entry" + i, entries.get(i));
+        }
+        assertEquals(0, mQueue.size());
+        assertTrue(mQueue.getAndClear().isEmpty());
+    }
+
+    public void testRemoveByPackageAndUser() {
+        ArrayList<ContentValues> rows = new ArrayList<>();
+        rows.add(InstallQueueDb.toValues("a0", "com.example.a", 0, null));
+        rows.add(InstallQueueDb.toValues("a10", "com.example.a", 10, null));
+        rows.add(InstallQueueDb.toValues("b0", "com.example.b", 0, "shortcut"));
+        rows.add(InstallQueueDb.toValues("c0", "com.example.c", 0, null));
+        mQueue.addAll(rows);
+
+        mQueue.remove(Arrays.asList("com.example.a", "com.example.b"), 0);
+        assertEquals(Arrays.asList("a10", "c0"), mQueue.getAndClear());
+    }
+
+    public void testQueryDeepShortcuts() {
+        mQueue.add(InstallQueueDb.toValues("a", "com.example.a", 0, null));
+        mQueue.add(InstallQueueDb.toValues("b", "com.example.b", 10, "shortcut"));
+        try (Cursor c = mQueue.queryDeepShortcuts()) {
+            assertEquals(1, c.getCount());
+            assertTrue(c.moveToNext());
+            assertEquals("com.example.b", c.getString(0));
+            assertEquals(10, c.getLong(1));
+            assertEquals("shortcut", c.getString(2));
+        }
+    }
+
+    public void testQueueSurvivesReopen() {
+        mQueue.add(InstallQueueDb.toValues("a", "com.example.a", 0, null));
+        mQueue.add(InstallQueueDb.toValues("b", "com.example.b", 0, null));
+        mQueue.add(InstallQueueDb.toValues("c", "com.example.c", 0, null));
+        reopen();
+        assertEquals(3, mQueue.size());
+
+        mQueue.remove(Arrays.asList("com.example.b"), 0);
+        reopen();
+        assertEquals(Arrays.asList("a", "c"), mQueue.getAndClear());
+
+        reopen();
+        assertEquals(0, mQueue.size());
+    }
+
+    public void testFailedBatchLeavesQueueUnchanged() {
+        mQueue.add(InstallQueueDb.toValues("a", "com.example.a", 0, null));
+        ArrayList<ContentValues> rows = new ArrayList<>();
+        rows.add(InstallQueueDb.toValues("b", "com.example.b", 0, null));
+        ContentValues invalid = InstallQueueDb.toValues("c", "com.example.c", 0, null);
+        invalid.putNull("entry");
+        rows.add(invalid);
+        try {
+            mQueue.addAll(rows);
+            fail("Adding an entry without content should fail");
+        } catch (SQLiteException e) {
+            // Expected
+        }
+        reopen();
+        assertEquals(Arrays.asList("a"), mQueue.getAndClear());
+    }
+
+    public void testDuplicateEntriesAreQueuedOnce() {
+        assertTrue(mQueue.add(InstallQueueDb.toValues("a", "com.example.a", 0, null)));
+        assertTrue(mQueue.add(InstallQueueDb.toValues("b", "com.example.b", 0, null)));
+        assertFalse(mQueue.add(InstallQueueDb.toValues("a", "com.example.a", 0, null)));
+        mQueue.addAll(Arrays.asList(
+                InstallQueueDb.toValues("b", "com.example.b", 0, null),
+                InstallQueueDb.toValues("c", "com.example.c", 0, null)));
+        assertEquals(3, mQueue.size());
+        assertEquals(Arrays.asList("a", "b", "c"), mQueue.getAndClear());
+    }
+
+    public void testUpgradeRemovesDuplicateEntries() {
+        mQueue.close();
+        getContext().deleteDatabase(DB_NAME);
+
+        // The first version of the queue, which allowed duplicate entries.
+        SQLiteDatabase db = getContext().openOrCreateDatabase(DB_NAME, 0, null);
+        db.execSQL("CREATE TABLE install_queue (" +
+                "_id INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                "package TEXT NOT NULL, " +
+                "profileId INTEGER NOT NULL, " +
+                "shortcutId TEXT, " +
+                "entry TEXT NOT NULL);");
+        for (String entry : new String[] {"a", "b", "a", "c", "b"}) {
+            db.insert("install_queue", null,
+                    InstallQueueDb.toValues(entry, "com.example." + entry, 0, null));
+        }
+        db.setVersion(1);
+        db.close();
+
+        mQueue = new InstallQueueDb(getContext(), DB_NAME);
+        assertEquals(Arrays.asList("a", "b", "c"), mQueue.getAndClear());
+        mQueue.add(InstallQueueDb.toValues("a", "com.example.a", 0, null));
+        assertFalse(mQueue.add(InstallQueueDb.toValues("a", "com.example.a", 0, null)));
+    }
+
+    private void reopen() {
+        mQueue.close();
+        mQueue = new InstallQueueDb(getContext(), DB_NAME);
+    }
+}
@@ -0,0 +1,158 @@
+package com.android.launcher3.provider;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.os.SystemClock;
+import android.test.ProviderTestCase2;
+import android.test.suitebuilder.annotation.MediumTest;
+import android.util.Log;
+
+import com.android.launcher3.LauncherProvider;
+import com.android.launcher3.LauncherSettings.Favorites;
+import com.android.launcher3.util.TestLauncherProvider;
+
+/**
+ * Tests for {@link ModelWriteBatch}
+ */
+@MediumTest
+public class ModelWriteBatchTest extends ProviderTestCase2<TestLauncherProvider> {
+
+    private static final String TAG = "ModelWriteBatchTest";
+
+    private static final int ROW_COUNT = 500;
+
+    public ModelWriteBatchTest() {
+        super(TestLauncherProvider.class, LauncherProvider.AUTHORITY);
+    }
+
+    public void testInsertUpdateDelete() {
+        getProvider().applyModelBatch(new ModelWriteBatch()
+                .insert(Favorites.TABLE_NAME, createFavorite(1, 0))
+                .insert(Favorites.TABLE_NAME, createFavorite(2, 1))
+                .insert(Favorites.TABLE_NAME, createFavorite(3, 2)));
+        assertEquals(3, getCount(null));
+
+        ContentValues values = new ContentValues();
+        values.put(Favorites.CELLX, 4);
+        values.put(Favorites.SCREEN, 7);
+        getProvider().applyModelBatch(new ModelWriteBatch()
+                .update(Favorites.TABLE_NAME, 2, values)
+                .delete(Favorites.TABLE_NAME, 3));
+
+        assertEquals(2, getCount(null));
+        assertEquals(1, getCount(Favorites._ID + "=2 AND " + Favorites.CELLX + "=4 AND "
+                + Favorites.SCREEN + "=7 AND " + Favorites.TITLE + "='Item 2'"));
+        assertEquals(1, getCount(Favorites._ID + "=1 AND " + Favorites.CELLX + "=0"));
+
+        getProvider().applyModelBatch(new ModelWriteBatch()
+                .delete(Favorites.TABLE_NAME, Favorites.CELLX + "=4"));
+        assertEquals(1, getCount(null));
+    }
+
+    public void testFailedBatchIsRolledBack() {
+        getProvider().applyModelBatch(new ModelWriteBatch()
+                .insert(Favorites.TABLE_NAME, createFavorite(1, 0)));
+        try {
+            getProvider().applyModelBatch(new ModelWriteBatch()
+                    .insert(Favorites.TABLE_NAME, createFavorite(2, 1))
+                    .insert(Favorites.TABLE_NAME, createFavorite(1, 2)));
+            fail("Inserting an existing id should fail");
+        } catch (RuntimeException e) {
+            // Expected
+        }
+        assertEquals(1, getCount(null));
+    }
+
+    public void testWriteThroughput() {
+        ContentResolver resolver = getMockContentResolver();
+
+        // Through the ContentResolver, one row at a time.
+        long start = SystemClock.elapsedRealtime();
+        for (int i = 0; i < ROW_COUNT; i++) {
+            resolver.insert(Favorites.CONTENT_URI, createFavorite(i + 1, i));
+        }
+        long insertMs = SystemClock.elapsedRealtime() - start;
+        start = SystemClock.elapsedRealtime();
+        for (int i = 0; i < ROW_COUNT; i++) {
+            resolver.update(Favorites.getContentUri(i + 1), createUpdate(i), null, null);
+        }
+        long updateMs = SystemClock.elapsedRealtime() - start;
+        assertEquals(ROW_COUNT, getCount(Favorites.SPANX + "=2"));
+        start = SystemClock.elapsedRealtime();
+        for (int i = 0; i < ROW_COUNT; i++) {
+            resolver.delete(Favorites.getContentUri(i + 1), null, null);
+        }
+        long deleteMs = SystemClock.elapsedRealtime() - start;
+        assertEquals(0, getCount(null));
+
+        // Through a batch.
+        ModelWriteBatch batch = new ModelWriteBatch();
+        for (int i = 0; i < ROW_COUNT; i++) {
+            batch.insert(Favorites.TABLE_NAME, createFavorite(i + 1, i));
+        }
+        start = SystemClock.elapsedRealtime();
+        getProvider().applyModelBatch(batch);
+        long batchInsertMs = SystemClock.elapsedRealtime() - start;
+        assertEquals(ROW_COUNT, getCount(null));
+
+        batch = new ModelWriteBatch();
+        for (int i = 0; i < ROW_COUNT; i++) {
+            batch.update(Favorites.TABLE_NAME, i + 1, createUpdate(i));
+        }
+        start = SystemClock.elapsedRealtime();
+        getProvider().applyModelBatch(batch);
+        long batchUpdateMs = SystemClock.elapsedRealtime() - start;
+        assertEquals(ROW_COUNT, getCount(Favorites.SPANX + "=2"));
+
+        batch = new ModelWriteBatch();
+        for (int i = 0; i < ROW_COUNT; i++) {
+            batch.delete(Favorites.TABLE_NAME, i + 1);
+        }
+        start = SystemClock.elapsedRealtime();
+        getProvider().applyModelBatch(batch);
+        long batchDeleteMs = SystemClock.elapsedRealtime() - start;
+        assertEquals(0, getCount(null));
+
+        Log.d(TAG, String.format("Rows/sec for %d favorites, resolver vs batch: "
+                + "insert %d vs %d, update %d vs %d, delete %d vs %d", ROW_COUNT,
+                rowsPerSecond(insertMs), rowsPerSecond(batchInsertMs),
+                rowsPerSecond(updateMs), rowsPerSecond(batchUpdateMs),
+                rowsPerSecond(deleteMs), rowsPerSecond(batchDeleteMs)));
+    }
+
+    private static long rowsPerSecond(long durationMs) {
+        return ROW_COUNT * 1000L / Math.max(durationMs, 1);
+    }
+
+    private int getCount(String selection) {
+        try (Cursor c = getMockContentResolver().query(Favorites.CONTENT_URI,
+                new String[] {Favorites._ID}, selection, null, null)) {
+            return c.getCount();
+        }
+    }
+
+    private static ContentValues createFavorite(long id, int rank) {
+        ContentValues values = new ContentValues();
+        values.put(Favorites._ID, id);
+        values.put(Favorites.TITLE, "Item " + id);
+        values.put(Favorites.INTENT, "#Intent;package=com.example.app" + id + ";end");
+        values.put(Favorites.ITEM_TYPE, Favorites.ITEM_TYPE_APPLICATION);
+        values.put(Favorites.CONTAINER, Favorites.CONTAINER_DESKTOP);
+        values.put(Favorites.SCREEN, rank / 20);
+        values.put(Favorites.CELLX, rank % 5);
+        values.put(Favorites.CELLY, rank / 5 % 4);
+        values.put(Favorites.SPANX, 1);
+        values.put(Favorites.SPANY, 1);
+        values.put(Favorites.RANK, rank);
+        values.put(Favorites.PROFILE_ID, 0);
+        return values;
+    }
+
+    private static ContentValues createUpdate(int rank) {
+        ContentValues values = new ContentValues();
+        values.put(Favorites.SCREEN, rank / 20 + 1);
+        values.put(Favorites.SPANX, 2);
+        return values;
+    }
+}
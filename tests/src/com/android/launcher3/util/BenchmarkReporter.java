@@ -0,0 +1,120 @@
+package com.android.launcher3.util;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Times operations and reports the results as JSON, so that the runs of a suite can be pulled
+ * from the device and diffed.
+ *
+ * The results of a suite are written to benchmarks/&lt;suite&gt;.json in the external files dir
+ * of the test context, and printed to the log under {@link #TAG}.
+ */
+public class BenchmarkReporter {
+
+    public static final String TAG = "LauncherBenchmark";
+
+    private static final int DEFAULT_WARMUP_RUNS = 100;
+    private static final int DEFAULT_RUNS = 2000;
+
+    private final String mSuite;
+    private final JSONArray mResults = new JSONArray();
+
+    public BenchmarkReporter(String suite) {
+        mSuite = suite;
+    }
+
+    public void run(String name, Runnable op) {
+        run(name, DEFAULT_WARMUP_RUNS, DEFAULT_RUNS, op);
+    }
+
+    /**
+     * Runs {@param op} {@param warmupRuns} times untimed, then {@param runs} times timed.
+     */
+    public void run(String name, int warmupRuns, int runs, Runnable op) {
+        for (int i = 0; i < warmupRuns; i++) {
+            op.run();
+        }
+        long[] durations = new long[runs];
+        long total = 0;
+        for (int i = 0; i < runs; i++) {
+            long start = SystemClock.elapsedRealtimeNanos();
+            op.run();
+            durations[i] = SystemClock.elapsedRealtimeNanos() - start;
+            total += durations[i];
+        }
+        Arrays.sort(durations);
+        try {
+            mResults.put(new JSONObject()
+                    .put("name", name)
+                    .put("runs", runs)
+                    .put("meanNs", total / runs)
+                    .put("minNs", durations[0])
+                    .put("medianNs", durations[runs / 2])
+                    .put("p90Ns", durations[runs * 9 / 10]));
+        } catch (JSONException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Records a value measured once by the caller, such as a count or the duration of an
+     * operation which can't be repeated.
+     */
+    public void record(String name, String unit, long value) {
+        try {
+            mResults.put(new JSONObject()
+                    .put("name", name)
+                    .put("unit", unit)
+                    .put("value", value));
+        } catch (JSONException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Writes the results of the suite.
+     *
+     * @return the written file, or null if it could not be written.
+     */
+    public File write(Context context) {
+        String json;
+        try {
+            json = new JSONObject()
+                    .put("suite", mSuite)
+                    .put("device", android.os.Build.MODEL)
+                    .put("sdk", android.os.Build.VERSION.SDK_INT)
+                    .put("results", mResults)
+                    .toString(2);
+        } catch (JSONException e) {
+            throw new RuntimeException(e);
+        }
+        Log.i(TAG, json);
+
+        File dir = context.getExternalFilesDir(null);
+        if (dir == null) {
+            dir = context.getFilesDir();
+        }
+        dir = new File(dir, "benchmarks");
+        dir.mkdirs();
+        File file = new File(dir, mSuite + ".json");
+        try (FileWriter writer = new FileWriter(file)) {
+            writer.write(json);
+        } catch (IOException e) {
+            Log.e(TAG, "Unable to write " + file, e);
+            return null;
+        }
+        Log.i(TAG, "Results written to " + file);
+        return file;
+    }
+}
@@ -0,0 +1,203 @@
+package com.android.launcher3.util;
+
+import android.os.Looper;
+import android.os.Process;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import junit.framework.TestCase;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests for {@link ExecutorRegistry}.
+ */
+@SmallTest
+public class ExecutorRegistryTest extends TestCase {
+
+    private ExecutorRegistry.MonitoredExecutor mExecutor;
+
+    @Override
+    protected void tearDown() throws Exception {
+        if (mExecutor != null) {
+            // Remove the pool from the registry for the tests which run next.
+            mExecutor.shutdownNow();
+            assertTrue(mExecutor.awaitTermination(5, TimeUnit.SECONDS));
+        }
+        super.tearDown();
+    }
+
+    public void testLifoPoolRunsLatestTaskFirst() throws Exception {
+        ExecutorRegistry.MonitoredExecutor executor = mExecutor = ExecutorRegistry.newLifoPool(
+                "test-lifo", 1, Process.THREAD_PRIORITY_DEFAULT, 10);
+        final CountDownLatch blocker = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(3);
+        final ArrayList<Integer> order = new ArrayList<>();
+
+        // Keep the only thread busy while the other tasks are queued.
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    blocker.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        for (int i = 0; i < 3; i++) {
+            final int task = i;
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    synchronized (order) {
+                        order.add(task);
+                    }
+                    done.countDown();
+                }
+            });
+        }
+        blocker.countDown();
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(3, order.size());
+        assertEquals(2, (int) order.get(0));
+        assertEquals(1, (int) order.get(1));
+        assertEquals(0, (int) order.get(2));
+    }
+
+    public void testTerminatedPoolIsRemoved() throws Exception {
+        mExecutor = ExecutorRegistry.newPool("test-terminated", 1, 1,
+                Process.THREAD_PRIORITY_DEFAULT, 10, ExecutorRegistry.RUN_ON_CALLER);
+        assertTrue(dump().contains("test-terminated:"));
+
+        mExecutor.shutdown();
+        assertTrue(mExecutor.awaitTermination(5, TimeUnit.SECONDS));
+        assertFalse(dump().contains("test-terminated:"));
+    }
+
+    public void testFullPoolDiscardsOldestTask() throws Exception {
+        mExecutor = ExecutorRegistry.newPool("test-discard", 1, 1,
+                Process.THREAD_PRIORITY_DEFAULT, 2, ExecutorRegistry.DISCARD_OLDEST);
+        CountDownLatch blocker = blockPool(mExecutor);
+        final ArrayList<Integer> order = new ArrayList<>();
+        final CountDownLatch done = new CountDownLatch(2);
+        for (int i = 0; i < 3; i++) {
+            mExecutor.execute(newRecordingTask(i, order, done));
+        }
+        assertEquals(1, mExecutor.getRejectedCount());
+        blocker.countDown();
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        // The first queued task was dropped for the last one.
+        assertEquals(2, order.size());
+        assertEquals(1, (int) order.get(0));
+        assertEquals(2, (int) order.get(1));
+    }
+
+    public void testFullLifoPoolDiscardsOldestTask() throws Exception {
+        mExecutor = ExecutorRegistry.newLifoPool("test-lifo-discard", 1,
+                Process.THREAD_PRIORITY_DEFAULT, 2);
+        CountDownLatch blocker = blockPool(mExecutor);
+        final ArrayList<Integer> order = new ArrayList<>();
+        final CountDownLatch done = new CountDownLatch(2);
+        for (int i = 0; i < 3; i++) {
+            mExecutor.execute(newRecordingTask(i, order, done));
+        }
+        assertEquals(1, mExecutor.getRejectedCount());
+        blocker.countDown();
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(2, order.size());
+        assertEquals(2, (int) order.get(0));
+        assertEquals(1, (int) order.get(1));
+    }
+
+    public void testFullPoolRunsOnCaller() throws Exception {
+        mExecutor = ExecutorRegistry.newPool("test-caller", 1, 1,
+                Process.THREAD_PRIORITY_DEFAULT, 1, ExecutorRegistry.RUN_ON_CALLER);
+        CountDownLatch blocker = blockPool(mExecutor);
+        mExecutor.execute(newRecordingTask(0, new ArrayList<Integer>(), new CountDownLatch(1)));
+
+        final Thread[] runThread = new Thread[1];
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                runThread[0] = Thread.currentThread();
+            }
+        });
+        assertSame(Thread.currentThread(), runThread[0]);
+        assertEquals(1, mExecutor.getRejectedCount());
+        blocker.countDown();
+    }
+
+    public void testSharedLooperIsStartedOnce() throws Exception {
+        final String name = "test-shared-looper";
+        final Looper[] loopers = new Looper[4];
+        Thread[] callers = new Thread[loopers.length];
+        for (int i = 0; i < callers.length; i++) {
+            final int caller = i;
+            callers[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    loopers[caller] = ExecutorRegistry.getSharedLooper(name,
+                            Process.THREAD_PRIORITY_DEFAULT);
+                }
+            });
+            callers[i].start();
+        }
+        for (Thread caller : callers) {
+            caller.join();
+        }
+        for (Looper looper : loopers) {
+            assertSame(loopers[0], looper);
+        }
+        loopers[0].quit();
+    }
+
+    /**
+     * Keeps the only thread of {@param executor} busy until the returned latch is released.
+     */
+    private static CountDownLatch blockPool(ExecutorRegistry.MonitoredExecutor executor)
+            throws InterruptedException {
+        final CountDownLatch blocker = new CountDownLatch(1);
+        final CountDownLatch started = new CountDownLatch(1);
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                started.countDown();
+                try {
+                    blocker.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        return blocker;
+    }
+
+    private static Runnable newRecordingTask(final int task, final ArrayList<Integer> order,
+            final CountDownLatch done) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                synchronized (order) {
+                    order.add(task);
+                }
+                done.countDown();
+            }
+        };
+    }
+
+    private static String dump() {
+        StringWriter out = new StringWriter();
+        PrintWriter writer = new PrintWriter(out);
+        ExecutorRegistry.dump("", writer);
+        writer.flush();
+        return out.toString();
+    }
+}
@@ -16,8 +16,10 @@
 
 package com.android.launcher3.util;
 
+import android.os.Debug;
 import android.test.AndroidTestCase;
 import android.test.suitebuilder.annotation.SmallTest;
+import android.util.Log;
 import android.view.KeyEvent;
 import android.view.View;
 
@@ -29,6 +31,12 @@ import com.android.launcher3.util.FocusLogic;
 @SmallTest
 public final class FocusLogicTest extends AndroidTestCase {
 
+    private static final String TAG = "FocusLogicTest";
+
+    private static final int KEYSTROKE_COUNT = 10000;
+    private static final int[] KEYS = new int[] {KeyEvent.KEYCODE_DPAD_RIGHT,
+            KeyEvent.KEYCODE_DPAD_DOWN, KeyEvent.KEYCODE_DPAD_LEFT, KeyEvent.KEYCODE_DPAD_UP};
+
     @Override
     protected void setUp() throws Exception {
         super.setUp();
@@ -242,6 +250,83 @@ public final class FocusLogicTest extends AndroidTestCase {
         assertEquals(4, i);
     }
 
+    public void testObtainFullMatrixReusesBuffer() {
+        int[][] matrix = FocusLogic.obtainFullMatrix(5, 6, null);
+        assertEquals(5, matrix.length);
+        assertEquals(6, matrix[0].length);
+        matrix[2][3] = 4;
+
+        int[][] reused = FocusLogic.obtainFullMatrix(5, 6, matrix);
+        assertSame(matrix, reused);
+        for (int[] column : reused) {
+            for (int cell : column) {
+                assertEquals(FocusLogic.EMPTY, cell);
+            }
+        }
+
+        assertNotSame(matrix, FocusLogic.obtainFullMatrix(6, 6, matrix));
+        assertNotSame(matrix, FocusLogic.obtainFullMatrix(5, 5, matrix));
+    }
+
+    @SuppressWarnings("deprecation")
+    public void testKeystrokeCostWithCachedMatrix() {
+        int[][] page = transpose(new int[][]{
+                { 0,  1,  2,-11,  3,  4,  5},
+                {-1, -1, 13,-11, -1, 14, -1},
+                {-1, 15, -1,-11, 16, -1, -1},
+                {-1, -1, -1,-11, -1, -1, 17},
+                {18, -1, -1,-11, -1, -1, -1},
+                { 7,  8,  9,  6, 10, 11, 12},
+        });
+        int m = page.length;
+        int n = page[0].length;
+
+        // Without the cache, the matrix is allocated and filled for every key event.
+        Debug.startAllocCounting();
+        Debug.resetThreadAllocCount();
+        long start = System.nanoTime();
+        int uncachedResult = 0;
+        for (int i = 0; i < KEYSTROKE_COUNT; i++) {
+            int[][] matrix = FocusLogic.obtainFullMatrix(m, n, null);
+            fill(matrix, page);
+            uncachedResult += FocusLogic.handleKeyEvent(
+                    KEYS[i % KEYS.length], matrix, i % 19, 1, 3, false);
+        }
+        long uncachedNanos = System.nanoTime() - start;
+        int uncachedAllocs = Debug.getThreadAllocCount();
+
+        // With the cache, the matrix is only filled again when the page changes.
+        Debug.resetThreadAllocCount();
+        start = System.nanoTime();
+        int cachedResult = 0;
+        int[][] cached = FocusLogic.obtainFullMatrix(m, n, null);
+        fill(cached, page);
+        for (int i = 0; i < KEYSTROKE_COUNT; i++) {
+            cachedResult += FocusLogic.handleKeyEvent(
+                    KEYS[i % KEYS.length], cached, i % 19, 1, 3, false);
+        }
+        long cachedNanos = System.nanoTime() - start;
+        int cachedAllocs = Debug.getThreadAllocCount();
+        Debug.stopAllocCounting();
+
+        Log.d(TAG, String.format("Per keystroke: uncached %dns / %.2f allocations, "
+                + "cached %dns / %.2f allocations",
+                uncachedNanos / KEYSTROKE_COUNT, (float) uncachedAllocs / KEYSTROKE_COUNT,
+                cachedNanos / KEYSTROKE_COUNT, (float) cachedAllocs / KEYSTROKE_COUNT));
+        assertEquals(uncachedResult, cachedResult);
+        assertTrue(cachedAllocs <= uncachedAllocs);
+    }
+
+    private static void fill(int[][] matrix, int[][] page) {
+        for (int i = 0; i < page.length; i++) {
+            for (int j = 0; j < page[i].length; j++) {
+                if (page[i][j] != FocusLogic.EMPTY) {
+                    matrix[i][j] = page[i][j];
+                }
+            }
+        }
+    }
+
     /** Transposes the matrix so that we can write it in human-readable format in the tests. */
     private int[][] transpose(int[][] m) {
         int[][] t = new int[m[0].length][m.length];
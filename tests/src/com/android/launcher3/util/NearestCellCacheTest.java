@@ -0,0 +1,150 @@
+package com.android.launcher3.util;
+
+import android.test.suitebuilder.annotation.SmallTest;
+
+import junit.framework.TestCase;
+
+import java.util.Random;
+
+/**
+ * Unit tests for {@link NearestCellCache}
+ */
+@SmallTest
+public class NearestCellCacheTest extends TestCase {
+
+    private static final int PATH_LENGTH = 2000;
+
+    public void testDragPathsMatchSearch() {
+        // Cell sizes, paddings and grid sizes of common workspaces and hotseats, odd sizes
+        // included for the rounding of the centers.
+        int[][] grids = {
+                // paddingLeft, paddingTop, cellWidth, cellHeight, countX, countY
+                {0, 0, 216, 300, 5, 5},
+                {24, 48, 263, 321, 4, 4},
+                {7, 3, 171, 199, 6, 5},
+                {0, 0, 270, 270, 5, 1},
+        };
+        Random random = new Random(42);
+        for (int[] grid : grids) {
+            for (int spanX = 1; spanX <= 2; spanX++) {
+                for (int spanY = 1; spanY <= 2; spanY++) {
+                    replayPath(grid, spanX, spanY, random, 8);
+                    replayPath(grid, spanX, spanY, random, 60);
+                }
+            }
+        }
+    }
+
+    public void testSmallMovesSkipSearch() {
+        int[] grid = {0, 0, 216, 300, 5, 5};
+        NearestCellCache cache = new NearestCellCache();
+        int searches = replayPath(grid, 1, 1, new Random(7), 4, cache);
+        assertTrue("Searched " + searches + " times", searches < PATH_LENGTH / 10);
+    }
+
+    public void testMidpoints() {
+        int[] grid = {10, 20, 100, 150, 4, 4};
+        NearestCellCache cache = new NearestCellCache();
+        int[] expected = new int[2];
+        int[] actual = new int[2];
+        // Points around the midpoints between the centers, where the cell changes.
+        for (int x = 0; x < 500; x++) {
+            for (int y = 80; y < 290; y += 13) {
+                assertCell(grid, 1, 1, x, y, cache, expected, actual);
+            }
+        }
+        for (int y = 0; y < 700; y++) {
+            for (int x = 40; x < 260; x += 11) {
+                assertCell(grid, 1, 1, x, y, cache, expected, actual);
+            }
+        }
+    }
+
+    public void testGridChange() {
+        int[] grid = {0, 0, 200, 200, 4, 4};
+        NearestCellCache cache = new NearestCellCache();
+        int[] expected = new int[2];
+        int[] actual = new int[2];
+        assertCell(grid, 1, 1, 350, 350, cache, expected, actual);
+        assertEquals(1, expected[0]);
+
+        // Resized cells, the same point is in another cell.
+        grid[2] = grid[3] = 100;
+        assertCell(grid, 1, 1, 350, 350, cache, expected, actual);
+        assertEquals(3, expected[0]);
+
+        // The item does not fit.
+        assertCell(grid, 5, 1, 350, 350, cache, expected, actual);
+        assertEquals(-1, expected[0]);
+    }
+
+    private void replayPath(int[] grid, int spanX, int spanY, Random random, int maxStep) {
+        replayPath(grid, spanX, spanY, random, maxStep, new NearestCellCache());
+    }
+
+    /**
+     * Replays a random drag over the grid and its surroundings, comparing every result with a
+     * full search.
+     *
+     * @return the number of searches done by the cache.
+     */
+    private int replayPath(int[] grid, int spanX, int spanY, Random random, int maxStep,
+            NearestCellCache cache) {
+        int width = grid[0] + grid[2] * grid[4];
+        int height = grid[1] + grid[3] * grid[5];
+        int x = random.nextInt(width);
+        int y = random.nextInt(height);
+        int[] expected = new int[2];
+        int[] actual = new int[2];
+        for (int i = 0; i < PATH_LENGTH; i++) {
+            x = Math.max(-100, Math.min(width + 100, x + random.nextInt(2 * maxStep + 1) - maxStep));
+            y = Math.max(-100, Math.min(height + 100,
+                    y + random.nextInt(2 * maxStep + 1) - maxStep));
+            assertCell(grid, spanX, spanY, x, y, cache, expected, actual);
+        }
+        return cache.getSearchCount();
+    }
+
+    private static void assertCell(int[] grid, int spanX, int spanY, int pixelX, int pixelY,
+            NearestCellCache cache, int[] expected, int[] actual) {
+        int paddingLeft = grid[0];
+        int paddingTop = grid[1];
+        int cellWidth = grid[2];
+        int cellHeight = grid[3];
+        int countX = grid[4];
+        int countY = grid[5];
+
+        // As in CellLayout#findNearestArea
+        pixelX -= cellWidth * (spanX - 1) / 2f;
+        pixelY -= cellHeight * (spanY - 1) / 2f;
+        search(pixelX, pixelY, paddingLeft, paddingTop, cellWidth, cellHeight,
+                countX - (spanX - 1), countY - (spanY - 1), expected);
+
+        cache.setGrid(paddingLeft + cellWidth / 2, paddingTop + cellHeight / 2,
+                cellWidth, cellHeight, countX - (spanX - 1), countY - (spanY - 1));
+        cache.findNearestCell(pixelX, pixelY, actual);
+        assertEquals(pixelX + "," + pixelY, expected[0], actual[0]);
+        assertEquals(pixelX + "," + pixelY, expected[1], actual[1]);
+    }
+
+    /**
+     * The search of CellLayout#findNearestArea when the occupied cells are not ignored.
+     */
+    private static void search(int pixelX, int pixelY, int paddingLeft, int paddingTop,
+            int cellWidth, int cellHeight, int columns, int rows, int[] result) {
+        double bestDistance = Double.MAX_VALUE;
+        result[0] = result[1] = -1;
+        for (int y = 0; y < rows; y++) {
+            for (int x = 0; x < columns; x++) {
+                int centerX = paddingLeft + x * cellWidth + cellWidth / 2;
+                int centerY = paddingTop + y * cellHeight + cellHeight / 2;
+                double distance = Math.hypot(centerX - pixelX, centerY - pixelY);
+                if (distance <= bestDistance) {
+                    bestDistance = distance;
+                    result[0] = x;
+                    result[1] = y;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,273 @@
+package com.google.android.apps.nexuslauncher;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.SystemClock;
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.MediumTest;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Tests for {@link LaunchCountStore}
+ */
+@MediumTest
+public class LaunchCountStoreTest extends AndroidTestCase {
+
+    private static final String TAG = "LaunchCountStoreTest";
+    private static final String FILE_NAME = "launch_count_store_test.bin";
+    private static final String PREFS_NAME = "launch_count_store_test";
+
+    private static final int MAX_PREDICTIONS = 10;
+    private static final int BOOST_ON_OPEN = 9;
+    private static final int APP_COUNT = 40;
+    private static final int LAUNCH_COUNT = 10000;
+
+    private HandlerThread mWriteThread;
+    private Handler mWriteHandler;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        getContext().deleteFile(FILE_NAME);
+        mWriteThread = new HandlerThread(TAG);
+        mWriteThread.start();
+        mWriteHandler = new Handler(mWriteThread.getLooper());
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mWriteThread.quit();
+        getContext().deleteFile(FILE_NAME);
+        getContext().getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE).edit().clear()
+                .commit();
+        super.tearDown();
+    }
+
+    public void testRankingMatchesLegacyAlgorithm() {
+        LaunchCountStore store = newStore();
+        ReferencePredictor reference = new ReferencePredictor();
+        Random random = new Random(42);
+        for (int i = 0; i < LAUNCH_COUNT; i++) {
+            String app = nextApp(random);
+            store.onLaunch(app);
+            reference.onLaunch(app);
+            assertSameState(reference, store);
+        }
+    }
+
+    public void testStateSurvivesReload() {
+        LaunchCountStore store = newStore();
+        ReferencePredictor reference = new ReferencePredictor();
+        Random random = new Random(7);
+        for (int i = 0; i < LAUNCH_COUNT / 2; i++) {
+            String app = nextApp(random);
+            store.onLaunch(app);
+            reference.onLaunch(app);
+        }
+        store.writeToDisk();
+
+        store = newStore();
+        assertTrue(store.load());
+        assertSameState(reference, store);
+        // The decay state is restored as well.
+        for (int i = 0; i < LAUNCH_COUNT / 2; i++) {
+            String app = nextApp(random);
+            store.onLaunch(app);
+            reference.onLaunch(app);
+            assertSameState(reference, store);
+        }
+    }
+
+    public void testClear() {
+        LaunchCountStore store = newStore();
+        store.onLaunch("a");
+        store.onLaunch("a");
+        assertEquals(BOOST_ON_OPEN, store.getLaunchCount("a"));
+        store.clear();
+        store.writeToDisk();
+        assertTrue(store.getRanking().isEmpty());
+
+        store = newStore();
+        assertTrue(store.load());
+        assertTrue(store.getRanking().isEmpty());
+    }
+
+    public void testLaunchCost() {
+        LaunchCountStore store = newStore();
+        Random random = new Random(42);
+        long start = SystemClock.elapsedRealtimeNanos();
+        for (int i = 0; i < LAUNCH_COUNT; i++) {
+            store.onLaunch(nextApp(random));
+            store.getRanking();
+        }
+        long storeNs = (SystemClock.elapsedRealtimeNanos() - start) / LAUNCH_COUNT;
+
+        // The prefs are much slower, use fewer launches.
+        int prefsLaunchCount = LAUNCH_COUNT / 10;
+        LegacyPrefsPredictor legacy = new LegacyPrefsPredictor(
+                getContext().getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE));
+        start = SystemClock.elapsedRealtimeNanos();
+        for (int i = 0; i < prefsLaunchCount; i++) {
+            legacy.onLaunch(nextApp(random));
+            legacy.getRanking();
+        }
+        long prefsNs = (SystemClock.elapsedRealtimeNanos() - start) / prefsLaunchCount;
+
+        Log.d(TAG, String.format("Launch and ranking cost, store: %dns, prefs: %dns",
+                storeNs, prefsNs));
+    }
+
+    private LaunchCountStore newStore() {
+        return new LaunchCountStore(getContext(), FILE_NAME, MAX_PREDICTIONS, BOOST_ON_OPEN,
+                mWriteHandler);
+    }
+
+    /**
+     * Picks an app, with the first apps launched much more often than the last ones.
+     */
+    private static String nextApp(Random random) {
+        double r = random.nextDouble();
+        return "app" + (int) (APP_COUNT * r * r);
+    }
+
+    private static void assertSameState(ReferencePredictor reference, LaunchCountStore store) {
+        List<String> ranking = reference.getRanking();
+        assertEquals(ranking, store.getRanking());
+        for (String app : ranking) {
+            assertEquals(app, (int) reference.counts.get(app), store.getLaunchCount(app));
+        }
+    }
+
+    /**
+     * The algorithm of CustomAppPredictor before the counts moved to {@link LaunchCountStore},
+     * in memory. The set is iterated from the least recently launched app, and the apps with
+     * equal counts are ranked by most recent launch, which the original left to the order of
+     * its HashSet.
+     */
+    private static class ReferencePredictor {
+        final HashMap<String, Integer> counts = new HashMap<>();
+        final HashMap<String, Long> lastLaunches = new HashMap<>();
+        long launchCount;
+
+        void onLaunch(String prediction) {
+            launchCount++;
+            if (counts.containsKey(prediction)) {
+                counts.put(prediction, counts.get(prediction) + BOOST_ON_OPEN);
+                lastLaunches.put(prediction, launchCount);
+            } else if (counts.size() < MAX_PREDICTIONS || decayHasSpotFree()) {
+                counts.put(prediction, 0);
+                lastLaunches.put(prediction, launchCount);
+            }
+        }
+
+        private boolean decayHasSpotFree() {
+            boolean spotFree = false;
+            ArrayList<String> toDecay = new ArrayList<>(counts.keySet());
+            Collections.sort(toDecay, new Comparator<String>() {
+                @Override
+                public int compare(String a, String b) {
+                    return Long.compare(lastLaunches.get(a), lastLaunches.get(b));
+                }
+            });
+            for (String prediction : toDecay) {
+                int launchCount = counts.get(prediction);
+                if (launchCount > 0) {
+                    counts.put(prediction, --launchCount);
+                } else if (!spotFree) {
+                    counts.remove(prediction);
+                    lastLaunches.remove(prediction);
+                    spotFree = true;
+                }
+            }
+            return spotFree;
+        }
+
+        List<String> getRanking() {
+            ArrayList<String> ranking = new ArrayList<>(counts.keySet());
+            Collections.sort(ranking, new Comparator<String>() {
+                @Override
+                public int compare(String a, String b) {
+                    int result = Integer.compare(counts.get(b), counts.get(a));
+                    return result != 0 ? result
+                            : Long.compare(lastLaunches.get(b), lastLaunches.get(a));
+                }
+            });
+            return ranking;
+        }
+    }
+
+    /**
+     * The prefs based implementation of CustomAppPredictor, to compare the cost of a launch.
+     */
+    private static class LegacyPrefsPredictor {
+        private static final String PREDICTION_SET = "pref_prediction_set";
+        private static final String PREDICTION_PREFIX = "pref_prediction_count_";
+
+        private final SharedPreferences mPrefs;
+
+        LegacyPrefsPredictor(SharedPreferences prefs) {
+            mPrefs = prefs;
+        }
+
+        void onLaunch(String prediction) {
+            Set<String> predictionSet = getStringSetCopy();
+            SharedPreferences.Editor edit = mPrefs.edit();
+            if (predictionSet.contains(prediction)) {
+                edit.putInt(PREDICTION_PREFIX + prediction,
+                        getLaunchCount(prediction) + BOOST_ON_OPEN);
+            } else if (predictionSet.size() < MAX_PREDICTIONS
+                    || decayHasSpotFree(predictionSet, edit)) {
+                predictionSet.add(prediction);
+            }
+            edit.putStringSet(PREDICTION_SET, predictionSet);
+            edit.apply();
+        }
+
+        private boolean decayHasSpotFree(Set<String> toDecay, SharedPreferences.Editor edit) {
+            boolean spotFree = false;
+            Set<String> toRemove = new HashSet<>();
+            for (String prediction : toDecay) {
+                int launchCount = getLaunchCount(prediction);
+                if (launchCount > 0) {
+                    edit.putInt(PREDICTION_PREFIX + prediction, --launchCount);
+                } else if (!spotFree) {
+                    edit.remove(PREDICTION_PREFIX + prediction);
+                    toRemove.add(prediction);
+                    spotFree = true;
+                }
+            }
+            toDecay.removeAll(toRemove);
+            return spotFree;
+        }
+
+        List<String> getRanking() {
+            List<String> predictionList = new ArrayList<>(getStringSetCopy());
+            Collections.sort(predictionList, new Comparator<String>() {
+                @Override
+                public int compare(String o1, String o2) {
+                    return Integer.compare(getLaunchCount(o2), getLaunchCount(o1));
+                }
+            });
+            return predictionList;
+        }
+
+        private int getLaunchCount(String component) {
+            return mPrefs.getInt(PREDICTION_PREFIX + component, 0);
+        }
+
+        private Set<String> getStringSetCopy() {
+            return new HashSet<>(mPrefs.getStringSet(PREDICTION_SET, new HashSet<String>()));
+        }
+    }
+}